@@ -0,0 +1,77 @@
+package com.github.hermannpencole.nifi.config.service;
+
+import com.github.hermannpencole.nifi.swagger.client.model.PositionDTO;
+import com.google.inject.Injector;
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessGroupFlowDTO;
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessGroupFlowEntity;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the placement and of the ordering of the components of ProcessGroupService
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessGroupServiceBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    public int size;
+
+    private SyntheticFlow flow;
+
+    private ProcessGroupService processGroupService;
+
+    private FlowCacheService flowCacheService;
+
+    private ProcessGroupFlowEntity flat;
+
+    private ProcessGroupFlowDTO root;
+
+    private Set<ProcessGroupFlowDTO> allProcessGroupFlow;
+
+    @Setup
+    public void setup() {
+        flow = new SyntheticFlow(size);
+        Injector injector = flow.createInjector();
+        processGroupService = injector.getInstance(ProcessGroupService.class);
+        flowCacheService = injector.getInstance(FlowCacheService.class);
+        flat = flow.getFlow(SyntheticFlow.FLAT_ID);
+        root = flow.getFlow(SyntheticFlow.ROOT_ID).getProcessGroupFlow();
+        allProcessGroupFlow = new HashSet<>();
+        allProcessGroupFlow.add(root);
+        root.getFlow().getProcessGroups().forEach(group -> allProcessGroupFlow.add(flow.getFlow(group.getId()).getProcessGroupFlow()));
+    }
+
+    /**
+     * the occupancy grid is build on each call (the first placement on a flow), not reused from the cache
+     */
+    @Benchmark
+    public PositionDTO getNextPosition() {
+        flowCacheService.invalidate(SyntheticFlow.FLAT_ID);
+        return processGroupService.getNextPosition(flat);
+    }
+
+    @Benchmark
+    public List<Set<?>> reorder() {
+        return processGroupService.reorder(root);
+    }
+
+    @Benchmark
+    public Optional<?> findById() {
+        return processGroupService.findById(allProcessGroupFlow, flow.getLastId());
+    }
+
+    @Benchmark
+    public Optional<?> findByIdInFlow() {
+        return processGroupService.findById(flat.getProcessGroupFlow().getFlow(), flow.getLastName());
+    }
+}
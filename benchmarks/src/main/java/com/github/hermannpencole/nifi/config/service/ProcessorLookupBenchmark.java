@@ -0,0 +1,78 @@
+package com.github.hermannpencole.nifi.config.service;
+
+import com.github.hermannpencole.nifi.config.utils.ComponentNameIndex;
+import com.github.hermannpencole.nifi.swagger.client.model.ConnectableDTO;
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessGroupFlowEntity;
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessorEntity;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the search of the components by name and of the update of the properties referencing a controller
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessorLookupBenchmark {
+
+    private final static String OLD_CONTROLLER_ID = "old-controller";
+
+    @Param({"100", "10000", "100000"})
+    public int size;
+
+    private SyntheticFlow flow;
+
+    private ConnectionsUpdater connectionsUpdater;
+
+    private ProcessGroupFlowEntity flat;
+
+    private ComponentNameIndex index;
+
+    private Map<String, String> properties;
+
+    @Setup
+    public void setup() {
+        flow = new SyntheticFlow(size);
+        connectionsUpdater = flow.createInjector().getInstance(ConnectionsUpdater.class);
+        flat = flow.getFlow(SyntheticFlow.FLAT_ID);
+        index = ComponentNameIndex.of(flat.getProcessGroupFlow().getFlow());
+        //one property on ten reference the controller
+        properties = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            properties.put("property-" + i, i % 10 == 0 ? OLD_CONTROLLER_ID : "value-" + i);
+        }
+    }
+
+    /**
+     * build the index of the flow (once by flow in updateConfig) and find a processor
+     */
+    @Benchmark
+    public Optional<ProcessorEntity> indexAndFindProcessor() {
+        return ComponentNameIndex.of(flat.getProcessGroupFlow().getFlow()).findProcessor(flow.getLastName());
+    }
+
+    /**
+     * find a processor on the index already build
+     */
+    @Benchmark
+    public Optional<ProcessorEntity> findProcessor() {
+        return index.findProcessor(flow.getLastName());
+    }
+
+    @Benchmark
+    public Optional<ConnectableDTO> findByName() {
+        return connectionsUpdater.findByName(flat, flow.getLastName());
+    }
+
+    @Benchmark
+    public Map<String, String> createUpdateProperty() {
+        return UpdateProcessorService.createUpdateProperty(properties, OLD_CONTROLLER_ID, "new-controller");
+    }
+}
@@ -0,0 +1,186 @@
+package com.github.hermannpencole.nifi.config.service;
+
+import com.github.hermannpencole.nifi.swagger.ApiException;
+import com.github.hermannpencole.nifi.swagger.client.FlowApi;
+import com.github.hermannpencole.nifi.swagger.client.model.*;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.name.Names;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Synthetic flow of n processors for the benchmarks, and the FlowApi that serve it in memory.
+ * <p>
+ * The root group contains n/100 groups of 100 processors chained by connections (the graph of reorder), the group
+ * flat contains the n processors placed on a full grid of 4 processors pro line (the worst case of getNextPosition).
+ */
+public class SyntheticFlow {
+
+    public final static String ROOT_ID = "root";
+
+    public final static String FLAT_ID = "flat";
+
+    private final static int GROUP_SIZE = 100;
+
+    private final static double ELEMENT_WIDTH = 430;
+
+    private final static double ELEMENT_HEIGHT = 220;
+
+    private final static int PRO_LINE = 4;
+
+    private final Map<String, ProcessGroupFlowEntity> flows = new HashMap<>();
+
+    private final int size;
+
+    public SyntheticFlow(int size) {
+        this.size = size;
+        ProcessGroupFlowEntity root = createFlow(ROOT_ID);
+        for (int group = 0; group * GROUP_SIZE < size; group++) {
+            String groupId = "group-" + group;
+            root.getProcessGroupFlow().getFlow().getProcessGroups().add(createProcessGroup(groupId));
+            ProcessGroupFlowEntity flow = createFlow(groupId);
+            int count = Math.min(GROUP_SIZE, size - group * GROUP_SIZE);
+            for (int i = 0; i < count; i++) {
+                flow.getProcessGroupFlow().getFlow().getProcessors().add(createProcessor(groupId + "-proc-" + i, 0, 0));
+                if (i > 0) {
+                    flow.getProcessGroupFlow().getFlow().getConnections().add(createConnection(groupId + "-conn-" + i, groupId + "-proc-" + (i - 1), groupId + "-proc-" + i));
+                }
+            }
+            flows.put(groupId, flow);
+        }
+        flows.put(ROOT_ID, root);
+
+        ProcessGroupFlowEntity flat = createFlow(FLAT_ID);
+        for (int i = 0; i < size; i++) {
+            flat.getProcessGroupFlow().getFlow().getProcessors().add(createProcessor("flat-" + i, (i % PRO_LINE) * ELEMENT_WIDTH, (i / PRO_LINE) * ELEMENT_HEIGHT));
+        }
+        flows.put(FLAT_ID, flat);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public ProcessGroupFlowEntity getFlow(String id) {
+        return flows.get(id);
+    }
+
+    /**
+     * @return the name of the last processor of the group flat (the worst case of a linear search)
+     */
+    public String getLastName() {
+        return "flat-" + (size - 1);
+    }
+
+    /**
+     * @return the id of the last processor of the root tree
+     */
+    public String getLastId() {
+        int group = (size - 1) / GROUP_SIZE;
+        return "group-" + group + "-proc-" + ((size - 1) % GROUP_SIZE);
+    }
+
+    /**
+     * the injector of the services with the default configuration of Main and the FlowApi in memory
+     *
+     * @return the injector
+     */
+    public Injector createInjector() {
+        FlowApi flowApi = new InMemoryFlowApi();
+        PositionDTO startPosition = new PositionDTO();
+        startPosition.setX(0d);
+        startPosition.setY(0d);
+        return Guice.createInjector(new AbstractModule() {
+            protected void configure() {
+                bind(FlowApi.class).toInstance(flowApi);
+                bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(120);
+                bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(2);
+                bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
+                bind(PositionDTO.class).annotatedWith(Names.named("startPosition")).toInstance(startPosition);
+                bind(Double.class).annotatedWith(Names.named("placeWidth")).toInstance(1935d);
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
+                bind(Boolean.class).annotatedWith(Names.named("batchSchedule")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("diffMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("scopedStop")).toInstance(false);
+            }
+        });
+    }
+
+    private static ProcessGroupFlowEntity createFlow(String id) {
+        FlowDTO flow = new FlowDTO();
+        flow.setProcessGroups(new ArrayList<>());
+        flow.setProcessors(new ArrayList<>());
+        flow.setConnections(new ArrayList<>());
+        flow.setInputPorts(new ArrayList<>());
+        flow.setOutputPorts(new ArrayList<>());
+        flow.setFunnels(new ArrayList<>());
+        flow.setRemoteProcessGroups(new ArrayList<>());
+        ProcessGroupFlowDTO processGroupFlow = new ProcessGroupFlowDTO();
+        processGroupFlow.setId(id);
+        processGroupFlow.setFlow(flow);
+        ProcessGroupFlowEntity entity = new ProcessGroupFlowEntity();
+        entity.setProcessGroupFlow(processGroupFlow);
+        return entity;
+    }
+
+    private static ProcessGroupEntity createProcessGroup(String id) {
+        ProcessGroupDTO processGroup = new ProcessGroupDTO();
+        processGroup.setId(id);
+        processGroup.setName(id);
+        ProcessGroupEntity entity = new ProcessGroupEntity();
+        entity.setId(id);
+        entity.setComponent(processGroup);
+        entity.setPosition(position(0, 0));
+        return entity;
+    }
+
+    private static ProcessorEntity createProcessor(String id, double x, double y) {
+        ProcessorDTO processor = new ProcessorDTO();
+        processor.setId(id);
+        processor.setName(id);
+        processor.setConfig(new ProcessorConfigDTO());
+        processor.setState(ProcessorDTO.StateEnum.STOPPED);
+        ProcessorEntity entity = new ProcessorEntity();
+        entity.setId(id);
+        entity.setComponent(processor);
+        entity.setRevision(new RevisionDTO());
+        entity.getRevision().setVersion(1L);
+        entity.setPosition(position(x, y));
+        return entity;
+    }
+
+    private static ConnectionEntity createConnection(String id, String sourceId, String destinationId) {
+        ConnectionEntity entity = new ConnectionEntity();
+        entity.setId(id);
+        entity.setSourceId(sourceId);
+        entity.setDestinationId(destinationId);
+        entity.setPosition(position(0, 0));
+        return entity;
+    }
+
+    private static PositionDTO position(double x, double y) {
+        PositionDTO position = new PositionDTO();
+        position.setX(x);
+        position.setY(y);
+        return position;
+    }
+
+    /**
+     * FlowApi that serve the synthetic flow without server
+     */
+    private class InMemoryFlowApi extends FlowApi {
+        @Override
+        public ProcessGroupFlowEntity getFlow(String id) throws ApiException {
+            ProcessGroupFlowEntity flow = flows.get(id);
+            if (flow == null) {
+                throw new ApiException(404, "Not Found " + id);
+            }
+            return flow;
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.github.hermannpencole.nifi.config;
 
 import com.github.hermannpencole.nifi.config.model.ConfigException;
 import com.github.hermannpencole.nifi.config.service.*;
+import com.github.hermannpencole.nifi.config.utils.ApiMetrics;
 import com.github.hermannpencole.nifi.swagger.ApiException;
 import com.github.hermannpencole.nifi.swagger.client.model.PositionDTO;
 import com.google.inject.AbstractModule;
@@ -31,9 +32,16 @@ public class Main {
     private final static String version = Main.class.getPackage().getImplementationVersion();
     public static final int DEFAULT_TIMEOUT = 120;
     public static final int DEFAULT_INTERVAL = 2;
+    public static final int DEFAULT_PARALLELISM = 1;
+    public static final int DEFAULT_MANIFESTPARALLELISM = 4;
+    public static final int DEFAULT_PORT = 8181;
+    public static final String DEFAULT_SERVERSECRET = System.getProperty("user.home") + "/.nifi-config/server.secret";
     public static final int DEFAULT_CONNECTIONTIMEOUT = 10000;
     public static final int DEFAULT_READTIMEOUT = 10000;
     public static final int DEFAULT_WRITETIMEOUT = 10000;
+    public static final int DEFAULT_POOLSIZE = 32;
+    public static final int DEFAULT_KEEPALIVE = 300;
+    public static final int DEFAULT_MAXREQUESTSPERHOST = 32;
     public static final double DEFAULT_PLACEWIDTH = 1935d;
     public static final String DEFAULT_PLACE = "0,0";
     public static final String ENV_NIFI_PASSWORD = "nifi_password";
@@ -61,37 +69,61 @@ public class Main {
             Options options = new Options();
             options.addOption("h", "help", false, "Usage description");
             options.addOption("b", "branch", true, "Target process group (must begin by root) : root > my processor > my proce2 (default root)");
-            options.addOption("m", "mode", true, "Mandatory, possible values : updateConfig/extractConfig/deployTemplate/undeploy");
-            options.addOption("c", "conf", true, "Mandatory if mode in [updateConfig, extractConfig, deployTemplate]  : configuration file");
-            options.addOption("n", "nifi", true, "Mandatory : Nifi URL (ex : http://localhost:8080/nifi-api)");
+            options.addOption("m", "mode", true, "Mandatory (except with manifest), possible values : updateConfig/extractConfig/deployTemplate/undeploy/plan/apply/server");
+            options.addOption("c", "conf", true, "Mandatory if mode in [updateConfig, extractConfig, deployTemplate, plan]  : configuration file");
+            options.addOption("n", "nifi", true, "Mandatory : Nifi URL (ex : http://localhost:8080/nifi-api), or the URLs of the nodes of a cluster separated by comma : the reads are spread on the nodes, the writes go to the first");
             options.addOption("user", true, "User name for access via username/password.");
             options.addOption("password", true, "Password for access via username/password. If present, user is mandatory");
             options.addOption("f", "force", false, "Turn on force mode : empty queue after timeout");
             options.addOption("timeout", true, "Allow specifying the polling timeout in second (defaut 120 seconds); negative value indicates no timeout");
-            options.addOption("interval", true, "Allow specifying the polling interval in second (default 2 seconds)");
+            options.addOption("interval", true, "Allow specifying the polling interval in second (default 2 seconds); the waits on state and queue begin at 50 ms and back off up to this interval");
             options.addOption("accessFromTicket", false, "Access via Kerberos ticket exchange / SPNEGO negotiation");
+            options.addOption("tokenCache", true, "Cache the access token on this file (readable only by the owner) and reuse it by the next runs until shortly before his expiry");
             options.addOption("noVerifySsl", false, "Turn off ssl verification certificat");
             options.addOption("noStartProcessors", false, "Turn off auto start of the processors after update of the config");
             options.addOption("enableDebugMode", false, "Turn on debug mode");
             options.addOption("connectionTimeout", true, "Configure api client connection timeout (default 10 seconds)");
             options.addOption("readTimeout", true, "configure api client read timeout (default 10 seconds)");
             options.addOption("writeTimeout", true, "Configure api client write timeout (default 10 seconds)");
+            options.addOption("poolSize", true, "Configure api client max number of idle connections kept for reuse (default 32)");
+            options.addOption("keepAlive", true, "Configure api client keep alive of the idle connections in second (default 300 seconds)");
+            options.addOption("maxRequestsPerHost", true, "Configure api client max number of asynchronous requests by host (default 32)");
+            options.addOption("http2", false, "Prefer HTTP/2 on https, negotiated only when ALPN is available (default false : HTTP/1.1)");
+            options.addOption("noTcpNoDelay", false, "Turn off TCP_NODELAY on the api client sockets");
+            options.addOption("metrics", false, "Log at the end of the run the count, errors, bytes and latency of the api calls by endpoint and the time spent in the waits by caller");
+            options.addOption("metricsFile", true, "Write the metrics at the end of the run on a Prometheus textfile, implies metrics");
             options.addOption("keepTemplate", false, "Keep template after installation (default false)");
             options.addOption("placeWidth", true, "Width of place for installing group (default 1935 : 430 * (4 + 1/2) = 4 pro line)");
             options.addOption("startPosition", true, "Starting position for the place for installing group, format x,y (default : 0,0)");
             options.addOption("failOnDuplicateNames", false, "Fail if template contains duplicate processor names in extractConfig mode");
             options.addOption("removeControllers", false, "Remove controller services from Processor Groups when undeploy(ing) NiFi templates");
+            options.addOption("parallelism", true, "Max number of tasks run in parallel on nifi : groups and processors updated, sibling groups extracted, components of a level started or stopped, controller services of a wave enabled or disabled, steps of apply (default 1 : sequential)");
+            options.addOption("batchSchedule", false, "Start and stop the components of a level with one request (default false : one request by component)");
+            options.addOption("diff", false, "Update only the processors, connections and controller services that differ from the configuration in updateConfig mode (default false)");
+            options.addOption("plan", true, "Mandatory if mode in [plan, apply] : execution plan file, written by plan and executed by apply");
+            options.addOption("manifest", true, "Manifest file : list of entries (mode, branch, conf, plan) run in one process, replace the options m, b, c and plan");
+            options.addOption("manifestParallelism", true, "Max number of entries of the manifest (or jobs of the server) run in parallel, the entries on the same branch run one after the other (default 4)");
+            options.addOption("port", true, "Port of the local http endpoint of the mode server (default 8181)");
+            options.addOption("serverSecret", true, "File where the mode server write the secret to give in the header Authorization: Bearer <secret> of each request (default ~/.nifi-config/server.secret)");
+            options.addOption("scopedStop", false, "Stop and start only the components impacted by the update and their upstream, implies diff (default false : all the branch)");
 
             // parse the command line arguments
             CommandLine cmd = commandLineParser.parse(options, args);
             if (cmd.hasOption("h")) {
                 printUsage(options);
                 System.exit(1);
-            } else if (!cmd.hasOption("n") || (!cmd.hasOption("c") && cmd.hasOption("m") && !cmd.getOptionValue("m").equals("undeploy"))) {
+            } else if (!cmd.hasOption("n") || (!cmd.hasOption("c") && cmd.hasOption("m") && !cmd.getOptionValue("m").equals("undeploy") && !cmd.getOptionValue("m").equals("apply") && !cmd.getOptionValue("m").equals("server"))) {
                 printUsage(options);
                 System.exit(1);
-            } else if (!"updateConfig".equals(cmd.getOptionValue("m")) && !"extractConfig".equals(cmd.getOptionValue("m"))
-                    && !"deployTemplate".equals(cmd.getOptionValue("m")) && !"undeploy".equals(cmd.getOptionValue("m"))) {
+            } else if (cmd.hasOption("manifest") && cmd.hasOption("m")) {
+                printUsage(options);
+                System.exit(1);
+            } else if (!cmd.hasOption("manifest") && !"updateConfig".equals(cmd.getOptionValue("m")) && !"extractConfig".equals(cmd.getOptionValue("m"))
+                    && !"deployTemplate".equals(cmd.getOptionValue("m")) && !"undeploy".equals(cmd.getOptionValue("m"))
+                    && !"plan".equals(cmd.getOptionValue("m")) && !"apply".equals(cmd.getOptionValue("m")) && !"server".equals(cmd.getOptionValue("m"))) {
+                printUsage(options);
+                System.exit(1);
+            } else if (("plan".equals(cmd.getOptionValue("m")) || "apply".equals(cmd.getOptionValue("m"))) && !cmd.hasOption("plan")) {
                 printUsage(options);
                 System.exit(1);
             } else if ((cmd.hasOption("password") && !cmd.hasOption("user"))) {
@@ -107,13 +139,22 @@ public class Main {
                 Integer connectionTimeout = cmd.hasOption("connectionTimeout") ? Integer.valueOf(cmd.getOptionValue("connectionTimeout")) : DEFAULT_CONNECTIONTIMEOUT;
                 Integer readTimeout = cmd.hasOption("readTimeout") ? Integer.valueOf(cmd.getOptionValue("readTimeout")) : DEFAULT_READTIMEOUT;
                 Integer writeTimeout = cmd.hasOption("writeTimeout") ? Integer.valueOf(cmd.getOptionValue("writeTimeout")) : DEFAULT_WRITETIMEOUT;
+                Integer poolSize = cmd.hasOption("poolSize") ? Integer.valueOf(cmd.getOptionValue("poolSize")) : DEFAULT_POOLSIZE;
+                Integer keepAlive = cmd.hasOption("keepAlive") ? Integer.valueOf(cmd.getOptionValue("keepAlive")) : DEFAULT_KEEPALIVE;
+                Integer maxRequestsPerHost = cmd.hasOption("maxRequestsPerHost") ? Integer.valueOf(cmd.getOptionValue("maxRequestsPerHost")) : DEFAULT_MAXREQUESTSPERHOST;
                 Double placeWidth = cmd.hasOption("placeWidth") ? Double.valueOf(cmd.getOptionValue("placeWidth")) : DEFAULT_PLACEWIDTH;
                 String startPlace = cmd.hasOption("startPosition") ? cmd.getOptionValue("startPosition") : DEFAULT_PLACE;
                 Boolean forceMode = cmd.hasOption("force");
                 Boolean removeControllers = cmd.hasOption("removeControllers");
+                Integer parallelism = cmd.hasOption("parallelism") ? Integer.valueOf(cmd.getOptionValue("parallelism")) : DEFAULT_PARALLELISM;
+                Boolean batchSchedule = cmd.hasOption("batchSchedule");
+                Boolean scopedStop = cmd.hasOption("scopedStop");
+                Boolean diffMode = cmd.hasOption("diff") || scopedStop;
+                Integer manifestParallelism = cmd.hasOption("manifestParallelism") ? Integer.valueOf(cmd.getOptionValue("manifestParallelism")) : DEFAULT_MANIFESTPARALLELISM;
 
-                LOG.info(String.format("Starting config_nifi %s on mode %s", version, cmd.getOptionValue("m")));
-                String addressNifi = cmd.getOptionValue("n");
+                LOG.info(String.format("Starting config_nifi %s on mode %s", version, cmd.hasOption("manifest") ? "manifest" : cmd.getOptionValue("m")));
+                List<String> nodes = Arrays.stream(cmd.getOptionValue("n").split(",")).map(String::trim).collect(Collectors.toList());
+                String addressNifi = nodes.get(0);
                 String fileConfiguration = cmd.getOptionValue("c");
 
                 String branch = "root";
@@ -125,36 +166,74 @@ public class Main {
                     throw new ConfigException("The branch address must begin with the element 'root' ( sample : root > branch > sub-branch)");
                 }
 
-                Injector injector = getInjector(timeout, interval, placeWidth, createPosition(startPlace), forceMode);
+                Injector injector = getInjector(timeout, interval, placeWidth, createPosition(startPlace), forceMode, parallelism, batchSchedule, diffMode, scopedStop);
 
                 //start
                 AccessService accessService = injector.getInstance(AccessService.class);
                 accessService.setConfiguration(addressNifi, !cmd.hasOption("noVerifySsl"), cmd.hasOption("enableDebugMode"), connectionTimeout, readTimeout, writeTimeout);
+                accessService.setPoolConfiguration(poolSize, keepAlive, maxRequestsPerHost, cmd.hasOption("http2"), !cmd.hasOption("noTcpNoDelay"));
+                if (cmd.hasOption("metrics") || cmd.hasOption("metricsFile")) {
+                    accessService.addMetricsOnConfiguration();
+                }
+                if (nodes.size() > 1) {
+                    accessService.addNodesOnConfiguration(nodes);
+                }
+
+                try {
+                    accessService.setTokenCache(cmd.getOptionValue("tokenCache"));
+                    accessService.addTokenOnConfiguration(cmd.hasOption("accessFromTicket"), cmd.getOptionValue("user"), password);
+
+                    InformationService infoService = injector.getInstance(InformationService.class);
+                    String nifiVersion = infoService.getVersion();
+                    LOG.info(String.format("Communicate with nifi %s", nifiVersion));
 
-                accessService.addTokenOnConfiguration(cmd.hasOption("accessFromTicket"), cmd.getOptionValue("user"), password);
-
-                InformationService infoService = injector.getInstance(InformationService.class);
-                String nifiVersion = infoService.getVersion();
-                LOG.info(String.format("Communicate with nifi %s", nifiVersion));
-
-                if ("updateConfig".equals(cmd.getOptionValue("m"))) {
-                    //Get an instance of the bean from the context
-                    UpdateProcessorService processorService = injector.getInstance(UpdateProcessorService.class);
-                    processorService.updateByBranch(branchList, fileConfiguration, cmd.hasOption("noStartProcessors"));
-                    LOG.info("The group configuration {} is updated with the file {}.", branch, fileConfiguration);
-                } else if ("extractConfig".equals(cmd.getOptionValue("m"))) {
-                    //Get an instance of the bean from the context
-                    ExtractProcessorService processorService = injector.getInstance(ExtractProcessorService.class);
-                    processorService.extractByBranch(branchList, fileConfiguration, cmd.hasOption("failOnDuplicateNames"));
-                    LOG.info("The group configuration {} is extrated on file {}", branch, fileConfiguration);
-                } else if ("deployTemplate".equals(cmd.getOptionValue("m"))) {
-                    TemplateService templateService = injector.getInstance(TemplateService.class);
-                    templateService.installOnBranch(branchList, fileConfiguration, cmd.hasOption("keepTemplate"));
-                    LOG.info("Template {} is installed on the group {}", fileConfiguration, branch);
-                } else {
-                    TemplateService templateService = injector.getInstance(TemplateService.class);
-                    templateService.undeploy(branchList, removeControllers);
-                    LOG.info("The group {} is deleted", branch);
+                    if (cmd.hasOption("manifest")) {
+                        ManifestService manifestService = injector.getInstance(ManifestService.class);
+                        manifestService.run(cmd.getOptionValue("manifest"), manifestParallelism, cmd.hasOption("noStartProcessors"),
+                                cmd.hasOption("keepTemplate"), cmd.hasOption("failOnDuplicateNames"), removeControllers);
+                        LOG.info("The manifest {} is done", cmd.getOptionValue("manifest"));
+                    } else if ("server".equals(cmd.getOptionValue("m"))) {
+                        ServerService serverService = injector.getInstance(ServerService.class);
+                        serverService.start(cmd.hasOption("port") ? Integer.valueOf(cmd.getOptionValue("port")) : DEFAULT_PORT,
+                                cmd.getOptionValue("serverSecret", DEFAULT_SERVERSECRET), manifestParallelism,
+                                cmd.hasOption("noStartProcessors"), cmd.hasOption("keepTemplate"), cmd.hasOption("failOnDuplicateNames"), removeControllers);
+                        Runtime.getRuntime().addShutdownHook(new Thread(serverService::stop));
+                        serverService.await();
+                    } else if ("updateConfig".equals(cmd.getOptionValue("m"))) {
+                        //Get an instance of the bean from the context
+                        UpdateProcessorService processorService = injector.getInstance(UpdateProcessorService.class);
+                        processorService.updateByBranch(branchList, fileConfiguration, cmd.hasOption("noStartProcessors"));
+                        LOG.info("The group configuration {} is updated with the file {}.", branch, fileConfiguration);
+                    } else if ("extractConfig".equals(cmd.getOptionValue("m"))) {
+                        //Get an instance of the bean from the context
+                        ExtractProcessorService processorService = injector.getInstance(ExtractProcessorService.class);
+                        processorService.extractByBranch(branchList, fileConfiguration, cmd.hasOption("failOnDuplicateNames"));
+                        LOG.info("The group configuration {} is extrated on file {}", branch, fileConfiguration);
+                    } else if ("deployTemplate".equals(cmd.getOptionValue("m"))) {
+                        TemplateService templateService = injector.getInstance(TemplateService.class);
+                        templateService.installOnBranch(branchList, fileConfiguration, cmd.hasOption("keepTemplate"));
+                        LOG.info("Template {} is installed on the group {}", fileConfiguration, branch);
+                    } else if ("plan".equals(cmd.getOptionValue("m"))) {
+                        PlanService planService = injector.getInstance(PlanService.class);
+                        planService.plan(branchList, fileConfiguration, cmd.getOptionValue("plan"), cmd.hasOption("noStartProcessors"));
+                        LOG.info("The update of the group {} with the file {} is planned on file {}", branch, fileConfiguration, cmd.getOptionValue("plan"));
+                    } else if ("apply".equals(cmd.getOptionValue("m"))) {
+                        PlanService planService = injector.getInstance(PlanService.class);
+                        planService.apply(cmd.getOptionValue("plan"));
+                        LOG.info("The plan {} is applied", cmd.getOptionValue("plan"));
+                    } else {
+                        TemplateService templateService = injector.getInstance(TemplateService.class);
+                        templateService.undeploy(branchList, removeControllers);
+                        LOG.info("The group {} is deleted", branch);
+                    }
+                } finally {
+                    if (nodes.size() > 1) {
+                        LOG.info("Reads by node : {}", accessService.getNodesReport());
+                    }
+                    if (ApiMetrics.isEnabled()) {
+                        ApiMetrics.report();
+                        if (cmd.hasOption("metricsFile")) ApiMetrics.writePrometheus(cmd.getOptionValue("metricsFile"));
+                    }
                 }
             }
         } catch (ApiException e) {
@@ -182,9 +261,13 @@ public class Main {
      * @param placeWidth tha placeWidth
      * @param forceMode active forceMode
      * @param startPosition the startPosition
+     * @param parallelism the max parallelism
+     * @param batchSchedule active batch schedule
+     * @param diffMode active diff mode
+     * @param scopedStop active scoped stop
      * @return the injector
      */
-    public static Injector getInjector(Integer timeout, Integer interval, Double placeWidth, PositionDTO startPosition, Boolean forceMode) {
+    public static Injector getInjector(Integer timeout, Integer interval, Double placeWidth, PositionDTO startPosition, Boolean forceMode, Integer parallelism, Boolean batchSchedule, Boolean diffMode, Boolean scopedStop) {
         return Guice.createInjector(new AbstractModule() {
             protected void configure() {
                 bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(timeout);
@@ -192,6 +275,10 @@ public class Main {
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(forceMode);
                 bind(PositionDTO.class).annotatedWith(Names.named("startPosition")).toInstance(startPosition);
                 bind(Double.class).annotatedWith(Names.named("placeWidth")).toInstance(placeWidth);
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(parallelism);
+                bind(Boolean.class).annotatedWith(Names.named("batchSchedule")).toInstance(batchSchedule);
+                bind(Boolean.class).annotatedWith(Names.named("diffMode")).toInstance(diffMode);
+                bind(Boolean.class).annotatedWith(Names.named("scopedStop")).toInstance(scopedStop);
             }
         });
     }
@@ -0,0 +1,91 @@
+package com.github.hermannpencole.nifi.config.model;
+
+import java.util.*;
+
+/**
+ * Result of the comparison of a configuration with the live flow.
+ * <p>
+ * The configuration keep the same shape than the file but contains only the processors, the connections and the
+ * controller services that differ (the routes are always kept, their creation is idempotent).
+ */
+public class ConfigDiff {
+
+    private GroupProcessorsEntity configuration;
+
+    private final List<String> changes = new ArrayList<>();
+
+    private final Set<String> componentIds = new LinkedHashSet<>();
+
+    private int processors;
+
+    private int connections;
+
+    private int controllerServices;
+
+    private int unchanged;
+
+    public GroupProcessorsEntity getConfiguration() {
+        return configuration;
+    }
+
+    public void setConfiguration(GroupProcessorsEntity configuration) {
+        this.configuration = configuration;
+    }
+
+    /**
+     * @return the description of each change, one line by component
+     */
+    public List<String> getChanges() {
+        return Collections.unmodifiableList(changes);
+    }
+
+    /**
+     * @return the id of the components to stop during the update (the processors that differ and the processors
+     * that reference a controller service that differ)
+     */
+    public Set<String> getComponentIds() {
+        return Collections.unmodifiableSet(componentIds);
+    }
+
+    public void addComponentId(String id) {
+        componentIds.add(id);
+    }
+
+    public void addProcessor(String change) {
+        changes.add(change);
+        processors++;
+    }
+
+    public void addConnection(String change) {
+        changes.add(change);
+        connections++;
+    }
+
+    public void addControllerService(String change) {
+        changes.add(change);
+        controllerServices++;
+    }
+
+    public void addUnchanged() {
+        unchanged++;
+    }
+
+    /**
+     * @return true if no processor, no connection and no controller service differ
+     */
+    public boolean isEmpty() {
+        return processors == 0 && connections == 0 && controllerServices == 0;
+    }
+
+    public int getUnchanged() {
+        return unchanged;
+    }
+
+    /**
+     * @return the summary of the changes
+     */
+    public String getSummary() {
+        return processors + " processor(s), " + connections + " connection(s), " + controllerServices
+                + " controller service(s) to update, " + unchanged + " unchanged";
+    }
+}
@@ -0,0 +1,58 @@
+package com.github.hermannpencole.nifi.config.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plan of the calls made by the apply, written by the plan mode.
+ * <p>
+ * The names are already resolved, each step contain the body of his call and the id of the steps that must be done
+ * before it.
+ */
+public class ExecutionPlan {
+
+    private List<String> branch;
+
+    private String configuration;
+
+    private List<PlanStep> steps = new ArrayList<>();
+
+    public List<String> getBranch() {
+        return branch;
+    }
+
+    public void setBranch(List<String> branch) {
+        this.branch = branch;
+    }
+
+    /**
+     * @return the name of the configuration file
+     */
+    public String getConfiguration() {
+        return configuration;
+    }
+
+    public void setConfiguration(String configuration) {
+        this.configuration = configuration;
+    }
+
+    public List<PlanStep> getSteps() {
+        return steps;
+    }
+
+    public void setSteps(List<PlanStep> steps) {
+        this.steps = steps;
+    }
+
+    /**
+     * add a step, his id is his position in the plan
+     *
+     * @param step the step
+     * @return the step
+     */
+    public PlanStep addStep(PlanStep step) {
+        step.setId(steps.size() + 1);
+        steps.add(step);
+        return step;
+    }
+}
@@ -0,0 +1,118 @@
+package com.github.hermannpencole.nifi.config.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Job of the server mode : an entry (mode, branch, conf, plan) with his status and his progress.
+ * <p>
+ * The lines of progress are kept until the job is forgotten, the readers wait on the job for the next line.
+ */
+public class Job {
+
+    public enum Status {QUEUED, RUNNING, SUCCESS, FAILED}
+
+    private final String id;
+
+    private final ManifestEntry entry;
+
+    private volatile Status status = Status.QUEUED;
+
+    private volatile String error;
+
+    private volatile Long durationMillis;
+
+    private final transient List<String> lines = new ArrayList<>();
+
+    private transient List<String> branch;
+
+    private transient CompletableFuture<Void> future;
+
+    public Job(String id, ManifestEntry entry) {
+        this.id = id;
+        this.entry = entry;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public ManifestEntry getEntry() {
+        return entry;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public Long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public List<String> getBranch() {
+        return branch;
+    }
+
+    public void setBranch(List<String> branch) {
+        this.branch = branch;
+    }
+
+    public CompletableFuture<Void> getFuture() {
+        return future;
+    }
+
+    public void setFuture(CompletableFuture<Void> future) {
+        this.future = future;
+    }
+
+    public boolean isDone() {
+        return status == Status.SUCCESS || status == Status.FAILED;
+    }
+
+    public synchronized void setStatus(Status status) {
+        this.status = status;
+        notifyAll();
+    }
+
+    /**
+     * end the job
+     *
+     * @param error the error, null on success
+     * @param durationMillis the duration of the run
+     */
+    public synchronized void end(String error, long durationMillis) {
+        this.error = error;
+        this.durationMillis = durationMillis;
+        setStatus(error == null ? Status.SUCCESS : Status.FAILED);
+    }
+
+    /**
+     * add a line of progress and wake up the readers
+     *
+     * @param line the line
+     */
+    public synchronized void addLine(String line) {
+        lines.add(line);
+        notifyAll();
+    }
+
+    /**
+     * the lines of progress from an index, wait up to timeout a new line when there is none and the job is not done
+     *
+     * @param from the index of the first line
+     * @param timeout the max wait in millisecond
+     * @return the lines (empty when the job is done and all the lines are read)
+     * @throws InterruptedException when interrupted
+     */
+    public synchronized List<String> waitLines(int from, long timeout) throws InterruptedException {
+        if (lines.size() <= from && !isDone()) {
+            wait(timeout);
+        }
+        return lines.size() <= from ? new ArrayList<>() : new ArrayList<>(lines.subList(from, lines.size()));
+    }
+}
@@ -0,0 +1,61 @@
+package com.github.hermannpencole.nifi.config.model;
+
+/**
+ * Entry of a manifest : one run of a mode on a branch, with the same meaning as the options -m, -b, -c and -plan.
+ */
+public class ManifestEntry {
+
+    private String mode;
+
+    private String branch;
+
+    private String conf;
+
+    private String plan;
+
+    public String getMode() {
+        return mode;
+    }
+
+    public void setMode(String mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * @return the branch (root &gt; my group &gt; my sub group), root if absent
+     */
+    public String getBranch() {
+        return branch;
+    }
+
+    public void setBranch(String branch) {
+        this.branch = branch;
+    }
+
+    /**
+     * @return the configuration file or the template file
+     */
+    public String getConf() {
+        return conf;
+    }
+
+    public void setConf(String conf) {
+        this.conf = conf;
+    }
+
+    /**
+     * @return the execution plan file
+     */
+    public String getPlan() {
+        return plan;
+    }
+
+    public void setPlan(String plan) {
+        this.plan = plan;
+    }
+
+    @Override
+    public String toString() {
+        return mode + " " + branch + (conf == null ? "" : " " + conf) + (plan == null ? "" : " " + plan);
+    }
+}
@@ -0,0 +1,128 @@
+package com.github.hermannpencole.nifi.config.model;
+
+import com.github.hermannpencole.nifi.swagger.client.model.ConnectionEntity;
+import com.github.hermannpencole.nifi.swagger.client.model.ControllerServiceDTO;
+import com.github.hermannpencole.nifi.swagger.client.model.ControllerServiceEntity;
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessorEntity;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One mutating call (or sequence of calls for a controller service) of an execution plan.
+ * <p>
+ * Only the entity of his type is filled, the revisions are the revisions read when the plan was made.
+ */
+public class PlanStep {
+
+    public enum Type {
+        STOP_PROCESSOR, UPDATE_PROCESSOR, START_PROCESSOR, UPDATE_CONNECTION, CREATE_CONNECTION, UPDATE_CONTROLLER_SERVICE
+    }
+
+    private int id;
+
+    private Type type;
+
+    private String description;
+
+    private List<Integer> dependsOn = new ArrayList<>();
+
+    private String groupId;
+
+    private ProcessorEntity processor;
+
+    private ConnectionEntity connection;
+
+    private ControllerServiceEntity controllerService;
+
+    private ControllerServiceDTO controllerServiceConfig;
+
+    public PlanStep() {
+    }
+
+    public PlanStep(Type type, String description) {
+        this.type = type;
+        this.description = description;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    /**
+     * @return the id of the steps that must be done before this step
+     */
+    public List<Integer> getDependsOn() {
+        return dependsOn;
+    }
+
+    public void setDependsOn(List<Integer> dependsOn) {
+        this.dependsOn = dependsOn;
+    }
+
+    /**
+     * @return the id of the group where the connection is created
+     */
+    public String getGroupId() {
+        return groupId;
+    }
+
+    public void setGroupId(String groupId) {
+        this.groupId = groupId;
+    }
+
+    public ProcessorEntity getProcessor() {
+        return processor;
+    }
+
+    public void setProcessor(ProcessorEntity processor) {
+        this.processor = processor;
+    }
+
+    public ConnectionEntity getConnection() {
+        return connection;
+    }
+
+    public void setConnection(ConnectionEntity connection) {
+        this.connection = connection;
+    }
+
+    public ControllerServiceEntity getControllerService() {
+        return controllerService;
+    }
+
+    public void setControllerService(ControllerServiceEntity controllerService) {
+        this.controllerService = controllerService;
+    }
+
+    /**
+     * @return the controller service of the configuration
+     */
+    public ControllerServiceDTO getControllerServiceConfig() {
+        return controllerServiceConfig;
+    }
+
+    public void setControllerServiceConfig(ControllerServiceDTO controllerServiceConfig) {
+        this.controllerServiceConfig = controllerServiceConfig;
+    }
+}
@@ -1,12 +1,34 @@
 package com.github.hermannpencole.nifi.config.service;
 
+import com.github.hermannpencole.nifi.config.utils.ApiMetrics;
+import com.github.hermannpencole.nifi.config.utils.ClusterInterceptor;
+import com.github.hermannpencole.nifi.config.utils.MetricsInterceptor;
+import com.github.hermannpencole.nifi.config.utils.TokenCache;
 import com.github.hermannpencole.nifi.swagger.ApiClient;
 import com.github.hermannpencole.nifi.swagger.ApiException;
 import com.github.hermannpencole.nifi.swagger.Configuration;
 import com.github.hermannpencole.nifi.swagger.client.AccessApi;
+import com.squareup.okhttp.Authenticator;
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import javax.net.SocketFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Proxy;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by SFRJ2737 on 2017-05-28.
@@ -16,11 +38,38 @@ import javax.inject.Singleton;
 @Singleton
 public class AccessService {
 
+    /**
+     * The logger.
+     */
+    private final static Logger LOG = LoggerFactory.getLogger(AccessService.class);
+
+    private final static String BEARER = "Bearer ";
+
     @Inject
     private AccessApi apiInstance;
 
+    private TokenCache tokenCache;
+
+    private boolean accessFromTicket;
+
+    private String username;
+
+    private String password;
+
+    private volatile String token;
+
     /**
-     * add token on http client. The token is ask to nifi.
+     * reuse the tokens cached on a file by the previous runs (see TokenCache)
+     *
+     * @param fileTokenCache the file of the cache
+     */
+    public void setTokenCache(String fileTokenCache) {
+        this.tokenCache = fileTokenCache == null ? null : new TokenCache(fileTokenCache);
+    }
+
+    /**
+     * add token on http client. The token is ask to nifi, or taken in the token cache if set and not expired. When
+     * nifi reject the token during the run (401), a new token is ask to nifi and the call is made again.
      *
      * @param accessFromTicket accessFromTicket
      * @param username username
@@ -29,16 +78,84 @@ public class AccessService {
      */
     public void addTokenOnConfiguration(boolean accessFromTicket, String username, String password) throws ApiException {
         ApiClient client = Configuration.getDefaultApiClient();
-        if (accessFromTicket) {
-            String token = apiInstance.createAccessTokenFromTicket();
-            client.setAccessToken(token);
-        } else if (username != null) {
-            String token = apiInstance.createAccessToken(username, password);
-            client.setAccessToken(token);
+        this.accessFromTicket = accessFromTicket;
+        this.username = username;
+        this.password = password;
+        if (accessFromTicket || username != null) {
+            Optional<String> cached = tokenCache == null ? Optional.empty() : tokenCache.get(cacheKey());
+            if (cached.isPresent()) {
+                LOG.info("Reuse the token cached on {}", tokenCache.getFile());
+                token = cached.get();
+                client.setAccessToken(token);
+            } else {
+                login(client);
+            }
+            client.getHttpClient().setAuthenticator(new ReloginAuthenticator());
         }
         Configuration.setDefaultApiClient(client);
     }
 
+    /**
+     * ask a token to nifi, set it on the client and cache it
+     */
+    private void login(ApiClient client) throws ApiException {
+        token = accessFromTicket ? apiInstance.createAccessTokenFromTicket() : apiInstance.createAccessToken(username, password);
+        client.setAccessToken(token);
+        if (tokenCache != null) {
+            tokenCache.put(cacheKey(), token);
+        }
+    }
+
+    private String cacheKey() {
+        return TokenCache.key(Configuration.getDefaultApiClient().getBasePath(), accessFromTicket ? "ticket" : username);
+    }
+
+    /**
+     * on a token rejected (expired or revoked), login again and retry the call once with the new token. The parallel
+     * calls rejected with the same token wait the login and retry with the new token.
+     * The calls to an other node than the node of the basePath (reads spread on a cluster) are not retried, the
+     * ClusterInterceptor make them again on the first node.
+     *
+     * @param response the response 401
+     * @return the call to retry, or null to give up
+     * @throws IOException when the login fail
+     */
+    synchronized Request relogin(Response response) throws IOException {
+        String rejected = response.request().header("Authorization");
+        String basePath = Configuration.getDefaultApiClient().getBasePath().replaceAll("/+$", "");
+        if (response.request().httpUrl().encodedPath().endsWith("/access/token")
+                || response.request().httpUrl().encodedPath().endsWith("/access/kerberos")
+                || !response.request().urlString().startsWith(basePath)
+                || response.priorResponse() != null) {
+            return null;
+        }
+        if (rejected == null || rejected.equals(BEARER + token)) {
+            LOG.info("Token rejected by nifi, login again");
+            if (tokenCache != null) {
+                tokenCache.remove(cacheKey());
+            }
+            try {
+                login(Configuration.getDefaultApiClient());
+            } catch (ApiException e) {
+                throw new IOException("Login again failed : " + e.getMessage(), e);
+            }
+        }
+        return response.request().newBuilder().header("Authorization", BEARER + token).build();
+    }
+
+    private class ReloginAuthenticator implements Authenticator {
+
+        @Override
+        public Request authenticate(Proxy proxy, Response response) throws IOException {
+            return relogin(response);
+        }
+
+        @Override
+        public Request authenticateProxy(Proxy proxy, Response response) {
+            return null;
+        }
+    }
+
     /**
      * Configure the default http client
      *
@@ -62,4 +179,100 @@ public class AccessService {
                 .setDebugging(debugging);
         Configuration.setDefaultApiClient(client);
     }
+
+    /**
+     * Configure the connections of the default http client : the pool keep the idle connections for reuse them by the
+     * parallel calls
+     *
+     * @param poolSize the max number of idle connections kept in the pool
+     * @param keepAlive the time in second an idle connection is kept
+     * @param maxRequestsPerHost the max number of asynchronous requests by host
+     * @param http2 prefer HTTP/2 (negotiated only on https with ALPN), else HTTP/1.1 only
+     * @param tcpNoDelay disable the Nagle's algorithm on the sockets
+     */
+    public void setPoolConfiguration(int poolSize, int keepAlive, int maxRequestsPerHost, boolean http2, boolean tcpNoDelay) {
+        ApiClient client = Configuration.getDefaultApiClient();
+        OkHttpClient httpClient = client.getHttpClient();
+        httpClient.setConnectionPool(new ConnectionPool(poolSize, keepAlive, TimeUnit.SECONDS));
+        httpClient.getDispatcher().setMaxRequests(Math.max(httpClient.getDispatcher().getMaxRequests(), maxRequestsPerHost));
+        httpClient.getDispatcher().setMaxRequestsPerHost(maxRequestsPerHost);
+        httpClient.setProtocols(http2 ? Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1) : Collections.singletonList(Protocol.HTTP_1_1));
+        httpClient.setSocketFactory(tcpNoDelay ? new NoDelaySocketFactory(SocketFactory.getDefault()) : SocketFactory.getDefault());
+        Configuration.setDefaultApiClient(client);
+    }
+
+    /**
+     * record the api calls made by the default http client (see ApiMetrics)
+     */
+    public void addMetricsOnConfiguration() {
+        ApiMetrics.setEnabled(true);
+        OkHttpClient httpClient = Configuration.getDefaultApiClient().getHttpClient();
+        if (httpClient.interceptors().stream().noneMatch(interceptor -> interceptor instanceof MetricsInterceptor)) {
+            httpClient.interceptors().add(new MetricsInterceptor());
+        }
+    }
+
+    /**
+     * spread the reads of the default http client on the nodes of a cluster, the writes stay on the first node (see
+     * ClusterInterceptor)
+     *
+     * @param nodes the urls of the nodes, the first is the basePath
+     */
+    public void addNodesOnConfiguration(List<String> nodes) {
+        OkHttpClient httpClient = Configuration.getDefaultApiClient().getHttpClient();
+        httpClient.interceptors().removeIf(interceptor -> interceptor instanceof ClusterInterceptor);
+        httpClient.interceptors().add(new ClusterInterceptor(nodes));
+        LOG.info("Reads spread on the nodes {}, writes on {}", nodes, nodes.get(0));
+    }
+
+    /**
+     * @return the count of reads and the latency by node, or empty if the reads are not spread
+     */
+    public String getNodesReport() {
+        return Configuration.getDefaultApiClient().getHttpClient().interceptors().stream()
+                .filter(interceptor -> interceptor instanceof ClusterInterceptor)
+                .map(Object::toString).findFirst().orElse("");
+    }
+
+    /**
+     * socket factory that set TCP_NODELAY on each socket, the ssl sockets are layered over them
+     */
+    static class NoDelaySocketFactory extends SocketFactory {
+
+        private final SocketFactory delegate;
+
+        NoDelaySocketFactory(SocketFactory delegate) {
+            this.delegate = delegate;
+        }
+
+        private static Socket noDelay(Socket socket) throws IOException {
+            socket.setTcpNoDelay(true);
+            return socket;
+        }
+
+        @Override
+        public Socket createSocket() throws IOException {
+            return noDelay(delegate.createSocket());
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            return noDelay(delegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+            return noDelay(delegate.createSocket(host, port, localHost, localPort));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            return noDelay(delegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+            return noDelay(delegate.createSocket(address, port, localAddress, localPort));
+        }
+    }
 }
@@ -14,7 +14,9 @@ import org.slf4j.LoggerFactory;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 /**
  * Class that offer service for process group
@@ -51,6 +53,9 @@ public class ConnectionService {
     @Inject
     private FlowApi flowApi;
 
+    @Inject
+    private FlowCacheService flowCacheService;
+
     @Inject
     private ProcessGroupsApi processGroupsApi;
 
@@ -60,33 +65,25 @@ public class ConnectionService {
     @Inject
     private PortService portService;
 
-    private boolean stopProcessorOrPort(String id) {
-        ProcessorEntity processorEntity = null;
-        try {
-            processorEntity = processorService.getById(id);
-        } catch (ApiException e) {
-            //do nothing
-        }
-        if (processorEntity != null) {
-            processorService.setState(processorEntity, ProcessorDTO.StateEnum.STOPPED);
+    /**
+     * stop the processor or the port, find by id in the flow of his group
+     *
+     * @param groupId the id of the group of the component
+     * @param id the id of the component
+     * @return true if stopped
+     */
+    private boolean stopProcessorOrPort(String groupId, String id) {
+        ProcessGroupFlowEntity flow = flowCacheService.getFlow(groupId);
+        Optional<?> component = flow == null ? Optional.empty() : flowCacheService.getRegistry(flow.getProcessGroupFlow()).findById(id);
+        if (component.isPresent() && component.get() instanceof ProcessorEntity) {
+            processorService.setState((ProcessorEntity) component.get(), ProcessorDTO.StateEnum.STOPPED);
             return true;
         }
-
-        PortEntity portEntity = null;
-        try {
-            portEntity = portService.getById(id, PortDTO.TypeEnum.INPUT_PORT);
-        } catch (ApiException e) {
-            try {
-                portEntity = portService.getById(id, PortDTO.TypeEnum.OUTPUT_PORT);
-            } catch (ApiException e2) {
-                LOG.info("Couldn't find processor or port to stop for id ({}).", id);
-                return false;
-            }
-        }
-        if (portEntity != null) {
-            portService.setState(portEntity, PortDTO.StateEnum.STOPPED);
+        if (component.isPresent() && component.get() instanceof PortEntity) {
+            portService.setState((PortEntity) component.get(), PortDTO.StateEnum.STOPPED);
+            return true;
         }
-
+        LOG.info("Couldn't find processor or port to stop for id ({}).", id);
         return false;
     }
 
@@ -96,7 +93,7 @@ public class ConnectionService {
 
     public void waitEmptyQueue(ConnectionEntity connectionEntity) throws ApiException {
         try {
-            FunctionUtils.runWhile(() -> {
+            FunctionUtils.runWhileBackoff(() -> {
                 ConnectionEntity connection = connectionsApi.getConnection(connectionEntity.getId());
                 LOG.info(" {} : there is {} FlowFile ({} bytes) on the queue ", connection.getId(), connection.getStatus().getAggregateSnapshot().getQueuedCount(), connection.getStatus().getAggregateSnapshot().getQueuedSize());
                 return !connection.getStatus().getAggregateSnapshot().getQueuedCount().equals("0");
@@ -105,7 +102,7 @@ public class ConnectionService {
             //empty queue if forced mode
             if (forceMode) {
                 DropRequestEntity dropRequest = flowfileQueuesApi.createDropRequest(connectionEntity.getId());
-                FunctionUtils.runWhile(() -> {
+                FunctionUtils.runWhileBackoff(() -> {
                     DropRequestEntity drop = flowfileQueuesApi.getDropRequest(connectionEntity.getId(), dropRequest.getDropRequest().getId());
                     return !drop.getDropRequest().isFinished();
                 }, interval, timeout);
@@ -118,10 +115,106 @@ public class ConnectionService {
         }
     }
 
+    /**
+     * wait that all the connections are empty in the same time, with only one recursive status of the group by poll
+     * and one timeout for all the connections.
+     * In force mode, the connections not empty after the timeout are emptied, all the drop requests are created before
+     * waiting them.
+     *
+     * @param groupId the id of the process group that contains the connections (directly or in his descendants)
+     * @param connections the connections
+     * @throws ApiException when api problem
+     */
+    public void waitEmptyQueues(String groupId, Collection<ConnectionEntity> connections) throws ApiException {
+        if (connections.isEmpty()) return;
+        Set<String> ids = connections.stream().map(ConnectionEntity::getId).collect(Collectors.toCollection(LinkedHashSet::new));
+        Set<String> notEmpty = ConcurrentHashMap.newKeySet();
+        notEmpty.addAll(ids);
+        try {
+            int polls = FunctionUtils.runWhileBackoff(() -> {
+                Map<String, ConnectionStatusSnapshotDTO> snapshots = new HashMap<>();
+                ProcessGroupStatusEntity status = flowApi.getProcessGroupStatus(groupId, true, false, null);
+                if (status != null && status.getProcessGroupStatus() != null) {
+                    collectConnectionStatus(status.getProcessGroupStatus().getAggregateSnapshot(), ids, snapshots);
+                }
+                long queuedCount = 0;
+                long queuedBytes = 0;
+                Set<String> stillNotEmpty = new HashSet<>();
+                for (String id : ids) {
+                    ConnectionStatusSnapshotDTO snapshot = snapshots.get(id);
+                    if (snapshot == null) {
+                        //not in the status of the group
+                        snapshot = connectionsApi.getConnection(id).getStatus().getAggregateSnapshot();
+                    }
+                    long count = snapshot.getFlowFilesQueued() == null ? 0 : snapshot.getFlowFilesQueued();
+                    if (count > 0) stillNotEmpty.add(id);
+                    queuedCount += count;
+                    queuedBytes += snapshot.getBytesQueued() == null ? 0 : snapshot.getBytesQueued();
+                }
+                notEmpty.retainAll(stillNotEmpty);
+                LOG.info(" {} connection(s) : there is {} FlowFile ({} bytes) on the queues of {} connection(s)", ids.size(), queuedCount, queuedBytes, stillNotEmpty.size());
+                return !stillNotEmpty.isEmpty();
+            }, interval, timeout);
+            LOG.debug(" {} connection(s) are empty after {} polls", ids.size(), polls);
+        } catch (TimeoutException e) {
+            //empty queues if forced mode
+            if (forceMode) {
+                dropQueues(notEmpty);
+            } else {
+                LOG.error(e.getMessage(), e);
+                throw e;
+            }
+        }
+    }
+
+    private void collectConnectionStatus(ProcessGroupStatusSnapshotDTO snapshot, Set<String> ids, Map<String, ConnectionStatusSnapshotDTO> snapshots) {
+        if (snapshot == null) return;
+        if (snapshot.getConnectionStatusSnapshots() != null) {
+            for (ConnectionStatusSnapshotEntity connection : snapshot.getConnectionStatusSnapshots()) {
+                ConnectionStatusSnapshotDTO connectionStatus = connection.getConnectionStatusSnapshot();
+                if (connectionStatus != null && ids.contains(connectionStatus.getId())) {
+                    snapshots.put(connectionStatus.getId(), connectionStatus);
+                }
+            }
+        }
+        if (snapshot.getProcessGroupStatusSnapshots() != null) {
+            for (ProcessGroupStatusSnapshotEntity processGroup : snapshot.getProcessGroupStatusSnapshots()) {
+                collectConnectionStatus(processGroup.getProcessGroupStatusSnapshot(), ids, snapshots);
+            }
+        }
+    }
+
+    /**
+     * empty the queues, the drop requests run in the same time
+     *
+     * @param ids the id of the connections
+     */
+    private void dropQueues(Set<String> ids) {
+        Map<String, DropRequestEntity> dropRequests = new LinkedHashMap<>();
+        for (String id : ids) {
+            dropRequests.put(id, flowfileQueuesApi.createDropRequest(id));
+        }
+        Map<String, DropRequestEntity> finished = new ConcurrentHashMap<>();
+        FunctionUtils.runWhileBackoff(() -> {
+            for (Map.Entry<String, DropRequestEntity> dropRequest : dropRequests.entrySet()) {
+                if (finished.containsKey(dropRequest.getKey())) continue;
+                DropRequestEntity drop = flowfileQueuesApi.getDropRequest(dropRequest.getKey(), dropRequest.getValue().getDropRequest().getId());
+                if (Boolean.TRUE.equals(drop.getDropRequest().isFinished())) {
+                    finished.put(dropRequest.getKey(), drop);
+                }
+            }
+            return finished.size() < dropRequests.size();
+        }, interval, timeout);
+        for (Map.Entry<String, DropRequestEntity> drop : finished.entrySet()) {
+            LOG.info(" {} : {} FlowFile ({} bytes) were removed from the queue", drop.getKey(), drop.getValue().getDropRequest().getDroppedCount(), drop.getValue().getDropRequest().getDroppedSize());
+            flowfileQueuesApi.removeDropRequest(drop.getKey(), drop.getValue().getDropRequest().getId());
+        }
+    }
+
     public void removeExternalConnections(ProcessGroupEntity processGroupEntity) {
         final String groupId = processGroupEntity.getComponent().getId();
 
-        ProcessGroupFlowEntity flow = flowApi.getFlow(groupId);
+        ProcessGroupFlowEntity flow = flowCacheService.getFlow(groupId);
         final List<ConnectionEntity> groupConnections = processGroupsApi.getConnections(
                 flow.getProcessGroupFlow().getParentGroupId()).getConnections();
 
@@ -129,10 +222,10 @@ public class ConnectionService {
             if (connection.getDestinationGroupId().equals(groupId) || connection.getSourceGroupId().equals(groupId)) {
                 //stopping source/destination
                 if (connection.getDestinationGroupId().equals(groupId)) {
-                    stopProcessorOrPort(connection.getSourceId());
+                    stopProcessorOrPort(connection.getSourceGroupId(), connection.getSourceId());
                 }
                 if (connection.getSourceGroupId().equals(groupId)) {
-                    stopProcessorOrPort(connection.getDestinationId());
+                    stopProcessorOrPort(connection.getDestinationGroupId(), connection.getDestinationId());
                 }
 
                 connectionsApi.deleteConnection(
@@ -141,6 +234,7 @@ public class ConnectionService {
                         flowApi.generateClientId());
             }
         });
+        flowCacheService.invalidate(flow.getProcessGroupFlow().getParentGroupId());
     }
 
 }
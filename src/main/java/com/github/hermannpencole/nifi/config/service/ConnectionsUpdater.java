@@ -1,8 +1,8 @@
 package com.github.hermannpencole.nifi.config.service;
 
 import com.github.hermannpencole.nifi.config.model.Connection;
+import com.github.hermannpencole.nifi.config.utils.ComponentNameIndex;
 import com.github.hermannpencole.nifi.swagger.client.ConnectionsApi;
-import com.github.hermannpencole.nifi.swagger.client.FlowApi;
 import com.github.hermannpencole.nifi.swagger.client.ProcessGroupsApi;
 import com.github.hermannpencole.nifi.swagger.client.model.*;
 
@@ -25,7 +25,7 @@ public class ConnectionsUpdater {
     private ProcessGroupsApi processGroupsApi;
 
     @Inject
-    private FlowApi flowapi;
+    private FlowCacheService flowCacheService;
 
     /**
      * update connection and create if not exist
@@ -45,36 +45,56 @@ public class ConnectionsUpdater {
                     Connection config = connectionMap.getOrDefault(connectionDTO.getName(), null);
                     if (config != null) {
                         connectionMap.remove(connectionDTO.getName());
-                        connectionDTO.setBackPressureObjectThreshold(config.getBackPressureObjectThreshold());
-                        connectionDTO.setBackPressureDataSizeThreshold(config.getBackPressureDataSizeThreshold());
-                        connectionDTO.setFlowFileExpiration(config.getFlowFileExpiration());
+                        setConfig(connectionDTO, config);
                         connectionsApi.updateConnection(entity.getId(), entity);
                     }
                 });
         //create if not exist
-        connectionMap.keySet().forEach( key -> {
-            Connection config = connectionMap.get(key);
-            ConnectionEntity connection = new ConnectionEntity();
-            ConnectionDTO connectionDTO = new ConnectionDTO();
-            Optional<ConnectableDTO> destination = findByName(componentSearch, config.getDestination());
-            if (!destination.isPresent()) throw new RuntimeException("Cannot find " + config.getDestination() + " for create connection " + config.getName());
-            connectionDTO.setDestination(destination.get());
-            Optional<ConnectableDTO> source = findByName(componentSearch, config.getSource());
-            if (!source.isPresent()) throw new RuntimeException("Cannot find " + config.getSource() + " for create connection " + config.getName());
-            connectionDTO.setSource(source.get());
-            connectionDTO.setName(config.getName());
-            connectionDTO.setBackPressureObjectThreshold(config.getBackPressureObjectThreshold());
-            connectionDTO.setBackPressureDataSizeThreshold(config.getBackPressureDataSizeThreshold());
-            connectionDTO.setSelectedRelationships(config.getRelationShips());
-            connectionDTO.setFlowFileExpiration(config.getFlowFileExpiration());
-            connection.setComponent(connectionDTO);
-            connection.setRevision(new RevisionDTO());
-            connection.getRevision().setVersion(0L);
-            processGroupsApi.createConnection(componentSearch.getProcessGroupFlow().getId(), connection);
-        });
+        connectionMap.values().forEach(config ->
+            processGroupsApi.createConnection(componentSearch.getProcessGroupFlow().getId(), createConnectionEntity(config, componentSearch)));
+        flowCacheService.invalidate(componentSearch.getProcessGroupFlow().getId());
 
     }
 
+    /**
+     * update the fields of the connection with the configuration
+     *
+     * @param connectionDTO the connection on nifi
+     * @param config the configuration
+     */
+    public static void setConfig(ConnectionDTO connectionDTO, Connection config) {
+        connectionDTO.setBackPressureObjectThreshold(config.getBackPressureObjectThreshold());
+        connectionDTO.setBackPressureDataSizeThreshold(config.getBackPressureDataSizeThreshold());
+        connectionDTO.setFlowFileExpiration(config.getFlowFileExpiration());
+    }
+
+    /**
+     * create the body for the creation of the connection, the source and the destination are resolved by name
+     *
+     * @param config the configuration
+     * @param componentSearch the group of the connection
+     * @return the connection to create
+     */
+    public ConnectionEntity createConnectionEntity(Connection config, ProcessGroupFlowEntity componentSearch) {
+        ConnectionEntity connection = new ConnectionEntity();
+        ConnectionDTO connectionDTO = new ConnectionDTO();
+        Optional<ConnectableDTO> destination = findByName(componentSearch, config.getDestination());
+        if (!destination.isPresent()) throw new RuntimeException("Cannot find " + config.getDestination() + " for create connection " + config.getName());
+        connectionDTO.setDestination(destination.get());
+        Optional<ConnectableDTO> source = findByName(componentSearch, config.getSource());
+        if (!source.isPresent()) throw new RuntimeException("Cannot find " + config.getSource() + " for create connection " + config.getName());
+        connectionDTO.setSource(source.get());
+        connectionDTO.setName(config.getName());
+        connectionDTO.setBackPressureObjectThreshold(config.getBackPressureObjectThreshold());
+        connectionDTO.setBackPressureDataSizeThreshold(config.getBackPressureDataSizeThreshold());
+        connectionDTO.setSelectedRelationships(config.getRelationShips());
+        connectionDTO.setFlowFileExpiration(config.getFlowFileExpiration());
+        connection.setComponent(connectionDTO);
+        connection.setRevision(new RevisionDTO());
+        connection.getRevision().setVersion(0L);
+        return connection;
+    }
+
     /**
      * find processor, inputport, ouput port funnel or remote processor by id in flow
      *
@@ -83,49 +103,31 @@ public class ConnectionsUpdater {
      * @return an optionnal find
      */
     public Optional<ConnectableDTO> findByName(ProcessGroupFlowEntity componentSearch, String name){
+        ComponentNameIndex index = flowCacheService.getNameIndex(componentSearch.getProcessGroupFlow());
         if (name.contains(":")) {
-                Optional<ProcessGroupEntity> processGroupEntity = componentSearch.getProcessGroupFlow().getFlow().getProcessGroups().stream().filter(processor ->  name.split(":")[0].equals(processor.getComponent().getName())).findFirst();
+                Optional<ProcessGroupEntity> processGroupEntity = index.findProcessGroup(name.split(":")[0]);
                 if (!processGroupEntity.isPresent()) return Optional.empty();
-                return findByName(flowapi.getFlow(processGroupEntity.get().getId()), name.split(":")[1]);
+                return findByName(flowCacheService.getFlow(processGroupEntity.get().getId()), name.split(":")[1]);
         }
-        Optional<ConnectableDTO> result = componentSearch.getProcessGroupFlow().getFlow().getProcessors().stream().filter(processor -> name.equals(processor.getComponent().getName())).findFirst()
-                .map(p -> {
-                    ConnectableDTO connectableDTO = new ConnectableDTO();
-                    connectableDTO.setGroupId(componentSearch.getProcessGroupFlow().getId());
-                    connectableDTO.setId(p.getId());
-                    connectableDTO.setType(ConnectableDTO.TypeEnum.PROCESSOR);
-                    return connectableDTO;
-                });
+        String groupId = componentSearch.getProcessGroupFlow().getId();
+        Optional<ConnectableDTO> result = index.findProcessor(name).map(p -> createConnectable(groupId, p.getId(), ConnectableDTO.TypeEnum.PROCESSOR));
         if (!result.isPresent())
-            result = componentSearch.getProcessGroupFlow().getFlow().getInputPorts().stream().filter(port -> name.equals(port.getComponent().getName())).findFirst()
-                    .map(p -> {
-                        ConnectableDTO connectableDTO = new ConnectableDTO();
-                        connectableDTO.setGroupId(componentSearch.getProcessGroupFlow().getId());
-                        connectableDTO.setId(p.getId());
-                        connectableDTO.setType(ConnectableDTO.TypeEnum.INPUT_PORT);
-                        return connectableDTO;
-                    });
+            result = index.findInputPort(name).map(p -> createConnectable(groupId, p.getId(), ConnectableDTO.TypeEnum.INPUT_PORT));
         if (!result.isPresent())
-            result = componentSearch.getProcessGroupFlow().getFlow().getOutputPorts().stream().filter(port -> name.equals(port.getComponent().getName())).findFirst()
-                    .map(p -> {
-                        ConnectableDTO connectableDTO = new ConnectableDTO();
-                        connectableDTO.setGroupId(componentSearch.getProcessGroupFlow().getId());
-                        connectableDTO.setId(p.getId());
-                        connectableDTO.setType(ConnectableDTO.TypeEnum.OUTPUT_PORT);
-                        return connectableDTO;
-                    });
+            result = index.findOutputPort(name).map(p -> createConnectable(groupId, p.getId(), ConnectableDTO.TypeEnum.OUTPUT_PORT));
        /* if (!result.isPresent())
             result = flow.getFunnels().stream().filter(funnel -> name.equals(funnel.getId())).findFirst();*/
         if (!result.isPresent())
-            result = componentSearch.getProcessGroupFlow().getFlow().getRemoteProcessGroups().stream().filter(remoteProcessGroup -> name.equals(remoteProcessGroup.getComponent().getName())).findFirst()
-                    .map(p -> {
-                        ConnectableDTO connectableDTO = new ConnectableDTO();
-                        connectableDTO.setGroupId(componentSearch.getProcessGroupFlow().getId());
-                        connectableDTO.setId(p.getId());
-                        connectableDTO.setType(ConnectableDTO.TypeEnum.PROCESSOR);
-                        return connectableDTO;
-                    });
+            result = index.findRemoteProcessGroup(name).map(p -> createConnectable(groupId, p.getId(), ConnectableDTO.TypeEnum.PROCESSOR));
         return result;
     }
 
+    private static ConnectableDTO createConnectable(String groupId, String id, ConnectableDTO.TypeEnum type) {
+        ConnectableDTO connectableDTO = new ConnectableDTO();
+        connectableDTO.setGroupId(groupId);
+        connectableDTO.setId(id);
+        connectableDTO.setType(type);
+        return connectableDTO;
+    }
+
 }
@@ -2,6 +2,7 @@ package com.github.hermannpencole.nifi.config.service;
 
 import com.github.hermannpencole.nifi.config.model.ConfigException;
 import com.github.hermannpencole.nifi.config.model.TimeoutException;
+import com.github.hermannpencole.nifi.config.utils.ControllerServiceGraph;
 import com.github.hermannpencole.nifi.config.utils.FunctionUtils;
 import com.github.hermannpencole.nifi.swagger.ApiException;
 import com.github.hermannpencole.nifi.swagger.client.ControllerServicesApi;
@@ -13,10 +14,8 @@ import org.slf4j.LoggerFactory;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import static com.github.hermannpencole.nifi.swagger.client.model.ControllerServiceReferencingComponentDTO.ReferenceTypeEnum.CONTROLLERSERVICE;
@@ -43,9 +42,16 @@ public class ControllerServicesService {
     @Inject
     public Integer interval;
 
+    @Named("parallelism")
+    @Inject
+    public Integer parallelism;
+
     @Inject
     private FlowApi flowapi;
 
+    @Inject
+    private FlowCacheService flowCacheService;
+
     @Inject
     private ControllerServicesApi controllerServicesApi;
 
@@ -100,15 +106,118 @@ public class ControllerServicesService {
      */
     public ControllerServiceEntity setStateControllerService(ControllerServiceEntity controllerServiceEntity, ControllerServiceDTO.StateEnum state) throws ApiException {
 
+        if (state.equals(ControllerServiceDTO.StateEnum.ENABLED) && controllerServiceEntity.getComponent().getParentGroupId() != null) {
+            //enable the services referenced by waves with the graph of the group
+            setStateControllerServices(controllerServiceEntity.getComponent().getParentGroupId(),
+                    Collections.singletonList(controllerServiceEntity.getId()), state, false);
+            return controllerServicesApi.getControllerService(controllerServiceEntity.getId());
+        }
         if (state.equals(ControllerServiceDTO.StateEnum.ENABLED))
             setStateControllerServicesReference(controllerServiceEntity.getId(), ControllerServiceDTO.StateEnum.ENABLED);
 
         ControllerServiceEntity controllerServiceEntityUpdate = controllerServicesApi.getControllerService(controllerServiceEntity.getId());
         //Disabling this controller service
+        LOG.info(" {} ({}) update for {}" , controllerServiceEntity.getComponent().getName(), controllerServiceEntity.getId(), state);
+        controllerServiceEntityUpdate = controllerServicesApi.updateControllerService(controllerServiceEntity.getId(),
+                createStateEntity(controllerServiceEntity.getId(), controllerServiceEntityUpdate.getRevision(), state));
+        //Wait disabled
+        int polls = FunctionUtils.runWhileBackoff(()-> {
+            LOG.info(" {} ({}) waiting for {}" , controllerServiceEntity.getComponent().getName(), controllerServiceEntity.getId(), state);
+            ControllerServiceEntity controllerService = controllerServicesApi.getControllerService(controllerServiceEntity.getId());
+            LOG.info(" {} ({}) is {}" , controllerService.getComponent().getName(), controllerService.getId(), controllerService.getComponent().getState());
+            return !controllerService.getComponent().getState().equals(state);
+        }, interval, timeout);
+        LOG.debug(" {} ({}) is {} after {} polls" , controllerServiceEntity.getComponent().getName(), controllerServiceEntity.getId(), state, polls);
+        return controllerServiceEntityUpdate;
+    }
+
+    /**
+     * Set the state of controller services and of the services linked, walking the graph of the controller services of
+     * the group (build once) by waves : the states of the services of a wave are changed in parallel, then one wait
+     * for all the wave.
+     * For enable, a service is enabled after the services it reference (and with withReferencing, the services that
+     * reference it are enabled after him). For disable, the services that reference it are disabled before him.
+     *
+     * @param groupId the id of the group of the services (or of a descendant)
+     * @param ids the id of the services
+     * @param state the state ENABLED or DISABLED
+     * @param withReferencing enable also the services that reference them
+     * @throws ApiException when communication problem
+     */
+    public void setStateControllerServices(String groupId, Collection<String> ids, ControllerServiceDTO.StateEnum state, boolean withReferencing) throws ApiException {
+        if (ids.isEmpty()) return;
+        Map<String, ControllerServiceEntity> services = new ConcurrentHashMap<>();
+        List<ControllerServiceEntity> controllerServices = getControllerServicesFromGroup(groupId);
+        controllerServices.forEach(service -> services.put(service.getId(), service));
+        ControllerServiceGraph graph = ControllerServiceGraph.of(controllerServices);
+
+        boolean enable = state.equals(ControllerServiceDTO.StateEnum.ENABLED);
+        Set<String> walked;
+        if (enable) {
+            walked = graph.dependencies(withReferencing ? graph.dependents(ids) : ids);
+        } else {
+            walked = graph.dependents(ids);
+        }
+        List<List<String>> waves = graph.waves(walked, enable);
+        LOG.debug(" {} controller service(s) of {} update for {} in {} wave(s)", walked.size(), groupId, state, waves.size());
+        for (List<String> wave : waves) {
+            List<String> waited = FunctionUtils.runParallel(wave, id -> changeState(id, services.get(id), state), parallelism)
+                    .stream().filter(Objects::nonNull).collect(Collectors.toList());
+            waitControllerServices(groupId, waited, state, services);
+        }
+    }
+
+    /**
+     * change the state of the service if not already in this state
+     *
+     * @return the id of the service to wait, null if already in the state
+     */
+    private String changeState(String id, ControllerServiceEntity service, ControllerServiceDTO.StateEnum state) {
+        //a service of an other group is not in the listing of the group
+        ControllerServiceEntity current = service == null ? controllerServicesApi.getControllerService(id) : service;
+        ControllerServiceDTO.StateEnum currentState = current.getComponent().getState();
+        if (state.equals(currentState)) return null;
+        boolean inProgress = state.equals(ControllerServiceDTO.StateEnum.ENABLED) ? ControllerServiceDTO.StateEnum.ENABLING.equals(currentState)
+                : ControllerServiceDTO.StateEnum.DISABLING.equals(currentState);
+        if (!inProgress) {
+            LOG.info(" {} ({}) update for {}", current.getComponent().getName(), id, state);
+            controllerServicesApi.updateControllerService(id, createStateEntity(id, current.getRevision(), state));
+        }
+        return id;
+    }
+
+    /**
+     * wait that all the services are in the state.
+     * Each poll get only one listing of the services of the group (and one service for each service of an other group)
+     */
+    private void waitControllerServices(String groupId, List<String> ids, ControllerServiceDTO.StateEnum state, Map<String, ControllerServiceEntity> services) {
+        if (ids.isEmpty()) return;
+        Set<String> pending = ConcurrentHashMap.newKeySet();
+        pending.addAll(ids);
+        int polls = FunctionUtils.runWhileBackoff(() -> {
+            //keep the last revisions for the next wave
+            getControllerServicesFromGroup(groupId).forEach(service -> services.put(service.getId(), service));
+            pending.removeIf(id -> {
+                ControllerServiceEntity service = services.containsKey(id) ? services.get(id) : controllerServicesApi.getControllerService(id);
+                return state.equals(service.getComponent().getState());
+            });
+            LOG.info(" {} controller service(s) of {} waiting for {}", pending.size(), groupId, state);
+            return !pending.isEmpty();
+        }, interval, timeout);
+        LOG.debug(" {} controller service(s) of {} are {} after {} polls", ids.size(), groupId, state, polls);
+    }
+
+    private List<ControllerServiceEntity> getControllerServicesFromGroup(String groupId) {
+        ControllerServicesEntity controllerServicesEntity = flowapi.getControllerServicesFromGroup(groupId, true, false);
+        return controllerServicesEntity == null || controllerServicesEntity.getControllerServices() == null
+                ? Collections.emptyList() : controllerServicesEntity.getControllerServices();
+    }
+
+    private static ControllerServiceEntity createStateEntity(String id, RevisionDTO revision, ControllerServiceDTO.StateEnum state) {
         ControllerServiceEntity controllerServiceEntityEmpty = new ControllerServiceEntity();
-        controllerServiceEntityEmpty.setRevision(controllerServiceEntityUpdate.getRevision());
+        controllerServiceEntityEmpty.setRevision(revision);
         controllerServiceEntityEmpty.setComponent(new ControllerServiceDTO());
-        controllerServiceEntityEmpty.getComponent().setId(controllerServiceEntity.getId());
+        controllerServiceEntityEmpty.getComponent().setId(id);
         controllerServiceEntityEmpty.getComponent().setState(state);
         controllerServiceEntityEmpty.getComponent().setProperties(null);
         controllerServiceEntityEmpty.getComponent().setDescriptors(null);
@@ -116,16 +225,7 @@ public class ControllerServicesService {
         controllerServiceEntityEmpty.getComponent().setValidationErrors(null);
         controllerServiceEntityEmpty.getComponent().setPersistsState(null);
         controllerServiceEntityEmpty.getComponent().setRestricted(null);
-        LOG.info(" {} ({}) update for {}" , controllerServiceEntity.getComponent().getName(), controllerServiceEntity.getId(), state);
-        controllerServiceEntityUpdate = controllerServicesApi.updateControllerService(controllerServiceEntity.getId(), controllerServiceEntityEmpty);
-        //Wait disabled
-        FunctionUtils.runWhile(()-> {
-            LOG.info(" {} ({}) waiting for {}" , controllerServiceEntity.getComponent().getName(), controllerServiceEntity.getId(), state);
-            ControllerServiceEntity controllerService = controllerServicesApi.getControllerService(controllerServiceEntity.getId());
-            LOG.info(" {} ({}) is {}" , controllerService.getComponent().getName(), controllerService.getId(), controllerService.getComponent().getState());
-            return !controllerService.getComponent().getState().equals(state);
-        }, interval, timeout);
-        return controllerServiceEntityUpdate;
+        return controllerServiceEntityEmpty;
     }
 
     public ControllerServiceEntity getControllerServices(String id) throws ApiException {
@@ -209,7 +309,7 @@ public class ControllerServicesService {
 
     public void disableController(ProcessGroupFlowEntity processGroupFlow) {
         for (ProcessGroupEntity procGroupInConf : processGroupFlow.getProcessGroupFlow().getFlow().getProcessGroups()) {
-            ProcessGroupFlowEntity processGroupFlowEntity = flowapi.getFlow(procGroupInConf.getId());
+            ProcessGroupFlowEntity processGroupFlowEntity = flowCacheService.getFlow(procGroupInConf.getId());
             disableController(processGroupFlowEntity);
         }
         ControllerServicesEntity controllerServicesEntity = flowapi.getControllerServicesFromGroup(processGroupFlow.getProcessGroupFlow().getId(), true ,false);
@@ -15,7 +15,6 @@ import java.util.*;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-import static com.github.hermannpencole.nifi.config.utils.FunctionUtils.findByComponentName;
 
 public class CreateRouteService {
 
@@ -36,6 +35,9 @@ public class CreateRouteService {
   @Inject
   private FlowApi flowapi;
 
+  @Inject
+  private FlowCacheService flowCacheService;
+
   private String clientId;
 
   private String getClientId() {
@@ -58,20 +60,21 @@ public class CreateRouteService {
   }
 
   private ProcessGroupFlowEntity advanceToNextProcessGroup( final String processGroupName, final ProcessGroupFlowEntity flowEntity) {
-    return findByComponentName(
-            flowEntity.getProcessGroupFlow().getFlow().getProcessGroups(), processGroupName)
-            .map(flowEntityChild -> flowapi.getFlow(flowEntityChild.getId()))
+    return flowCacheService.getNameIndex(flowEntity.getProcessGroupFlow()).findProcessGroup(processGroupName)
+            .map(flowEntityChild -> flowCacheService.getFlow(flowEntityChild.getId()))
             .orElseThrow(() -> new ConfigException("Couldn't find process group '" + processGroupName + "'"));
   }
 
   private PortEntity createOrFindPort(final String destinationInputPort, final ConnectableDTO.TypeEnum connectableType,
           final ProcessGroupFlowEntity flowEntity) {
     ProcessGroupFlowDTO processGroupFlow = flowEntity.getProcessGroupFlow();
-    Optional<PortEntity> port = portService.findPortEntityByName(processGroupFlow.getFlow(), destinationInputPort);
+    Optional<PortEntity> port = portService.findPortEntityByName(processGroupFlow, destinationInputPort);
     if (port.isPresent()) {
       return port.get();
     } else {
-      return portService.createPort(processGroupFlow.getId(), destinationInputPort,matchConnectableTypeToPortType(connectableType));
+      PortEntity created = portService.createPort(processGroupFlow.getId(), destinationInputPort,matchConnectableTypeToPortType(connectableType));
+      flowCacheService.invalidate(processGroupFlow.getId());
+      return created;
     }
   }
 
@@ -82,7 +85,7 @@ public class CreateRouteService {
           case OUTPUT_PORT:
             return destination.getComponent().getParentGroupId();
           case INPUT_PORT: default:
-            return flowapi.getFlow(source.getComponent().getParentGroupId()).getProcessGroupFlow().getParentGroupId();
+            return flowCacheService.getFlow(source.getComponent().getParentGroupId()).getProcessGroupFlow().getParentGroupId();
         }
       case INPUT_PORT:
         switch (destination.getComponent().getType()) {
@@ -141,7 +144,7 @@ public class CreateRouteService {
 
     // Traverse back up to root and start examining the flow
     while (branch.hasPrevious()) branch.previous();
-    ProcessGroupFlowEntity flowEntity = flowapi.getFlow("root");
+    ProcessGroupFlowEntity flowEntity = flowCacheService.getFlow(FlowCacheService.ROOT);
     branch.next();
 
     // Traverse back down the process group hierarchy
@@ -169,11 +172,12 @@ public class CreateRouteService {
     while (connectables.hasNext()) {
       current = next;
       next = connectables.next();
-      ProcessGroupFlowEntity flowEntity = flowapi.getFlow(determineConnectionLocation(current, next));
+      ProcessGroupFlowEntity flowEntity = flowCacheService.getFlow(determineConnectionLocation(current, next));
       ConnectionEntity connectionEntity = createConnectionEntity(current, next);
 
       if (!connectionExists( flowEntity.getProcessGroupFlow().getFlow().getConnections().stream(), connectionEntity)) {
         processGroupsApi.createConnection(flowEntity.getProcessGroupFlow().getId(), connectionEntity);
+        flowCacheService.invalidate(flowEntity.getProcessGroupFlow().getId());
       }
     }
   }
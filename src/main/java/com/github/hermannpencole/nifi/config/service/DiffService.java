@@ -0,0 +1,241 @@
+package com.github.hermannpencole.nifi.config.service;
+
+import com.github.hermannpencole.nifi.config.model.ConfigDiff;
+import com.github.hermannpencole.nifi.config.model.ConfigException;
+import com.github.hermannpencole.nifi.config.model.Connection;
+import com.github.hermannpencole.nifi.config.model.GroupProcessorsEntity;
+import com.github.hermannpencole.nifi.config.utils.ComponentNameIndex;
+import com.github.hermannpencole.nifi.config.utils.GroupProcessorsReader;
+import com.github.hermannpencole.nifi.swagger.ApiException;
+import com.github.hermannpencole.nifi.swagger.client.FlowApi;
+import com.github.hermannpencole.nifi.swagger.client.model.*;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Class that compare a configuration with the live flow
+ * <p>
+ * The fields compared are the fields written by extractConfig, a field absent (null) of the configuration is not
+ * updated by updateConfig then it is never a difference. The properties linked to a controller service are ignored
+ * like in the update, the sensitive properties (masked by nifi) are always a difference.
+ */
+@Singleton
+public class DiffService {
+
+    private final static String PATH_SEPARATOR = " > ";
+
+    @Inject
+    private FlowApi flowapi;
+
+    @Inject
+    private FlowCacheService flowCacheService;
+
+    /**
+     * compare the configuration read with the flow of the group, the configuration is pruned while it is read
+     *
+     * @param reader the reader of configuration
+     * @param componentSearch the group
+     * @return the diff
+     * @throws IOException when io problem
+     * @throws ApiException when api problem
+     */
+    public ConfigDiff diff(GroupProcessorsReader reader, ProcessGroupFlowEntity componentSearch) throws IOException, ApiException {
+        ConfigDiff diff = new ConfigDiff();
+        ProcessGroupFlowDTO processGroupFlow = componentSearch.getProcessGroupFlow();
+        ComponentNameIndex index = flowCacheService.getNameIndex(processGroupFlow);
+        String path = processGroupFlow.getBreadcrumb().getBreadcrumb().getName();
+
+        List<ProcessorDTO> processors = new ArrayList<>();
+        List<GroupProcessorsEntity> groups = new ArrayList<>();
+        GroupProcessorsEntity configuration = reader.read(
+                processorOnConfig -> {
+                    if (diffProcessor(index, processorOnConfig, path, diff)) processors.add(processorOnConfig);
+                },
+                procGroupInConf -> diffGroup(index, procGroupInConf, path, diff).ifPresent(groups::add));
+        configuration.setProcessors(processors);
+        configuration.setGroupProcessorsEntity(groups);
+        configuration.setConnections(diffConnections(configuration.getConnections(), componentSearch, path, diff));
+        configuration.setControllerServicesDTO(diffControllerServices(configuration.getControllerServicesDTO(), processGroupFlow.getId(), diff));
+        diff.setConfiguration(configuration);
+        return diff;
+    }
+
+    /**
+     * compare the sub group
+     *
+     * @param parentIndex the index of the parent group
+     * @param configuration the configuration of the sub group
+     * @param parentPath the path of the parent group
+     * @param diff the diff
+     * @return the pruned configuration, empty if nothing differ
+     */
+    private Optional<GroupProcessorsEntity> diffGroup(ComponentNameIndex parentIndex, GroupProcessorsEntity configuration, String parentPath, ConfigDiff diff) {
+        ProcessGroupEntity processGroup = parentIndex.findProcessGroup(configuration.getName())
+                .orElseThrow(() -> new ConfigException(("cannot find " + configuration.getName())));
+        ProcessGroupFlowEntity componentSearch = flowCacheService.getFlow(processGroup.getId());
+        ComponentNameIndex index = flowCacheService.getNameIndex(componentSearch.getProcessGroupFlow());
+        String path = parentPath + PATH_SEPARATOR + configuration.getName().trim();
+
+        GroupProcessorsEntity result = new GroupProcessorsEntity();
+        result.setName(configuration.getName());
+        result.setProcessors(configuration.getProcessors().stream()
+                .filter(processorOnConfig -> diffProcessor(index, processorOnConfig, path, diff))
+                .collect(Collectors.toList()));
+        for (GroupProcessorsEntity procGroupInConf : configuration.getGroupProcessorsEntity()) {
+            diffGroup(index, procGroupInConf, path, diff).ifPresent(result.getGroupProcessorsEntity()::add);
+        }
+        result.setConnections(diffConnections(configuration.getConnections(), componentSearch, path, diff));
+        if (result.getProcessors().isEmpty() && result.getGroupProcessorsEntity().isEmpty() && result.getConnections().isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(result);
+    }
+
+    private boolean diffProcessor(ComponentNameIndex index, ProcessorDTO processorOnConfig, String path, ConfigDiff diff) {
+        ProcessorEntity processor = index.findProcessor(processorOnConfig.getName())
+                .orElseThrow(() -> new ConfigException(("cannot find " + processorOnConfig.getName())));
+        List<String> fields = compareProcessor(processor.getComponent(), processorOnConfig);
+        if (fields.isEmpty()) {
+            diff.addUnchanged();
+            return false;
+        }
+        diff.addProcessor("~ processor " + path + PATH_SEPARATOR + processorOnConfig.getName().trim() + " : " + String.join(", ", fields));
+        diff.addComponentId(processor.getId());
+        return true;
+    }
+
+    /**
+     * compare the processor
+     *
+     * @param live the processor on nifi
+     * @param target the processor of the configuration
+     * @return the fields that differ
+     */
+    public static List<String> compareProcessor(ProcessorDTO live, ProcessorDTO target) {
+        List<String> fields = new ArrayList<>();
+        ProcessorConfigDTO targetConfig = target.getConfig();
+        if (targetConfig == null) return fields;
+        ProcessorConfigDTO liveConfig = live.getConfig() == null ? new ProcessorConfigDTO() : live.getConfig();
+
+        if (targetConfig.getProperties() != null) {
+            Map<String, String> liveProperties = liveConfig.getProperties() == null ? Collections.emptyMap() : liveConfig.getProperties();
+            Map<String, PropertyDescriptorDTO> descriptors = liveConfig.getDescriptors() == null ? Collections.emptyMap() : liveConfig.getDescriptors();
+            targetConfig.getProperties().forEach((key, value) -> {
+                PropertyDescriptorDTO descriptor = descriptors.get(key);
+                //the controller links are not updated
+                if (descriptor != null && descriptor.getIdentifiesControllerService() != null) return;
+                if (!Objects.equals(liveProperties.get(key), value)) fields.add("properties." + key);
+            });
+        }
+        compare(fields, "schedulingPeriod", liveConfig.getSchedulingPeriod(), targetConfig.getSchedulingPeriod());
+        compare(fields, "schedulingStrategy", liveConfig.getSchedulingStrategy(), targetConfig.getSchedulingStrategy());
+        compare(fields, "executionNode", liveConfig.getExecutionNode(), targetConfig.getExecutionNode());
+        compare(fields, "penaltyDuration", liveConfig.getPenaltyDuration(), targetConfig.getPenaltyDuration());
+        compare(fields, "yieldDuration", liveConfig.getYieldDuration(), targetConfig.getYieldDuration());
+        compare(fields, "bulletinLevel", liveConfig.getBulletinLevel(), targetConfig.getBulletinLevel());
+        compare(fields, "runDurationMillis", liveConfig.getRunDurationMillis(), targetConfig.getRunDurationMillis());
+        compare(fields, "concurrentlySchedulableTaskCount", liveConfig.getConcurrentlySchedulableTaskCount(), targetConfig.getConcurrentlySchedulableTaskCount());
+        compare(fields, "comments", liveConfig.getComments(), targetConfig.getComments());
+        compare(fields, "lossTolerant", liveConfig.isLossTolerant(), targetConfig.isLossTolerant());
+        compare(fields, "annotationData", liveConfig.getAnnotationData(), targetConfig.getAnnotationData());
+        return fields;
+    }
+
+    /**
+     * compare the connections (the first connection with the name is updated like in ConnectionsUpdater)
+     *
+     * @param connectionsConfiguration the connections of the configuration
+     * @param componentSearch the group
+     * @param path the path of the group
+     * @param diff the diff
+     * @return the connections to update or to create
+     */
+    private List<Connection> diffConnections(List<Connection> connectionsConfiguration, ProcessGroupFlowEntity componentSearch, String path, ConfigDiff diff) {
+        if (connectionsConfiguration == null || connectionsConfiguration.isEmpty()) return new ArrayList<>();
+        Map<String, ConnectionDTO> currentConnections = new HashMap<>();
+        if (componentSearch.getProcessGroupFlow().getFlow().getConnections() != null) {
+            componentSearch.getProcessGroupFlow().getFlow().getConnections()
+                    .forEach(entity -> currentConnections.putIfAbsent(entity.getComponent().getName(), entity.getComponent()));
+        }
+
+        List<Connection> result = new ArrayList<>();
+        for (Connection config : connectionsConfiguration) {
+            ConnectionDTO connectionDTO = currentConnections.get(config.getName());
+            if (connectionDTO == null) {
+                diff.addConnection("+ connection " + path + PATH_SEPARATOR + config.getName());
+                result.add(config);
+                continue;
+            }
+            List<String> fields = new ArrayList<>();
+            compare(fields, "backPressureObjectThreshold", connectionDTO.getBackPressureObjectThreshold(), config.getBackPressureObjectThreshold());
+            compare(fields, "backPressureDataSizeThreshold", connectionDTO.getBackPressureDataSizeThreshold(), config.getBackPressureDataSizeThreshold());
+            compare(fields, "flowFileExpiration", connectionDTO.getFlowFileExpiration(), config.getFlowFileExpiration());
+            if (fields.isEmpty()) {
+                diff.addUnchanged();
+            } else {
+                diff.addConnection("~ connection " + path + PATH_SEPARATOR + config.getName() + " : " + String.join(", ", fields));
+                result.add(config);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * compare the controller services, a controller with the same name in the group and in an ancestor (replaced by
+     * the update) or not enabled is always a difference
+     *
+     * @param controllerServices the controller services of the configuration
+     * @param groupId the id of the group
+     * @param diff the diff
+     * @return the controller services to update
+     */
+    private List<ControllerServiceDTO> diffControllerServices(List<ControllerServiceDTO> controllerServices, String groupId, ConfigDiff diff) {
+        if (controllerServices == null || controllerServices.isEmpty()) return new ArrayList<>();
+        ControllerServicesEntity controllerServicesEntity = flowapi.getControllerServicesFromGroup(groupId, true, false);
+        if (controllerServicesEntity.getControllerServices() == null) controllerServicesEntity.setControllerServices(new ArrayList<>());
+
+        List<ControllerServiceDTO> result = new ArrayList<>();
+        for (ControllerServiceDTO controllerServiceDTO : controllerServices) {
+            List<ControllerServiceEntity> all = controllerServicesEntity.getControllerServices().stream()
+                    .filter(item -> item.getComponent().getName().trim().equals(controllerServiceDTO.getName().trim()))
+                    .collect(Collectors.toList());
+            if (all.isEmpty()) {
+                throw new ConfigException("Cannot find controller " + controllerServiceDTO.getName());
+            }
+            List<String> fields = new ArrayList<>();
+            if (all.size() > 1) {
+                fields.add("duplicates");
+            } else {
+                ControllerServiceDTO live = all.get(0).getComponent();
+                if (controllerServiceDTO.getProperties() != null) {
+                    Map<String, String> liveProperties = live.getProperties() == null ? Collections.emptyMap() : live.getProperties();
+                    controllerServiceDTO.getProperties().forEach((key, value) -> {
+                        if (!Objects.equals(liveProperties.get(key), value)) fields.add("properties." + key);
+                    });
+                }
+                if (!ControllerServiceDTO.StateEnum.ENABLED.equals(live.getState())) fields.add("state");
+            }
+            if (fields.isEmpty()) {
+                diff.addUnchanged();
+            } else {
+                diff.addControllerService("~ controller service " + controllerServiceDTO.getName().trim() + " : " + String.join(", ", fields));
+                result.add(controllerServiceDTO);
+                //the processors that reference the controller are stopped during his update
+                all.stream()
+                        .filter(controllerService -> controllerService.getComponent().getReferencingComponents() != null)
+                        .flatMap(controllerService -> controllerService.getComponent().getReferencingComponents().stream())
+                        .filter(component -> ControllerServiceReferencingComponentDTO.ReferenceTypeEnum.PROCESSOR.equals(component.getComponent().getReferenceType()))
+                        .forEach(component -> diff.addComponentId(component.getId()));
+            }
+        }
+        return result;
+    }
+
+    private static void compare(List<String> fields, String name, Object live, Object target) {
+        if (target != null && !target.equals(live)) fields.add(name);
+    }
+}
@@ -2,20 +2,26 @@ package com.github.hermannpencole.nifi.config.service;
 
 import com.github.hermannpencole.nifi.config.model.ConfigException;
 import com.github.hermannpencole.nifi.config.model.Connection;
-import com.github.hermannpencole.nifi.config.model.GroupProcessorsEntity;
+import com.github.hermannpencole.nifi.config.utils.FunctionUtils;
 import com.github.hermannpencole.nifi.swagger.ApiException;
 import com.github.hermannpencole.nifi.swagger.client.FlowApi;
 import com.github.hermannpencole.nifi.swagger.client.model.*;
 import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 /**
@@ -38,6 +44,15 @@ public class ExtractProcessorService {
     @Inject
     private FlowApi flowapi;
 
+    @Inject
+    private FlowCacheService flowCacheService;
+
+    @Named("parallelism")
+    @Inject
+    public Integer parallelism;
+
+    private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
     /**
      * @param branch the branch
      * @param fileConfiguration fileConfiguration
@@ -46,45 +61,33 @@ public class ExtractProcessorService {
      * @throws ApiException othe prblem
      */
     public void extractByBranch(List<String> branch, String fileConfiguration, boolean failOnDuplicateNames) throws IOException, ApiException {
-        File file = new File(fileConfiguration);
+        File file = new File(fileConfiguration).getAbsoluteFile();
+        if (file.isDirectory() || !file.getParentFile().isDirectory()) {
+            throw new FileNotFoundException(fileConfiguration + " (cannot write the file)");
+        }
 
         ProcessGroupFlowEntity componentSearch = processGroupService.changeDirectory(branch)
                 .orElseThrow(() -> new ConfigException(("cannot find " + Arrays.toString(branch.toArray()))));
 
-        //add group processors and processors
-        GroupProcessorsEntity result = extractJsonFromComponent(componentSearch);
-
-        //add controllers
-        String processorGroupFlowId = componentSearch.getProcessGroupFlow().getId();
-        //TODO verify if must include ancestor and descendant
-        ControllerServicesEntity controllerServicesEntity = flowapi.getControllerServicesFromGroup(processorGroupFlowId, true, false);
-        if (controllerServicesEntity.getControllerServices() == null) controllerServicesEntity.setControllerServices(new ArrayList<>());
-        if (!controllerServicesEntity.getControllerServices().isEmpty()) {
-            result.setControllerServicesDTO(new ArrayList<>());
-        }
-        for (ControllerServiceEntity controllerServiceEntity : controllerServicesEntity.getControllerServices()) {
-            result.getControllerServicesDTO().add(extractController(controllerServiceEntity));
-        }
-
-        checkDuplicateProcessorNames(result.getProcessors(), failOnDuplicateNames);
-
-        //convert to json
-        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        //the groups are written as soon as they are fetched in a temporary file, the file is replaced only on success
         LOG.debug("saving in file {}", fileConfiguration);
-        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
-            gson.toJson(result, writer);
+        File temp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+        try {
+            Map<String, Integer> processorNameCount = new HashMap<>();
+            try (JsonWriter writer = gson.newJsonWriter(new OutputStreamWriter(new FileOutputStream(temp), "UTF-8"))) {
+                writeGroup(writer, componentSearch, processorNameCount);
+            }
+            checkDuplicateProcessorNames(processorNameCount, failOnDuplicateNames);
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
         } finally {
+            Files.deleteIfExists(temp.toPath());
             LOG.debug("extractByBranch end");
         }
     }
 
-    private void checkDuplicateProcessorNames(List<ProcessorDTO> processors, boolean failOnDuplicateNames) {
+    private void checkDuplicateProcessorNames(Map<String, Integer> processorNameCount, boolean failOnDuplicateNames) {
         //warn or fail on duplicate processor names
-        if (processors == null || processors.isEmpty()) {
-            return;
-        }
-
-        Map<String, Integer> duplicateProcessorNames = detectDuplicateProcessorNames(processors);
+        Map<String, Integer> duplicateProcessorNames = detectDuplicateProcessorNames(processorNameCount);
         if (!duplicateProcessorNames.isEmpty()) {
             String messageFormatted = "Duplicate processor names detected: "
                     + Joiner.on(", ").withKeyValueSeparator(" used times: ").join(duplicateProcessorNames);
@@ -97,46 +100,83 @@ public class ExtractProcessorService {
         }
     }
 
-    private Map<String, Integer> detectDuplicateProcessorNames(List<ProcessorDTO> processorList) {
-        Map<String, Integer> processorNameCountMap = new HashMap<>();
-        processorList.forEach(proc -> processorNameCountMap.merge(proc.getName(), 1, Integer::sum));
-
+    private Map<String, Integer> detectDuplicateProcessorNames(Map<String, Integer> processorNameCountMap) {
         return processorNameCountMap.entrySet().stream()
                 .filter(entry -> entry.getValue() > 1)
                 .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
     }
 
     /**
-     * extract from component
+     * write the group with the same format than GroupProcessorsEntity : processors, groupProcessorsEntity,
+     * controllerServices (only for the root), connections, namedConnections and name.
+     * The flow of a sub group is released from the cache as soon as the group is written
      *
+     * @param writer the writer
      * @param idComponent idComponent
-     * @return the component extracted
+     * @param processorNameCount the counter of the processor names of the root, null for the sub groups
+     * @throws IOException when io problem
      * @throws ApiException when problem api
      */
-    private GroupProcessorsEntity extractJsonFromComponent(ProcessGroupFlowEntity idComponent) throws ApiException {
-        GroupProcessorsEntity result = new GroupProcessorsEntity();
+    private void writeGroup(JsonWriter writer, ProcessGroupFlowEntity idComponent, Map<String, Integer> processorNameCount) throws IOException, ApiException {
         ProcessGroupFlowDTO processGroupFlow = idComponent.getProcessGroupFlow();
-        result.setName(processGroupFlow.getBreadcrumb().getBreadcrumb().getName());
-        if (processGroupFlow.getFlow().getProcessors() == null) processGroupFlow.getFlow().setProcessors(new ArrayList<>());
-        if (processGroupFlow.getFlow().getProcessGroups() == null) processGroupFlow.getFlow().setProcessGroups(new ArrayList<>());
-        processGroupFlow.getFlow().getProcessors()
-                .forEach(processor -> result.getProcessors().add(extractProcessor(processor.getComponent())));
-        for (ProcessGroupEntity processGroups : processGroupFlow.getFlow().getProcessGroups()) {
-            result.getGroupProcessorsEntity().add(extractJsonFromComponent(flowapi.getFlow(processGroups.getId())));
+        FlowDTO flow = processGroupFlow.getFlow();
+        writer.beginObject();
+
+        if (flow.getProcessors() != null && !flow.getProcessors().isEmpty()) {
+            writer.name("processors").beginArray();
+            for (ProcessorEntity processor : flow.getProcessors()) {
+                ProcessorDTO processorDTO = extractProcessor(processor.getComponent());
+                if (processorNameCount != null) processorNameCount.merge(processorDTO.getName(), 1, Integer::sum);
+                gson.toJson(processorDTO, ProcessorDTO.class, writer);
+            }
+            writer.endArray();
         }
-        if (result.getGroupProcessorsEntity().isEmpty()) {
-            result.setGroupProcessorsEntity(null);
+
+        if (flow.getProcessGroups() != null && !flow.getProcessGroups().isEmpty()) {
+            writer.name("groupProcessorsEntity").beginArray();
+            //sibling groups are fetched in parallel by pack of parallelism, the file keep the order of the groups.
+            //In parallel the next pack is fetched while the groups of this pack (and their descendants) are written
+            boolean inParallel = parallelism != null && parallelism > 1;
+            List<List<ProcessGroupEntity>> packs = Lists.partition(flow.getProcessGroups(), inParallel ? parallelism : 1);
+            CompletableFuture<List<ProcessGroupFlowEntity>> next = null;
+            for (int i = 0; i < packs.size(); i++) {
+                List<ProcessGroupFlowEntity> subGroups = FunctionUtils.join(next == null ? fetchGroups(packs.get(i)) : next);
+                next = inParallel && i + 1 < packs.size() ? fetchGroups(packs.get(i + 1)) : null;
+                for (ProcessGroupFlowEntity subGroup : subGroups) {
+                    writeGroup(writer, subGroup, null);
+                    flowCacheService.invalidate(subGroup.getProcessGroupFlow().getId());
+                }
+            }
+            writer.endArray();
         }
-        if (result.getProcessors().isEmpty()) {
-            result.setProcessors(null);
+
+        if (processorNameCount != null) {
+            //TODO verify if must include ancestor and descendant
+            ControllerServicesEntity controllerServicesEntity = flowapi.getControllerServicesFromGroup(processGroupFlow.getId(), true, false);
+            if (controllerServicesEntity.getControllerServices() != null && !controllerServicesEntity.getControllerServices().isEmpty()) {
+                writer.name("controllerServices").beginArray();
+                for (ControllerServiceEntity controllerServiceEntity : controllerServicesEntity.getControllerServices()) {
+                    gson.toJson(extractController(controllerServiceEntity), ControllerServiceDTO.class, writer);
+                }
+                writer.endArray();
+            }
         }
-        result.setControllerServicesDTO(null);
 
-        if (idComponent.getProcessGroupFlow().getFlow().getConnections() == null) idComponent.getProcessGroupFlow().getFlow().setConnections(new ArrayList<>());
-        List<ConnectionEntity> connections = idComponent.getProcessGroupFlow().getFlow().getConnections();
-        result.setConnections(extractConnections(connections));
+        writer.name("connections").beginArray().endArray();
+        writer.name("namedConnections").beginArray();
+        if (flow.getConnections() != null) {
+            for (ConnectionEntity connection : flow.getConnections()) {
+                gson.toJson(toConnection(connection), Connection.class, writer);
+            }
+        }
+        writer.endArray();
 
-        return result;
+        writer.name("name").value(processGroupFlow.getBreadcrumb().getBreadcrumb().getName());
+        writer.endObject();
+    }
+
+    private CompletableFuture<List<ProcessGroupFlowEntity>> fetchGroups(List<ProcessGroupEntity> processGroups) {
+        return FunctionUtils.runParallelAsync(processGroups, processGroup -> flowCacheService.getFlow(processGroup.getId()), parallelism);
     }
 
     /**
@@ -184,13 +224,6 @@ public class ExtractProcessorService {
         return result;
     }
 
-    private List<Connection> extractConnections(List<ConnectionEntity> connections) {
-        return connections
-                .stream()
-                .map(this::toConnection)
-                .collect(Collectors.toList());
-    }
-
     private Connection toConnection(ConnectionEntity entity) {
         ConnectionDTO dto = entity.getComponent();
         Connection connection = new Connection();
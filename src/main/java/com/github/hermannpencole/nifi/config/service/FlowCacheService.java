@@ -0,0 +1,255 @@
+package com.github.hermannpencole.nifi.config.service;
+
+import com.github.hermannpencole.nifi.config.utils.ComponentNameIndex;
+import com.github.hermannpencole.nifi.config.utils.ComponentRegistry;
+import com.github.hermannpencole.nifi.config.utils.OccupancyGrid;
+import com.github.hermannpencole.nifi.swagger.ApiException;
+import com.github.hermannpencole.nifi.swagger.client.FlowApi;
+import com.github.hermannpencole.nifi.swagger.client.model.FlowDTO;
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessGroupEntity;
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessGroupFlowDTO;
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessGroupFlowEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Run scoped cache of the flow of the process groups.
+ * <p>
+ * The flows are indexed by process group id and by path ("root &gt; a &gt; b").
+ * All the services must read the flow through this cache and invalidate the group owning
+ * a component each time they make a mutating call on it, the revision of the component change.
+ * The index by name, the registry by id and the occupancy grid of the components are build once by flow.
+ * The id of the sub groups of each group are kept apart of the flows, so a tree is invalidated even when a group of
+ * the middle is no more in cache.
+ */
+@Singleton
+public class FlowCacheService {
+
+    /**
+     * The logger.
+     */
+    private final static Logger LOG = LoggerFactory.getLogger(FlowCacheService.class);
+
+    public final static String ROOT = "root";
+
+    private final static String PATH_SEPARATOR = " > ";
+
+    @Inject
+    private FlowApi flowapi;
+
+    private final Map<String, ProcessGroupFlowEntity> flows = new ConcurrentHashMap<>();
+
+    private final Map<String, String> paths = new ConcurrentHashMap<>();
+
+    private final Map<String, ComponentNameIndex> indexes = new ConcurrentHashMap<>();
+
+    private final Map<String, ComponentRegistry> registries = new ConcurrentHashMap<>();
+
+    private final Map<String, OccupancyGrid> grids = new ConcurrentHashMap<>();
+
+    private final Map<String, Set<String>> children = new ConcurrentHashMap<>();
+
+    private volatile String rootId;
+
+    /**
+     * get the flow of the process group, call nifi only if not in cache
+     *
+     * @param id the id of process group (or root)
+     * @return the ProcessGroupFlowEntity
+     * @throws ApiException when api problem
+     */
+    public ProcessGroupFlowEntity getFlow(String id) throws ApiException {
+        String key = resolve(id);
+        ProcessGroupFlowEntity flowEntity = flows.get(key);
+        if (flowEntity == null) {
+            LOG.debug("flow cache miss {}", id);
+            flowEntity = flowapi.getFlow(id);
+            if (flowEntity == null) return null;
+            String realId = flowEntity.getProcessGroupFlow() == null ? null : flowEntity.getProcessGroupFlow().getId();
+            if (ROOT.equals(id) && realId != null) {
+                rootId = realId;
+            }
+            flows.put(realId == null ? key : realId, flowEntity);
+            addChildren(realId == null ? key : realId, flowEntity.getProcessGroupFlow());
+        }
+        return flowEntity;
+    }
+
+    private void addChildren(String id, ProcessGroupFlowDTO processGroupFlow) {
+        if (processGroupFlow == null) return;
+        if (processGroupFlow.getParentGroupId() != null) {
+            children.computeIfAbsent(processGroupFlow.getParentGroupId(), key -> ConcurrentHashMap.newKeySet()).add(id);
+        }
+        if (processGroupFlow.getFlow() != null && processGroupFlow.getFlow().getProcessGroups() != null) {
+            Set<String> ids = children.computeIfAbsent(id, key -> ConcurrentHashMap.newKeySet());
+            processGroupFlow.getFlow().getProcessGroups().forEach(processGroup -> ids.add(processGroup.getId()));
+        }
+    }
+
+    /**
+     * get the index by name of the components of the flow, build only if the flow change
+     *
+     * @param processGroupFlow the processGroupFlow
+     * @return the index
+     */
+    public ComponentNameIndex getNameIndex(ProcessGroupFlowDTO processGroupFlow) {
+        if (processGroupFlow.getId() == null) {
+            return ComponentNameIndex.of(processGroupFlow.getFlow());
+        }
+        return indexes.compute(processGroupFlow.getId(), (id, index) ->
+                index != null && index.isIndexOf(processGroupFlow.getFlow()) ? index : ComponentNameIndex.of(processGroupFlow.getFlow()));
+    }
+
+    /**
+     * get the registry by id of the components of the flow, build only if the flow change
+     *
+     * @param processGroupFlow the processGroupFlow
+     * @return the registry
+     */
+    public ComponentRegistry getRegistry(ProcessGroupFlowDTO processGroupFlow) {
+        if (processGroupFlow.getId() == null) {
+            return ComponentRegistry.of(processGroupFlow.getFlow());
+        }
+        return registries.compute(processGroupFlow.getId(), (id, registry) ->
+                registry != null && registry.isRegistryOf(processGroupFlow.getFlow()) ? registry : ComponentRegistry.of(processGroupFlow.getFlow()));
+    }
+
+    /**
+     * get the occupancy grid of the positions of the components of the flow, build only if the flow change
+     *
+     * @param processGroupFlow the processGroupFlow
+     * @return the grid
+     */
+    public OccupancyGrid getOccupancyGrid(ProcessGroupFlowDTO processGroupFlow) {
+        if (processGroupFlow.getId() == null) {
+            return OccupancyGrid.of(processGroupFlow.getFlow());
+        }
+        return grids.compute(processGroupFlow.getId(), (id, grid) ->
+                grid != null && grid.isGridOf(processGroupFlow.getFlow()) ? grid : OccupancyGrid.of(processGroupFlow.getFlow()));
+    }
+
+    /**
+     * add a process group just created on the flow of his parent in cache, his position is added on the occupancy grid
+     * (no rebuild) and the index by name is rebuild on next use. Do nothing if the parent is not in cache.
+     * The list of groups of the flow is replaced by a copy (never changed in place), the readers of the flow in
+     * progress keep the old list.
+     *
+     * @param parentId the id of the parent process group (or root)
+     * @param processGroup the process group created
+     */
+    public synchronized void addProcessGroup(String parentId, ProcessGroupEntity processGroup) {
+        if (parentId == null) return;
+        String key = resolve(parentId);
+        ProcessGroupFlowEntity flowEntity = flows.get(key);
+        if (flowEntity == null || flowEntity.getProcessGroupFlow() == null || flowEntity.getProcessGroupFlow().getFlow() == null) return;
+        FlowDTO flow = flowEntity.getProcessGroupFlow().getFlow();
+        if (processGroup.getPosition() == null && processGroup.getComponent() != null) {
+            processGroup.setPosition(processGroup.getComponent().getPosition());
+        }
+        List<ProcessGroupEntity> processGroups = flow.getProcessGroups() == null ? new ArrayList<>() : new ArrayList<>(flow.getProcessGroups());
+        processGroups.add(processGroup);
+        flow.setProcessGroups(processGroups);
+        children.computeIfAbsent(key, id -> ConcurrentHashMap.newKeySet()).add(processGroup.getId());
+        indexes.remove(key);
+        registries.remove(key);
+        OccupancyGrid grid = grids.get(key);
+        if (grid != null && grid.isGridOf(flow)) {
+            grid.add(processGroup.getPosition());
+        }
+    }
+
+    /**
+     * find the id of the process group already browsed on this branch
+     *
+     * @param branch the branch
+     * @return the id if the branch is already known
+     */
+    public Optional<String> findIdByPath(List<String> branch) {
+        return Optional.ofNullable(paths.get(toPath(branch)));
+    }
+
+    /**
+     * register the id of the process group for this branch
+     *
+     * @param branch the branch
+     * @param id the id of the process group
+     */
+    public void putPath(List<String> branch, String id) {
+        paths.put(toPath(branch), id);
+    }
+
+    /**
+     * remove the flow of the process group from the cache
+     *
+     * @param id the id of process group (or root)
+     */
+    public void invalidate(String id) {
+        if (id == null) return;
+        flows.remove(resolve(id));
+        indexes.remove(resolve(id));
+        registries.remove(resolve(id));
+        grids.remove(resolve(id));
+    }
+
+    /**
+     * remove the flow of the process group and of all his descendants from the cache
+     *
+     * @param id the id of process group (or root)
+     */
+    public void invalidateTree(String id) {
+        if (id == null) return;
+        Set<String> visited = new HashSet<>();
+        Deque<String> pending = new ArrayDeque<>();
+        pending.push(resolve(id));
+        while (!pending.isEmpty()) {
+            String current = pending.pop();
+            if (!visited.add(current)) continue;
+            invalidate(current);
+            pending.addAll(children.getOrDefault(current, Collections.emptySet()));
+        }
+    }
+
+    /**
+     * remove from the cache the root, the groups of the branch, all the descendants of the last group and their paths.
+     * The flows of the other branches stay in cache.
+     *
+     * @param branch the branch (root &gt; a &gt; b)
+     */
+    public void invalidateBranch(List<String> branch) {
+        invalidate(ROOT);
+        for (int i = 2; i < branch.size(); i++) {
+            invalidate(paths.get(toPath(branch.subList(0, i))));
+        }
+        invalidateTree(branch.size() < 2 ? ROOT : paths.get(toPath(branch)));
+        String path = toPath(branch);
+        paths.keySet().removeIf(key -> key.equals(path) || key.startsWith(path + PATH_SEPARATOR) || path.startsWith(key + PATH_SEPARATOR));
+    }
+
+    /**
+     * clear the cache (flows and paths)
+     */
+    public void invalidateAll() {
+        flows.clear();
+        paths.clear();
+        indexes.clear();
+        registries.clear();
+        grids.clear();
+        children.clear();
+        rootId = null;
+    }
+
+    private String resolve(String id) {
+        String root = rootId;
+        return ROOT.equals(id) && root != null ? root : id;
+    }
+
+    private static String toPath(List<String> branch) {
+        return branch.stream().map(String::trim).collect(Collectors.joining(PATH_SEPARATOR));
+    }
+}
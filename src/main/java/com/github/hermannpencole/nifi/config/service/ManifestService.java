@@ -0,0 +1,263 @@
+package com.github.hermannpencole.nifi.config.service;
+
+import com.github.hermannpencole.nifi.config.model.ConfigException;
+import com.github.hermannpencole.nifi.config.model.ExecutionPlan;
+import com.github.hermannpencole.nifi.config.model.ManifestEntry;
+import com.github.hermannpencole.nifi.config.utils.FlowGraph;
+import com.github.hermannpencole.nifi.config.utils.FunctionUtils;
+import com.github.hermannpencole.nifi.swagger.ApiException;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Class that run all the entries of a manifest in one process, with the same access and the same cache of the flow.
+ * <p>
+ * An entry wait the end of the previous entries on the same branch, on a parent or on a child branch (and an apply
+ * wait the plan that write his file). The others entries run in parallel, bounded by parallelism. An entry is skipped
+ * when an entry it wait has failed. The flow of the branch is read again by each entry.
+ */
+@Singleton
+public class ManifestService {
+
+    /**
+     * The logger.
+     */
+    private final static Logger LOG = LoggerFactory.getLogger(ManifestService.class);
+
+    private final static List<String> MODES = Arrays.asList("updateConfig", "extractConfig", "deployTemplate", "undeploy", "plan", "apply");
+
+    private final Gson gson = new Gson();
+
+    @Inject
+    private UpdateProcessorService updateProcessorService;
+
+    @Inject
+    private ExtractProcessorService extractProcessorService;
+
+    @Inject
+    private TemplateService templateService;
+
+    @Inject
+    private PlanService planService;
+
+    @Inject
+    private FlowCacheService flowCacheService;
+
+    /**
+     * run the entries of the manifest and log the result of each entry
+     *
+     * @param fileManifest the manifest file
+     * @param parallelism the max number of entries run in parallel
+     * @param noStartProcessors turn off auto start of the processors in updateConfig and plan
+     * @param keepTemplate keep template after installation in deployTemplate
+     * @param failOnDuplicateNames fail on duplicate processor names in extractConfig
+     * @param removeControllers remove controller services in undeploy
+     * @throws IOException when io problem
+     * @throws ConfigException when the manifest is not valid or when an entry failed
+     */
+    public void run(String fileManifest, Integer parallelism, boolean noStartProcessors, boolean keepTemplate,
+                    boolean failOnDuplicateNames, boolean removeControllers) throws IOException {
+        File file = new File(fileManifest);
+        if (!file.exists()) {
+            throw new FileNotFoundException("Manifest " + file.getName() + " is empty or doesn't exist");
+        }
+        List<ManifestEntry> entries;
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            entries = gson.fromJson(reader, new TypeToken<List<ManifestEntry>>() { }.getType());
+        }
+        if (entries == null || entries.isEmpty()) {
+            throw new ConfigException("Manifest " + file.getName() + " has no entry");
+        }
+        List<List<String>> branches = branches(entries);
+        List<Set<Integer>> dependencies = dependencies(branches);
+        List<List<Integer>> waves = waves(dependencies);
+        LOG.info("Run {} entrie(s) of the manifest {} in {} wave(s)", entries.size(), file.getName(), waves.size());
+
+        String[] results = new String[entries.size()];
+        Set<Integer> succeeded = ConcurrentHashMap.newKeySet();
+        for (List<Integer> wave : waves) {
+            FunctionUtils.runParallel(wave, index -> {
+                ManifestEntry entry = entries.get(index);
+                if (!succeeded.containsAll(dependencies.get(index))) {
+                    results[index] = "SKIPPED, a previous entry on the same branch failed";
+                    return null;
+                }
+                long start = System.nanoTime();
+                try {
+                    LOG.info("Entry {} : {}", index + 1, entry);
+                    //the flow of the branch may have been changed by the previous entries on it
+                    flowCacheService.invalidateBranch(branches.get(index));
+                    execute(entry, branches.get(index), noStartProcessors, keepTemplate, failOnDuplicateNames, removeControllers);
+                    succeeded.add(index);
+                    results[index] = "SUCCESS in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms";
+                } catch (Exception e) {
+                    String message = e instanceof ApiException ? e.getMessage() + ": " + ((ApiException) e).getResponseBody() : e.getMessage();
+                    LOG.error("Entry {} : {}", index + 1, message, e);
+                    results[index] = "FAILED in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms : " + message;
+                }
+                return null;
+            }, parallelism);
+        }
+
+        int failed = entries.size() - succeeded.size();
+        LOG.info("Manifest {} : {} entrie(s) succeeded, {} failed or skipped", file.getName(), succeeded.size(), failed);
+        for (int i = 0; i < entries.size(); i++) {
+            LOG.info(" entry {} {} : {}", i + 1, entries.get(i), results[i]);
+        }
+        if (failed > 0) {
+            throw new ConfigException(failed + " entrie(s) of the manifest " + file.getName() + " failed or skipped");
+        }
+    }
+
+    /**
+     * run an entry
+     *
+     * @param entry the entry
+     * @param branch the branch of the entry
+     * @param noStartProcessors turn off auto start of the processors in updateConfig and plan
+     * @param keepTemplate keep template after installation in deployTemplate
+     * @param failOnDuplicateNames fail on duplicate processor names in extractConfig
+     * @param removeControllers remove controller services in undeploy
+     * @throws IOException when io problem
+     */
+    void execute(ManifestEntry entry, List<String> branch, boolean noStartProcessors, boolean keepTemplate,
+                 boolean failOnDuplicateNames, boolean removeControllers) throws IOException {
+        switch (entry.getMode()) {
+            case "updateConfig":
+                updateProcessorService.updateByBranch(branch, entry.getConf(), noStartProcessors);
+                break;
+            case "extractConfig":
+                extractProcessorService.extractByBranch(branch, entry.getConf(), failOnDuplicateNames);
+                break;
+            case "deployTemplate":
+                templateService.installOnBranch(branch, entry.getConf(), keepTemplate);
+                break;
+            case "plan":
+                planService.plan(branch, entry.getConf(), entry.getPlan(), noStartProcessors);
+                break;
+            case "apply":
+                planService.apply(entry.getPlan());
+                break;
+            default:
+                templateService.undeploy(branch, removeControllers);
+        }
+    }
+
+    /**
+     * check the entries and give the branch of each entry, the branch of an apply is the branch of the plan that
+     * write his file or else the branch of his file (root if unknown)
+     *
+     * @param entries the entries
+     * @return the branch by entry
+     * @throws IOException when io problem
+     */
+    public List<List<String>> branches(List<ManifestEntry> entries) throws IOException {
+        List<List<String>> branches = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) {
+            ManifestEntry entry = entries.get(i);
+            if (entry == null || !MODES.contains(entry.getMode())) {
+                throw new ConfigException("Entry " + (i + 1) + " of the manifest : mode must be in " + MODES);
+            }
+            if (entry.getConf() == null && !entry.getMode().equals("undeploy") && !entry.getMode().equals("apply")) {
+                throw new ConfigException("Entry " + (i + 1) + " of the manifest : conf is mandatory for the mode " + entry.getMode());
+            }
+            if (entry.getPlan() == null && (entry.getMode().equals("plan") || entry.getMode().equals("apply"))) {
+                throw new ConfigException("Entry " + (i + 1) + " of the manifest : plan is mandatory for the mode " + entry.getMode());
+            }
+            if (entry.getMode().equals("apply") && entry.getBranch() == null) {
+                branches.add(planBranch(entries.subList(0, i), branches, entry.getPlan()));
+                continue;
+            }
+            List<String> branch = Arrays.stream((entry.getBranch() == null ? "root" : entry.getBranch()).split(">"))
+                    .map(String::trim).collect(Collectors.toList());
+            if (!branch.get(0).equals("root")) {
+                throw new ConfigException("Entry " + (i + 1) + " of the manifest : the branch address must begin with the element 'root' ( sample : root > branch > sub-branch)");
+            }
+            branches.add(branch);
+        }
+        return branches;
+    }
+
+    private List<String> planBranch(List<ManifestEntry> previous, List<List<String>> branches, String filePlan) throws IOException {
+        for (int i = previous.size() - 1; i >= 0; i--) {
+            if (previous.get(i).getMode().equals("plan") && new File(previous.get(i).getPlan()).equals(new File(filePlan))) {
+                return branches.get(i);
+            }
+        }
+        File file = new File(filePlan);
+        if (file.exists()) {
+            try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+                ExecutionPlan plan = gson.fromJson(reader, ExecutionPlan.class);
+                if (plan != null && plan.getBranch() != null && !plan.getBranch().isEmpty()) {
+                    return plan.getBranch();
+                }
+            }
+        }
+        return Collections.singletonList("root");
+    }
+
+    /**
+     * the previous entries that each entry must wait : the entries on the same branch, on a parent or on a child
+     *
+     * @param branches the branch by entry
+     * @return the index of the entries to wait by entry
+     */
+    public static List<Set<Integer>> dependencies(List<List<String>> branches) {
+        List<Set<Integer>> dependencies = new ArrayList<>();
+        for (int j = 0; j < branches.size(); j++) {
+            Set<Integer> previous = new TreeSet<>();
+            for (int i = 0; i < j; i++) {
+                if (overlap(branches.get(i), branches.get(j))) {
+                    previous.add(i);
+                }
+            }
+            dependencies.add(previous);
+        }
+        return dependencies;
+    }
+
+    /**
+     * group the entries by wave, an entry run after all the entries it wait
+     *
+     * @param dependencies the index of the entries to wait by entry
+     * @return the index of the entries by wave
+     */
+    public static List<List<Integer>> waves(List<Set<Integer>> dependencies) {
+        FlowGraph graph = new FlowGraph();
+        for (int j = 0; j < dependencies.size(); j++) {
+            graph.addNode(String.valueOf(j));
+            for (Integer i : dependencies.get(j)) {
+                graph.addEdge(String.valueOf(i), String.valueOf(j));
+            }
+        }
+        Map<String, Integer> levels = graph.levels();
+        List<List<Integer>> waves = new ArrayList<>();
+        for (int j = 0; j < dependencies.size(); j++) {
+            int level = levels.get(String.valueOf(j));
+            while (waves.size() <= level) waves.add(new ArrayList<>());
+            waves.get(level).add(j);
+        }
+        return waves;
+    }
+
+    /**
+     * @param branch the branch
+     * @param other the other branch
+     * @return true if the branches are the same or if one is a parent of the other
+     */
+    static boolean overlap(List<String> branch, List<String> other) {
+        int size = Math.min(branch.size(), other.size());
+        return branch.subList(0, size).equals(other.subList(0, size));
+    }
+}
@@ -0,0 +1,404 @@
+package com.github.hermannpencole.nifi.config.service;
+
+import com.github.hermannpencole.nifi.config.model.*;
+import com.github.hermannpencole.nifi.config.utils.ComponentNameIndex;
+import com.github.hermannpencole.nifi.config.utils.FlowGraph;
+import com.github.hermannpencole.nifi.config.utils.FunctionUtils;
+import com.github.hermannpencole.nifi.config.utils.GroupProcessorsReader;
+import com.github.hermannpencole.nifi.swagger.ApiException;
+import com.github.hermannpencole.nifi.swagger.client.ConnectionsApi;
+import com.github.hermannpencole.nifi.swagger.client.FlowApi;
+import com.github.hermannpencole.nifi.swagger.client.ProcessGroupsApi;
+import com.github.hermannpencole.nifi.swagger.client.ProcessorsApi;
+import com.github.hermannpencole.nifi.swagger.client.model.*;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Class that split updateConfig in two : the plan resolve the names and write the calls to make in a file, the apply
+ * make only these calls.
+ * <p>
+ * The plan contain only the components that differ (see DiffService). Only the running processors updated are stopped
+ * and started again, the apply run in parallel (bounded by parallelism) the steps that don't depend on each other.
+ * The revisions of the plan are the revisions read by the plan : when the flow change between the plan and the apply
+ * nifi refuse the call and the apply stop.
+ */
+@Singleton
+public class PlanService {
+
+    /**
+     * The logger.
+     */
+    private final static Logger LOG = LoggerFactory.getLogger(PlanService.class);
+
+    private final static String PATH_SEPARATOR = " > ";
+
+    private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+    @Inject
+    private ProcessGroupService processGroupService;
+
+    @Inject
+    private ProcessorService processorService;
+
+    @Inject
+    private ControllerServicesService controllerServicesService;
+
+    @Inject
+    private ConnectionsUpdater connectionsUpdater;
+
+    @Inject
+    private DiffService diffService;
+
+    @Inject
+    private FlowCacheService flowCacheService;
+
+    @Inject
+    private FlowApi flowapi;
+
+    @Inject
+    private ProcessorsApi processorsApi;
+
+    @Inject
+    private ConnectionsApi connectionsApi;
+
+    @Inject
+    private ProcessGroupsApi processGroupsApi;
+
+    @Named("parallelism")
+    @Inject
+    public Integer parallelism;
+
+    /**
+     * compute the plan of the update of the branch with the configuration and write it
+     *
+     * @param branch the branch
+     * @param fileConfiguration fileConfiguration
+     * @param filePlan the file where the plan is written
+     * @param optionNoStartProcessors if optionNoStartProcessors
+     * @return the plan
+     * @throws IOException when io problem
+     * @throws ApiException when api problem
+     */
+    public ExecutionPlan plan(List<String> branch, String fileConfiguration, String filePlan, boolean optionNoStartProcessors) throws IOException, ApiException {
+        File file = new File(fileConfiguration);
+        if (!file.exists()) {
+            throw new FileNotFoundException("File configuration " + file.getName() + " is empty or doesn't exist");
+        }
+        ProcessGroupFlowEntity componentSearch = processGroupService.changeDirectory(branch)
+                .orElseThrow(() -> new ConfigException(("cannot find " + Arrays.toString(branch.toArray()))));
+
+        ConfigDiff diff;
+        try (GroupProcessorsReader reader = new GroupProcessorsReader(new InputStreamReader(new FileInputStream(file), "UTF-8"))) {
+            diff = diffService.diff(reader, componentSearch);
+        }
+        diff.getChanges().forEach(LOG::info);
+        LOG.info("Diff : " + diff.getSummary());
+        GroupProcessorsEntity configuration = diff.getConfiguration();
+        if (configuration.getConnectionPorts() != null && !configuration.getConnectionPorts().isEmpty()) {
+            throw new ConfigException("The routes (connections) are not supported by plan, use updateConfig");
+        }
+
+        ExecutionPlan plan = new ExecutionPlan();
+        plan.setBranch(branch);
+        plan.setConfiguration(file.getName());
+        List<PlanStep> starts = new ArrayList<>();
+        List<Integer> updates = new ArrayList<>();
+        planGroup(plan, configuration, componentSearch, componentSearch.getProcessGroupFlow().getBreadcrumb().getBreadcrumb().getName(),
+                optionNoStartProcessors, starts, updates);
+
+        //the controllers are updated one after the other, after the processors
+        Integer previous = null;
+        for (PlanStep step : planControllers(configuration.getControllerServicesDTO(), componentSearch.getProcessGroupFlow().getId())) {
+            plan.addStep(step);
+            step.getDependsOn().addAll(previous == null ? updates : Collections.singletonList(previous));
+            previous = step.getId();
+        }
+        if (previous != null) {
+            for (PlanStep start : starts) start.getDependsOn().add(previous);
+        }
+
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(filePlan), StandardCharsets.UTF_8)) {
+            gson.toJson(plan, writer);
+        }
+        LOG.info("{} step(s) planned in {}", plan.getSteps().size(), filePlan);
+        return plan;
+    }
+
+    /**
+     * add the steps of the processors and the connections of the group and of his sub groups
+     */
+    private void planGroup(ExecutionPlan plan, GroupProcessorsEntity configuration, ProcessGroupFlowEntity componentSearch, String path,
+                           boolean optionNoStartProcessors, List<PlanStep> starts, List<Integer> updates) {
+        ComponentNameIndex index = flowCacheService.getNameIndex(componentSearch.getProcessGroupFlow());
+        for (ProcessorDTO processorOnConfig : configuration.getProcessors()) {
+            ProcessorEntity processor = index.findProcessor(processorOnConfig.getName())
+                    .orElseThrow(() -> new ConfigException(("cannot find " + processorOnConfig.getName())));
+            String name = path + PATH_SEPARATOR + processorOnConfig.getName().trim();
+            boolean running = ProcessorDTO.StateEnum.RUNNING.equals(processor.getComponent().getState());
+
+            PlanStep stop = null;
+            if (running) {
+                stop = plan.addStep(new PlanStep(PlanStep.Type.STOP_PROCESSOR, "stop processor " + name));
+                stop.setProcessor(createStateEntity(processor, ProcessorDTO.StateEnum.RUNNING));
+            }
+
+            PlanStep update = plan.addStep(new PlanStep(PlanStep.Type.UPDATE_PROCESSOR, "update processor " + name));
+            UpdateProcessorService.prepareProcessor(processor, processorOnConfig, false);
+            ProcessorEntity body = new ProcessorEntity();
+            body.setId(processor.getId());
+            body.setRevision(copyRevision(processor.getRevision()));
+            body.setComponent(processorOnConfig);
+            update.setProcessor(body);
+            if (stop != null) update.getDependsOn().add(stop.getId());
+            updates.add(update.getId());
+
+            if (running && !optionNoStartProcessors) {
+                PlanStep start = plan.addStep(new PlanStep(PlanStep.Type.START_PROCESSOR, "start processor " + name));
+                start.setProcessor(createStateEntity(processor, ProcessorDTO.StateEnum.STOPPED));
+                start.getDependsOn().add(update.getId());
+                starts.add(start);
+            }
+        }
+
+        for (GroupProcessorsEntity procGroupInConf : configuration.getGroupProcessorsEntity()) {
+            ProcessGroupEntity processGroup = index.findProcessGroup(procGroupInConf.getName())
+                    .orElseThrow(() -> new ConfigException(("cannot find " + procGroupInConf.getName())));
+            planGroup(plan, procGroupInConf, flowCacheService.getFlow(processGroup.getId()), path + PATH_SEPARATOR + procGroupInConf.getName().trim(),
+                    optionNoStartProcessors, starts, updates);
+        }
+
+        if (configuration.getConnections() == null) return;
+        Map<String, ConnectionEntity> currentConnections = new HashMap<>();
+        if (componentSearch.getProcessGroupFlow().getFlow().getConnections() != null) {
+            componentSearch.getProcessGroupFlow().getFlow().getConnections()
+                    .forEach(entity -> currentConnections.putIfAbsent(entity.getComponent().getName(), entity));
+        }
+        for (Connection config : configuration.getConnections()) {
+            ConnectionEntity live = currentConnections.get(config.getName());
+            if (live == null) {
+                PlanStep create = plan.addStep(new PlanStep(PlanStep.Type.CREATE_CONNECTION, "create connection " + path + PATH_SEPARATOR + config.getName()));
+                create.setGroupId(componentSearch.getProcessGroupFlow().getId());
+                create.setConnection(connectionsUpdater.createConnectionEntity(config, componentSearch));
+            } else {
+                PlanStep update = plan.addStep(new PlanStep(PlanStep.Type.UPDATE_CONNECTION, "update connection " + path + PATH_SEPARATOR + config.getName()));
+                ConnectionsUpdater.setConfig(live.getComponent(), config);
+                ConnectionEntity body = new ConnectionEntity();
+                body.setId(live.getId());
+                body.setRevision(copyRevision(live.getRevision()));
+                body.setComponent(live.getComponent());
+                update.setConnection(body);
+            }
+        }
+    }
+
+    /**
+     * the steps of the controller services, a controller that would be replaced by updateConfig (same name on the
+     * group and on an ancestor) is refused
+     */
+    private List<PlanStep> planControllers(List<ControllerServiceDTO> controllerServices, String groupId) {
+        List<PlanStep> result = new ArrayList<>();
+        if (controllerServices == null || controllerServices.isEmpty()) return result;
+        ControllerServicesEntity controllerServicesEntity = flowapi.getControllerServicesFromGroup(groupId, true, false);
+        if (controllerServicesEntity.getControllerServices() == null) controllerServicesEntity.setControllerServices(new ArrayList<>());
+        for (ControllerServiceDTO controllerServiceDTO : controllerServices) {
+            List<ControllerServiceEntity> all = controllerServicesEntity.getControllerServices().stream()
+                    .filter(item -> item.getComponent().getName().trim().equals(controllerServiceDTO.getName().trim()))
+                    .collect(Collectors.toList());
+            if (all.isEmpty()) {
+                throw new ConfigException("Cannot find controller " + controllerServiceDTO.getName());
+            } else if (all.size() > 1) {
+                throw new ConfigException("Multiple controller find with the same name " + controllerServiceDTO.getName() + ", the replacement is not supported by plan, use updateConfig");
+            }
+            ControllerServiceEntity live = all.get(0);
+            ControllerServiceEntity entity = new ControllerServiceEntity();
+            entity.setId(live.getId());
+            entity.setRevision(copyRevision(live.getRevision()));
+            entity.setComponent(new ControllerServiceDTO());
+            entity.getComponent().setId(live.getId());
+            entity.getComponent().setName(live.getComponent().getName());
+            entity.getComponent().setParentGroupId(live.getComponent().getParentGroupId());
+            entity.getComponent().setReferencingComponents(live.getComponent().getReferencingComponents());
+            entity.getComponent().setProperties(null);
+            entity.getComponent().setDescriptors(null);
+            entity.getComponent().setValidationErrors(null);
+            PlanStep step = new PlanStep(PlanStep.Type.UPDATE_CONTROLLER_SERVICE, "update controller service " + controllerServiceDTO.getName().trim());
+            step.setGroupId(groupId);
+            step.setControllerService(entity);
+            step.setControllerServiceConfig(controllerServiceDTO);
+            result.add(step);
+        }
+        return result;
+    }
+
+    /**
+     * read the plan and make his calls, wave by wave
+     *
+     * @param filePlan the file of the plan
+     * @throws IOException when io problem
+     */
+    public void apply(String filePlan) throws IOException {
+        File file = new File(filePlan);
+        if (!file.exists()) {
+            throw new FileNotFoundException("File plan " + file.getName() + " is empty or doesn't exist");
+        }
+        ExecutionPlan plan;
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            plan = gson.fromJson(reader, ExecutionPlan.class);
+        }
+        List<List<PlanStep>> waves = waves(plan.getSteps());
+        LOG.info("Apply {} step(s) in {} wave(s) on {}", plan.getSteps().size(), waves.size(), plan.getBranch());
+
+        String clientId = flowapi.generateClientId();
+        //the last revision known by component, and the processors started again by a controller service
+        Map<String, RevisionDTO> revisions = new ConcurrentHashMap<>();
+        Set<String> restarted = ConcurrentHashMap.newKeySet();
+        for (List<PlanStep> wave : waves) {
+            List<String> errors = FunctionUtils.runParallel(wave, step -> {
+                try {
+                    LOG.info("Step {} : {}", step.getId(), step.getDescription());
+                    execute(step, clientId, revisions, restarted);
+                    return null;
+                } catch (RuntimeException e) {
+                    LOG.error(e.getMessage());
+                    return "step " + step.getId() + " (" + step.getDescription() + ") " + e.getMessage();
+                }
+            }, parallelism).stream().filter(Objects::nonNull).collect(Collectors.toList());
+            if (!errors.isEmpty()) {
+                throw new ConfigException(errors.size() + " step(s) failed : " + String.join(", ", errors));
+            }
+        }
+    }
+
+    private void execute(PlanStep step, String clientId, Map<String, RevisionDTO> revisions, Set<String> restarted) {
+        try {
+            switch (step.getType()) {
+                case STOP_PROCESSOR:
+                case START_PROCESSOR:
+                    ProcessorEntity processor = step.getProcessor();
+                    if (restarted.contains(processor.getId())) {
+                        processor = processorService.getById(processor.getId());
+                    } else {
+                        processor.setRevision(lastRevision(processor.getId(), processor.getRevision(), clientId, revisions));
+                    }
+                    processorService.setState(processor, step.getType() == PlanStep.Type.STOP_PROCESSOR ? ProcessorDTO.StateEnum.STOPPED : ProcessorDTO.StateEnum.RUNNING);
+                    revisions.put(processor.getId(), processor.getRevision());
+                    break;
+                case UPDATE_PROCESSOR:
+                    ProcessorEntity body = step.getProcessor();
+                    body.setRevision(lastRevision(body.getId(), body.getRevision(), clientId, revisions));
+                    revisions.put(body.getId(), processorsApi.updateProcessor(body.getId(), body).getRevision());
+                    break;
+                case UPDATE_CONNECTION:
+                    ConnectionEntity connection = step.getConnection();
+                    connection.setRevision(lastRevision(connection.getId(), connection.getRevision(), clientId, revisions));
+                    revisions.put(connection.getId(), connectionsApi.updateConnection(connection.getId(), connection).getRevision());
+                    break;
+                case CREATE_CONNECTION:
+                    step.getConnection().getRevision().setClientId(clientId);
+                    processGroupsApi.createConnection(step.getGroupId(), step.getConnection());
+                    break;
+                case UPDATE_CONTROLLER_SERVICE:
+                    updateController(step.getGroupId(), step.getControllerService(), step.getControllerServiceConfig(), restarted);
+                    break;
+                default:
+                    throw new ConfigException("Unknown step type " + step.getType());
+            }
+        } catch (ApiException e) {
+            throw new ConfigException(e.getMessage() + ": " + e.getResponseBody(), e);
+        }
+    }
+
+    /**
+     * same sequence than updateConfig : the referencing processors are stopped, the referencing controllers and the
+     * controller are disabled by waves on the graph of the services, the controller is updated and all is enabled (by
+     * waves) and started again
+     *
+     * @param groupId the group of the plan (the graph is build on his services and the services of his ancestors),
+     *                the group of the controller for a plan written without it
+     */
+    private void updateController(String groupId, ControllerServiceEntity controllerServiceEntity, ControllerServiceDTO controllerServiceDTO, Set<String> restarted) {
+        String graphGroupId = groupId == null ? controllerServiceEntity.getComponent().getParentGroupId() : groupId;
+        List<String> ids = Collections.singletonList(controllerServiceEntity.getId());
+        if (controllerServiceDTO.getProperties() != null && !controllerServiceDTO.getProperties().isEmpty()) {
+            controllerServicesService.setStateReferenceProcessors(controllerServiceEntity, UpdateControllerServiceReferenceRequestEntity.StateEnum.STOPPED);
+            controllerServicesService.setStateControllerServices(graphGroupId, ids, ControllerServiceDTO.StateEnum.DISABLED, true);
+            controllerServicesService.updateControllerService(controllerServiceDTO, controllerServiceEntity, false);
+        }
+        controllerServicesService.setStateControllerServices(graphGroupId, ids, ControllerServiceDTO.StateEnum.ENABLED, true);
+        controllerServicesService.setStateReferenceProcessors(controllerServiceEntity, UpdateControllerServiceReferenceRequestEntity.StateEnum.RUNNING);
+        if (controllerServiceEntity.getComponent().getReferencingComponents() != null) {
+            controllerServiceEntity.getComponent().getReferencingComponents().stream()
+                    .filter(component -> ControllerServiceReferencingComponentDTO.ReferenceTypeEnum.PROCESSOR.equals(component.getComponent().getReferenceType()))
+                    .forEach(component -> restarted.add(component.getId()));
+        }
+    }
+
+    /**
+     * order the steps in waves : a step is in the wave after the last wave of the steps it depends on
+     *
+     * @param steps the steps
+     * @return the waves
+     */
+    static List<List<PlanStep>> waves(List<PlanStep> steps) {
+        Map<Integer, PlanStep> byId = new LinkedHashMap<>();
+        FlowGraph graph = new FlowGraph();
+        for (PlanStep step : steps) {
+            if (byId.put(step.getId(), step) != null) {
+                throw new ConfigException("The plan have two steps " + step.getId());
+            }
+            graph.addNode(String.valueOf(step.getId()));
+        }
+        for (PlanStep step : steps) {
+            for (Integer dependency : step.getDependsOn()) {
+                if (!byId.containsKey(dependency) || dependency == step.getId()) {
+                    throw new ConfigException("The step " + step.getId() + " depends on an invalid step " + dependency);
+                }
+                graph.addEdge(String.valueOf(dependency), String.valueOf(step.getId()));
+            }
+        }
+        if (graph.stronglyConnectedComponents().stream().anyMatch(component -> component.size() > 1)) {
+            throw new ConfigException("The plan have a cycle in the dependencies of the steps");
+        }
+        Map<Integer, List<PlanStep>> waves = new TreeMap<>();
+        graph.levels().forEach((id, level) -> waves.computeIfAbsent(level, key -> new ArrayList<>()).add(byId.get(Integer.valueOf(id))));
+        return new ArrayList<>(waves.values());
+    }
+
+    private static RevisionDTO lastRevision(String id, RevisionDTO planned, String clientId, Map<String, RevisionDTO> revisions) {
+        RevisionDTO revision = copyRevision(revisions.getOrDefault(id, planned));
+        revision.setClientId(clientId);
+        return revision;
+    }
+
+    private static RevisionDTO copyRevision(RevisionDTO revision) {
+        RevisionDTO result = new RevisionDTO();
+        result.setVersion(revision.getVersion());
+        result.setClientId(revision.getClientId());
+        return result;
+    }
+
+    private static ProcessorEntity createStateEntity(ProcessorEntity processor, ProcessorDTO.StateEnum state) {
+        ProcessorEntity entity = new ProcessorEntity();
+        entity.setId(processor.getId());
+        entity.setRevision(copyRevision(processor.getRevision()));
+        entity.setComponent(new ProcessorDTO());
+        entity.getComponent().setId(processor.getId());
+        entity.getComponent().setName(processor.getComponent().getName());
+        entity.getComponent().setParentGroupId(processor.getComponent().getParentGroupId());
+        entity.getComponent().setState(state);
+        entity.getComponent().setRestricted(null);
+        return entity;
+    }
+}
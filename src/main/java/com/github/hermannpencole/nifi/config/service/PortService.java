@@ -1,6 +1,7 @@
 package com.github.hermannpencole.nifi.config.service;
 
 import com.github.hermannpencole.nifi.config.model.ConfigException;
+import com.github.hermannpencole.nifi.config.utils.ComponentNameIndex;
 import com.github.hermannpencole.nifi.config.utils.FunctionUtils;
 import com.github.hermannpencole.nifi.swagger.ApiException;
 import com.github.hermannpencole.nifi.swagger.client.InputPortsApi;
@@ -15,7 +16,6 @@ import javax.inject.Named;
 import javax.inject.Singleton;
 import java.util.Optional;
 import java.util.function.Predicate;
-import java.util.stream.Stream;
 
 /**
  * Class that offer service for process group
@@ -47,6 +47,9 @@ public class PortService {
     @Inject
     private ProcessGroupsApi processGroupsApi;
 
+    @Inject
+    private FlowCacheService flowCacheService;
+
 
     /**
      * the the state of port
@@ -70,7 +73,7 @@ public class PortService {
             return;
         }
 
-        FunctionUtils.runWhile(()-> {
+        int polls = FunctionUtils.runWhileBackoff(()-> {
             boolean haveResult = false;
             try {
                 PortEntity body = new PortEntity();
@@ -89,6 +92,7 @@ public class PortService {
                 else
                     portEntity = outputPortsApi.updateOutputPort(port.getId(), body);
                 LOG.info(" {} ({}) is {} ", portEntity.getComponent().getName(), portEntity.getId(), portEntity.getComponent().getState());
+                flowCacheService.invalidate(port.getComponent().getParentGroupId());
                 haveResult = true;
             } catch (ApiException e) {
                 if (e.getResponseBody() == null || !e.getResponseBody().endsWith("Current state is STOPPING")) {
@@ -99,17 +103,15 @@ public class PortService {
             }
             return !haveResult;
         }, interval, timeout);
+        LOG.debug(" {} ({}) is {} after {} polls", port.getComponent().getName(), port.getId(), state, polls);
 
     }
 
-    private Optional<PortEntity> findPortEntityByName(final Stream<PortEntity> portEntities, final String name) {
-        return portEntities.filter(item -> item.getComponent().getName().trim().equals(name.trim())).findFirst();
-    }
-
-    public Optional<PortEntity> findPortEntityByName(final FlowDTO flow, final String componentName) {
-        Optional<PortEntity> result = findPortEntityByName(flow.getOutputPorts().stream(), componentName);
+    public Optional<PortEntity> findPortEntityByName(final ProcessGroupFlowDTO processGroupFlow, final String componentName) {
+        ComponentNameIndex index = flowCacheService.getNameIndex(processGroupFlow);
+        Optional<PortEntity> result = index.findOutputPort(componentName);
         if (!result.isPresent()) {
-            result = findPortEntityByName(flow.getInputPorts().stream(), componentName);
+            result = index.findInputPort(componentName);
         }
         return result;
     }
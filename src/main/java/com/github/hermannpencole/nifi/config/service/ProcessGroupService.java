@@ -2,6 +2,8 @@ package com.github.hermannpencole.nifi.config.service;
 
 import com.github.hermannpencole.nifi.config.model.ConfigException;
 import com.github.hermannpencole.nifi.config.model.TimeoutException;
+import com.github.hermannpencole.nifi.config.utils.ComponentRegistry;
+import com.github.hermannpencole.nifi.config.utils.FlowGraph;
 import com.github.hermannpencole.nifi.config.utils.FunctionUtils;
 import com.github.hermannpencole.nifi.swagger.ApiException;
 import com.github.hermannpencole.nifi.swagger.client.FlowApi;
@@ -14,10 +16,9 @@ import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
-import static com.github.hermannpencole.nifi.config.utils.FunctionUtils.findByComponentName;
-
 /**
  * Class that offer service for process group
  * <p>
@@ -30,9 +31,6 @@ public class ProcessGroupService {
      * The logger.
      */
     private final static Logger LOG = LoggerFactory.getLogger(ProcessGroupService.class);
-    private final static double ELEMENT_WIDTH = 430;
-    private final static double ELEMENT_HEIGHT = 220;
-    private final static double APPROXIMATE = 0.01;
 
     private final static String CONNECTION_EXCEPTION_REGEX = "Cannot delete Process Group because [a-zA-Z]+ " +
             "Port [a-zA-Z0-9-]+ has at least one [a-z]+ " +
@@ -41,6 +39,9 @@ public class ProcessGroupService {
     @Inject
     private FlowApi flowapi;
 
+    @Inject
+    private FlowCacheService flowCacheService;
+
     @Inject
     private ProcessGroupsApi processGroupsApi;
 
@@ -68,6 +69,15 @@ public class ProcessGroupService {
     @Named("interval")
     @Inject
     public Integer interval;
+
+    @Named("batchSchedule")
+    @Inject
+    public Boolean batchSchedule;
+
+    @Named("parallelism")
+    @Inject
+    public Integer parallelism;
+
     /**
      * browse nifi on branch pass in parameter
      *
@@ -76,13 +86,18 @@ public class ProcessGroupService {
      * @throws ApiException throw when api problem
      */
     public Optional<ProcessGroupFlowEntity> changeDirectory(List<String> branch) throws ApiException {
-        ProcessGroupFlowEntity flowEntity = flowapi.getFlow("root");
-        for (String processGroupName : branch.subList(1, branch.size())) {
-            Optional<ProcessGroupEntity> flowEntityChild = findByComponentName(flowEntity.getProcessGroupFlow().getFlow().getProcessGroups(), processGroupName);
+        Optional<String> idInCache = flowCacheService.findIdByPath(branch);
+        if (idInCache.isPresent()) {
+            return Optional.of(flowCacheService.getFlow(idInCache.get()));
+        }
+        ProcessGroupFlowEntity flowEntity = flowCacheService.getFlow(FlowCacheService.ROOT);
+        for (int i = 1; i < branch.size(); i++) {
+            Optional<ProcessGroupEntity> flowEntityChild = flowCacheService.getNameIndex(flowEntity.getProcessGroupFlow()).findProcessGroup(branch.get(i));
             if (!flowEntityChild.isPresent()) {
                 return Optional.empty();
             }
-            flowEntity = flowapi.getFlow(flowEntityChild.get().getId());
+            flowEntity = flowCacheService.getFlow(flowEntityChild.get().getId());
+            flowCacheService.putPath(branch.subList(0, i + 1), flowEntityChild.get().getId());
         }
         return Optional.of(flowEntity);
     }
@@ -109,28 +124,38 @@ public class ProcessGroupService {
         //generate clientID
         String clientId = flowapi.generateClientId();
         //find root
-        ProcessGroupFlowEntity flowEntity = flowapi.getFlow("root");
-        for (String processGroupName : branch.subList(1, branch.size())) {
-            Optional<ProcessGroupEntity> flowEntityChild = findByComponentName(flowEntity.getProcessGroupFlow().getFlow().getProcessGroups(), processGroupName);
+        ProcessGroupFlowEntity flowEntity = flowCacheService.getFlow(FlowCacheService.ROOT);
+        for (int i = 1; i < branch.size(); i++) {
+            String processGroupName = branch.get(i);
+            Optional<ProcessGroupEntity> flowEntityChild = flowCacheService.getNameIndex(flowEntity.getProcessGroupFlow()).findProcessGroup(processGroupName);
             if (!flowEntityChild.isPresent()) {
-                PositionDTO position = getNextPosition(flowEntity);
-                ProcessGroupEntity created = new ProcessGroupEntity();
-                created.setRevision(new RevisionDTO());
-                created.setComponent(new ProcessGroupDTO());
-                created.getRevision().setVersion(0L);
-                created.getRevision().setClientId(clientId);
-                created.getComponent().setName(processGroupName);
-                created.getComponent().setPosition(position);
-                created = createProcessGroup(flowEntity.getProcessGroupFlow().getId(), created);
-                if (comments != null) {
-                    //add comment
-                    created.getComponent().setComments(comments);
-                    created = updateProcessGroup(created.getId(), created);
+                //the entries of a manifest can create groups on the same parent in parallel, look again under lock
+                synchronized (this) {
+                    ProcessGroupFlowEntity parent = flowCacheService.getFlow(flowEntity.getProcessGroupFlow().getId());
+                    flowEntityChild = flowCacheService.getNameIndex(parent.getProcessGroupFlow()).findProcessGroup(processGroupName);
+                    if (!flowEntityChild.isPresent()) {
+                        PositionDTO position = getNextPosition(parent);
+                        ProcessGroupEntity created = new ProcessGroupEntity();
+                        created.setRevision(new RevisionDTO());
+                        created.setComponent(new ProcessGroupDTO());
+                        created.getRevision().setVersion(0L);
+                        created.getRevision().setClientId(clientId);
+                        created.getComponent().setName(processGroupName);
+                        created.getComponent().setPosition(position);
+                        created = createProcessGroup(parent.getProcessGroupFlow().getId(), created);
+                        if (comments != null) {
+                            //add comment
+                            created.getComponent().setComments(comments);
+                            created = updateProcessGroup(created.getId(), created);
+                        }
+                        //the parent have a new child, the next group of the run is placed without reload the parent
+                        flowCacheService.addProcessGroup(parent.getProcessGroupFlow().getId(), created);
+                        flowEntityChild = Optional.of(created);
+                    }
                 }
-                flowEntity = flowapi.getFlow(created.getId());
-            } else {
-                flowEntity = flowapi.getFlow(flowEntityChild.get().getId());
             }
+            flowEntity = flowCacheService.getFlow(flowEntityChild.get().getId());
+            flowCacheService.putPath(branch.subList(0, i + 1), flowEntity.getProcessGroupFlow().getId());
         }
         return flowEntity;
     }
@@ -169,32 +194,22 @@ public class ProcessGroupService {
         body.setState(state);
         body.setComponents(null);//for all
         flowapi.scheduleComponents(id, body);
+        //the state and the revision of all the components change
+        flowCacheService.invalidateTree(id);
     }
 
     /**
      * start the processor group.
      * Begin by processor that consumme flow and end with processor that consumme stream and create flow
+     * (level by level, the components of a level are started in parallel up to parallelism)
      *
      * @param processGroupFlow the processGroupFlow
      * @throws ApiException when api problem
      */
     public void start(ProcessGroupFlowEntity processGroupFlow) throws ApiException {
         try {
-            List<Set<?>> listing = reorder(processGroupFlow.getProcessGroupFlow());
-            for (int i = (listing.size() - 1); i >= 0; i--) {
-                Set<?> set = listing.get(i);
-                for (Object object : set) {
-                    if (object instanceof ProcessorEntity) {
-                        processorService.setState((ProcessorEntity) object, ProcessorDTO.StateEnum.RUNNING);
-                    } else if (object instanceof PortEntity) {
-                        portService.setState((PortEntity) object, PortDTO.StateEnum.STOPPED);
-                    }
-                }
-            }
-            for (ProcessGroupEntity procGroupInConf : processGroupFlow.getProcessGroupFlow().getFlow().getProcessGroups()) {
-                ProcessGroupFlowEntity processGroupFlowEntity = flowapi.getFlow(procGroupInConf.getId());
-                start(processGroupFlowEntity);
-            }
+            //the levels cover the components of all the descendants, the child groups are not walked again
+            startLevels(processGroupFlow.getProcessGroupFlow().getId(), reorder(processGroupFlow.getProcessGroupFlow()));
             setState(processGroupFlow.getProcessGroupFlow().getId(), ScheduleComponentsEntity.StateEnum.RUNNING);
         } catch (Exception e) {
             setState(processGroupFlow.getProcessGroupFlow().getId(), ScheduleComponentsEntity.StateEnum.STOPPED);
@@ -205,42 +220,14 @@ public class ProcessGroupService {
     /**
      * stop the processor group.
      * Begin by processor that consumme stream and create flow and end with processor that consumme flow.
+     * (level by level, before stopping a level wait that all the connections that feed it are empty)
      *
      * @param processGroupFlow the processGroupFlow
      * @throws ApiException when api problem
      */
     public void stop(ProcessGroupFlowEntity processGroupFlow) throws ApiException {
         try {
-            List<Set<?>> listing = reorder( processGroupFlow.getProcessGroupFlow());
-            for (int i = 0; i < (listing.size()); i++) {
-                Set<?> set = listing.get(i);
-
-                if (set.size()>0 && set.stream().findFirst().get() instanceof ConnectionEntity) {
-                    //make be sur that in one pass all queue are empty (for the case when there is cycle)
-                    boolean emptyQueue = true;
-                    do {
-                        emptyQueue = true;
-                        for (Object o : set) {
-                            emptyQueue = emptyQueue && connectionService.isEmptyQueue((ConnectionEntity) o);
-                        }
-                        if (!emptyQueue) {
-                            for (Object o : set) { connectionService.waitEmptyQueue((ConnectionEntity) o); }
-                        }
-                    } while (!emptyQueue);
-                }
-                //TODO manage remoteProcessGroup
-                for (Object object : set) {
-                    if (object instanceof ProcessorEntity) {
-                        processorService.setState((ProcessorEntity) object, ProcessorDTO.StateEnum.STOPPED);
-                    } else if (object instanceof PortEntity) {
-                        portService.setState((PortEntity) object, PortDTO.StateEnum.STOPPED);
-                    }
-                }
-            }
-            for (ProcessGroupEntity procGroupInConf : processGroupFlow.getProcessGroupFlow().getFlow().getProcessGroups()) {
-                ProcessGroupFlowEntity processGroupFlowEntity = flowapi.getFlow(procGroupInConf.getId());
-                stop(processGroupFlowEntity);
-            }
+            stopLevels(processGroupFlow.getProcessGroupFlow().getId(), reorder(processGroupFlow.getProcessGroupFlow()));
             setState(processGroupFlow.getProcessGroupFlow().getId(), ScheduleComponentsEntity.StateEnum.STOPPED);
         } catch (Exception e) {
             setState(processGroupFlow.getProcessGroupFlow().getId(), ScheduleComponentsEntity.StateEnum.RUNNING);
@@ -248,53 +235,298 @@ public class ProcessGroupService {
         }
     }
 
+    /**
+     * start only the components of the scope and the components that feed them, the rest of the branch is not touched
+     *
+     * @param processGroupFlow the processGroupFlow
+     * @param componentIds the id of the components of the scope (in the group or in his descendants)
+     * @throws ApiException when api problem
+     */
+    public void start(ProcessGroupFlowEntity processGroupFlow, Set<String> componentIds) throws ApiException {
+        String id = processGroupFlow.getProcessGroupFlow().getId();
+        List<Set<?>> listing = reorder(processGroupFlow.getProcessGroupFlow(), componentIds);
+        try {
+            startLevels(id, listing);
+        } catch (Exception e) {
+            stopLevels(id, listing);
+            throw e;
+        }
+    }
+
+    /**
+     * stop only the components of the scope and the components that feed them (for that the connections that feed the
+     * scope can be emptied), the rest of the branch keep processing data
+     *
+     * @param processGroupFlow the processGroupFlow
+     * @param componentIds the id of the components of the scope (in the group or in his descendants)
+     * @throws ApiException when api problem
+     */
+    public void stop(ProcessGroupFlowEntity processGroupFlow, Set<String> componentIds) throws ApiException {
+        String id = processGroupFlow.getProcessGroupFlow().getId();
+        List<Set<?>> listing = reorder(processGroupFlow.getProcessGroupFlow(), componentIds);
+        try {
+            stopLevels(id, listing);
+        } catch (Exception e) {
+            startLevels(id, listing);
+            throw e;
+        }
+    }
+
+    /**
+     * start the levels from the last to the first
+     *
+     * @param id the id of the process group that contains the levels
+     * @param listing the levels
+     */
+    private void startLevels(String id, List<Set<?>> listing) {
+        for (int i = (listing.size() - 1); i >= 0; i--) {
+            Set<?> set = listing.get(i);
+            if (Boolean.TRUE.equals(batchSchedule)) {
+                scheduleLevel(id, set, ScheduleComponentsEntity.StateEnum.RUNNING);
+                continue;
+            }
+            FunctionUtils.runParallel(new ArrayList<>(set), object -> {
+                if (object instanceof ProcessorEntity) {
+                    processorService.setState((ProcessorEntity) object, ProcessorDTO.StateEnum.RUNNING);
+                } else if (object instanceof PortEntity) {
+                    portService.setState((PortEntity) object, PortDTO.StateEnum.STOPPED);
+                }
+                return null;
+            }, parallelism);
+        }
+    }
+
+    /**
+     * stop the levels from the first to the last, before stopping a level wait that all the connections that feed it are empty
+     *
+     * @param id the id of the process group that contains the levels
+     * @param listing the levels
+     */
+    private void stopLevels(String id, List<Set<?>> listing) {
+        for (int i = 0; i < (listing.size()); i++) {
+            Set<?> set = listing.get(i);
+
+            if (set.size()>0 && set.stream().findFirst().get() instanceof ConnectionEntity) {
+                //all the queues must be empty in the same time (for the case when there is cycle)
+                connectionService.waitEmptyQueues(id, set.stream().map(ConnectionEntity.class::cast).collect(Collectors.toList()));
+            }
+            //TODO manage remoteProcessGroup
+            if (Boolean.TRUE.equals(batchSchedule)) {
+                scheduleLevel(id, set, ScheduleComponentsEntity.StateEnum.STOPPED);
+                continue;
+            }
+            FunctionUtils.runParallel(new ArrayList<>(set), object -> {
+                if (object instanceof ProcessorEntity) {
+                    processorService.setState((ProcessorEntity) object, ProcessorDTO.StateEnum.STOPPED);
+                } else if (object instanceof PortEntity) {
+                    portService.setState((PortEntity) object, PortDTO.StateEnum.STOPPED);
+                }
+                return null;
+            }, parallelism);
+        }
+    }
+
+    /**
+     * set the state of all the processors and ports of a level with only one request and wait once for all of them.
+     * The disabled components are ignored and the components already in the state are only waited.
+     *
+     * @param id the id of the process group that contains the level
+     * @param level the level (processors, ports, connections)
+     * @param state the state
+     */
+    private void scheduleLevel(String id, Set<?> level, ScheduleComponentsEntity.StateEnum state) {
+        Map<String, RevisionDTO> components = new HashMap<>();
+        Set<String> waited = new HashSet<>();
+        List<String> invalids = new ArrayList<>();
+        for (Object object : level) {
+            String componentId;
+            String currentState;
+            List<String> validationErrors;
+            RevisionDTO revision;
+            if (object instanceof ProcessorEntity) {
+                ProcessorEntity processor = (ProcessorEntity) object;
+                componentId = processor.getId();
+                currentState = String.valueOf(processor.getComponent().getState());
+                validationErrors = processor.getComponent().getValidationErrors();
+                revision = processor.getRevision();
+            } else if (object instanceof PortEntity) {
+                PortEntity port = (PortEntity) object;
+                componentId = port.getId();
+                currentState = String.valueOf(port.getComponent().getState());
+                validationErrors = port.getComponent().getValidationErrors();
+                revision = port.getRevision();
+            } else {
+                continue;
+            }
+            if (PortDTO.StateEnum.DISABLED.toString().equals(currentState)) {
+                LOG.info(" {} is already disabled nifi-config make no update", componentId);
+                continue;
+            }
+            if (state.equals(ScheduleComponentsEntity.StateEnum.RUNNING) && validationErrors != null && !validationErrors.isEmpty()) {
+                validationErrors.forEach(msg -> LOG.error(msg));
+                invalids.add(componentId);
+                continue;
+            }
+            if (!state.toString().equals(currentState)) {
+                components.put(componentId, revision);
+            }
+            waited.add(componentId);
+        }
+        if (!invalids.isEmpty()) {
+            throw new ConfigException("Cannot set " + state + " on invalid component(s) : " + String.join(", ", invalids));
+        }
+        if (!components.isEmpty()) {
+            ScheduleComponentsEntity body = new ScheduleComponentsEntity();
+            body.setId(id);
+            body.setState(state);
+            body.setComponents(components);
+            LOG.info(" {} component(s) of {} update for {}", components.size(), id, state);
+            try {
+                flowapi.scheduleComponents(id, body);
+            } catch (ApiException e) {
+                throw new ConfigException(e.getMessage() + ": " + e.getResponseBody(), e);
+            }
+            flowCacheService.invalidateTree(id);
+        }
+        waitState(id, waited, state);
+    }
+
+    /**
+     * wait that all the processors and ports are in the state.
+     * Each poll get only one recursive status of the process group and mark all the components that have reached the state
+     *
+     * @param id the id of the process group
+     * @param componentIds the id of the processors and ports (of the group or of his descendants)
+     * @param state the state
+     */
+    public void waitState(String id, Set<String> componentIds, ScheduleComponentsEntity.StateEnum state) {
+        if (componentIds.isEmpty()) return;
+        Set<String> pending = ConcurrentHashMap.newKeySet();
+        pending.addAll(componentIds);
+        int polls = FunctionUtils.runWhileBackoff(() -> {
+            ProcessGroupStatusEntity status = flowapi.getProcessGroupStatus(id, true, false, null);
+            if (status != null && status.getProcessGroupStatus() != null) {
+                removeInState(status.getProcessGroupStatus().getAggregateSnapshot(), pending, state);
+            }
+            LOG.info(" {} component(s) of {} waiting for {}", pending.size(), id, state);
+            return !pending.isEmpty();
+        }, interval, timeout);
+        LOG.debug(" {} component(s) of {} are {} after {} polls", componentIds.size(), id, state, polls);
+    }
+
+    /**
+     * remove from pending the processors and ports of the snapshot (and of his children) that are in the state
+     */
+    private void removeInState(ProcessGroupStatusSnapshotDTO snapshot, Set<String> pending, ScheduleComponentsEntity.StateEnum state) {
+        if (snapshot == null) return;
+        if (snapshot.getProcessorStatusSnapshots() != null) {
+            for (ProcessorStatusSnapshotEntity processor : snapshot.getProcessorStatusSnapshots()) {
+                ProcessorStatusSnapshotDTO processorStatus = processor.getProcessorStatusSnapshot();
+                if (processorStatus != null && isInState(String.valueOf(processorStatus.getRunStatus()), processorStatus.getActiveThreadCount(), state)) {
+                    pending.remove(processorStatus.getId());
+                }
+            }
+        }
+        for (List<PortStatusSnapshotEntity> ports : Arrays.asList(snapshot.getInputPortStatusSnapshots(), snapshot.getOutputPortStatusSnapshots())) {
+            if (ports == null) continue;
+            for (PortStatusSnapshotEntity port : ports) {
+                PortStatusSnapshotDTO portStatus = port.getPortStatusSnapshot();
+                if (portStatus != null && isInState(portStatus.getRunStatus(), portStatus.getActiveThreadCount(), state)) {
+                    pending.remove(portStatus.getId());
+                }
+            }
+        }
+        if (snapshot.getProcessGroupStatusSnapshots() != null) {
+            for (ProcessGroupStatusSnapshotEntity processGroup : snapshot.getProcessGroupStatusSnapshots()) {
+                removeInState(processGroup.getProcessGroupStatusSnapshot(), pending, state);
+            }
+        }
+    }
+
+    /**
+     * a component is stopped when it is not running (stopped, invalid, validating or disabled) and there are no more
+     * active thread
+     */
+    private static boolean isInState(String runStatus, Integer activeThreadCount, ScheduleComponentsEntity.StateEnum state) {
+        if (state.equals(ScheduleComponentsEntity.StateEnum.RUNNING)) return state.toString().equalsIgnoreCase(runStatus);
+        return !ScheduleComponentsEntity.StateEnum.RUNNING.toString().equalsIgnoreCase(runStatus) && (activeThreadCount == null || activeThreadCount == 0);
+    }
+
     /**
      * reorder for have the processor that consume stream -&gt; connection -&gt; processor connected etc ...in the good order.
      *
-     * Just put the first at the first and the other after trick for bypass cycle
+     * The components are placed by level of the flow graph (the cycles are collapsed, all the components of a cycle are
+     * in the same level), each level of components is preceded by the connections that feed it.
+     * Sample : components of level 0, connections to level 1, components of level 1, connections to level 2, ...
+     * The components of the group and of all his descendants are placed (like the scoped reorder).
      *
      * @param processGroupFlow processGroupFlow
      * @return the list of component reordered
      */
     public List<Set<?>> reorder(ProcessGroupFlowDTO processGroupFlow) {
-        List<Set<?>> level = new ArrayList<>();
-
-        Set<ProcessGroupFlowDTO> allProcessGroupFlow = getAllProcessGroupFlow(processGroupFlow);
-        Set<ConnectionEntity> allConnections = allProcessGroupFlow.stream().flatMap(p->p.getFlow().getConnections().stream()).collect(Collectors.toSet());
-        Set<ProcessorEntity> allProcessors = allProcessGroupFlow.stream().flatMap(p->p.getFlow().getProcessors().stream()).collect(Collectors.toSet());
-
-        //get the first
-        Set<String> destination = new HashSet<>();
-        Set<String> source = new HashSet<>();
-        allProcessors.forEach( processor-> source.add(processor.getId()));
-        allConnections.forEach( connection -> {
-            destination.add(connection.getDestinationId());
-            source.add(connection.getSourceId());
-        });
+        Set<ProcessGroupFlowDTO> allProcessGroupFlow = new HashSet<>();
+        addAllProcessGroupFlow(processGroupFlow, allProcessGroupFlow);
+        return reorder(allProcessGroupFlow, null);
+    }
 
-        //get the first (the first have no destination)
-        Set<String> first = new HashSet<>(source);
-        first.removeAll(destination);
-        level.add(first.stream().map(id -> findById(allProcessGroupFlow,id)).filter(Optional::isPresent).map(Optional::get).collect(Collectors.toSet()));
+    /**
+     * reorder only the components of the scope and the components that feed them (in the group and in all his descendants),
+     * each level is preceded by the connections that feed it and the empty levels are removed
+     *
+     * @param processGroupFlow processGroupFlow
+     * @param componentIds the id of the components of the scope
+     * @return the list of component reordered
+     */
+    public List<Set<?>> reorder(ProcessGroupFlowDTO processGroupFlow, Set<String> componentIds) {
+        Set<ProcessGroupFlowDTO> allProcessGroupFlow = new HashSet<>();
+        addAllProcessGroupFlow(processGroupFlow, allProcessGroupFlow);
+        return reorder(allProcessGroupFlow, componentIds);
+    }
 
-        //get the other (the other have destination)
-        level.add(allConnections);
-        level.add(destination.stream().map(id -> findById(allProcessGroupFlow,id)).filter(Optional::isPresent).map(Optional::get).collect(Collectors.toSet()));
+    private List<Set<?>> reorder(Set<ProcessGroupFlowDTO> allProcessGroupFlow, Set<String> componentIds) {
+        List<ConnectionEntity> allConnections = allProcessGroupFlow.stream().flatMap(p->p.getFlow().getConnections().stream()).collect(Collectors.toList());
+        List<ProcessorEntity> allProcessors = allProcessGroupFlow.stream().flatMap(p->p.getFlow().getProcessors().stream()).collect(Collectors.toList());
+        ComponentRegistry registry = ComponentRegistry.of(allProcessGroupFlow);
+
+        FlowGraph graph = new FlowGraph();
+        allProcessors.forEach( processor -> graph.addNode(processor.getId()));
+        allConnections.forEach( connection -> graph.addEdge(connection.getSourceId(), connection.getDestinationId()));
+        Map<String, Integer> levels = graph.levels();
+        Set<String> scope = componentIds == null ? levels.keySet() : graph.ancestors(componentIds);
+        int depth = levels.values().stream().mapToInt(Integer::intValue).max().orElse(0) + 1;
+
+        List<Set<Object>> components = new ArrayList<>();
+        List<Set<ConnectionEntity>> connections = new ArrayList<>();
+        for (int i = 0; i < depth; i++) {
+            components.add(new LinkedHashSet<>());
+            connections.add(new LinkedHashSet<>());
+        }
+        levels.forEach((id, level) -> {
+            if (scope.contains(id)) registry.findById(id).ifPresent(component -> components.get(level).add(component));
+        });
+        allConnections.stream()
+                .filter(connection -> scope.contains(connection.getDestinationId()))
+                .forEach(connection -> connections.get(levels.get(connection.getDestinationId())).add(connection));
 
-        if (level.isEmpty()) {
-            level.add(new HashSet<ProcessorEntity>());
+        List<Set<?>> level = new ArrayList<>();
+        for (int i = 0; i < depth; i++) {
+            //the connections of a cycle without input are before the first level
+            if ((i > 0 || !connections.get(i).isEmpty()) && (componentIds == null || !connections.get(i).isEmpty())) {
+                level.add(connections.get(i));
+            }
+            if (componentIds == null || !components.get(i).isEmpty()) {
+                level.add(components.get(i));
+            }
         }
         return level;
     }
 
-    private Set<ProcessGroupFlowDTO> getAllProcessGroupFlow(ProcessGroupFlowDTO processGroupFlow) {
-        Set<ProcessGroupFlowDTO> result = new HashSet<>();
+    private void addAllProcessGroupFlow(ProcessGroupFlowDTO processGroupFlow, Set<ProcessGroupFlowDTO> result) {
         result.add(processGroupFlow);
         if (processGroupFlow.getFlow().getProcessGroups() == null) processGroupFlow.getFlow().setProcessGroups(new ArrayList<>());
         for (ProcessGroupEntity processGroup : processGroupFlow.getFlow().getProcessGroups()) {
-            result.add(flowapi.getFlow(processGroup.getId()).getProcessGroupFlow());
+            addAllProcessGroupFlow(flowCacheService.getFlow(processGroup.getId()).getProcessGroupFlow(), result);
         }
-        return result;
     }
 
     /**
@@ -305,13 +537,7 @@ public class ProcessGroupService {
      * @return an optionnal find
      */
     public Optional<?> findById(Set<ProcessGroupFlowDTO> allProcessGroupFlow, String id){
-        for (ProcessGroupFlowDTO processGroupFlowDTO : allProcessGroupFlow) {
-            Optional<?> result = findById(processGroupFlowDTO.getFlow(),id);
-            if (result.isPresent()) {
-                return result;
-            }
-        }
-        return Optional.empty();
+        return ComponentRegistry.of(allProcessGroupFlow).findById(id);
     }
 
     /**
@@ -322,16 +548,7 @@ public class ProcessGroupService {
      * @return an optionnal find
      */
     public Optional<?> findById(FlowDTO flow, String id){
-        Optional<?> result = flow.getProcessors().stream().filter(processor -> id.equals(processor.getId())).findFirst();
-        if (!result.isPresent())
-            result = flow.getInputPorts().stream().filter(port -> id.equals(port.getId())).findFirst();
-        if (!result.isPresent())
-            result = flow.getOutputPorts().stream().filter(port -> id.equals(port.getId())).findFirst();
-        if (!result.isPresent())
-            result = flow.getFunnels().stream().filter(funnel -> id.equals(funnel.getId())).findFirst();
-        if (!result.isPresent())
-            result = flow.getRemoteProcessGroups().stream().filter(remoteProcessGroup -> id.equals(remoteProcessGroup.getId())).findFirst();
-        return result;
+        return ComponentRegistry.of(flow).findById(id);
     }
 
     public void delete(String processGroupId) {
@@ -356,6 +573,8 @@ public class ProcessGroupService {
             }
             return processGroupToRemove == null;
         }, interval, timeout);
+        //the group and the path are no more valid
+        flowCacheService.invalidateAll();
     }
 
     /**
@@ -365,64 +584,8 @@ public class ProcessGroupService {
      * @return the position
      */
     public PositionDTO getNextPosition(ProcessGroupFlowEntity flowEntity) {
-        PositionDTO nextPosition = new PositionDTO();
-        List<PositionDTO> positions = new ArrayList<>();
-        if (flowEntity.getProcessGroupFlow().getFlow().getProcessors() == null) flowEntity.getProcessGroupFlow().getFlow().setProcessors(new ArrayList<>());
-        for (ProcessorEntity processor : flowEntity.getProcessGroupFlow().getFlow().getProcessors()) {
-            addPosition(positions, processor.getPosition());
-        }
-        if (flowEntity.getProcessGroupFlow().getFlow().getProcessGroups() == null) flowEntity.getProcessGroupFlow().getFlow().setProcessGroups(new ArrayList<>());
-        for (ProcessGroupEntity processGroup : flowEntity.getProcessGroupFlow().getFlow().getProcessGroups()) {
-            addPosition(positions, processGroup.getPosition());
-        }
-        if (flowEntity.getProcessGroupFlow().getFlow().getInputPorts() == null) flowEntity.getProcessGroupFlow().getFlow().setInputPorts(new ArrayList<>());
-        for (PortEntity port : flowEntity.getProcessGroupFlow().getFlow().getInputPorts()) {
-            addPosition(positions, port.getPosition());
-        }
-        if (flowEntity.getProcessGroupFlow().getFlow().getOutputPorts() == null) flowEntity.getProcessGroupFlow().getFlow().setOutputPorts(new ArrayList<>());
-        for (PortEntity port : flowEntity.getProcessGroupFlow().getFlow().getOutputPorts()) {
-            addPosition(positions, port.getPosition());
-        }
-        if (flowEntity.getProcessGroupFlow().getFlow().getConnections() == null) flowEntity.getProcessGroupFlow().getFlow().setConnections(new ArrayList<>());
-        for (ConnectionEntity conn : flowEntity.getProcessGroupFlow().getFlow().getConnections()) {
-            addPosition(positions, conn.getPosition());
-        }
-        if (flowEntity.getProcessGroupFlow().getFlow().getFunnels() == null) flowEntity.getProcessGroupFlow().getFlow().setFunnels(new ArrayList<>());
-        for (FunnelEntity funnel : flowEntity.getProcessGroupFlow().getFlow().getFunnels()) {
-            addPosition(positions, funnel.getPosition());
-        }
-        nextPosition.setX(startPosition.getX());
-        nextPosition.setY(startPosition.getY());
-        Optional<PositionDTO> otherPosition;
-        Optional<PositionDTO> fistInLine = Optional.empty();
-        while ( (otherPosition = findOtherPositionInPlace(positions, nextPosition)).isPresent() ) {
-            if (!fistInLine.isPresent()) {
-                fistInLine = otherPosition;
-            }
-            //plus 2* while 1 for the other and 1 for the element
-            if (otherPosition.get().getX() + 2*ELEMENT_WIDTH >= placeWidth) {
-                nextPosition.setX(0d);
-                nextPosition.setY(fistInLine.get().getY() + ELEMENT_HEIGHT);
-                fistInLine = Optional.empty();
-            } else {
-                nextPosition.setY(otherPosition.get().getY());
-                nextPosition.setX(otherPosition.get().getX() + ELEMENT_WIDTH);
-            }
-        }
+        PositionDTO nextPosition = flowCacheService.getOccupancyGrid(flowEntity.getProcessGroupFlow()).nextPosition(startPosition, placeWidth);
         LOG.debug("next postion {},{}", nextPosition.getX(), nextPosition.getY());
         return nextPosition;
     }
-
-    public void addPosition( List<PositionDTO> positions, PositionDTO positionToAdd) {
-        if (positionToAdd != null && positionToAdd.getX() != null && positionToAdd.getY() != null) {
-            positions.add(positionToAdd);
-        }
-    }
-
-    private Optional<PositionDTO> findOtherPositionInPlace(List<PositionDTO> positions, PositionDTO nextPosition) {
-        return positions.stream().filter(position ->
-                 nextPosition.getX() + (ELEMENT_WIDTH - APPROXIMATE) > position.getX() && nextPosition.getX()- (ELEMENT_WIDTH - APPROXIMATE) < position.getX()
-              && nextPosition.getY() + (ELEMENT_HEIGHT - APPROXIMATE) > position.getY() && nextPosition.getY()- (ELEMENT_HEIGHT - APPROXIMATE) < position.getY()
-        ).findFirst();
-    }
 }
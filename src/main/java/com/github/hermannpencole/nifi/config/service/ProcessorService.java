@@ -38,6 +38,9 @@ public class ProcessorService {
     @Inject
     private ProcessorsApi processorsApi;
 
+    @Inject
+    private FlowCacheService flowCacheService;
+
     /**
      * the the state of processor
      *
@@ -71,6 +74,7 @@ public class ProcessorService {
                 LOG.info(" {} ({}) update for {}", processor.getComponent().getName() ,processor.getId(), state);
                 ProcessorEntity processorEntity = processorsApi.updateProcessor(processor.getId(), body);
                 processor.setRevision(processorEntity.getRevision());
+                flowCacheService.invalidate(processor.getComponent().getParentGroupId());
             } catch (ApiException e) {
                 if (e.getResponseBody() == null || !e.getResponseBody().endsWith("Current state is STOPPING")) {
                     logErrors(processor);
@@ -80,7 +84,7 @@ public class ProcessorService {
             }
         }
 
-        FunctionUtils.runWhile(()-> {
+        int polls = FunctionUtils.runWhileBackoff(()-> {
             LOG.info(" {} ({}) waiting for {}", processor.getComponent().getName() ,processor.getId(), state);
             ProcessorEntity processorEntity= processorsApi.getProcessor(processor.getId());
             boolean reallyStopped = isReallyStopped(processorEntity);
@@ -91,6 +95,7 @@ public class ProcessorService {
             }
             return true;
         }, interval, timeout);
+        LOG.debug(" {} ({}) is {} after {} polls", processor.getComponent().getName() ,processor.getId(), state, polls);
 
     }
 
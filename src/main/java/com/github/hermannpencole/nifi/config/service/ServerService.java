@@ -0,0 +1,356 @@
+package com.github.hermannpencole.nifi.config.service;
+
+import com.github.hermannpencole.nifi.config.model.ConfigException;
+import com.github.hermannpencole.nifi.config.model.Job;
+import com.github.hermannpencole.nifi.config.model.ManifestEntry;
+import com.github.hermannpencole.nifi.config.utils.JobLogAppender;
+import com.github.hermannpencole.nifi.swagger.ApiException;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class that keep the process alive and run the jobs received on a local http endpoint, with the same access and the
+ * same injector for all the jobs :
+ * <ul>
+ * <li>POST /jobs with an entry of manifest (mode, branch, conf, plan) : queue the job, return his id</li>
+ * <li>GET /jobs : the jobs, GET /jobs/{id} : the job</li>
+ * <li>GET /jobs/{id}/log : stream the progress of the job until his end</li>
+ * </ul>
+ * A job wait the end of the jobs received before on the same branch, on a parent or on a child branch (like the
+ * manifest), the others run in parallel. The flow cache is shared by the jobs running : the root and the branch of a
+ * job are read again when it start and all the cache is cleared when the server is idle, the flow can be changed
+ * outside between two jobs.
+ * <p>
+ * The jobs run with the access of the process to nifi, so each request must give the secret of the server (generated
+ * at the start and written on a file readable only by the owner) in the header Authorization : Bearer secret. A
+ * request with an Origin (from a page of a browser) is rejected and the body of a POST must be application/json.
+ */
+@Singleton
+public class ServerService {
+
+    /**
+     * The logger.
+     */
+    private final static Logger LOG = LoggerFactory.getLogger(ServerService.class);
+
+    private final static String CONTEXT = "/jobs";
+
+    private final static String BEARER = "Bearer ";
+
+    /**
+     * number of jobs done kept for the status
+     */
+    private final static int MAX_JOBS_DONE = 1000;
+
+    private final Gson gson = new Gson();
+
+    @Inject
+    private ManifestService manifestService;
+
+    @Inject
+    private FlowCacheService flowCacheService;
+
+    private final Map<String, Job> jobs = new LinkedHashMap<>();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final AtomicInteger running = new AtomicInteger();
+
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    private HttpServer server;
+
+    private ExecutorService jobExecutor;
+
+    private ExecutorService httpExecutor;
+
+    private boolean noStartProcessors;
+
+    private boolean keepTemplate;
+
+    private boolean failOnDuplicateNames;
+
+    private boolean removeControllers;
+
+    private byte[] secret;
+
+    private File secretFile;
+
+    /**
+     * start the http endpoint on the loopback interface
+     *
+     * @param port the port (0 for a free port)
+     * @param secretFile the file where the secret is written (readable only by the owner), deleted on stop
+     * @param parallelism the max number of jobs run in parallel
+     * @param noStartProcessors turn off auto start of the processors in updateConfig and plan
+     * @param keepTemplate keep template after installation in deployTemplate
+     * @param failOnDuplicateNames fail on duplicate processor names in extractConfig
+     * @param removeControllers remove controller services in undeploy
+     * @throws IOException when the port can't be bound
+     */
+    public synchronized void start(int port, String secretFile, Integer parallelism, boolean noStartProcessors, boolean keepTemplate,
+                                   boolean failOnDuplicateNames, boolean removeControllers) throws IOException {
+        byte[] random = new byte[32];
+        new SecureRandom().nextBytes(random);
+        String newSecret = Base64.getUrlEncoder().withoutPadding().encodeToString(random);
+        this.secretFile = new File(secretFile);
+        writeSecret(this.secretFile, newSecret);
+        this.secret = newSecret.getBytes(StandardCharsets.UTF_8);
+        this.noStartProcessors = noStartProcessors;
+        this.keepTemplate = keepTemplate;
+        this.failOnDuplicateNames = failOnDuplicateNames;
+        this.removeControllers = removeControllers;
+        jobExecutor = Executors.newFixedThreadPool(parallelism == null || parallelism < 1 ? 1 : parallelism);
+        httpExecutor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext(CONTEXT, this::handle);
+        server.setExecutor(httpExecutor);
+        server.start();
+        LOG.info("Server listening on http://{}:{}{}, secret on {}", InetAddress.getLoopbackAddress().getHostAddress(), getPort(), CONTEXT, this.secretFile);
+    }
+
+    /**
+     * write the secret on a file created readable only by the owner (never open to the others, even for a moment)
+     */
+    private static void writeSecret(File file, String secret) throws IOException {
+        Path directory = file.getAbsoluteFile().getParentFile().toPath();
+        boolean posix = Files.getFileStore(Files.isDirectory(directory) ? directory : directory.getRoot()).supportsFileAttributeView("posix");
+        if (!Files.isDirectory(directory)) {
+            if (posix) Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            else Files.createDirectories(directory);
+        }
+        Files.deleteIfExists(file.toPath());
+        if (posix) {
+            Files.createFile(file.toPath(), PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            Files.createFile(file.toPath());
+            file.setReadable(false, false);
+            file.setReadable(true, true);
+        }
+        Files.write(file.toPath(), secret.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the port of the http endpoint
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * wait the stop of the server
+     *
+     * @throws InterruptedException when interrupted
+     */
+    public void await() throws InterruptedException {
+        stopped.await();
+    }
+
+    /**
+     * stop the http endpoint, the jobs queued are cancelled and the jobs running are interrupted
+     */
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            jobExecutor.shutdownNow();
+            httpExecutor.shutdownNow();
+            server = null;
+            try {
+                Files.deleteIfExists(secretFile.toPath());
+            } catch (IOException e) {
+                LOG.warn("Secret {} can't be deleted : {}", secretFile, e.getMessage());
+            }
+            LOG.info("Server stopped");
+        }
+        stopped.countDown();
+    }
+
+    /**
+     * queue a job, it run after the jobs received before on the same branch, a parent or a child
+     *
+     * @param entry the entry
+     * @return the job
+     * @throws IOException when io problem
+     * @throws ConfigException when the entry is not valid
+     */
+    public Job submit(ManifestEntry entry) throws IOException {
+        List<String> branch = manifestService.branches(Collections.singletonList(entry)).get(0);
+        Job job = new Job(String.valueOf(sequence.incrementAndGet()), entry);
+        job.setBranch(branch);
+        synchronized (jobs) {
+            List<CompletableFuture<Void>> previous = new ArrayList<>();
+            for (Job other : jobs.values()) {
+                if (!other.isDone() && ManifestService.overlap(branch, other.getBranch())) {
+                    previous.add(other.getFuture());
+                    job.addLine("wait job " + other.getId() + " on " + String.join(" > ", other.getBranch()));
+                }
+            }
+            job.setFuture(CompletableFuture.allOf(previous.toArray(new CompletableFuture<?>[0]))
+                    .handle((result, e) -> null)
+                    .thenRunAsync(() -> run(job), jobExecutor));
+            jobs.put(job.getId(), job);
+            forgetJobsDone();
+        }
+        LOG.info("Job {} queued : {}", job.getId(), entry);
+        return job;
+    }
+
+    public Optional<Job> getJob(String id) {
+        synchronized (jobs) {
+            return Optional.ofNullable(jobs.get(id));
+        }
+    }
+
+    private void run(Job job) {
+        running.incrementAndGet();
+        MDC.put(JobLogAppender.MDC_KEY, job.getId());
+        JobLogAppender.register(job.getId(), job::addLine);
+        long start = System.nanoTime();
+        String error = null;
+        try {
+            job.setStatus(Job.Status.RUNNING);
+            //the flow of the branch may have been changed outside since the last job on it
+            flowCacheService.invalidateBranch(job.getBranch());
+            LOG.info("Job {} started : {}", job.getId(), job.getEntry());
+            manifestService.execute(job.getEntry(), job.getBranch(), noStartProcessors, keepTemplate, failOnDuplicateNames, removeControllers);
+            LOG.info("Job {} succeeded", job.getId());
+        } catch (Exception e) {
+            error = e instanceof ApiException ? e.getMessage() + ": " + ((ApiException) e).getResponseBody() : e.getMessage();
+            if (error == null) error = e.getClass().getName();
+            LOG.error("Job {} failed : {}", job.getId(), error, e);
+        } finally {
+            JobLogAppender.unregister(job.getId());
+            MDC.remove(JobLogAppender.MDC_KEY);
+            job.end(error, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            if (running.decrementAndGet() == 0) {
+                //nothing run, the next job read the flow again
+                flowCacheService.invalidateAll();
+            }
+        }
+    }
+
+    private void forgetJobsDone() {
+        Iterator<Job> iterator = jobs.values().iterator();
+        int done = (int) jobs.values().stream().filter(Job::isDone).count();
+        while (done > MAX_JOBS_DONE && iterator.hasNext()) {
+            if (iterator.next().isDone()) {
+                iterator.remove();
+                done--;
+            }
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String[] path = exchange.getRequestURI().getPath().substring(CONTEXT.length()).split("/");
+            String method = exchange.getRequestMethod();
+            if (exchange.getRequestHeaders().containsKey("Origin")) {
+                send(exchange, 403, "{\"error\":\"request from a browser rejected\"}");
+            } else if (!isAuthorized(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                send(exchange, 401, "{\"error\":\"the header Authorization must be Bearer and the secret of the server\"}");
+            } else if (path.length <= 1 && "POST".equals(method) && !isJson(exchange.getRequestHeaders().getFirst("Content-Type"))) {
+                send(exchange, 415, "{\"error\":\"the body must be application/json\"}");
+            } else if (path.length <= 1 && "POST".equals(method)) {
+                ManifestEntry entry;
+                try (Reader reader = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+                    entry = gson.fromJson(reader, ManifestEntry.class);
+                } catch (JsonParseException e) {
+                    throw new ConfigException("The body must be an entry of manifest : " + e.getMessage());
+                }
+                if (entry == null) {
+                    throw new ConfigException("The body must be an entry of manifest");
+                }
+                send(exchange, 202, gson.toJson(submit(entry)));
+            } else if (path.length <= 1 && "GET".equals(method)) {
+                synchronized (jobs) {
+                    send(exchange, 200, gson.toJson(jobs.values()));
+                }
+            } else if (path.length == 2 && "GET".equals(method)) {
+                Optional<Job> job = getJob(path[1]);
+                if (job.isPresent()) send(exchange, 200, gson.toJson(job.get()));
+                else send(exchange, 404, "{\"error\":\"job " + path[1] + " not found\"}");
+            } else if (path.length == 3 && "log".equals(path[2]) && "GET".equals(method)) {
+                Optional<Job> job = getJob(path[1]);
+                if (job.isPresent()) stream(exchange, job.get());
+                else send(exchange, 404, "{\"error\":\"job " + path[1] + " not found\"}");
+            } else {
+                send(exchange, 404, "{\"error\":\"unknown request " + method + " " + exchange.getRequestURI().getPath() + "\"}");
+            }
+        } catch (ConfigException e) {
+            send(exchange, 400, "{\"error\":" + gson.toJson(e.getMessage()) + "}");
+        } catch (RuntimeException e) {
+            LOG.error(e.getMessage(), e);
+            send(exchange, 500, "{\"error\":" + gson.toJson(String.valueOf(e.getMessage())) + "}");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * @param authorization the header Authorization
+     * @return true if it give the secret of the server (compared in constant time)
+     */
+    private boolean isAuthorized(String authorization) {
+        if (authorization == null || !authorization.startsWith(BEARER)) return false;
+        return MessageDigest.isEqual(secret, authorization.substring(BEARER.length()).trim().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static boolean isJson(String contentType) {
+        return contentType != null && contentType.split(";")[0].trim().equalsIgnoreCase("application/json");
+    }
+
+    /**
+     * write the lines of progress as they come (chunked) until the end of the job, then his status
+     */
+    private void stream(HttpExchange exchange, Job job) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+        try (Writer writer = new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8)) {
+            int from = 0;
+            while (true) {
+                boolean done = job.isDone();
+                List<String> lines = job.waitLines(from, 1000);
+                for (String line : lines) {
+                    writer.write(line);
+                    writer.write('\n');
+                }
+                writer.flush();
+                from += lines.size();
+                if (done && lines.isEmpty()) break;
+            }
+            writer.write(job.getStatus() + (job.getError() == null ? "" : " : " + job.getError()) + "\n");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+}
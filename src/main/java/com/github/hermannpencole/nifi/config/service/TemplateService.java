@@ -44,6 +44,9 @@ public class TemplateService {
     @Inject
     private ProcessGroupService processGroupService;
 
+    @Inject
+    private FlowCacheService flowCacheService;
+
     @Inject
     private ProcessGroupsApi processGroupsApi;
 
@@ -87,6 +90,8 @@ public class TemplateService {
         instantiateTemplate.setOriginX(0d);
         instantiateTemplate.setOriginY(0d);
         processGroupsApi.instantiateTemplate(processGroupFlow.getId(), instantiateTemplate);
+        //the components of the template are added in the group (and his children)
+        flowCacheService.invalidateTree(processGroupFlow.getId());
         if (!keepTemplate) {
             templatesApi.removeTemplate(template.get().getTemplate().getId());
         }
@@ -118,6 +123,7 @@ public class TemplateService {
             //TODO verify if must include ancestor and descendant
             controllerServicesService.disableController(processGroupFlow.get());
         }
+        flowCacheService.invalidateTree(processGroupFlow.get().getProcessGroupFlow().getId());
 
         processGroupService.delete(processGroupFlow.get().getProcessGroupFlow().getId());
 
@@ -1,24 +1,28 @@
 package com.github.hermannpencole.nifi.config.service;
 
+import com.github.hermannpencole.nifi.config.model.ConfigDiff;
 import com.github.hermannpencole.nifi.config.model.ConfigException;
 import com.github.hermannpencole.nifi.config.model.GroupProcessorsEntity;
+import com.github.hermannpencole.nifi.config.utils.ComponentNameIndex;
+import com.github.hermannpencole.nifi.config.utils.FunctionUtils;
+import com.github.hermannpencole.nifi.config.utils.GroupProcessorsReader;
 import com.github.hermannpencole.nifi.swagger.ApiException;
 import com.github.hermannpencole.nifi.swagger.client.FlowApi;
 import com.github.hermannpencole.nifi.swagger.client.ProcessorsApi;
 import com.github.hermannpencole.nifi.swagger.client.model.*;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
 import java.io.*;
 import java.net.URISyntaxException;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
-import static com.github.hermannpencole.nifi.config.utils.FunctionUtils.findByComponentName;
 import static com.github.hermannpencole.nifi.swagger.client.model.ControllerServiceReferencingComponentDTO.ReferenceTypeEnum.CONTROLLERSERVICE;
 import static com.github.hermannpencole.nifi.swagger.client.model.ControllerServiceReferencingComponentDTO.ReferenceTypeEnum.PROCESSOR;
 
@@ -47,12 +51,30 @@ public class UpdateProcessorService {
     @Inject
     private FlowApi flowapi;
 
+    @Inject
+    private FlowCacheService flowCacheService;
+
     @Inject
     private ConnectionsUpdater connectionsUpdater;
 
     @Inject
     private ProcessorsApi processorsApi;
 
+    @Inject
+    private DiffService diffService;
+
+    @Named("parallelism")
+    @Inject
+    public Integer parallelism;
+
+    @Named("diffMode")
+    @Inject
+    public Boolean diffMode;
+
+    @Named("scopedStop")
+    @Inject
+    public Boolean scopedStop;
+
     /**
      * @param branch the branch
      * @param fileConfiguration fileConfiguration
@@ -68,24 +90,58 @@ public class UpdateProcessorService {
 
         LOG.info("Processing : " + file.getName());
 
-        GroupProcessorsEntity configuration = loadConfiguration(file);
-
         ProcessGroupFlowEntity componentSearch = processGroupService.changeDirectory(branch)
                 .orElseThrow(() -> new ConfigException(("cannot find " + Arrays.toString(branch.toArray()))));
 
-        //Stop branch
-        processGroupService.stop(componentSearch);
-        LOG.info(Arrays.toString(branch.toArray()) + " is stopped");
+        //with diff mode only the components that differ are updated, nothing is stopped when all are up to date
+        GroupProcessorsEntity configuration = null;
+        Set<String> scope = null;
+        if (Boolean.TRUE.equals(diffMode)) {
+            ConfigDiff diff;
+            try (GroupProcessorsReader reader = new GroupProcessorsReader(new InputStreamReader(new FileInputStream(file), "UTF-8"))) {
+                diff = diffService.diff(reader, componentSearch);
+            }
+            diff.getChanges().forEach(LOG::info);
+            LOG.info("Diff : " + diff.getSummary());
+            if (diff.isEmpty()) {
+                createRouteService.createRoutes(diff.getConfiguration().getConnectionPorts(), optionNoStartProcessors);
+                LOG.info(Arrays.toString(branch.toArray()) + " is up to date");
+                return;
+            }
+            configuration = diff.getConfiguration();
+            if (Boolean.TRUE.equals(scopedStop)) scope = diff.getComponentIds();
+        } else {
+            //the configuration is streamed after the stop, a bad file must fail before
+            try (GroupProcessorsReader reader = new GroupProcessorsReader(new InputStreamReader(new FileInputStream(file), "UTF-8"))) {
+                checkConfiguration(reader, componentSearch);
+            }
+        }
+
+        //Stop branch (or only the components impacted with scoped stop)
+        if (scope == null) {
+            processGroupService.stop(componentSearch);
+            LOG.info(Arrays.toString(branch.toArray()) + " is stopped");
+        } else {
+            processGroupService.stop(componentSearch, scope);
+            LOG.info("{} component(s) of {} and their upstream are stopped", scope.size(), Arrays.toString(branch.toArray()));
+        }
 
         //Stop connexion ??
 
         //the state change, then the revision also in nifi 1.3.0 (only?) reload processGroup
         String processGroupFlowId = componentSearch.getProcessGroupFlow().getId();
-        componentSearch = flowapi.getFlow(processGroupFlowId);
+        flowCacheService.invalidateTree(processGroupFlowId);
+        componentSearch = flowCacheService.getFlow(processGroupFlowId);
 
         //generate clientID
         String clientId = flowapi.generateClientId();
-        updateComponent(configuration, componentSearch, clientId);
+        if (configuration == null) {
+            try (GroupProcessorsReader reader = new GroupProcessorsReader(new InputStreamReader(new FileInputStream(file), "UTF-8"))) {
+                configuration = updateComponentWhileReading(reader, componentSearch, clientId);
+            }
+        } else {
+            updateConfiguration(configuration, componentSearch, clientId);
+        }
 
         //controller
         updateControllers(configuration, processGroupFlowId, clientId);
@@ -93,9 +149,14 @@ public class UpdateProcessorService {
         createRouteService.createRoutes(configuration.getConnectionPorts(), optionNoStartProcessors);
 
         if (!optionNoStartProcessors) {
-            //Run all nifi processors
-            componentSearch = flowapi.getFlow(processGroupFlowId);
-            processGroupService.start(componentSearch);
+            //Run all nifi processors (controllers and routes may have changed the revisions)
+            flowCacheService.invalidateTree(processGroupFlowId);
+            componentSearch = flowCacheService.getFlow(processGroupFlowId);
+            if (scope == null) {
+                processGroupService.start(componentSearch);
+            } else {
+                processGroupService.start(componentSearch, scope);
+            }
             //setState(componentSearch, ProcessorDTO.StateEnum.RUNNING);
             LOG.info(Arrays.toString(branch.toArray()) + " is running");
         }
@@ -103,12 +164,118 @@ public class UpdateProcessorService {
         LOG.debug("updateByBranch end");
     }
 
-    private GroupProcessorsEntity loadConfiguration(File file) throws IOException {
-        Gson gson = new GsonBuilder().serializeNulls().create();
+    /**
+     * update the processors and the sub groups of the root group as soon as they are read, the configuration is never
+     * loaded entirely.
+     * In parallel, the updates are launched by pack of parallelism and all the failures are reported at the end
+     *
+     * @param reader the reader of configuration
+     * @param componentSearch componentSearch
+     * @param clientId clientId
+     * @return the configuration of the root group without his processors and his sub groups
+     * @throws IOException when io problem
+     */
+    private GroupProcessorsEntity updateComponentWhileReading(GroupProcessorsReader reader, ProcessGroupFlowEntity componentSearch, String clientId) throws IOException {
+        ComponentNameIndex index = flowCacheService.getNameIndex(componentSearch.getProcessGroupFlow());
+        boolean inParallel = parallelism != null && parallelism > 1;
+        List<Supplier<List<String>>> pending = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+        Consumer<Supplier<List<String>>> submit = update -> {
+            if (!inParallel) {
+                update.get();
+                return;
+            }
+            pending.add(() -> collectErrors(update));
+            if (pending.size() >= parallelism) {
+                errors.addAll(runPending(pending));
+            }
+        };
+
+        GroupProcessorsEntity configuration = reader.read(
+                processorOnConfig -> submit.accept(() -> {
+                    updateProcessor(findProcByComponentName(index, processorOnConfig.getName()), processorOnConfig, false, clientId);
+                    return Collections.emptyList();
+                }),
+                procGroupInConf -> submit.accept(() -> {
+                    ProcessGroupEntity processorGroupToUpdate = index.findProcessGroup(procGroupInConf.getName())
+                            .orElseThrow(() -> new ConfigException(("cannot find " + procGroupInConf.getName())));
+                    if (inParallel) {
+                        return updateComponentInParallel(procGroupInConf, flowCacheService.getFlow(processorGroupToUpdate.getId()), clientId);
+                    }
+                    updateComponent(procGroupInConf, flowCacheService.getFlow(processorGroupToUpdate.getId()), clientId);
+                    return Collections.emptyList();
+                }));
+        errors.addAll(runPending(pending));
+
+        submit.accept(() -> {
+            connectionsUpdater.updateConnections(configuration.getConnections(), componentSearch);
+            return Collections.emptyList();
+        });
+        errors.addAll(runPending(pending));
+        if (!errors.isEmpty()) {
+            throw new ConfigException(errors.size() + " update(s) failed : " + String.join(", ", errors));
+        }
+        return configuration;
+    }
 
-        try (Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8")) {
-            return gson.fromJson(reader, GroupProcessorsEntity.class);
+    /**
+     * read all the configuration (without keep it) and check that each processor and group is find on nifi, all the
+     * missing names are reported at once. Nothing is updated.
+     *
+     * @param reader the reader of configuration
+     * @param componentSearch componentSearch
+     * @throws IOException when io problem or malformed configuration
+     */
+    private void checkConfiguration(GroupProcessorsReader reader, ProcessGroupFlowEntity componentSearch) throws IOException {
+        ComponentNameIndex index = flowCacheService.getNameIndex(componentSearch.getProcessGroupFlow());
+        List<String> missing = new ArrayList<>();
+        reader.read(processorOnConfig -> {
+            if (!index.findProcessor(processorOnConfig.getName()).isPresent()) missing.add(processorOnConfig.getName());
+        }, procGroupInConf -> checkGroup(procGroupInConf, index, missing));
+        if (!missing.isEmpty()) {
+            throw new ConfigException("cannot find " + String.join(", ", missing));
+        }
+    }
+
+    private void checkGroup(GroupProcessorsEntity procGroupInConf, ComponentNameIndex parentIndex, List<String> missing) {
+        Optional<ProcessGroupEntity> processGroup = parentIndex.findProcessGroup(procGroupInConf.getName());
+        if (!processGroup.isPresent()) {
+            missing.add(procGroupInConf.getName());
+            return;
+        }
+        ProcessGroupFlowEntity flow = flowCacheService.getFlow(processGroup.get().getId());
+        if (flow == null) return;
+        ComponentNameIndex index = flowCacheService.getNameIndex(flow.getProcessGroupFlow());
+        procGroupInConf.getProcessors().stream()
+                .filter(processorOnConfig -> !index.findProcessor(processorOnConfig.getName()).isPresent())
+                .forEach(processorOnConfig -> missing.add(processorOnConfig.getName()));
+        procGroupInConf.getGroupProcessorsEntity().forEach(group -> checkGroup(group, index, missing));
+    }
+
+    /**
+     * update the configuration already loaded
+     *
+     * @param configuration configuration
+     * @param componentSearch componentSearch
+     * @param clientId clientId
+     */
+    private void updateConfiguration(GroupProcessorsEntity configuration, ProcessGroupFlowEntity componentSearch, String clientId) {
+        if (parallelism != null && parallelism > 1) {
+            List<String> errors = updateComponentInParallel(configuration, componentSearch, clientId);
+            if (!errors.isEmpty()) {
+                throw new ConfigException(errors.size() + " update(s) failed : " + String.join(", ", errors));
+            }
+            return;
         }
+        updateComponent(configuration, componentSearch, clientId);
+    }
+
+    private List<String> runPending(List<Supplier<List<String>>> pending) {
+        List<String> errors = FunctionUtils.runParallel(new ArrayList<>(pending), Supplier::get, parallelism).stream()
+                .flatMap(List::stream)
+                .collect(Collectors.toList());
+        pending.clear();
+        return errors;
     }
 
 
@@ -127,6 +294,7 @@ public class UpdateProcessorService {
         }*/
         List<ControllerServiceEntity> controllerUpdated = new ArrayList<>();
         List<ControllerServiceEntity> controllerDeleted = new ArrayList<>();
+        Map<ControllerServiceEntity, ControllerServiceDTO> controllerConfigured = new LinkedHashMap<>();
 
 
         for (ControllerServiceDTO controllerServiceDTO : configuration.getControllerServicesDTO()) {
@@ -158,31 +326,29 @@ public class UpdateProcessorService {
             controllerDeleted.addAll(oldControllersService.values());
             controllerUpdated.add(controllerServiceEntityFind);
             if (controllerServiceDTO.getProperties() != null && !controllerServiceDTO.getProperties().isEmpty()) {
-                //stopping referencing processors and reporting tasks
-                controllerServicesService.setStateReferenceProcessors(controllerServiceEntityFind, UpdateControllerServiceReferenceRequestEntity.StateEnum.STOPPED);
-
-                //Disabling referencing controller services
-                controllerServicesService.setStateReferencingControllerServices(controllerServiceEntityFind.getId(), UpdateControllerServiceReferenceRequestEntity.StateEnum.DISABLED);
+                controllerConfigured.put(controllerServiceEntityFind, controllerServiceDTO);
+            }
+        }
 
-                //Disabling this controller service
-                ControllerServiceEntity controllerServiceEntityUpdate = controllerServicesService.setStateControllerService(controllerServiceEntityFind, ControllerServiceDTO.StateEnum.DISABLED);
-                controllerServiceEntityUpdate = controllerServicesService.updateControllerService(controllerServiceDTO, controllerServiceEntityUpdate, false);
+        if (!controllerConfigured.isEmpty()) {
+            for (ControllerServiceEntity controllerServiceEntity : controllerConfigured.keySet()) {
+                //stopping referencing processors and reporting tasks
+                controllerServicesService.setStateReferenceProcessors(controllerServiceEntity, UpdateControllerServiceReferenceRequestEntity.StateEnum.STOPPED);
+            }
+            //Disabling the referencing controller services then these controller services, by waves
+            controllerServicesService.setStateControllerServices(idComponent, ids(controllerConfigured.keySet()), ControllerServiceDTO.StateEnum.DISABLED, true);
+            for (Map.Entry<ControllerServiceEntity, ControllerServiceDTO> entry : controllerConfigured.entrySet()) {
+                controllerServicesService.updateControllerService(entry.getValue(), entry.getKey(), false);
             }
         }
 
         //remove old
         removeOldReference(controllerDeleted);
 
-        // start enabling service
-        for (ControllerServiceEntity controllerServiceEntity : controllerUpdated) {
-            //Enabling this controller service
-            controllerServicesService.setStateControllerService(controllerServiceEntity, ControllerServiceDTO.StateEnum.ENABLED);
-        }
-        //enabling ref controller service in separate way because ref conroller is may be not configured
-        for (ControllerServiceEntity controllerServiceEntity : controllerUpdated) {
-            //Enabling referencing controller services
-            controllerServicesService.setStateReferencingControllerServices(controllerServiceEntity.getId(), UpdateControllerServiceReferenceRequestEntity.StateEnum.ENABLED);
-        }
+        // enabling the services referenced, these services and the referencing services, by waves on the graph of the
+        // services built once (the referencing services are enabled even if not configured)
+        controllerServicesService.setStateControllerServices(idComponent, ids(controllerUpdated), ControllerServiceDTO.StateEnum.ENABLED, true);
+
         //start ref processor in separate way because the processor can have multiple controller
         for (ControllerServiceEntity controllerServiceEntity : controllerUpdated) {
             //Starting referencing processors and reporting tasks
@@ -197,6 +363,10 @@ public class UpdateProcessorService {
         //}
     }
 
+    private static List<String> ids(Collection<ControllerServiceEntity> controllerServices) {
+        return controllerServices.stream().map(ControllerServiceEntity::getId).collect(Collectors.toList());
+    }
+
     /**
      * Update controller to newControllerServiceId for ReferencingComponents on oldControllersService
      *
@@ -255,7 +425,7 @@ public class UpdateProcessorService {
         }
     }
 
-    private Map<String, String> createUpdateProperty(Map<String, String> properties, String oldValue, String newValue) {
+    static Map<String, String> createUpdateProperty(Map<String, String> properties, String oldValue, String newValue) {
         Map<String, String> newProperties = new HashMap<>();
         for (Map.Entry<String, String> entry : properties.entrySet()) {
             if (oldValue.equals(entry.getValue())) {
@@ -272,20 +442,65 @@ public class UpdateProcessorService {
      * @throws ApiException when api problem
      */
     private void updateComponent(GroupProcessorsEntity configuration, ProcessGroupFlowEntity componentSearch, String clientId) throws ApiException {
-        FlowDTO flow = componentSearch.getProcessGroupFlow().getFlow();
+        ComponentNameIndex index = flowCacheService.getNameIndex(componentSearch.getProcessGroupFlow());
 
         configuration.getProcessors()
-                .forEach(processorOnConfig -> updateProcessor(findProcByComponentName(flow.getProcessors(), processorOnConfig.getName()), processorOnConfig, false, clientId));
+                .forEach(processorOnConfig -> updateProcessor(findProcByComponentName(index, processorOnConfig.getName()), processorOnConfig, false, clientId));
 
         for (GroupProcessorsEntity procGroupInConf : configuration.getGroupProcessorsEntity()) {
-            ProcessGroupEntity processorGroupToUpdate = findByComponentName(flow.getProcessGroups(), procGroupInConf.getName())
+            ProcessGroupEntity processorGroupToUpdate = index.findProcessGroup(procGroupInConf.getName())
                     .orElseThrow(() -> new ConfigException(("cannot find " + procGroupInConf.getName())));
-            updateComponent(procGroupInConf, flowapi.getFlow(processorGroupToUpdate.getId()), clientId);
+            updateComponent(procGroupInConf, flowCacheService.getFlow(processorGroupToUpdate.getId()), clientId);
         }
 
         connectionsUpdater.updateConnections(configuration.getConnections(), componentSearch);
     }
 
+    /**
+     * update the processors and the sub groups in parallel (bounded by parallelism).
+     * A failure don't stop the other updates, all the failures are returned
+     *
+     * @param configuration configuration
+     * @param componentSearch componentSearch
+     * @param clientId clientId
+     * @return the errors
+     */
+    private List<String> updateComponentInParallel(GroupProcessorsEntity configuration, ProcessGroupFlowEntity componentSearch, String clientId) {
+        ComponentNameIndex index = flowCacheService.getNameIndex(componentSearch.getProcessGroupFlow());
+        List<Supplier<List<String>>> updates = new ArrayList<>();
+        for (ProcessorDTO processorOnConfig : configuration.getProcessors()) {
+            updates.add(() -> collectErrors(() -> {
+                updateProcessor(findProcByComponentName(index, processorOnConfig.getName()), processorOnConfig, false, clientId);
+                return Collections.emptyList();
+            }));
+        }
+        for (GroupProcessorsEntity procGroupInConf : configuration.getGroupProcessorsEntity()) {
+            updates.add(() -> collectErrors(() -> {
+                ProcessGroupEntity processorGroupToUpdate = index.findProcessGroup(procGroupInConf.getName())
+                        .orElseThrow(() -> new ConfigException(("cannot find " + procGroupInConf.getName())));
+                return updateComponentInParallel(procGroupInConf, flowCacheService.getFlow(processorGroupToUpdate.getId()), clientId);
+            }));
+        }
+        List<String> errors = FunctionUtils.runParallel(updates, Supplier::get, parallelism).stream()
+                .flatMap(List::stream)
+                .collect(Collectors.toList());
+
+        errors.addAll(collectErrors(() -> {
+            connectionsUpdater.updateConnections(configuration.getConnections(), componentSearch);
+            return Collections.emptyList();
+        }));
+        return errors;
+    }
+
+    private List<String> collectErrors(Supplier<List<String>> update) {
+        try {
+            return update.get();
+        } catch (RuntimeException e) {
+            LOG.error(e.getMessage());
+            return Collections.singletonList(e.getMessage());
+        }
+    }
+
     /**
      * update processor configuration with valueToPutInProc
      * at first find id of each processor and in second way update it
@@ -296,52 +511,66 @@ public class UpdateProcessorService {
      */
     private void updateProcessor(ProcessorEntity processorToUpdate, ProcessorDTO componentToPutInProc, boolean forceByController, String clientId) {
         try {
-            componentToPutInProc.setId(processorToUpdate.getId());
+            String parentGroupId = processorToUpdate.getComponent().getParentGroupId();
             LOG.info("Update config processor {} ({}) ", processorToUpdate.getComponent().getName(), processorToUpdate.getId());
             //update on nifi
-            List<String> autoTerminatedRelationships = new ArrayList<>();
-            if (processorToUpdate.getComponent().getRelationships() == null) processorToUpdate.getComponent().setRelationships(new ArrayList<>());
-            processorToUpdate.getComponent().getRelationships().stream()
-                    .filter(relationships -> relationships.isAutoTerminate())
-                    .forEach(relationships -> autoTerminatedRelationships.add(relationships.getName()));
-            componentToPutInProc.getConfig().setAutoTerminatedRelationships(autoTerminatedRelationships);
-            componentToPutInProc.getConfig().setDescriptors(processorToUpdate.getComponent().getConfig().getDescriptors());
-            componentToPutInProc.getConfig().setDefaultConcurrentTasks(processorToUpdate.getComponent().getConfig().getDefaultConcurrentTasks());
-            componentToPutInProc.getConfig().setDefaultSchedulingPeriod(processorToUpdate.getComponent().getConfig().getDefaultSchedulingPeriod());
-            componentToPutInProc.setRelationships(processorToUpdate.getComponent().getRelationships());
-            componentToPutInProc.setStyle(processorToUpdate.getComponent().getStyle());
-            componentToPutInProc.setSupportsBatching(processorToUpdate.getComponent().isSupportsBatching());
-            componentToPutInProc.setSupportsEventDriven(processorToUpdate.getComponent().isSupportsEventDriven());
-            componentToPutInProc.setSupportsParallelProcessing(processorToUpdate.getComponent().isSupportsParallelProcessing());
-            componentToPutInProc.setPersistsState(processorToUpdate.getComponent().isPersistsState());
-            componentToPutInProc.setRestricted(null);//processorToUpdate.getComponent().getRestricted());
-            componentToPutInProc.setValidationErrors(processorToUpdate.getComponent().getValidationErrors());
-            //remove controller link if not forceBy controller
-            if (!forceByController) {
-                if (processorToUpdate.getComponent().getConfig().getDescriptors() == null) processorToUpdate.getComponent().getConfig().setDescriptors(new HashMap<>());
-                for (Map.Entry<String, PropertyDescriptorDTO> entry : processorToUpdate.getComponent().getConfig().getDescriptors().entrySet()) {
-                    if (entry.getValue().getIdentifiesControllerService() != null) {
-                        componentToPutInProc.getConfig().getProperties().remove(entry.getKey());
-                    }
-                }
-            }
+            prepareProcessor(processorToUpdate, componentToPutInProc, forceByController);
             processorToUpdate.setComponent(componentToPutInProc);
             processorToUpdate.getRevision().setClientId(clientId);
 
+            long start = System.currentTimeMillis();
             processorsApi.updateProcessor(processorToUpdate.getId(), processorToUpdate);
+            flowCacheService.invalidate(parentGroupId);
 
             //nifiService.updateProcessorProperties(toUpdate, componentToPutInProc.getString("id"));
-            LOG.info("Processor {} ({}) have config updated ", processorToUpdate.getComponent().getName(), processorToUpdate.getId());
+            LOG.info("Processor {} ({}) have config updated in {} ms", processorToUpdate.getComponent().getName(), processorToUpdate.getId(), System.currentTimeMillis() - start);
         } catch (ApiException e) {
             throw new ConfigException(e.getMessage() + ": " + e.getResponseBody(), e);
         }
     }
 
-    //can static => utils
-    public static ProcessorEntity findProcByComponentName(List<ProcessorEntity> listGroup, String name) {
-        return listGroup.stream()
-                .filter(item -> item.getComponent().getName().trim().equals(name.trim()))
-                .findFirst().orElseThrow(() -> new ConfigException(("cannot find " + name)));
+    /**
+     * prepare the body of the update : the configuration is completed with the fields of the processor on nifi
+     *
+     * @param processorToUpdate the processor on nifi
+     * @param componentToPutInProc the processor of the configuration, completed
+     * @param forceByController if keep the controller link
+     */
+    static void prepareProcessor(ProcessorEntity processorToUpdate, ProcessorDTO componentToPutInProc, boolean forceByController) {
+        componentToPutInProc.setId(processorToUpdate.getId());
+        List<String> autoTerminatedRelationships = new ArrayList<>();
+        if (processorToUpdate.getComponent().getRelationships() == null) processorToUpdate.getComponent().setRelationships(new ArrayList<>());
+        processorToUpdate.getComponent().getRelationships().stream()
+                .filter(relationships -> relationships.isAutoTerminate())
+                .forEach(relationships -> autoTerminatedRelationships.add(relationships.getName()));
+        componentToPutInProc.getConfig().setAutoTerminatedRelationships(autoTerminatedRelationships);
+        componentToPutInProc.getConfig().setDescriptors(processorToUpdate.getComponent().getConfig().getDescriptors());
+        componentToPutInProc.getConfig().setDefaultConcurrentTasks(processorToUpdate.getComponent().getConfig().getDefaultConcurrentTasks());
+        componentToPutInProc.getConfig().setDefaultSchedulingPeriod(processorToUpdate.getComponent().getConfig().getDefaultSchedulingPeriod());
+        componentToPutInProc.setRelationships(processorToUpdate.getComponent().getRelationships());
+        componentToPutInProc.setStyle(processorToUpdate.getComponent().getStyle());
+        componentToPutInProc.setSupportsBatching(processorToUpdate.getComponent().isSupportsBatching());
+        componentToPutInProc.setSupportsEventDriven(processorToUpdate.getComponent().isSupportsEventDriven());
+        componentToPutInProc.setSupportsParallelProcessing(processorToUpdate.getComponent().isSupportsParallelProcessing());
+        componentToPutInProc.setPersistsState(processorToUpdate.getComponent().isPersistsState());
+        componentToPutInProc.setRestricted(null);//processorToUpdate.getComponent().getRestricted());
+        componentToPutInProc.setValidationErrors(processorToUpdate.getComponent().getValidationErrors());
+        //remove controller link if not forceBy controller
+        if (!forceByController) {
+            if (processorToUpdate.getComponent().getConfig().getDescriptors() == null) processorToUpdate.getComponent().getConfig().setDescriptors(new HashMap<>());
+            for (Map.Entry<String, PropertyDescriptorDTO> entry : processorToUpdate.getComponent().getConfig().getDescriptors().entrySet()) {
+                if (entry.getValue().getIdentifiesControllerService() != null) {
+                    componentToPutInProc.getConfig().getProperties().remove(entry.getKey());
+                }
+            }
+        }
+    }
+
+    private static ProcessorEntity findProcByComponentName(ComponentNameIndex index, String name) {
+        if (index.isDuplicateName(ComponentNameIndex.Kind.PROCESSOR, name)) {
+            LOG.warn("Processor name {} is used more than once, the first is updated", name);
+        }
+        return index.findProcessor(name).orElseThrow(() -> new ConfigException(("cannot find " + name)));
     }
 
 }
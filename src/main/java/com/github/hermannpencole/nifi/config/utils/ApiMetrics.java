@@ -0,0 +1,267 @@
+package com.github.hermannpencole.nifi.config.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Metrics of a run : count, errors, bytes and latency of the api calls by endpoint (recorded by MetricsInterceptor)
+ * and time spent in the waits of FunctionUtils by caller.
+ * <p>
+ * Nothing is recorded until enabled. At the end of the run the metrics are logged and can be written on a
+ * Prometheus textfile (for the textfile collector of node exporter).
+ */
+public final class ApiMetrics {
+
+    /**
+     * The logger.
+     */
+    private final static Logger LOG = LoggerFactory.getLogger(ApiMetrics.class);
+
+    /**
+     * upper bounds in second of the buckets of the latency histogram
+     */
+    private final static double[] BUCKETS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    private final static Pattern ID = Pattern.compile("[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+
+    private final static Map<String, Endpoint> ENDPOINTS = new ConcurrentHashMap<>();
+
+    private final static Map<String, Wait> WAITS = new ConcurrentHashMap<>();
+
+    private static volatile boolean enabled = false;
+
+    private ApiMetrics() { }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        ApiMetrics.enabled = enabled;
+    }
+
+    /**
+     * forget all the metrics recorded
+     */
+    public static void reset() {
+        ENDPOINTS.clear();
+        WAITS.clear();
+    }
+
+    /**
+     * the endpoint of a call : the method and the path where the ids are replaced by {id}
+     *
+     * @param method the http method
+     * @param path the path of the url
+     * @return the endpoint
+     */
+    public static String endpoint(String method, String path) {
+        return method + " " + ID.matcher(path).replaceAll("{id}");
+    }
+
+    /**
+     * record an api call
+     *
+     * @param endpoint the endpoint
+     * @param nanos the duration
+     * @param bytesSent the bytes of the request body (negative if unknown)
+     * @param bytesReceived the bytes of the response body (negative if unknown)
+     * @param error if the call fail (io problem or http status in error)
+     */
+    public static void recordCall(String endpoint, long nanos, long bytesSent, long bytesReceived, boolean error) {
+        if (!enabled) return;
+        ENDPOINTS.computeIfAbsent(endpoint, key -> new Endpoint()).record(nanos, bytesSent, bytesReceived, error);
+    }
+
+    /**
+     * record the time spent in a wait
+     *
+     * @param caller the caller of the wait
+     * @param nanos the duration
+     */
+    public static void recordWait(String caller, long nanos) {
+        if (!enabled) return;
+        Wait wait = WAITS.computeIfAbsent(caller, key -> new Wait());
+        wait.count.increment();
+        wait.nanos.add(nanos);
+    }
+
+    /**
+     * the first method on the stack outside of the given class (the lambdas are named by their enclosing method)
+     *
+     * @param ignored the class to ignore
+     * @return the caller Class.method, or "unknown"
+     */
+    public static String caller(Class<?> ignored) {
+        for (StackTraceElement element : Thread.currentThread().getStackTrace()) {
+            String className = element.getClassName();
+            if (className.startsWith("java.") || className.equals(Thread.class.getName())
+                    || className.startsWith(ignored.getName()) || className.startsWith(ApiMetrics.class.getName())) {
+                continue;
+            }
+            String method = element.getMethodName();
+            if (method.startsWith("lambda$")) {
+                method = method.split("\\$")[1];
+            }
+            return className.substring(className.lastIndexOf('.') + 1) + "." + method;
+        }
+        return "unknown";
+    }
+
+    /**
+     * log the metrics, the endpoints with the most time first
+     */
+    public static void report() {
+        LOG.info("Api calls : {} endpoint(s), {} call(s), {} error(s), {} ms",
+                ENDPOINTS.size(),
+                ENDPOINTS.values().stream().mapToLong(endpoint -> endpoint.count.sum()).sum(),
+                ENDPOINTS.values().stream().mapToLong(endpoint -> endpoint.errors.sum()).sum(),
+                TimeUnit.NANOSECONDS.toMillis(ENDPOINTS.values().stream().mapToLong(endpoint -> endpoint.nanos.sum()).sum()));
+        ENDPOINTS.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<String, Endpoint> entry) -> entry.getValue().nanos.sum()).reversed())
+                .forEach(entry -> {
+                    Endpoint endpoint = entry.getValue();
+                    long count = endpoint.count.sum();
+                    LOG.info(" {} : {} call(s), {} error(s), {} ms (avg {} ms, p95 <= {}), {} bytes sent, {} bytes received",
+                            entry.getKey(), count, endpoint.errors.sum(), TimeUnit.NANOSECONDS.toMillis(endpoint.nanos.sum()),
+                            count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(endpoint.nanos.sum() / count),
+                            endpoint.quantile(0.95), endpoint.bytesSent.sum(), endpoint.bytesReceived.sum());
+                });
+        WAITS.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<String, Wait> entry) -> entry.getValue().nanos.sum()).reversed())
+                .forEach(entry -> LOG.info(" wait in {} : {} wait(s), {} ms", entry.getKey(), entry.getValue().count.sum(),
+                        TimeUnit.NANOSECONDS.toMillis(entry.getValue().nanos.sum())));
+    }
+
+    /**
+     * write the metrics on a Prometheus textfile, the file is replaced at once
+     *
+     * @param fileName the file
+     * @throws IOException when io problem
+     */
+    public static void writePrometheus(String fileName) throws IOException {
+        File file = new File(fileName).getAbsoluteFile();
+        if (!file.getParentFile().isDirectory()) {
+            throw new FileNotFoundException("Directory " + file.getParent() + " doesn't exist");
+        }
+        File tmp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+        try {
+            try (Writer writer = new OutputStreamWriter(Files.newOutputStream(tmp.toPath()), StandardCharsets.UTF_8)) {
+                writer.write(toPrometheus());
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+
+    /**
+     * @return the metrics in the text format of Prometheus
+     */
+    public static String toPrometheus() {
+        StringBuilder result = new StringBuilder();
+        header(result, "nifi_config_api_requests_total", "counter", "Number of api calls");
+        ENDPOINTS.forEach((name, endpoint) -> line(result, "nifi_config_api_requests_total", label("endpoint", name), endpoint.count.sum()));
+        header(result, "nifi_config_api_errors_total", "counter", "Number of api calls in error");
+        ENDPOINTS.forEach((name, endpoint) -> line(result, "nifi_config_api_errors_total", label("endpoint", name), endpoint.errors.sum()));
+        header(result, "nifi_config_api_bytes_total", "counter", "Bytes of the bodies of the api calls");
+        ENDPOINTS.forEach((name, endpoint) -> {
+            line(result, "nifi_config_api_bytes_total", label("endpoint", name) + "," + label("direction", "sent"), endpoint.bytesSent.sum());
+            line(result, "nifi_config_api_bytes_total", label("endpoint", name) + "," + label("direction", "received"), endpoint.bytesReceived.sum());
+        });
+        header(result, "nifi_config_api_request_duration_seconds", "histogram", "Latency of the api calls");
+        ENDPOINTS.forEach((name, endpoint) -> {
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS.length; i++) {
+                cumulative += endpoint.buckets.get(i);
+                line(result, "nifi_config_api_request_duration_seconds_bucket", label("endpoint", name) + "," + label("le", format(BUCKETS[i])), cumulative);
+            }
+            line(result, "nifi_config_api_request_duration_seconds_bucket", label("endpoint", name) + "," + label("le", "+Inf"), endpoint.count.sum());
+            line(result, "nifi_config_api_request_duration_seconds_sum", label("endpoint", name), seconds(endpoint.nanos.sum()));
+            line(result, "nifi_config_api_request_duration_seconds_count", label("endpoint", name), endpoint.count.sum());
+        });
+        header(result, "nifi_config_wait_seconds_total", "counter", "Time spent waiting a state or a queue");
+        WAITS.forEach((caller, wait) -> line(result, "nifi_config_wait_seconds_total", label("caller", caller), seconds(wait.nanos.sum())));
+        header(result, "nifi_config_waits_total", "counter", "Number of waits");
+        WAITS.forEach((caller, wait) -> line(result, "nifi_config_waits_total", label("caller", caller), wait.count.sum()));
+        return result.toString();
+    }
+
+    private static void header(StringBuilder result, String name, String type, String help) {
+        result.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        result.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void line(StringBuilder result, String name, String labels, Object value) {
+        result.append(name).append('{').append(labels).append("} ").append(value instanceof Double ? format((Double) value) : value).append('\n');
+    }
+
+    private static String label(String name, String value) {
+        return name + "=\"" + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%s", value);
+    }
+
+    private static class Endpoint {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final LongAdder bytesSent = new LongAdder();
+        private final LongAdder bytesReceived = new LongAdder();
+        //the last bucket is +Inf
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS.length + 1);
+
+        private void record(long duration, long sent, long received, boolean error) {
+            count.increment();
+            if (error) errors.increment();
+            nanos.add(duration);
+            if (sent > 0) bytesSent.add(sent);
+            if (received > 0) bytesReceived.add(received);
+            double seconds = seconds(duration);
+            int bucket = 0;
+            while (bucket < BUCKETS.length && seconds > BUCKETS[bucket]) bucket++;
+            buckets.incrementAndGet(bucket);
+        }
+
+        /**
+         * @return the upper bound of the bucket of the quantile
+         */
+        private String quantile(double quantile) {
+            long rank = (long) Math.ceil(count.sum() * quantile);
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS.length; i++) {
+                cumulative += buckets.get(i);
+                if (cumulative >= rank) return (long) (BUCKETS[i] * 1000) + " ms";
+            }
+            return "+Inf";
+        }
+    }
+
+    private static class Wait {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+    }
+}
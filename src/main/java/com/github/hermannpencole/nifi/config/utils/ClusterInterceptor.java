@@ -0,0 +1,150 @@
+package com.github.hermannpencole.nifi.config.utils;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Interceptor of the http client that spread the reads (GET) on the nodes of a nifi cluster, the writes stay on the
+ * first node (the node of the basePath of the client).
+ * <p>
+ * A read go to the best of two nodes taken at random, the node with the lower latency (average of the last calls)
+ * by call in progress, so a slow node get less reads. A node that fail (io problem or 503) is left for a while and
+ * a node that reject the token (401) is left for the run, the read is then made again on the first node.
+ */
+public class ClusterInterceptor implements Interceptor {
+
+    /**
+     * The logger.
+     */
+    private final static Logger LOG = LoggerFactory.getLogger(ClusterInterceptor.class);
+
+    /**
+     * time a node that fail is left
+     */
+    private final static long DOWN_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    /**
+     * weight of the last call in the average of latency
+     */
+    private final static double DECAY = 0.2;
+
+    private final List<Node> nodes;
+
+    /**
+     * @param urls the urls of the nodes (ex : http://node1:8080/nifi-api), the first is the node of the writes
+     */
+    public ClusterInterceptor(List<String> urls) {
+        this.nodes = urls.stream().map(url -> new Node(url.replaceAll("/+$", ""))).collect(Collectors.toList());
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        Node first = nodes.get(0);
+        String url = request.urlString();
+        if (!"GET".equals(request.method()) || !url.startsWith(first.url)) {
+            return chain.proceed(request);
+        }
+        Node node = choose();
+        if (node == first) {
+            return node.proceed(chain, request);
+        }
+        Request routed = request.newBuilder().url(node.url + url.substring(first.url.length())).build();
+        Response response;
+        try {
+            response = node.proceed(chain, routed);
+        } catch (IOException e) {
+            node.down(DOWN_NANOS, e.getMessage());
+            return first.proceed(chain, request);
+        }
+        if (response.code() == 401 || response.code() == 503) {
+            node.down(response.code() == 401 ? Long.MAX_VALUE : DOWN_NANOS, "http " + response.code());
+            if (response.body() != null) response.body().close();
+            return first.proceed(chain, request);
+        }
+        return response;
+    }
+
+    /**
+     * @return the node with the lower latency by call in progress of two healthy nodes taken at random
+     */
+    private Node choose() {
+        long now = System.nanoTime();
+        List<Node> healthy = nodes.stream().filter(node -> node.isUp(now)).collect(Collectors.toList());
+        if (healthy.isEmpty()) return nodes.get(0);
+        if (healthy.size() == 1) return healthy.get(0);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int i = random.nextInt(healthy.size());
+        int j = random.nextInt(healthy.size() - 1);
+        Node one = healthy.get(i);
+        Node other = healthy.get(j >= i ? j + 1 : j);
+        return other.score() < one.score() ? other : one;
+    }
+
+    /**
+     * @return the count of reads, the latency and the state by node
+     */
+    @Override
+    public String toString() {
+        return nodes.stream().map(Node::toString).collect(Collectors.joining(", "));
+    }
+
+    private static class Node {
+        private final String url;
+        private final AtomicInteger inProgress = new AtomicInteger();
+        private final AtomicLong calls = new AtomicLong();
+        private volatile double latency = 0;
+        private volatile long downUntil = Long.MIN_VALUE;
+
+        private Node(String url) {
+            this.url = url;
+        }
+
+        private Response proceed(Chain chain, Request request) throws IOException {
+            inProgress.incrementAndGet();
+            calls.incrementAndGet();
+            long start = System.nanoTime();
+            try {
+                Response response = chain.proceed(request);
+                record(System.nanoTime() - start);
+                return response;
+            } finally {
+                inProgress.decrementAndGet();
+            }
+        }
+
+        private synchronized void record(long nanos) {
+            latency = latency == 0 ? nanos : latency + DECAY * (nanos - latency);
+        }
+
+        private double score() {
+            return latency * (inProgress.get() + 1);
+        }
+
+        private boolean isUp(long now) {
+            return downUntil == Long.MIN_VALUE || (downUntil != Long.MAX_VALUE && now - downUntil >= 0);
+        }
+
+        private void down(long nanos, String cause) {
+            downUntil = nanos == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + nanos;
+            LOG.warn("Node {} left {} : {}", url, nanos == Long.MAX_VALUE ? "for the run" : "for " + TimeUnit.NANOSECONDS.toSeconds(nanos) + " s", cause);
+        }
+
+        @Override
+        public String toString() {
+            return url + " : " + calls.get() + " read(s), " + TimeUnit.NANOSECONDS.toMillis((long) latency) + " ms"
+                    + (isUp(System.nanoTime()) ? "" : " (left)");
+        }
+    }
+}
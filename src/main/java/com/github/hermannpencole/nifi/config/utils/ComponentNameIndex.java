@@ -0,0 +1,117 @@
+package com.github.hermannpencole.nifi.config.utils;
+
+import com.github.hermannpencole.nifi.swagger.client.model.*;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Index by name of the components of a flow (processors, process groups, ports and remote process groups).
+ * <p>
+ * The names are trimmed, when a name is used by more than one component of the same kind the first win
+ * (like the scan of the list) and the name is reported in the duplicate names of this kind (a processor and a group
+ * with the same name are not duplicate).
+ * The index is build once by flow, it must not be used after an update of the lists of the flow.
+ */
+public final class ComponentNameIndex {
+
+    /**
+     * the kinds of component indexed
+     */
+    public enum Kind { PROCESSOR, PROCESS_GROUP, INPUT_PORT, OUTPUT_PORT, REMOTE_PROCESS_GROUP }
+
+    private final FlowDTO flow;
+
+    private final Map<Kind, Set<String>> duplicateNames = new EnumMap<>(Kind.class);
+
+    private final Map<String, ProcessorEntity> processors;
+
+    private final Map<String, ProcessGroupEntity> processGroups;
+
+    private final Map<String, PortEntity> inputPorts;
+
+    private final Map<String, PortEntity> outputPorts;
+
+    private final Map<String, RemoteProcessGroupEntity> remoteProcessGroups;
+
+    private ComponentNameIndex(FlowDTO flow) {
+        this.flow = flow;
+        this.processors = index(Kind.PROCESSOR, flow.getProcessors(), processor -> processor.getComponent() == null ? null : processor.getComponent().getName());
+        this.processGroups = index(Kind.PROCESS_GROUP, flow.getProcessGroups(), processGroup -> processGroup.getComponent() == null ? null : processGroup.getComponent().getName());
+        this.inputPorts = index(Kind.INPUT_PORT, flow.getInputPorts(), port -> port.getComponent() == null ? null : port.getComponent().getName());
+        this.outputPorts = index(Kind.OUTPUT_PORT, flow.getOutputPorts(), port -> port.getComponent() == null ? null : port.getComponent().getName());
+        this.remoteProcessGroups = index(Kind.REMOTE_PROCESS_GROUP, flow.getRemoteProcessGroups(), remoteProcessGroup -> remoteProcessGroup.getComponent() == null ? null : remoteProcessGroup.getComponent().getName());
+    }
+
+    /**
+     * build the index of the flow
+     *
+     * @param flow the flow
+     * @return the index
+     */
+    public static ComponentNameIndex of(FlowDTO flow) {
+        return new ComponentNameIndex(flow);
+    }
+
+    /**
+     * @param flow the flow
+     * @return true if the index was build on this instance of flow
+     */
+    public boolean isIndexOf(FlowDTO flow) {
+        return this.flow == flow;
+    }
+
+    public Optional<ProcessorEntity> findProcessor(String name) {
+        return find(processors, name);
+    }
+
+    public Optional<ProcessGroupEntity> findProcessGroup(String name) {
+        return find(processGroups, name);
+    }
+
+    public Optional<PortEntity> findInputPort(String name) {
+        return find(inputPorts, name);
+    }
+
+    public Optional<PortEntity> findOutputPort(String name) {
+        return find(outputPorts, name);
+    }
+
+    public Optional<RemoteProcessGroupEntity> findRemoteProcessGroup(String name) {
+        return find(remoteProcessGroups, name);
+    }
+
+    /**
+     * @param kind the kind of component
+     * @return the (trimmed) names used by more than one component of this kind
+     */
+    public Set<String> getDuplicateNames(Kind kind) {
+        return Collections.unmodifiableSet(duplicateNames.getOrDefault(kind, Collections.emptySet()));
+    }
+
+    /**
+     * @param kind the kind of component
+     * @param name the name
+     * @return true if the name is used by more than one component of this kind
+     */
+    public boolean isDuplicateName(Kind kind, String name) {
+        return name != null && getDuplicateNames(kind).contains(name.trim());
+    }
+
+    private <T> Map<String, T> index(Kind kind, List<T> components, Function<T, String> getName) {
+        if (components == null) return Collections.emptyMap();
+        Map<String, T> result = new HashMap<>(components.size() * 2);
+        for (T component : components) {
+            String name = getName.apply(component);
+            if (name == null) continue;
+            if (result.putIfAbsent(name.trim(), component) != null) {
+                duplicateNames.computeIfAbsent(kind, key -> new HashSet<>()).add(name.trim());
+            }
+        }
+        return result;
+    }
+
+    private static <T> Optional<T> find(Map<String, T> components, String name) {
+        return name == null ? Optional.empty() : Optional.ofNullable(components.get(name.trim()));
+    }
+}
@@ -0,0 +1,80 @@
+package com.github.hermannpencole.nifi.config.utils;
+
+import com.github.hermannpencole.nifi.swagger.client.model.*;
+
+import java.util.*;
+
+/**
+ * Registry by id of the components of one or more flows (processors, input ports, output ports, funnels
+ * and remote process groups), build in one pass.
+ * <p>
+ * The registry must not be used after an update of the lists of the flows.
+ */
+public final class ComponentRegistry {
+
+    private final Set<FlowDTO> flows = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private final Map<String, Object> components = new HashMap<>();
+
+    private ComponentRegistry() {
+    }
+
+    /**
+     * build the registry of the flow
+     *
+     * @param flow the flow
+     * @return the registry
+     */
+    public static ComponentRegistry of(FlowDTO flow) {
+        ComponentRegistry registry = new ComponentRegistry();
+        registry.add(flow);
+        return registry;
+    }
+
+    /**
+     * build the registry of all the flows
+     *
+     * @param processGroupFlows the flows
+     * @return the registry
+     */
+    public static ComponentRegistry of(Collection<ProcessGroupFlowDTO> processGroupFlows) {
+        ComponentRegistry registry = new ComponentRegistry();
+        processGroupFlows.forEach(processGroupFlow -> registry.add(processGroupFlow.getFlow()));
+        return registry;
+    }
+
+    /**
+     * @param flow the flow
+     * @return true if the registry was build on this instance of flow
+     */
+    public boolean isRegistryOf(FlowDTO flow) {
+        return flows.size() == 1 && flows.contains(flow);
+    }
+
+    /**
+     * find processor, inputport, ouput port funnel or remote processor by id
+     *
+     * @param id the id
+     * @return an optionnal find
+     */
+    public Optional<?> findById(String id) {
+        return Optional.ofNullable(components.get(id));
+    }
+
+    public Optional<ProcessorEntity> findProcessor(String id) {
+        return findById(id).filter(ProcessorEntity.class::isInstance).map(ProcessorEntity.class::cast);
+    }
+
+    public Optional<PortEntity> findPort(String id) {
+        return findById(id).filter(PortEntity.class::isInstance).map(PortEntity.class::cast);
+    }
+
+    private void add(FlowDTO flow) {
+        flows.add(flow);
+        if (flow.getProcessors() != null) flow.getProcessors().forEach(processor -> components.putIfAbsent(processor.getId(), processor));
+        if (flow.getInputPorts() != null) flow.getInputPorts().forEach(port -> components.putIfAbsent(port.getId(), port));
+        if (flow.getOutputPorts() != null) flow.getOutputPorts().forEach(port -> components.putIfAbsent(port.getId(), port));
+        if (flow.getFunnels() != null) flow.getFunnels().forEach(funnel -> components.putIfAbsent(funnel.getId(), funnel));
+        if (flow.getRemoteProcessGroups() != null) flow.getRemoteProcessGroups().forEach(remoteProcessGroup -> components.putIfAbsent(remoteProcessGroup.getId(), remoteProcessGroup));
+    }
+}
@@ -0,0 +1,110 @@
+package com.github.hermannpencole.nifi.config.utils;
+
+import com.github.hermannpencole.nifi.swagger.client.model.ControllerServiceEntity;
+import com.github.hermannpencole.nifi.swagger.client.model.ControllerServiceReferencingComponentDTO;
+import com.github.hermannpencole.nifi.swagger.client.model.ControllerServiceReferencingComponentEntity;
+import com.github.hermannpencole.nifi.swagger.client.model.PropertyDescriptorDTO;
+
+import java.util.*;
+
+/**
+ * Graph of the dependencies between controller services, build once from the controller services of a group (and of
+ * his ancestors) : an edge go from a service to the service that reference it in a property (descriptor that
+ * identifies a controller service).
+ * <p>
+ * The services that reference a service of the group from outside (in an other group) are added from the
+ * referencing components of the service, without their entity. The services are walked in waves by level : a service
+ * is in a wave after all the services it reference (the reverse for disable).
+ */
+public final class ControllerServiceGraph {
+
+    private final FlowGraph graph = new FlowGraph();
+
+    private final Map<String, ControllerServiceEntity> services = new LinkedHashMap<>();
+
+    private ControllerServiceGraph() { }
+
+    /**
+     * build the graph
+     *
+     * @param controllerServices the controller services of the group
+     * @return the graph
+     */
+    public static ControllerServiceGraph of(List<ControllerServiceEntity> controllerServices) {
+        ControllerServiceGraph result = new ControllerServiceGraph();
+        if (controllerServices == null) return result;
+        controllerServices.forEach(service -> {
+            result.services.put(service.getId(), service);
+            result.graph.addNode(service.getId());
+        });
+        for (ControllerServiceEntity service : controllerServices) {
+            Map<String, PropertyDescriptorDTO> descriptors = service.getComponent().getDescriptors();
+            Map<String, String> properties = service.getComponent().getProperties();
+            if (descriptors != null && properties != null) {
+                descriptors.forEach((name, descriptor) -> {
+                    String reference = properties.get(name);
+                    //a reference to a service out of scope is invalid, ignored
+                    if (descriptor.getIdentifiesControllerService() != null && reference != null && result.services.containsKey(reference)) {
+                        result.graph.addEdge(reference, service.getId());
+                    }
+                });
+            }
+            result.addReferencing(service.getId(), service.getComponent().getReferencingComponents());
+        }
+        return result;
+    }
+
+    private void addReferencing(String id, List<ControllerServiceReferencingComponentEntity> referencingComponents) {
+        if (referencingComponents == null) return;
+        for (ControllerServiceReferencingComponentEntity referencing : referencingComponents) {
+            ControllerServiceReferencingComponentDTO component = referencing.getComponent();
+            if (component == null || component.getReferenceType() != ControllerServiceReferencingComponentDTO.ReferenceTypeEnum.CONTROLLERSERVICE) {
+                continue;
+            }
+            //the references of a service of the group are added with his entity
+            boolean outside = !services.containsKey(referencing.getId()) && !graph.contains(referencing.getId());
+            graph.addEdge(id, referencing.getId());
+            if (outside) addReferencing(referencing.getId(), component.getReferencingComponents());
+        }
+    }
+
+    /**
+     * @param id the id of the service
+     * @return the entity of the service, empty for a service of an other group
+     */
+    public Optional<ControllerServiceEntity> get(String id) {
+        return Optional.ofNullable(services.get(id));
+    }
+
+    /**
+     * @param ids the id of the services
+     * @return the services and all the services they reference (directly or not)
+     */
+    public Set<String> dependencies(Collection<String> ids) {
+        return graph.ancestors(ids);
+    }
+
+    /**
+     * @param ids the id of the services
+     * @return the services and all the services that reference them (directly or not)
+     */
+    public Set<String> dependents(Collection<String> ids) {
+        return graph.descendants(ids);
+    }
+
+    /**
+     * group the services by wave
+     *
+     * @param ids the id of the services
+     * @param dependenciesFirst true for have a service after the services it reference (enable), false for have it
+     *                          before (disable)
+     * @return the id of the services by wave, without empty wave
+     */
+    public List<List<String>> waves(Collection<String> ids, boolean dependenciesFirst) {
+        TreeMap<Integer, List<String>> waves = new TreeMap<>();
+        graph.levels().forEach((id, level) -> {
+            if (ids.contains(id)) waves.computeIfAbsent(level, key -> new ArrayList<>()).add(id);
+        });
+        return new ArrayList<>(dependenciesFirst ? waves.values() : waves.descendingMap().values());
+    }
+}
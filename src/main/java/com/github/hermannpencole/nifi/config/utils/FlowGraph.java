@@ -0,0 +1,172 @@
+package com.github.hermannpencole.nifi.config.utils;
+
+import java.util.*;
+
+/**
+ * Directed graph of the components of a flow (the nodes are the id of the components, the edges the connections).
+ * <p>
+ * The strongly connected components (the cycles) are collapsed, then each node receive the level of his
+ * strongly connected component in the topological order : 0 for the components that consume no flow,
+ * else 1 + the level of the deepest component that feed it.
+ */
+public final class FlowGraph {
+
+    private final Map<String, Set<String>> successors = new LinkedHashMap<>();
+
+    /**
+     * add a node (do nothing if already present)
+     *
+     * @param id the id of the component
+     */
+    public void addNode(String id) {
+        successors.computeIfAbsent(id, key -> new LinkedHashSet<>());
+    }
+
+    /**
+     * @param id the id of the component
+     * @return true if the node is present
+     */
+    public boolean contains(String id) {
+        return successors.containsKey(id);
+    }
+
+    /**
+     * add an edge (and his nodes)
+     *
+     * @param source the id of the source
+     * @param destination the id of the destination
+     */
+    public void addEdge(String source, String destination) {
+        addNode(source);
+        addNode(destination);
+        successors.get(source).add(destination);
+    }
+
+    /**
+     * the strongly connected components (Tarjan, iterative for support deep flows), in reverse topological order
+     *
+     * @return the strongly connected components
+     */
+    public List<Set<String>> stronglyConnectedComponents() {
+        List<Set<String>> result = new ArrayList<>();
+        Map<String, Integer> index = new HashMap<>();
+        Map<String, Integer> lowLink = new HashMap<>();
+        Deque<String> stack = new ArrayDeque<>();
+        Set<String> onStack = new HashSet<>();
+        Deque<Map.Entry<String, Iterator<String>>> callStack = new ArrayDeque<>();
+
+        for (String root : successors.keySet()) {
+            if (index.containsKey(root)) continue;
+            visit(root, index, lowLink, stack, onStack, callStack);
+            while (!callStack.isEmpty()) {
+                Map.Entry<String, Iterator<String>> frame = callStack.peek();
+                String node = frame.getKey();
+                if (frame.getValue().hasNext()) {
+                    String next = frame.getValue().next();
+                    if (!index.containsKey(next)) {
+                        visit(next, index, lowLink, stack, onStack, callStack);
+                    } else if (onStack.contains(next)) {
+                        lowLink.put(node, Math.min(lowLink.get(node), index.get(next)));
+                    }
+                } else {
+                    callStack.pop();
+                    if (lowLink.get(node).equals(index.get(node))) {
+                        Set<String> component = new LinkedHashSet<>();
+                        String member;
+                        do {
+                            member = stack.pop();
+                            onStack.remove(member);
+                            component.add(member);
+                        } while (!member.equals(node));
+                        result.add(component);
+                    }
+                    if (!callStack.isEmpty()) {
+                        String parent = callStack.peek().getKey();
+                        lowLink.put(parent, Math.min(lowLink.get(parent), lowLink.get(node)));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * the level of each node, the nodes of a same strongly connected component have the same level
+     *
+     * @return the level by id (in the order of insertion of the nodes)
+     */
+    public Map<String, Integer> levels() {
+        List<Set<String>> components = stronglyConnectedComponents();
+        Map<String, Integer> componentOf = new HashMap<>();
+        for (int i = 0; i < components.size(); i++) {
+            for (String id : components.get(i)) {
+                componentOf.put(id, i);
+            }
+        }
+        int[] componentLevels = new int[components.size()];
+        //reverse of Tarjan order = topological order, all the predecessors are done before
+        for (int i = components.size() - 1; i >= 0; i--) {
+            for (String id : components.get(i)) {
+                for (String next : successors.get(id)) {
+                    int nextComponent = componentOf.get(next);
+                    if (nextComponent != i) {
+                        componentLevels[nextComponent] = Math.max(componentLevels[nextComponent], componentLevels[i] + 1);
+                    }
+                }
+            }
+        }
+        Map<String, Integer> result = new LinkedHashMap<>();
+        successors.keySet().forEach(id -> result.put(id, componentLevels[componentOf.get(id)]));
+        return result;
+    }
+
+    /**
+     * the nodes and all the nodes that feed them (directly or not)
+     *
+     * @param ids the id of the nodes
+     * @return the nodes and their ancestors
+     */
+    public Set<String> ancestors(Collection<String> ids) {
+        Map<String, Set<String>> predecessors = new HashMap<>();
+        successors.forEach((source, destinations) -> destinations.forEach(destination ->
+                predecessors.computeIfAbsent(destination, key -> new HashSet<>()).add(source)));
+        Set<String> result = new HashSet<>();
+        Deque<String> pending = new ArrayDeque<>();
+        ids.stream().filter(successors::containsKey).forEach(pending::push);
+        while (!pending.isEmpty()) {
+            String node = pending.pop();
+            if (result.add(node)) {
+                predecessors.getOrDefault(node, Collections.emptySet()).forEach(pending::push);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * the nodes and all the nodes they feed (directly or not)
+     *
+     * @param ids the id of the nodes
+     * @return the nodes and their descendants
+     */
+    public Set<String> descendants(Collection<String> ids) {
+        Set<String> result = new HashSet<>();
+        Deque<String> pending = new ArrayDeque<>();
+        ids.stream().filter(successors::containsKey).forEach(pending::push);
+        while (!pending.isEmpty()) {
+            String node = pending.pop();
+            if (result.add(node)) {
+                successors.get(node).forEach(pending::push);
+            }
+        }
+        return result;
+    }
+
+    private void visit(String node, Map<String, Integer> index, Map<String, Integer> lowLink, Deque<String> stack,
+                       Set<String> onStack, Deque<Map.Entry<String, Iterator<String>>> callStack) {
+        index.put(node, index.size());
+        lowLink.put(node, index.get(node));
+        stack.push(node);
+        onStack.add(node);
+        callStack.push(new AbstractMap.SimpleEntry<>(node, successors.get(node).iterator()));
+    }
+}
@@ -5,14 +5,16 @@ import com.github.hermannpencole.nifi.config.model.TimeoutException;
 import com.github.hermannpencole.nifi.swagger.client.model.ProcessGroupEntity;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.function.LongUnaryOperator;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 public final class FunctionUtils {
     /**
@@ -20,11 +22,50 @@ public final class FunctionUtils {
      */
     private final static Logger LOG = LoggerFactory.getLogger(FunctionUtils.class);
 
+    /**
+     * the fork join pools shared by all the parallel walks, one by level of parallelism
+     */
+    private final static Map<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<>();
+
+    /**
+     * the scheduler shared by all the waits, only for the timers (next poll and timeout), it never run a poll
+     */
+    private final static ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "nifi-config-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * the bounded executor of the polls (they block on the calls to nifi), shared by all the waits.
+     * A poll never wait an other task of the poller (it could take all the threads), a wait inside a poll is made on
+     * his thread (see isPolling)
+     */
+    private final static ExecutorService POLLER = Executors.newFixedThreadPool(
+            Math.max(4, Runtime.getRuntime().availableProcessors()), PollerThread::new);
+
+    /**
+     * first delay in millisecond between two polls of runWhileBackoff
+     */
+    public final static long BACKOFF_INITIAL_DELAY = 50;
+
     private FunctionUtils() { }
 
     public static void runTimeout(Runnable function, int timeout) {
-        java.util.concurrent.ExecutorService executor = Executors.newSingleThreadExecutor();
-        final Future future = executor.submit(function);
+        if (isPolling()) {
+            //the timeout of the poll is running
+            function.run();
+            return;
+        }
+        Map<String, String> context = MDC.getCopyOfContextMap();
+        final Future future = POLLER.submit(() -> {
+            Map<String, String> previous = setContext(context);
+            try {
+                function.run();
+            } finally {
+                setContext(previous);
+            }
+        });
         try {
             if (timeout < 0 ) {
                 future.get();
@@ -44,13 +85,12 @@ public final class FunctionUtils {
         } catch (java.util.concurrent.TimeoutException e) {
             future.cancel(true);
             throw new TimeoutException(e);
-        } finally {
-            executor.shutdownNow();
         }
 
     }
 
     public static void runWhile(Supplier<Boolean> function, int interval) {
+       long start = System.nanoTime();
        while (function.get()) {
            try {
                //interval are in second
@@ -59,10 +99,321 @@ public final class FunctionUtils {
                throw new ConfigException(e);
            }
        }
+       recordWait(start);
     }
 
     public static void runWhile(Supplier<Boolean> function, int interval, int timeout) {
-        runTimeout(() -> runWhile(function, interval ), timeout);
+        if (isPolling()) {
+            pollOnCurrentThread(function, delay -> interval * 1000L, interval * 1000L, false, timeout);
+            return;
+        }
+        await(scheduleWhile(function, delay -> interval * 1000L, interval * 1000L, false, timeout));
+    }
+
+    /**
+     * poll while the function return true. The delay between two polls begin at BACKOFF_INITIAL_DELAY ms
+     * and is doubled (with jitter) on each poll up to interval second.
+     *
+     * @param function the function
+     * @param interval the max delay between two polls in second
+     * @return the number of polls
+     */
+    public static int runWhileBackoff(Supplier<Boolean> function, int interval) {
+        long maxDelay = Math.max(BACKOFF_INITIAL_DELAY, interval * 1000L);
+        long delay = BACKOFF_INITIAL_DELAY;
+        int polls = 1;
+        long start = System.nanoTime();
+        while (function.get()) {
+            try {
+                Thread.sleep(jitter(delay));
+            } catch (InterruptedException e) {
+                throw new ConfigException(e);
+            }
+            delay = Math.min(delay * 2, maxDelay);
+            polls++;
+        }
+        recordWait(start);
+        return polls;
+    }
+
+    /**
+     * poll while the function return true with a backoff delay (see runWhileBackoff(function, interval))
+     *
+     * @param function the function
+     * @param interval the max delay between two polls in second
+     * @param timeout the timeout in second (negative for no timeout)
+     * @return the number of polls
+     */
+    public static int runWhileBackoff(Supplier<Boolean> function, int interval, int timeout) {
+        if (isPolling()) {
+            long maxDelay = Math.max(BACKOFF_INITIAL_DELAY, interval * 1000L);
+            return pollOnCurrentThread(function, delay -> Math.min(delay * 2, maxDelay), BACKOFF_INITIAL_DELAY, true, timeout);
+        }
+        int polls = await(scheduleWhileBackoff(function, interval, timeout));
+        LOG.debug("condition reached after {} polls", polls);
+        return polls;
+    }
+
+    /**
+     * schedule on the shared poller the polls of the function while it return true, with a backoff delay
+     * (see runWhileBackoff(function, interval)). No thread is blocked between two polls.
+     *
+     * @param function the function
+     * @param interval the max delay between two polls in second
+     * @param timeout the timeout in second (negative for no timeout)
+     * @return the future number of polls, completed exceptionally with TimeoutException after the timeout
+     */
+    public static CompletableFuture<Integer> scheduleWhileBackoff(Supplier<Boolean> function, int interval, int timeout) {
+        long maxDelay = Math.max(BACKOFF_INITIAL_DELAY, interval * 1000L);
+        return scheduleWhile(function, delay -> Math.min(delay * 2, maxDelay), BACKOFF_INITIAL_DELAY, true, timeout);
+    }
+
+    /**
+     * wait the end of the future, with the exceptions of runWhile :
+     * TimeoutException on timeout, ConfigException on other problem
+     *
+     * @param future the future
+     * @param <T> the type of result
+     * @return the result
+     */
+    public static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            LOG.debug(e.getMessage(),e);
+            if (e.getCause() instanceof TimeoutException) {
+                throw (TimeoutException)e.getCause();
+            }
+            if (e.getCause() instanceof ConfigException) {
+                throw (ConfigException)e.getCause();
+            }
+            throw new ConfigException(e.getCause());
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw new ConfigException(e);
+        }
+    }
+
+    /**
+     * run the polls on the poller, the scheduler only wake up the next poll
+     *
+     * @param withJitter true for a random delay between delay/2 and delay, false for a fixed delay
+     */
+    private static CompletableFuture<Integer> scheduleWhile(Supplier<Boolean> function, LongUnaryOperator nextDelay, long firstDelay, boolean withJitter, int timeout) {
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        if (ApiMetrics.isEnabled()) {
+            String caller = ApiMetrics.caller(FunctionUtils.class);
+            long start = System.nanoTime();
+            future.whenComplete((result, e) -> ApiMetrics.recordWait(caller, System.nanoTime() - start));
+        }
+        if (timeout >= 0) {
+            ScheduledFuture<?> timer = SCHEDULER.schedule(
+                    () -> future.completeExceptionally(new TimeoutException(new java.util.concurrent.TimeoutException())),
+                    timeout, TimeUnit.SECONDS);
+            future.whenComplete((result, e) -> timer.cancel(false));
+        }
+        POLLER.execute(new Runnable() {
+            private final Map<String, String> context = MDC.getCopyOfContextMap();
+            private int polls = 0;
+            private long delay = firstDelay;
+
+            @Override
+            public void run() {
+                if (future.isDone()) return;
+                Map<String, String> previous = setContext(context);
+                try {
+                    polls++;
+                    if (!function.get()) {
+                        future.complete(polls);
+                    } else if (!future.isDone()) {
+                        SCHEDULER.schedule(() -> POLLER.execute(this), withJitter ? jitter(delay) : delay, TimeUnit.MILLISECONDS);
+                        delay = nextDelay.applyAsLong(delay);
+                    }
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    setContext(previous);
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * @return true when called from a poll (on a thread of the poller)
+     */
+    private static boolean isPolling() {
+        return Thread.currentThread() instanceof PollerThread;
+    }
+
+    /**
+     * the polls of scheduleWhile made on the current thread, for a wait inside a poll : the thread of the poll is
+     * already taken, it sleep between two polls instead of waiting an other thread of the poller
+     */
+    private static int pollOnCurrentThread(Supplier<Boolean> function, LongUnaryOperator nextDelay, long firstDelay, boolean withJitter, int timeout) {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(timeout);
+        long delay = firstDelay;
+        int polls = 1;
+        try {
+            while (function.get()) {
+                long sleep = withJitter ? jitter(delay) : delay;
+                if (timeout >= 0 && System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sleep) - deadline > 0) {
+                    throw new TimeoutException(new java.util.concurrent.TimeoutException());
+                }
+                Thread.sleep(sleep);
+                delay = nextDelay.applyAsLong(delay);
+                polls++;
+            }
+        } catch (ConfigException | TimeoutException e) {
+            throw e;
+        } catch (InterruptedException | RuntimeException e) {
+            throw new ConfigException(e);
+        }
+        recordWait(start);
+        return polls;
+    }
+
+    /**
+     * set the MDC of the thread (the job of the server mode is in the MDC, the logs of the tasks must go to the job)
+     *
+     * @param context the context to set (null for clear)
+     * @return the context before
+     */
+    private static Map<String, String> setContext(Map<String, String> context) {
+        Map<String, String> previous = MDC.getCopyOfContextMap();
+        if (context == null) {
+            MDC.clear();
+        } else {
+            MDC.setContextMap(context);
+        }
+        return previous;
+    }
+
+    private static void recordWait(long start) {
+        if (ApiMetrics.isEnabled()) {
+            ApiMetrics.recordWait(ApiMetrics.caller(FunctionUtils.class), System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * equal jitter : between delay/2 and delay
+     */
+    private static long jitter(long delay) {
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    /**
+     * apply the function on each item on a fork join pool bounded by parallelism.
+     * The result keep the order of the items. When called from a task already running on one of these pools the items
+     * are forked on the same pool, so the recursive walk on a tree never block a thread (never on an other pool like
+     * the common pool, it is not bounded by parallelism). The MDC of the caller is set on each task.
+     *
+     * @param items the items
+     * @param function the function
+     * @param parallelism the max parallelism (null or less than 2 for sequential)
+     * @param <T> the type of item
+     * @param <R> the type of result
+     * @return the results in the order of the items
+     */
+    public static <T, R> List<R> runParallel(List<T> items, Function<T, R> function, Integer parallelism) {
+        if (parallelism == null || parallelism < 2 || items.size() < 2) {
+            return items.stream().map(function).collect(Collectors.toList());
+        }
+        Map<String, String> context = MDC.getCopyOfContextMap();
+        Function<T, R> withContext = item -> {
+            Map<String, String> previous = setContext(context);
+            try {
+                return function.apply(item);
+            } finally {
+                setContext(previous);
+            }
+        };
+        ForkJoinPool current = ForkJoinTask.getPool();
+        if (current != null && POOLS.containsValue(current)) {
+            return forkAndJoin(items, withContext);
+        }
+        ForkJoinPool pool = POOLS.computeIfAbsent(parallelism, ForkJoinPool::new);
+        return pool.invoke(new RecursiveTask<List<R>>() {
+            @Override
+            protected List<R> compute() {
+                return forkAndJoin(items, withContext);
+            }
+        });
+    }
+
+    /**
+     * start runParallel on the fork join pool without waiting the end, the caller can do something else in the same
+     * time. In sequential (parallelism null or less than 2) the function is applied on the items before return.
+     *
+     * @param items the items
+     * @param function the function
+     * @param parallelism the max parallelism (null or less than 2 for sequential)
+     * @param <T> the type of item
+     * @param <R> the type of result
+     * @return the future results in the order of the items, see join
+     */
+    public static <T, R> CompletableFuture<List<R>> runParallelAsync(List<T> items, Function<T, R> function, Integer parallelism) {
+        if (parallelism == null || parallelism < 2) {
+            CompletableFuture<List<R>> result = new CompletableFuture<>();
+            try {
+                result.complete(runParallel(items, function, parallelism));
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+            return result;
+        }
+        Map<String, String> context = MDC.getCopyOfContextMap();
+        CompletableFuture<List<R>> result = new CompletableFuture<>();
+        POOLS.computeIfAbsent(parallelism, ForkJoinPool::new).execute(() -> {
+            Map<String, String> previous = setContext(context);
+            try {
+                result.complete(runParallel(items, function, parallelism));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            } finally {
+                setContext(previous);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * wait the result of runParallelAsync, the exception of a function is thrown as is (like runParallel)
+     *
+     * @param future the future
+     * @param <R> the type of result
+     * @return the result
+     */
+    public static <R> R join(CompletableFuture<R> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new ConfigException(e.getCause());
+        }
+    }
+
+    private static <T, R> List<R> forkAndJoin(List<T> items, Function<T, R> function) {
+        List<ForkJoinTask<R>> tasks = items.stream()
+                .map(item -> new RecursiveTask<R>() {
+                    @Override
+                    protected R compute() {
+                        return function.apply(item);
+                    }
+                })
+                .collect(Collectors.toList());
+        ForkJoinTask.invokeAll(tasks);
+        return tasks.stream().map(ForkJoinTask::join).collect(Collectors.toList());
+    }
+
+    private static class PollerThread extends Thread {
+        private PollerThread(Runnable runnable) {
+            super(runnable, "nifi-config-wait");
+            setDaemon(true);
+        }
     }
 
     public static Optional<ProcessGroupEntity> findByComponentName(List<ProcessGroupEntity> listGroup, String name) {
@@ -0,0 +1,97 @@
+package com.github.hermannpencole.nifi.config.utils;
+
+import com.github.hermannpencole.nifi.config.model.Connection;
+import com.github.hermannpencole.nifi.config.model.ConnectionPort;
+import com.github.hermannpencole.nifi.config.model.GroupProcessorsEntity;
+import com.github.hermannpencole.nifi.swagger.client.model.ControllerServiceDTO;
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessorDTO;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Streaming reader of the configuration.
+ * <p>
+ * The processors and the sub groups of the root group are given to the consumers as soon as they are read,
+ * only one sub group (with his descendants) is in memory at the same time.
+ */
+public class GroupProcessorsReader implements Closeable {
+
+    private final static Type CONTROLLER_SERVICES_TYPE = new TypeToken<List<ControllerServiceDTO>>() {}.getType();
+    private final static Type CONNECTION_PORTS_TYPE = new TypeToken<List<ConnectionPort>>() {}.getType();
+    private final static Type CONNECTIONS_TYPE = new TypeToken<List<Connection>>() {}.getType();
+
+    private final Gson gson = new GsonBuilder().serializeNulls().create();
+
+    private final JsonReader reader;
+
+    public GroupProcessorsReader(Reader reader) {
+        this.reader = new JsonReader(reader);
+    }
+
+    /**
+     * read the root group
+     *
+     * @param onProcessor consumer of the processors of the root group
+     * @param onGroup consumer of the sub groups of the root group
+     * @return the root group without his processors and his sub groups
+     * @throws IOException when io problem
+     */
+    public GroupProcessorsEntity read(Consumer<ProcessorDTO> onProcessor, Consumer<GroupProcessorsEntity> onGroup) throws IOException {
+        GroupProcessorsEntity root = new GroupProcessorsEntity();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (field) {
+                case "processors":
+                    readEach(ProcessorDTO.class, onProcessor);
+                    break;
+                case "groupProcessorsEntity":
+                    readEach(GroupProcessorsEntity.class, onGroup);
+                    break;
+                case "controllerServices":
+                    root.setControllerServicesDTO(gson.fromJson(reader, CONTROLLER_SERVICES_TYPE));
+                    break;
+                case "connections":
+                    root.setConnectionPorts(gson.fromJson(reader, CONNECTION_PORTS_TYPE));
+                    break;
+                case "namedConnections":
+                    root.setConnections(gson.fromJson(reader, CONNECTIONS_TYPE));
+                    break;
+                case "name":
+                    root.setName(reader.nextString());
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return root;
+    }
+
+    private <T> void readEach(Class<T> clazz, Consumer<T> consumer) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            consumer.accept(gson.fromJson(reader, clazz));
+        }
+        reader.endArray();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,47 @@
+package com.github.hermannpencole.nifi.config.utils;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Appender that send the logs of a job of the server mode to his listener, the job is found by the key "job" of the MDC
+ * of the thread that log (declared in logback.xml).
+ */
+public class JobLogAppender extends AppenderBase<ILoggingEvent> {
+
+    public final static String MDC_KEY = "job";
+
+    private final static Map<String, Consumer<String>> LISTENERS = new ConcurrentHashMap<>();
+
+    /**
+     * send the logs of the job to the listener
+     *
+     * @param jobId the id of the job
+     * @param listener the listener
+     */
+    public static void register(String jobId, Consumer<String> listener) {
+        LISTENERS.put(jobId, listener);
+    }
+
+    public static void unregister(String jobId) {
+        LISTENERS.remove(jobId);
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        if (LISTENERS.isEmpty()) return;
+        String jobId = event.getMDCPropertyMap().get(MDC_KEY);
+        Consumer<String> listener = jobId == null ? null : LISTENERS.get(jobId);
+        if (listener != null) {
+            String logger = event.getLoggerName().substring(event.getLoggerName().lastIndexOf('.') + 1);
+            listener.accept(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(event.getTimeStamp()))
+                    + " | " + event.getLevel() + " | " + logger + " - " + event.getFormattedMessage());
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.github.hermannpencole.nifi.config.utils;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Interceptor of the http client that record each api call on ApiMetrics.
+ * <p>
+ * The call is recorded when his response body is read until the end or closed, so the latency and the bytes received
+ * include the body.
+ */
+public class MetricsInterceptor implements Interceptor {
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (!ApiMetrics.isEnabled()) {
+            return chain.proceed(request);
+        }
+        String endpoint = ApiMetrics.endpoint(request.method(), request.httpUrl().encodedPath());
+        long sent = request.body() == null ? 0 : request.body().contentLength();
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException | RuntimeException e) {
+            ApiMetrics.recordCall(endpoint, System.nanoTime() - start, sent, 0, true);
+            throw e;
+        }
+        if (response.body() == null) {
+            ApiMetrics.recordCall(endpoint, System.nanoTime() - start, sent, 0, !response.isSuccessful());
+            return response;
+        }
+        return response.newBuilder()
+                .body(new CountingResponseBody(response.body(), endpoint, start, sent, !response.isSuccessful()))
+                .build();
+    }
+
+    private static class CountingResponseBody extends ResponseBody {
+
+        private final ResponseBody delegate;
+
+        private final BufferedSource source;
+
+        private final AtomicBoolean recorded = new AtomicBoolean();
+
+        private long received = 0;
+
+        CountingResponseBody(ResponseBody delegate, String endpoint, long start, long sent, boolean error) throws IOException {
+            this.delegate = delegate;
+            this.source = Okio.buffer(new ForwardingSource(delegate.source()) {
+                @Override
+                public long read(Buffer sink, long byteCount) throws IOException {
+                    long read;
+                    try {
+                        read = super.read(sink, byteCount);
+                    } catch (IOException e) {
+                        record(true);
+                        throw e;
+                    }
+                    if (read == -1) {
+                        record(false);
+                    } else {
+                        received += read;
+                    }
+                    return read;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    record(false);
+                    super.close();
+                }
+
+                private void record(boolean failed) {
+                    if (recorded.compareAndSet(false, true)) {
+                        ApiMetrics.recordCall(endpoint, System.nanoTime() - start, sent, received, error || failed);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return delegate.contentLength();
+        }
+
+        @Override
+        public BufferedSource source() {
+            return source;
+        }
+    }
+}
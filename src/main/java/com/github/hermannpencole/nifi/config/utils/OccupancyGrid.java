@@ -0,0 +1,205 @@
+package com.github.hermannpencole.nifi.config.utils;
+
+import com.github.hermannpencole.nifi.swagger.client.model.FlowDTO;
+import com.github.hermannpencole.nifi.swagger.client.model.PositionDTO;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Positions of the components of a flow (processors, process groups, input ports, output ports, connections and
+ * funnels) bucketed by cell of the size of an element, build in one pass.
+ * <p>
+ * A place overlap only the positions of his cell and of the 8 cells around, so the search of an element in place is
+ * in constant time. The grid can be completed with the positions of the components created after his build.
+ * <p>
+ * For the next position, each element keep the last element of the line of elements placed side by side on his right,
+ * so a line full is crossed in one jump. An element added can only extend a line (the first element in place never
+ * change), the end of a line is checked again on each use.
+ */
+public final class OccupancyGrid {
+
+    public final static double ELEMENT_WIDTH = 430;
+
+    public final static double ELEMENT_HEIGHT = 220;
+
+    private final static double APPROXIMATE = 0.01;
+
+    private final FlowDTO flow;
+
+    private final Map<Long, List<Slot>> cells = new HashMap<>();
+
+    private int count = 0;
+
+    private final Map<Slot, Slot> lineEnds = new HashMap<>();
+
+    private double lineEndsWidth = Double.NaN;
+
+    private OccupancyGrid(FlowDTO flow) {
+        this.flow = flow;
+    }
+
+    /**
+     * build the grid of the flow
+     *
+     * @param flow the flow
+     * @return the grid
+     */
+    public static OccupancyGrid of(FlowDTO flow) {
+        OccupancyGrid grid = new OccupancyGrid(flow);
+        if (flow.getProcessors() != null) flow.getProcessors().forEach(processor -> grid.add(processor.getPosition()));
+        if (flow.getProcessGroups() != null) flow.getProcessGroups().forEach(processGroup -> grid.add(processGroup.getPosition()));
+        if (flow.getInputPorts() != null) flow.getInputPorts().forEach(port -> grid.add(port.getPosition()));
+        if (flow.getOutputPorts() != null) flow.getOutputPorts().forEach(port -> grid.add(port.getPosition()));
+        if (flow.getConnections() != null) flow.getConnections().forEach(connection -> grid.add(connection.getPosition()));
+        if (flow.getFunnels() != null) flow.getFunnels().forEach(funnel -> grid.add(funnel.getPosition()));
+        return grid;
+    }
+
+    /**
+     * @param flow the flow
+     * @return true if the grid was build on this instance of flow
+     */
+    public boolean isGridOf(FlowDTO flow) {
+        return this.flow == flow;
+    }
+
+    /**
+     * add the position of a component, the positions without x or y are ignored
+     *
+     * @param position the position
+     */
+    public synchronized void add(PositionDTO position) {
+        if (position == null || position.getX() == null || position.getY() == null) return;
+        cells.computeIfAbsent(key(cell(position.getX(), ELEMENT_WIDTH), cell(position.getY(), ELEMENT_HEIGHT)), key -> new ArrayList<>())
+                .add(new Slot(count++, position));
+    }
+
+    /**
+     * find the first position added that overlap an element placed on x,y
+     *
+     * @param x the x
+     * @param y the y
+     * @return an optionnal find
+     */
+    public synchronized Optional<PositionDTO> findOtherPositionInPlace(double x, double y) {
+        Slot first = findSlot(x, y);
+        return first == null ? Optional.empty() : Optional.of(first.position);
+    }
+
+    private Slot findSlot(double x, double y) {
+        long cellX = cell(x, ELEMENT_WIDTH);
+        long cellY = cell(y, ELEMENT_HEIGHT);
+        Slot first = null;
+        for (long i = cellX - 1; i <= cellX + 1; i++) {
+            for (long j = cellY - 1; j <= cellY + 1; j++) {
+                List<Slot> slots = cells.get(key(i, j));
+                if (slots == null) continue;
+                //the slots of a cell are in the order of add
+                for (Slot slot : slots) {
+                    if (first != null && slot.order > first.order) break;
+                    if (isInPlace(slot.position, x, y)) {
+                        first = slot;
+                        break;
+                    }
+                }
+            }
+        }
+        return first;
+    }
+
+    /**
+     * the next free place from start, moving right of the element in place and to the next line of elements when the
+     * width of the place is reached
+     *
+     * @param start the start position
+     * @param placeWidth the width of the place
+     * @return the position
+     */
+    public synchronized PositionDTO nextPosition(PositionDTO start, double placeWidth) {
+        PositionDTO nextPosition = new PositionDTO();
+        nextPosition.setX(start.getX());
+        nextPosition.setY(start.getY());
+        Slot other;
+        Slot fistInLine = null;
+        while ( (other = findSlot(nextPosition.getX(), nextPosition.getY())) != null ) {
+            if (fistInLine == null) {
+                fistInLine = other;
+            }
+            //jump to the last element side by side on the right
+            Slot last = lineEnd(other, placeWidth);
+            if (isEndOfPlace(last, placeWidth)) {
+                nextPosition.setX(0d);
+                nextPosition.setY(fistInLine.position.getY() + ELEMENT_HEIGHT);
+                fistInLine = null;
+            } else {
+                nextPosition.setY(last.position.getY());
+                nextPosition.setX(last.position.getX() + ELEMENT_WIDTH);
+            }
+        }
+        return nextPosition;
+    }
+
+    /**
+     * plus 2* while 1 for the other and 1 for the element
+     */
+    private static boolean isEndOfPlace(Slot slot, double placeWidth) {
+        return slot.position.getX() + 2*ELEMENT_WIDTH >= placeWidth;
+    }
+
+    /**
+     * the last element of the line from slot : each element is followed by the first element in place on his right
+     * until an element at the end of the place or an element with a free place on his right. The elements crossed keep
+     * the end found (the x always grow, there is no cycle).
+     */
+    private Slot lineEnd(Slot slot, double placeWidth) {
+        if (placeWidth != lineEndsWidth) {
+            lineEnds.clear();
+            lineEndsWidth = placeWidth;
+        }
+        List<Slot> crossed = new ArrayList<>();
+        Slot current = slot;
+        while (true) {
+            crossed.add(current);
+            Slot known = lineEnds.get(current);
+            if (known != null && known != current) {
+                current = known;
+                continue;
+            }
+            if (isEndOfPlace(current, placeWidth)) break;
+            Slot next = findSlot(current.position.getX() + ELEMENT_WIDTH, current.position.getY());
+            if (next == null) break;
+            current = next;
+        }
+        for (Slot crossedSlot : crossed) {
+            lineEnds.put(crossedSlot, current);
+        }
+        return current;
+    }
+
+    private static boolean isInPlace(PositionDTO position, double x, double y) {
+        return x + (ELEMENT_WIDTH - APPROXIMATE) > position.getX() && x - (ELEMENT_WIDTH - APPROXIMATE) < position.getX()
+                && y + (ELEMENT_HEIGHT - APPROXIMATE) > position.getY() && y - (ELEMENT_HEIGHT - APPROXIMATE) < position.getY();
+    }
+
+    private static long cell(double value, double size) {
+        return (long) Math.floor(value / size);
+    }
+
+    private static long key(long cellX, long cellY) {
+        return (cellX << 32) ^ (cellY & 0xffffffffL);
+    }
+
+    private static class Slot {
+        private final int order;
+        private final PositionDTO position;
+
+        private Slot(int order, PositionDTO position) {
+            this.order = order;
+            this.position = position;
+        }
+    }
+}
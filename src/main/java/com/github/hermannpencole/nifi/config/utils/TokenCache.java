@@ -0,0 +1,201 @@
+package com.github.hermannpencole.nifi.config.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.reflect.TypeToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Base64;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache on disk of the access tokens by nifi url and principal, so a token is reused by the next runs until shortly
+ * before his expiry (read in the JWT) instead of a login on each run.
+ * <p>
+ * The file is readable and writable only by his owner, a file with an access for the others is ignored. The file is
+ * replaced at once on each write. A problem with the file never fail the run, the token is then asked to nifi.
+ */
+public final class TokenCache {
+
+    /**
+     * The logger.
+     */
+    private final static Logger LOG = LoggerFactory.getLogger(TokenCache.class);
+
+    /**
+     * a token is not reused when it expire in less than this margin
+     */
+    public final static long MARGIN = TimeUnit.MINUTES.toMillis(1);
+
+    private final static Set<PosixFilePermission> OWNER_ONLY = EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE);
+
+    private final Gson gson = new Gson();
+
+    private final File file;
+
+    public TokenCache(String fileName) {
+        this.file = new File(fileName).getAbsoluteFile();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @param basePath the nifi url
+     * @param principal the user, or ticket for an access from a Kerberos ticket
+     * @return the key of the token
+     */
+    public static String key(String basePath, String principal) {
+        return basePath.replaceAll("/+$", "") + " " + principal;
+    }
+
+    /**
+     * the token cached if it doesn't expire before the margin
+     *
+     * @param key the key
+     * @return an optional token
+     */
+    public synchronized Optional<String> get(String key) {
+        String token = read().get(key);
+        if (token == null) return Optional.empty();
+        if (expiry(token) - MARGIN <= System.currentTimeMillis()) {
+            LOG.debug("Token cached for {} expired", key);
+            return Optional.empty();
+        }
+        return Optional.of(token);
+    }
+
+    /**
+     * cache the token (a token without expiry is not cached) and forget the tokens expired
+     *
+     * @param key the key
+     * @param token the token
+     */
+    public synchronized void put(String key, String token) {
+        if (expiry(token) <= System.currentTimeMillis()) {
+            LOG.debug("Token for {} has no expiry, not cached", key);
+            return;
+        }
+        Map<String, String> tokens = read();
+        tokens.values().removeIf(other -> expiry(other) <= System.currentTimeMillis());
+        tokens.put(key, token);
+        write(tokens);
+    }
+
+    /**
+     * forget the token (rejected by nifi)
+     *
+     * @param key the key
+     */
+    public synchronized void remove(String key) {
+        Map<String, String> tokens = read();
+        if (tokens.remove(key) != null) {
+            write(tokens);
+        }
+    }
+
+    /**
+     * the expiry of a JWT, read in the claim exp of his body
+     *
+     * @param token the token
+     * @return the expiry in millisecond since epoch, or 0 if the token is not a JWT with an expiry
+     */
+    public static long expiry(String token) {
+        String[] parts = token == null ? new String[0] : token.split("\\.");
+        if (parts.length < 2) return 0;
+        try {
+            byte[] body = Base64.getUrlDecoder().decode(parts[1].replace('+', '-').replace('/', '_').replace("=", ""));
+            JsonElement claims = new JsonParser().parse(new String(body, StandardCharsets.UTF_8));
+            if (!claims.isJsonObject()) return 0;
+            JsonObject object = claims.getAsJsonObject();
+            return object.has("exp") ? TimeUnit.SECONDS.toMillis(object.get("exp").getAsLong()) : 0;
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+
+    private Map<String, String> read() {
+        Map<String, String> tokens = new TreeMap<>();
+        if (!file.exists()) return tokens;
+        try {
+            if (isOpenToOthers(file.toPath())) {
+                LOG.warn("Token cache {} is open to the others, ignored", file);
+                return tokens;
+            }
+            try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                Map<String, String> cached = gson.fromJson(reader, new TypeToken<Map<String, String>>() { }.getType());
+                if (cached != null) tokens.putAll(cached);
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Token cache {} can't be read : {}", file, e.getMessage());
+        }
+        return tokens;
+    }
+
+    private void write(Map<String, String> tokens) {
+        Path tmp = null;
+        try {
+            Path directory = file.getParentFile().toPath();
+            if (!Files.isDirectory(directory)) {
+                Files.createDirectories(directory);
+                restrict(directory.toFile(), true);
+            }
+            tmp = Files.createTempFile(directory, file.getName(), ".tmp");
+            restrict(tmp.toFile(), false);
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                gson.toJson(tokens, writer);
+            }
+            Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Token cache {} can't be written : {}", file, e.getMessage());
+        } finally {
+            try {
+                if (tmp != null) Files.deleteIfExists(tmp);
+            } catch (IOException e) {
+                LOG.debug(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * give the access only to the owner
+     */
+    private static void restrict(File file, boolean directory) throws IOException {
+        if (Files.getFileStore(file.toPath()).supportsFileAttributeView("posix")) {
+            Set<PosixFilePermission> permissions = EnumSet.copyOf(OWNER_ONLY);
+            if (directory) permissions.add(PosixFilePermission.OWNER_EXECUTE);
+            Files.setPosixFilePermissions(file.toPath(), permissions);
+        } else {
+            file.setReadable(false, false);
+            file.setWritable(false, false);
+            file.setReadable(true, true);
+            file.setWritable(true, true);
+        }
+    }
+
+    private static boolean isOpenToOthers(Path path) throws IOException {
+        if (!Files.getFileStore(path).supportsFileAttributeView("posix")) return false;
+        Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(path);
+        permissions.removeAll(PosixFilePermissions.fromString("rwx------"));
+        return !permissions.isEmpty();
+    }
+}
@@ -22,7 +22,7 @@ import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.util.Arrays;
 
-import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.verify;
 
@@ -46,6 +46,12 @@ public class MainTest {
     private ExtractProcessorService extractProcessorServiceMock;
     @Mock
     private InformationService informationServiceMock;
+    @Mock
+    private PlanService planServiceMock;
+    @Mock
+    private ManifestService manifestServiceMock;
+    @Mock
+    private ServerService serverServiceMock;
 
     @Before
     public void init() {
@@ -64,6 +70,10 @@ public class MainTest {
                 bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(10);
                 bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(10);
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("scopedStop")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("diffMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("batchSchedule")).toInstance(false);
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
                 bind(Double.class).annotatedWith(Names.named("placeWidth")).toInstance(1200d);
                 bind(PositionDTO.class).annotatedWith(Names.named("startPosition")).toInstance(new PositionDTO());
             }
@@ -87,6 +97,10 @@ public class MainTest {
                 bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(10);
                 bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(10);
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("scopedStop")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("diffMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("batchSchedule")).toInstance(false);
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
                 bind(Double.class).annotatedWith(Names.named("placeWidth")).toInstance(1200d);
                 bind(PositionDTO.class).annotatedWith(Names.named("startPosition")).toInstance(new PositionDTO());
             }
@@ -109,6 +123,10 @@ public class MainTest {
                 bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(10);
                 bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(10);
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("scopedStop")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("diffMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("batchSchedule")).toInstance(false);
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
                 bind(Double.class).annotatedWith(Names.named("placeWidth")).toInstance(1200d);
                 bind(PositionDTO.class).annotatedWith(Names.named("startPosition")).toInstance(new PositionDTO());
             }
@@ -132,6 +150,10 @@ public class MainTest {
                 bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(10);
                 bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(10);
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("scopedStop")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("diffMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("batchSchedule")).toInstance(false);
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
                 bind(Double.class).annotatedWith(Names.named("placeWidth")).toInstance(1200d);
                 bind(PositionDTO.class).annotatedWith(Names.named("startPosition")).toInstance(new PositionDTO());
             }
@@ -158,6 +180,10 @@ public class MainTest {
                 bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(10);
                 bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(10);
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("scopedStop")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("diffMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("batchSchedule")).toInstance(false);
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
                 bind(Double.class).annotatedWith(Names.named("placeWidth")).toInstance(1200d);
                 bind(PositionDTO.class).annotatedWith(Names.named("startPosition")).toInstance(new PositionDTO());
             }
@@ -166,8 +192,9 @@ public class MainTest {
         PowerMockito.mockStatic(Guice.class);
         Mockito.when(Guice.createInjector((AbstractModule) anyObject())).thenReturn(injector);
 
-        Main.main(new String[]{"-nifi", "http://localhost:8080/nifi-api", "-branch", "\"root>N2\"", "-conf", "adr", "-m", "updateConfig", "-user", "user", "-password", "password"});
+        Main.main(new String[]{"-nifi", "http://localhost:8080/nifi-api", "-branch", "\"root>N2\"", "-conf", "adr", "-m", "updateConfig", "-user", "user", "-password", "password", "-tokenCache", "tokens.json"});
         verify(updateProcessorServiceMock).updateByBranch(Arrays.asList("root", "N2"), "adr", false);
+        verify(accessServiceMock).setTokenCache("tokens.json");
         verify(accessServiceMock).addTokenOnConfiguration(false, "user", "nifi_pass");
     }
 
@@ -181,6 +208,10 @@ public class MainTest {
                 bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(10);
                 bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(10);
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("scopedStop")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("diffMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("batchSchedule")).toInstance(false);
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
                 bind(Double.class).annotatedWith(Names.named("placeWidth")).toInstance(1200d);
                 bind(PositionDTO.class).annotatedWith(Names.named("startPosition")).toInstance(new PositionDTO());
             }
@@ -193,6 +224,34 @@ public class MainTest {
         verify(extractProcessorServiceMock).extractByBranch(Arrays.asList("root"), "adr", false);
     }
 
+    @Test
+    public void mainExtractOnClusterTest() throws Exception {
+        Injector injector = Guice.createInjector(new AbstractModule() {
+            protected void configure() {
+                bind(AccessService.class).toInstance(accessServiceMock);
+                bind(InformationService.class).toInstance(informationServiceMock);
+                bind(ExtractProcessorService.class).toInstance(extractProcessorServiceMock);
+                bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(10);
+                bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(10);
+                bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("scopedStop")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("diffMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("batchSchedule")).toInstance(false);
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
+                bind(Double.class).annotatedWith(Names.named("placeWidth")).toInstance(1200d);
+                bind(PositionDTO.class).annotatedWith(Names.named("startPosition")).toInstance(new PositionDTO());
+            }
+        });
+        //given
+        PowerMockito.mockStatic(Guice.class);
+        Mockito.when(Guice.createInjector((AbstractModule) anyObject())).thenReturn(injector);
+
+        Main.main(new String[]{"-nifi", "http://node1:8080/nifi-api, http://node2:8080/nifi-api", "-conf", "adr", "-m", "extractConfig", "-accessFromTicket"});
+        verify(accessServiceMock).setConfiguration(eq("http://node1:8080/nifi-api"), anyBoolean(), anyBoolean(), anyInt(), anyInt(), anyInt());
+        verify(accessServiceMock).addNodesOnConfiguration(Arrays.asList("http://node1:8080/nifi-api", "http://node2:8080/nifi-api"));
+        verify(extractProcessorServiceMock).extractByBranch(Arrays.asList("root"), "adr", false);
+    }
+
     @Test
     public void mainPrintUsageTest() throws Exception {
         PowerMockito.mockStatic(System.class);
@@ -231,6 +290,107 @@ public class MainTest {
         System.exit(1);
     }
 
+    @Test
+    public void mainPlanAndApplyTest() throws Exception {
+        Injector injector = Guice.createInjector(new AbstractModule() {
+            protected void configure() {
+                bind(AccessService.class).toInstance(accessServiceMock);
+                bind(InformationService.class).toInstance(informationServiceMock);
+                bind(PlanService.class).toInstance(planServiceMock);
+                bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(10);
+                bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(10);
+                bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("scopedStop")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("diffMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("batchSchedule")).toInstance(false);
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
+                bind(Double.class).annotatedWith(Names.named("placeWidth")).toInstance(1200d);
+                bind(PositionDTO.class).annotatedWith(Names.named("startPosition")).toInstance(new PositionDTO());
+            }
+        });
+        //given
+        PowerMockito.mockStatic(Guice.class);
+        Mockito.when(Guice.createInjector((AbstractModule) anyObject())).thenReturn(injector);
+
+        Main.main(new String[]{"-nifi", "http://localhost:8080/nifi-api", "-branch", "\"root>N2\"", "-conf", "adr", "-m", "plan", "-plan", "plan.json"});
+        verify(planServiceMock).plan(Arrays.asList("root", "N2"), "adr", "plan.json", false);
+        //apply don't need the configuration
+        Main.main(new String[]{"-nifi", "http://localhost:8080/nifi-api", "-m", "apply", "-plan", "plan.json"});
+        verify(planServiceMock).apply("plan.json");
+    }
+
+    @Test
+    public void mainManifestTest() throws Exception {
+        Injector injector = Guice.createInjector(new AbstractModule() {
+            protected void configure() {
+                bind(AccessService.class).toInstance(accessServiceMock);
+                bind(InformationService.class).toInstance(informationServiceMock);
+                bind(ManifestService.class).toInstance(manifestServiceMock);
+                bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(10);
+                bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(10);
+                bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("scopedStop")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("diffMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("batchSchedule")).toInstance(false);
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
+                bind(Double.class).annotatedWith(Names.named("placeWidth")).toInstance(1200d);
+                bind(PositionDTO.class).annotatedWith(Names.named("startPosition")).toInstance(new PositionDTO());
+            }
+        });
+        //given
+        PowerMockito.mockStatic(Guice.class);
+        Mockito.when(Guice.createInjector((AbstractModule) anyObject())).thenReturn(injector);
+
+        Main.main(new String[]{"-nifi", "http://localhost:8080/nifi-api", "-manifest", "manifest.json", "-noStartProcessors"});
+        verify(manifestServiceMock).run("manifest.json", Main.DEFAULT_MANIFESTPARALLELISM, true, false, false, false);
+        Main.main(new String[]{"-nifi", "http://localhost:8080/nifi-api", "-manifest", "manifest.json", "-manifestParallelism", "8", "-removeControllers"});
+        verify(manifestServiceMock).run("manifest.json", 8, false, false, false, true);
+    }
+
+    @Test
+    public void mainServerTest() throws Exception {
+        Injector injector = Guice.createInjector(new AbstractModule() {
+            protected void configure() {
+                bind(AccessService.class).toInstance(accessServiceMock);
+                bind(InformationService.class).toInstance(informationServiceMock);
+                bind(ServerService.class).toInstance(serverServiceMock);
+                bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(10);
+                bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(10);
+                bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("scopedStop")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("diffMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("batchSchedule")).toInstance(false);
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
+                bind(Double.class).annotatedWith(Names.named("placeWidth")).toInstance(1200d);
+                bind(PositionDTO.class).annotatedWith(Names.named("startPosition")).toInstance(new PositionDTO());
+            }
+        });
+        //given
+        PowerMockito.mockStatic(Guice.class);
+        Mockito.when(Guice.createInjector((AbstractModule) anyObject())).thenReturn(injector);
+
+        //server don't need the configuration
+        Main.main(new String[]{"-nifi", "http://localhost:8080/nifi-api", "-m", "server", "-port", "9090", "-keepTemplate"});
+        verify(serverServiceMock).start(9090, Main.DEFAULT_SERVERSECRET, Main.DEFAULT_MANIFESTPARALLELISM, false, true, false, false);
+        verify(serverServiceMock).await();
+    }
+
+    @Test
+    public void mainPrintUsageManifestWithModeTest() throws Exception {
+        PowerMockito.mockStatic(System.class);
+        Main.main(new String[]{"-nifi", "http://localhost:8080/nifi-api", "-manifest", "manifest.json", "-m", "undeploy"});
+        PowerMockito.verifyStatic();
+        System.exit(1);
+    }
+
+    @Test
+    public void mainPrintUsageMandatoryWithoutPlanFileTest() throws Exception {
+        PowerMockito.mockStatic(System.class);
+        Main.main(new String[]{"-nifi", "http://localhost:8080/nifi-api", "-m", "apply"});
+        PowerMockito.verifyStatic();
+        System.exit(1);
+    }
+
     @Test
     public void mainPrintUsageModeUnknowTest() throws Exception {
         PowerMockito.mockStatic(System.class);
@@ -262,6 +422,10 @@ public class MainTest {
                 bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(10);
                 bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(10);
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("scopedStop")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("diffMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("batchSchedule")).toInstance(false);
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
                 bind(Double.class).annotatedWith(Names.named("placeWidth")).toInstance(1200d);
                 bind(PositionDTO.class).annotatedWith(Names.named("startPosition")).toInstance(new PositionDTO());
             }
@@ -1,16 +1,32 @@
 package com.github.hermannpencole.nifi.config.service;
 
+import com.github.hermannpencole.nifi.config.utils.ClusterInterceptor;
 import com.github.hermannpencole.nifi.swagger.ApiException;
+import com.github.hermannpencole.nifi.utils.TokenCacheTest;
+import com.github.hermannpencole.nifi.swagger.Configuration;
 import com.github.hermannpencole.nifi.swagger.client.AccessApi;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.io.File;
 import java.io.IOException;
+import java.net.Socket;
 import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.*;
 
 /**
@@ -49,5 +65,82 @@ public class AccessServiceTest {
         verify(accessApiMock, never()).createAccessToken(anyString(), anyString());
     }
 
+    @Test
+    public void createAccessFromTokenCacheTest() throws ApiException, IOException {
+        File file = File.createTempFile("tokens", ".json");
+        try {
+            String token = TokenCacheTest.jwt(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+            when(accessApiMock.createAccessToken("user", "pwd")).thenReturn(token);
+            accessService.setTokenCache(file.getPath());
+            accessService.addTokenOnConfiguration(false, "user", "pwd");
+            //next run
+            accessService.addTokenOnConfiguration(false, "user", "pwd");
+            verify(accessApiMock, times(1)).createAccessToken("user", "pwd");
+            //other principal
+            accessService.addTokenOnConfiguration(false, "other", "pwd");
+            verify(accessApiMock).createAccessToken("other", "pwd");
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void reloginTest() throws ApiException, IOException {
+        String oldToken = TokenCacheTest.jwt(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+        String newToken = TokenCacheTest.jwt(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(2));
+        when(accessApiMock.createAccessTokenFromTicket()).thenReturn(oldToken, newToken);
+        Configuration.getDefaultApiClient().setBasePath("http://localhost:8080/nifi-api");
+        accessService.addTokenOnConfiguration(true, null, null);
+
+        Request request = new Request.Builder().url("http://localhost:8080/nifi-api/flow/process-groups/root")
+                .header("Authorization", "Bearer " + oldToken).build();
+        Response response = new Response.Builder().request(request).protocol(Protocol.HTTP_1_1).code(401).build();
+        Request retry = accessService.relogin(response);
+        assertEquals("Bearer " + newToken, retry.header("Authorization"));
+        //a parallel call rejected with the old token retry with the new one without login
+        assertEquals("Bearer " + newToken, accessService.relogin(response).header("Authorization"));
+        verify(accessApiMock, times(2)).createAccessTokenFromTicket();
+
+        //the retry is rejected too
+        Response retryResponse = new Response.Builder().request(retry).protocol(Protocol.HTTP_1_1).code(401).priorResponse(response).build();
+        assertNull(accessService.relogin(retryResponse));
+        //the login is rejected
+        Request login = new Request.Builder().url("http://localhost:8080/nifi-api/access/kerberos").build();
+        assertNull(accessService.relogin(new Response.Builder().request(login).protocol(Protocol.HTTP_1_1).code(401).build()));
+        //an other node of the cluster reject the token, the read is made again on the first node without login
+        Request otherNode = new Request.Builder().url("http://node2:8080/nifi-api/flow/process-groups/root")
+                .header("Authorization", "Bearer " + newToken).build();
+        assertNull(accessService.relogin(new Response.Builder().request(otherNode).protocol(Protocol.HTTP_1_1).code(401).build()));
+        verify(accessApiMock, times(2)).createAccessTokenFromTicket();
+    }
 
-}
\ No newline at end of file
+    @Test
+    public void setPoolConfigurationTest() throws IOException {
+        accessService.setPoolConfiguration(16, 60, 12, true, true);
+        OkHttpClient httpClient = Configuration.getDefaultApiClient().getHttpClient();
+        assertEquals(12, httpClient.getDispatcher().getMaxRequestsPerHost());
+        assertEquals(64, httpClient.getDispatcher().getMaxRequests());
+        assertEquals(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1), httpClient.getProtocols());
+        try (Socket socket = httpClient.getSocketFactory().createSocket()) {
+            assertTrue(socket.getTcpNoDelay());
+        }
+
+        accessService.setPoolConfiguration(5, 300, 5, false, false);
+        assertEquals(Collections.singletonList(Protocol.HTTP_1_1), httpClient.getProtocols());
+        assertFalse(httpClient.getSocketFactory() instanceof AccessService.NoDelaySocketFactory);
+    }
+
+    @Test
+    public void addNodesOnConfigurationTest() {
+        OkHttpClient httpClient = Configuration.getDefaultApiClient().getHttpClient();
+        assertEquals("", accessService.getNodesReport());
+        accessService.addNodesOnConfiguration(Arrays.asList("http://node1:8080/nifi-api", "http://node2:8080/nifi-api"));
+        accessService.addNodesOnConfiguration(Arrays.asList("http://node1:8080/nifi-api", "http://node2:8080/nifi-api"));
+        try {
+            assertEquals(1, httpClient.interceptors().stream().filter(interceptor -> interceptor instanceof ClusterInterceptor).count());
+            assertTrue(accessService.getNodesReport().contains("http://node2:8080/nifi-api : 0 read(s)"));
+        } finally {
+            httpClient.interceptors().removeIf(interceptor -> interceptor instanceof ClusterInterceptor);
+        }
+    }
+}
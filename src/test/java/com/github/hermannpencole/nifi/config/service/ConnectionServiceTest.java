@@ -13,6 +13,7 @@ import com.google.inject.Injector;
 import com.google.inject.name.Names;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentMatcher;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
@@ -21,6 +22,7 @@ import java.net.URISyntaxException;
 
 import static java.util.Arrays.asList;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
 
@@ -57,6 +59,10 @@ public class ConnectionServiceTest {
                 bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(1);
                 bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(1);
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("scopedStop")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("diffMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("batchSchedule")).toInstance(false);
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
             }
         });
         ConnectionService connectionService = injector.getInstance(ConnectionService.class);
@@ -78,6 +84,10 @@ public class ConnectionServiceTest {
                 bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(1);
                 bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(1);
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(true);
+                bind(Boolean.class).annotatedWith(Names.named("scopedStop")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("diffMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("batchSchedule")).toInstance(false);
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
             }
         });
         ConnectionService connectionService = injector.getInstance(ConnectionService.class);
@@ -108,6 +118,10 @@ public class ConnectionServiceTest {
                 bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(1);
                 bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(1);
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("scopedStop")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("diffMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("batchSchedule")).toInstance(false);
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
             }
         });
         ConnectionService connectionService = injector.getInstance(ConnectionService.class);
@@ -120,6 +134,94 @@ public class ConnectionServiceTest {
         connectionService.waitEmptyQueue(connection);
     }
 
+    @Test
+    public void waitEmptyQueuesTest() throws ApiException, IOException, URISyntaxException {
+        ConnectionService connectionService = getConnectionService(false);
+        when(flowApiMock.getProcessGroupStatus("root", true, false, null))
+                .thenReturn(createStatus(createConnectionStatus("id1", 0), createConnectionStatus("id2", 5)))
+                .thenReturn(createStatus(createConnectionStatus("id1", 0), createConnectionStatus("id2", 0)));
+
+        connectionService.waitEmptyQueues("root", asList(
+                TestUtils.createConnectionEntity("id1","sourceId","destinationId"),
+                TestUtils.createConnectionEntity("id2","sourceId","destinationId")));
+
+        verify(flowApiMock, times(2)).getProcessGroupStatus("root", true, false, null);
+        verifyZeroInteractions(connectionsApiMock);
+    }
+
+    @Test
+    public void waitEmptyQueuesForceTest() throws ApiException, IOException, URISyntaxException {
+        ConnectionService connectionService = getConnectionService(true);
+        when(flowApiMock.getProcessGroupStatus("root", true, false, null))
+                .thenReturn(createStatus(createConnectionStatus("id1", 0), createConnectionStatus("id2", 5), createConnectionStatus("id3", 5)));
+        for (String id : asList("id2", "id3")) {
+            DropRequestEntity dropRequest = new DropRequestEntity();
+            dropRequest.setDropRequest(new DropRequestDTO());
+            dropRequest.getDropRequest().setId("idDrop" + id);
+            dropRequest.getDropRequest().setFinished(true);
+            when(flowfileQueuesApiMock.createDropRequest(id)).thenReturn(dropRequest);
+            when(flowfileQueuesApiMock.getDropRequest(id, dropRequest.getDropRequest().getId())).thenReturn(dropRequest);
+        }
+
+        connectionService.waitEmptyQueues("root", asList(
+                TestUtils.createConnectionEntity("id1","sourceId","destinationId"),
+                TestUtils.createConnectionEntity("id2","sourceId","destinationId"),
+                TestUtils.createConnectionEntity("id3","sourceId","destinationId")));
+
+        verify(flowfileQueuesApiMock, never()).createDropRequest("id1");
+        verify(flowfileQueuesApiMock).removeDropRequest("id2", "idDropid2");
+        verify(flowfileQueuesApiMock).removeDropRequest("id3", "idDropid3");
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void waitEmptyQueuesTimeOutTest() throws ApiException, IOException, URISyntaxException {
+        ConnectionService connectionService = getConnectionService(false);
+        when(flowApiMock.getProcessGroupStatus("root", true, false, null))
+                .thenReturn(createStatus(createConnectionStatus("id1", 5)));
+
+        connectionService.waitEmptyQueues("root", asList(TestUtils.createConnectionEntity("id1","sourceId","destinationId")));
+    }
+
+    private ConnectionService getConnectionService(boolean forceMode) {
+        Injector injector = Guice.createInjector(new AbstractModule() {
+            protected void configure() {
+                bind(ConnectionsApi.class).toInstance(connectionsApiMock);
+                bind(FlowfileQueuesApi.class).toInstance(flowfileQueuesApiMock);
+                bind(FlowApi.class).toInstance(flowApiMock);
+                bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(1);
+                bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(1);
+                bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(forceMode);
+                bind(Boolean.class).annotatedWith(Names.named("scopedStop")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("diffMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("batchSchedule")).toInstance(false);
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
+            }
+        });
+        return injector.getInstance(ConnectionService.class);
+    }
+
+    private static ProcessGroupStatusEntity createStatus(ConnectionStatusSnapshotEntity... connections) {
+        ProcessGroupStatusEntity status = new ProcessGroupStatusEntity();
+        status.setProcessGroupStatus(new ProcessGroupStatusDTO());
+        status.getProcessGroupStatus().setAggregateSnapshot(new ProcessGroupStatusSnapshotDTO());
+        //the connections are in a sub group
+        ProcessGroupStatusSnapshotEntity child = new ProcessGroupStatusSnapshotEntity();
+        child.setProcessGroupStatusSnapshot(new ProcessGroupStatusSnapshotDTO());
+        child.getProcessGroupStatusSnapshot().setConnectionStatusSnapshots(asList(connections));
+        status.getProcessGroupStatus().getAggregateSnapshot().setProcessGroupStatusSnapshots(asList(child));
+        return status;
+    }
+
+    private static ConnectionStatusSnapshotEntity createConnectionStatus(String id, Integer flowFilesQueued) {
+        ConnectionStatusSnapshotEntity connection = new ConnectionStatusSnapshotEntity();
+        connection.setId(id);
+        connection.setConnectionStatusSnapshot(new ConnectionStatusSnapshotDTO());
+        connection.getConnectionStatusSnapshot().setId(id);
+        connection.getConnectionStatusSnapshot().setFlowFilesQueued(flowFilesQueued);
+        connection.getConnectionStatusSnapshot().setBytesQueued(flowFilesQueued * 100L);
+        return connection;
+    }
+
     @Test
     public void removeExternalConnectionTest() throws ApiException, IOException, URISyntaxException {
         Injector injector = Guice.createInjector(new AbstractModule() {
@@ -133,6 +235,10 @@ public class ConnectionServiceTest {
                 bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(1);
                 bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(1);
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("scopedStop")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("diffMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("batchSchedule")).toInstance(false);
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
             }
         });
         ConnectionService connectionService = injector.getInstance(ConnectionService.class);
@@ -140,6 +246,12 @@ public class ConnectionServiceTest {
         ProcessGroupFlowEntity flow = TestUtils.createProcessGroupFlowEntity("123", "flow1");
         flow.getProcessGroupFlow().setParentGroupId("456");
         when(flowApiMock.getFlow("345")).thenReturn(flow);
+        ProcessGroupFlowEntity flowOther = TestUtils.createProcessGroupFlowEntity("000", "other");
+        flowOther.getProcessGroupFlow().getFlow().setProcessors(asList(TestUtils.createProcessorEntity("d1", "d1")));
+        PortEntity port = new PortEntity();
+        port.setId("s2");
+        flowOther.getProcessGroupFlow().getFlow().setOutputPorts(asList(port));
+        when(flowApiMock.getFlow("000")).thenReturn(flowOther);
 
         ConnectionsEntity connectionsEntity = new ConnectionsEntity();
         connectionsEntity.setConnections(asList(
@@ -154,6 +266,13 @@ public class ConnectionServiceTest {
 
         verify(flowApiMock).getFlow(eq("345"));
         verify(connectionsApiMock, times(2)).deleteConnection(any(), any(), any());
+        //the components are find in the flow, without guessing the type
+        verify(processorServiceMock).setState(argThat(new ArgumentMatcher<ProcessorEntity>() {
+            public boolean matches(Object processor) { return "d1".equals(((ProcessorEntity) processor).getId()); }
+        }), eq(ProcessorDTO.StateEnum.STOPPED));
+        verify(portServiceMock).setState(eq(port), eq(PortDTO.StateEnum.STOPPED));
+        verify(processorServiceMock, never()).getById(any());
+        verify(portServiceMock, never()).getById(any(), any());
     }
 
     private ConnectionEntity createConnection(String id, String sourceId, String destinationId,
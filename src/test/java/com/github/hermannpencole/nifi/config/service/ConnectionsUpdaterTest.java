@@ -7,6 +7,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import java.util.ArrayList;
@@ -25,6 +26,8 @@ public class ConnectionsUpdaterTest {
 
     @Mock
     ConnectionsApi connectionsApi;
+    @Spy
+    FlowCacheService flowCacheService;
     @InjectMocks
     ConnectionsUpdater connectionsUpdater;
 
@@ -2,6 +2,7 @@ package com.github.hermannpencole.nifi.config.service;
 
 import com.github.hermannpencole.nifi.swagger.ApiException;
 import com.github.hermannpencole.nifi.swagger.client.ControllerServicesApi;
+import com.github.hermannpencole.nifi.swagger.client.FlowApi;
 import com.github.hermannpencole.nifi.swagger.client.model.*;
 import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
@@ -13,9 +14,9 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.*;
 
+import static com.github.hermannpencole.nifi.utils.ControllerServiceGraphTest.createControllerService;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
@@ -31,6 +32,9 @@ public class ControllerServicesServiceTest {
     @Mock
     private ControllerServicesApi controllerServicesApiMock;
 
+    @Mock
+    private FlowApi flowApiMock;
+
     @Test
     public void updateControllerServiceTest() throws InterruptedException {
         Injector injector = Guice.createInjector(new AbstractModule() {
@@ -39,6 +43,10 @@ public class ControllerServicesServiceTest {
                 bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(1);
                 bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(1);
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("scopedStop")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("diffMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("batchSchedule")).toInstance(false);
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
             }
         });
         ControllerServiceEntity controllerServiceDisabled = TestUtils.createControllerServiceEntity("id","name");
@@ -79,6 +87,10 @@ public class ControllerServicesServiceTest {
                 bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(1);
                 bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(1);
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("scopedStop")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("diffMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("batchSchedule")).toInstance(false);
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
             }
         });
         when(controllerServicesApiMock.updateControllerServiceReferences(eq("id"), any())).thenReturn(new ControllerServiceReferencingComponentsEntity());
@@ -104,4 +116,78 @@ public class ControllerServicesServiceTest {
         assertTrue(updateControllerServiceReferenceRequestCapture.getValue().getReferencingComponentRevisions().containsKey("idRef"));
     }
 
-}
\ No newline at end of file
+    /**
+     * the services a &lt;- b &lt;- c and a &lt;- d in the group, their states changed by the updates
+     */
+    private List<String> mockGroup(Map<String, ControllerServiceDTO.StateEnum> states) {
+        List<String> updates = new ArrayList<>();
+        when(flowApiMock.getControllerServicesFromGroup("idGroup", true, false)).thenAnswer(invocation -> {
+            ControllerServicesEntity controllerServices = new ControllerServicesEntity();
+            controllerServices.setControllerServices(Arrays.asList(createControllerService("a"), createControllerService("b", "a"),
+                    createControllerService("c", "b"), createControllerService("d", "a")));
+            controllerServices.getControllerServices().forEach(service -> service.getComponent().setState(states.get(service.getId())));
+            return controllerServices;
+        });
+        when(controllerServicesApiMock.updateControllerService(any(), any())).thenAnswer(invocation -> {
+            ControllerServiceEntity body = (ControllerServiceEntity) invocation.getArguments()[1];
+            updates.add(invocation.getArguments()[0] + " " + body.getComponent().getState());
+            states.put((String) invocation.getArguments()[0], body.getComponent().getState());
+            return body;
+        });
+        return updates;
+    }
+
+    private ControllerServicesService createControllerServicesService() {
+        Injector injector = Guice.createInjector(new AbstractModule() {
+            protected void configure() {
+                bind(ControllerServicesApi.class).toInstance(controllerServicesApiMock);
+                bind(FlowApi.class).toInstance(flowApiMock);
+                bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(1);
+                bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(1);
+                bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("scopedStop")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("diffMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("batchSchedule")).toInstance(false);
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
+            }
+        });
+        return injector.getInstance(ControllerServicesService.class);
+    }
+
+    @Test
+    public void setStateControllerServicesEnableTest() throws ApiException {
+        Map<String, ControllerServiceDTO.StateEnum> states = new HashMap<>();
+        states.put("a", ControllerServiceDTO.StateEnum.DISABLED);
+        states.put("b", ControllerServiceDTO.StateEnum.DISABLED);
+        states.put("c", ControllerServiceDTO.StateEnum.DISABLED);
+        states.put("d", ControllerServiceDTO.StateEnum.DISABLED);
+        List<String> updates = mockGroup(states);
+
+        createControllerServicesService().setStateControllerServices("idGroup", Collections.singletonList("b"), ControllerServiceDTO.StateEnum.ENABLED, true);
+
+        //the service referenced, the service, the referencing service, d is not linked to b
+        assertEquals(Arrays.asList("a ENABLED", "b ENABLED", "c ENABLED"), updates);
+        //one listing for the graph and one by wave
+        verify(flowApiMock, times(4)).getControllerServicesFromGroup("idGroup", true, false);
+        verify(controllerServicesApiMock, never()).getControllerService(any());
+
+        updates.clear();
+        createControllerServicesService().setStateControllerServices("idGroup", Collections.singletonList("d"), ControllerServiceDTO.StateEnum.ENABLED, false);
+        assertEquals(Collections.singletonList("d ENABLED"), updates);
+    }
+
+    @Test
+    public void setStateControllerServicesDisableTest() throws ApiException {
+        Map<String, ControllerServiceDTO.StateEnum> states = new HashMap<>();
+        states.put("a", ControllerServiceDTO.StateEnum.ENABLED);
+        states.put("b", ControllerServiceDTO.StateEnum.ENABLED);
+        states.put("c", ControllerServiceDTO.StateEnum.ENABLED);
+        states.put("d", ControllerServiceDTO.StateEnum.DISABLED);
+        List<String> updates = mockGroup(states);
+
+        createControllerServicesService().setStateControllerServices("idGroup", Collections.singletonList("a"), ControllerServiceDTO.StateEnum.DISABLED, false);
+
+        //the referencing services before, d already disabled
+        assertEquals(Arrays.asList("c DISABLED", "b DISABLED", "a DISABLED"), updates);
+    }
+}
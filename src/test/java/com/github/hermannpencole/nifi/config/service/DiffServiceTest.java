@@ -0,0 +1,179 @@
+package com.github.hermannpencole.nifi.config.service;
+
+import com.github.hermannpencole.nifi.config.model.ConfigDiff;
+import com.github.hermannpencole.nifi.config.model.ConfigException;
+import com.github.hermannpencole.nifi.config.model.GroupProcessorsEntity;
+import com.github.hermannpencole.nifi.config.utils.GroupProcessorsReader;
+import com.github.hermannpencole.nifi.swagger.ApiException;
+import com.github.hermannpencole.nifi.swagger.client.FlowApi;
+import com.github.hermannpencole.nifi.swagger.client.model.*;
+import com.google.gson.Gson;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.powermock.reflect.Whitebox;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+
+import static com.github.hermannpencole.nifi.config.service.TestUtils.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.when;
+
+/**
+ * API tests for DiffService
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class DiffServiceTest {
+
+    @Mock
+    private FlowApi flowapiMock;
+
+    @Spy
+    private FlowCacheService flowCacheService;
+
+    @InjectMocks
+    private DiffService diffService;
+
+    private ProcessGroupFlowEntity response;
+
+    private ProcessGroupFlowEntity subGroupResponse;
+
+    @Before
+    public void setup() throws IOException {
+        Whitebox.setInternalState(flowCacheService, "flowapi", flowapiMock);
+        //the live flow is the configuration of mytest1.json
+        GroupProcessorsEntity live = load("mytest1.json");
+        response = createProcessGroupFlowEntity("idComponent", "nameComponent");
+        response.getProcessGroupFlow().getFlow().setProcessors(new ArrayList<>());
+        response.getProcessGroupFlow().getFlow().getProcessors().add(createProcessorEntityWithConfig("idProc", "nameProc", live.getProcessors().get(0).getConfig()));
+        response.getProcessGroupFlow().getFlow().getProcessGroups().add(createProcessGroupEntity("idSubGroup", "nameSubGroup"));
+        response.getProcessGroupFlow().getFlow().setConnections(new ArrayList<>());
+        response.getProcessGroupFlow().getFlow().getConnections().add(createConnectionEntity("idConnectionId", "idConnection", "sourceOne", "destOne", "1 GB", 10L));
+
+        GroupProcessorsEntity liveSubGroup = live.getGroupProcessorsEntity().get(0);
+        subGroupResponse = createProcessGroupFlowEntity("idSubGroup", "nameSubGroup");
+        subGroupResponse.getProcessGroupFlow().getFlow().setProcessors(new ArrayList<>());
+        subGroupResponse.getProcessGroupFlow().getFlow().getProcessors().add(createProcessorEntityWithConfig("idProc2", "nameProc2", liveSubGroup.getProcessors().get(0).getConfig()));
+        subGroupResponse.getProcessGroupFlow().getFlow().getProcessors().add(createProcessorEntityWithConfig("idProc3", "nameProc3", liveSubGroup.getProcessors().get(1).getConfig()));
+        subGroupResponse.getProcessGroupFlow().getFlow().setConnections(new ArrayList<>());
+        subGroupResponse.getProcessGroupFlow().getFlow().getConnections().add(createConnectionEntity("subGroupConnectionId", "subGroupConnection", "nameProc2", "nameProc3", "4 GB", 4L));
+        when(flowapiMock.getFlow("idSubGroup")).thenReturn(subGroupResponse);
+    }
+
+    @Test
+    public void diffUpToDateTest() throws ApiException, IOException {
+        ConfigDiff diff = diff("mytest1.json");
+
+        assertTrue(diff.isEmpty());
+        assertEquals(5, diff.getUnchanged());
+        assertTrue(diff.getConfiguration().getProcessors().isEmpty());
+        assertTrue(diff.getConfiguration().getGroupProcessorsEntity().isEmpty());
+        assertTrue(diff.getConfiguration().getConnections().isEmpty());
+    }
+
+    @Test
+    public void diffTest() throws ApiException, IOException {
+        subGroupResponse.getProcessGroupFlow().getFlow().getProcessors().get(1).getComponent().getConfig().setSchedulingPeriod("5 sec");
+        subGroupResponse.getProcessGroupFlow().getFlow().getConnections().clear();
+
+        ConfigDiff diff = diff("mytest1.json");
+
+        assertFalse(diff.isEmpty());
+        assertEquals(Arrays.asList("~ processor nameComponent > nameSubGroup > nameProc3 : schedulingPeriod",
+                "+ connection nameComponent > nameSubGroup > subGroupConnection"), diff.getChanges());
+        assertEquals("1 processor(s), 1 connection(s), 0 controller service(s) to update, 3 unchanged", diff.getSummary());
+        assertEquals(Collections.singleton("idProc3"), diff.getComponentIds());
+        GroupProcessorsEntity configuration = diff.getConfiguration();
+        assertTrue(configuration.getProcessors().isEmpty());
+        assertTrue(configuration.getConnections().isEmpty());
+        assertEquals(1, configuration.getGroupProcessorsEntity().size());
+        GroupProcessorsEntity subGroup = configuration.getGroupProcessorsEntity().get(0);
+        assertEquals("nameSubGroup", subGroup.getName());
+        assertEquals(1, subGroup.getProcessors().size());
+        assertEquals("nameProc3", subGroup.getProcessors().get(0).getName());
+        assertEquals("subGroupConnection", subGroup.getConnections().get(0).getName());
+    }
+
+    @Test(expected = ConfigException.class)
+    public void diffNotFoundTest() throws ApiException, IOException {
+        subGroupResponse.getProcessGroupFlow().getFlow().getProcessors().remove(1);
+        diff("mytest1.json");
+    }
+
+    @Test
+    public void diffControllerTest() throws ApiException, IOException {
+        ControllerServicesEntity controllerServicesEntity = new ControllerServicesEntity();
+        controllerServicesEntity.setControllerServices(new ArrayList<>());
+        ControllerServiceEntity controllerService = createControllerServiceEntity("idCtrl", "nameCtrl");
+        controllerService.getComponent().getProperties().put("key", "value1");
+        controllerService.getComponent().getProperties().put("key2", "value2");
+        controllerService.getComponent().setState(ControllerServiceDTO.StateEnum.ENABLED);
+        controllerServicesEntity.getControllerServices().add(controllerService);
+        when(flowapiMock.getControllerServicesFromGroup("idComponent", true, false)).thenReturn(controllerServicesEntity);
+
+        ConfigDiff diff = diff("mytestController.json");
+        assertTrue(diff.isEmpty());
+
+        controllerService.getComponent().getProperties().put("key2", "value3");
+        controllerService.getComponent().setState(ControllerServiceDTO.StateEnum.DISABLED);
+        ControllerServiceReferencingComponentEntity reference = new ControllerServiceReferencingComponentEntity();
+        reference.setId("idProcRef");
+        reference.setComponent(new ControllerServiceReferencingComponentDTO());
+        reference.getComponent().setReferenceType(ControllerServiceReferencingComponentDTO.ReferenceTypeEnum.PROCESSOR);
+        controllerService.getComponent().setReferencingComponents(Collections.singletonList(reference));
+        diff = diff("mytestController.json");
+        assertEquals(Collections.singletonList("~ controller service nameCtrl : properties.key2, state"), diff.getChanges());
+        assertEquals(1, diff.getConfiguration().getControllerServicesDTO().size());
+        assertEquals(Collections.singleton("idProcRef"), diff.getComponentIds());
+    }
+
+    @Test
+    public void compareProcessorTest() {
+        ProcessorDTO live = createProcessorEntity("idProc", "nameProc").getComponent();
+        live.getConfig().setProperties(new HashMap<>());
+        live.getConfig().getProperties().put("same", "value");
+        live.getConfig().getProperties().put("controller", "idCtrl");
+        live.getConfig().setDescriptors(new HashMap<>());
+        PropertyDescriptorDTO descriptor = new PropertyDescriptorDTO();
+        descriptor.setIdentifiesControllerService("org.apache.nifi.ssl.SSLContextService");
+        live.getConfig().getDescriptors().put("controller", descriptor);
+        live.getConfig().setComments("comments");
+
+        ProcessorDTO target = createProcessorEntity("idProc", "nameProc").getComponent();
+        target.getConfig().setProperties(new HashMap<>());
+        target.getConfig().getProperties().put("same", "value");
+        target.getConfig().getProperties().put("controller", "otherCtrl");
+        target.getConfig().getProperties().put("new", "value");
+        target.getConfig().setPenaltyDuration("10 sec");
+
+        assertEquals(Arrays.asList("properties.new", "penaltyDuration"), DiffService.compareProcessor(live, target));
+    }
+
+    private ConfigDiff diff(String resource) throws IOException {
+        try (GroupProcessorsReader reader = new GroupProcessorsReader(new InputStreamReader(getClass().getClassLoader().getResourceAsStream(resource), "UTF-8"))) {
+            return diffService.diff(reader, response);
+        }
+    }
+
+    private GroupProcessorsEntity load(String resource) throws IOException {
+        try (Reader reader = new InputStreamReader(getClass().getClassLoader().getResourceAsStream(resource), "UTF-8")) {
+            return new Gson().fromJson(reader, GroupProcessorsEntity.class);
+        }
+    }
+
+    private static ProcessorEntity createProcessorEntityWithConfig(String id, String name, ProcessorConfigDTO config) {
+        ProcessorEntity processor = TestUtils.createProcessorEntity(id, name);
+        processor.getComponent().setConfig(config);
+        return processor;
+    }
+}
@@ -8,15 +8,19 @@ import com.github.hermannpencole.nifi.swagger.client.FlowApi;
 import com.github.hermannpencole.nifi.swagger.client.ProcessGroupsApi;
 import com.github.hermannpencole.nifi.swagger.client.model.*;
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.powermock.reflect.Whitebox;
 
 import java.io.*;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -25,8 +29,10 @@ import java.util.stream.Collectors;
 
 import static com.github.hermannpencole.nifi.config.service.TestUtils.*;
 import static java.util.Arrays.asList;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.when;
 
@@ -45,6 +51,9 @@ public class ExtractProcessorServiceTest {
     @Mock
     private ProcessGroupsApi processGroupsApiMock;
 
+    @Spy
+    private FlowCacheService flowCacheService;
+
     @InjectMocks
     private ExtractProcessorService extractService;
     private List<String> branch = asList("root", "elt1");
@@ -54,6 +63,7 @@ public class ExtractProcessorServiceTest {
     @Before
     public void setup() throws IOException {
         temp = File.createTempFile("tempfile", ".tmp");
+        Whitebox.setInternalState(flowCacheService, "flowapi", flowapiMock);
         response = TestUtils.createProcessGroupFlowEntity("idComponent", "nameComponent");
 
         when(processGroupsApiMock.getConnections(anyString())).thenReturn(new ConnectionsEntity());
@@ -175,6 +185,68 @@ public class ExtractProcessorServiceTest {
         assertEquals("2 GB", subGroupConnection.getBackPressureDataSizeThreshold());
     }
 
+    @Test
+    public void extractParallelSameOutputTest() throws ApiException, IOException {
+        processGroupFlowEntityHas(createProcessorEntity("idProc", "nameProc"));
+        for (int i = 0; i < 10; i++) {
+            processGroupFlowEntityHas(createProcessGroupEntity("idSubGroup" + i, "nameSubGroup" + i));
+            ProcessGroupFlowEntity subGroupResponse = TestUtils.createProcessGroupFlowEntity("idSubGroup" + i, "nameSubGroup" + i);
+            processGroupFlowEntityHas(subGroupResponse, createConnectionEntity("subConnectionId" + i, "subConnection" + i, "sourceOne", "destOne", "2 GB", 12L));
+            when(flowapiMock.getFlow("idSubGroup" + i)).thenReturn(subGroupResponse);
+        }
+
+        extractService.extractByBranch(branch, temp.getAbsolutePath(), false);
+        byte[] sequential = Files.readAllBytes(temp.toPath());
+
+        extractService.parallelism = 4;
+        extractService.extractByBranch(branch, temp.getAbsolutePath(), false);
+        byte[] parallel = Files.readAllBytes(temp.toPath());
+
+        assertArrayEquals(sequential, parallel);
+        GroupProcessorsEntity result = loadOutputFileContent();
+        assertEquals(10, result.getGroupProcessorsEntity().size());
+        assertEquals("nameSubGroup9", result.getGroupProcessorsEntity().get(9).getName());
+    }
+
+    @Test
+    public void extractSameFormatAsEntityTest() throws ApiException, IOException {
+        processGroupFlowEntityHas(createProcessorEntity("idProc", "nameProc"));
+        processGroupFlowEntityHas(createProcessGroupEntity("idSubGroup", "nameSubGroup"));
+        ProcessGroupFlowEntity subGroupResponse = TestUtils.createProcessGroupFlowEntity("idSubGroup", "nameSubGroup");
+        processGroupFlowEntityHas(subGroupResponse, createConnectionEntity("subConnectionId", "subConnection", "sourceOne", "destOne", "2 GB", 12L));
+        when(flowapiMock.getFlow("idSubGroup")).thenReturn(subGroupResponse);
+        ControllerServicesEntity controllerServicesEntity = new ControllerServicesEntity();
+        controllerServicesEntity.setControllerServices(new ArrayList<>());
+        controllerServicesEntity.getControllerServices().add(TestUtils.createControllerServiceEntity("idCtrl", "nameCtrl"));
+        when(flowapiMock.getControllerServicesFromGroup("idComponent", true, false)).thenReturn(controllerServicesEntity);
+
+        extractService.extractByBranch(branch, temp.getAbsolutePath(), false);
+
+        //the streamed file is the serialization of the whole tree
+        GroupProcessorsEntity expected = loadOutputFileContent();
+        GroupProcessorsEntity subGroup = expected.getGroupProcessorsEntity().get(0);
+        subGroup.setProcessors(null);
+        subGroup.setGroupProcessorsEntity(null);
+        subGroup.setControllerServicesDTO(null);
+        assertEquals(new GsonBuilder().setPrettyPrinting().create().toJson(expected), new String(Files.readAllBytes(temp.toPath()), "UTF-8"));
+    }
+
+    @Test
+    public void extractDuplicateProcessorNamesKeepFileTest() throws ApiException, IOException {
+        Files.write(temp.toPath(), "previous".getBytes("UTF-8"));
+        processGroupFlowEntityHas(createProcessorEntity("idProc1", "nameProcA"));
+        processGroupFlowEntityHas(createProcessorEntity("idProc2", "nameProcA"));
+        try {
+            extractService.extractByBranch(branch, temp.getAbsolutePath(), true);
+            fail("duplicate names must fail");
+        } catch (ConfigException e) {
+            assertEquals("Duplicate processor names detected: nameProcA used times: 2", e.getMessage());
+        }
+        assertEquals("previous", new String(Files.readAllBytes(temp.toPath()), "UTF-8"));
+        File[] leftovers = temp.getParentFile().listFiles((dir, name) -> name.startsWith(temp.getName()) && !name.equals(temp.getName()));
+        assertEquals(0, leftovers.length);
+    }
+
     private <T> List<T> mapAndCollect(GroupProcessorsEntity result, Function<Connection, T> mapper) {
         return result.getConnections()
                 .stream()
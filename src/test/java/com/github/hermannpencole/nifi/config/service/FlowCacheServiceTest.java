@@ -0,0 +1,182 @@
+package com.github.hermannpencole.nifi.config.service;
+
+import com.github.hermannpencole.nifi.config.utils.ComponentNameIndex;
+import com.github.hermannpencole.nifi.config.utils.OccupancyGrid;
+import com.github.hermannpencole.nifi.swagger.ApiException;
+import com.github.hermannpencole.nifi.swagger.client.FlowApi;
+import com.github.hermannpencole.nifi.swagger.client.model.PositionDTO;
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessGroupEntity;
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessGroupFlowEntity;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * API tests for FlowCacheService
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class FlowCacheServiceTest {
+    @Mock
+    private FlowApi flowApiMock;
+
+    @InjectMocks
+    private FlowCacheService flowCacheService;
+
+    @Test
+    public void getFlowCachedTest() throws ApiException {
+        ProcessGroupFlowEntity response = TestUtils.createProcessGroupFlowEntity("idElt1", "elt1");
+        when(flowApiMock.getFlow("idElt1")).thenReturn(response);
+
+        assertSame(response, flowCacheService.getFlow("idElt1"));
+        assertSame(response, flowCacheService.getFlow("idElt1"));
+        verify(flowApiMock, times(1)).getFlow("idElt1");
+    }
+
+    @Test
+    public void getFlowRootAliasTest() throws ApiException {
+        ProcessGroupFlowEntity responseRoot = TestUtils.createProcessGroupFlowEntity("idRoot", "root");
+        when(flowApiMock.getFlow("root")).thenReturn(responseRoot);
+
+        assertSame(responseRoot, flowCacheService.getFlow("root"));
+        assertSame(responseRoot, flowCacheService.getFlow("idRoot"));
+        flowCacheService.invalidate("idRoot");
+        assertSame(responseRoot, flowCacheService.getFlow("root"));
+        verify(flowApiMock, times(2)).getFlow("root");
+        verify(flowApiMock, never()).getFlow("idRoot");
+    }
+
+    @Test
+    public void invalidateTreeTest() throws ApiException {
+        ProcessGroupFlowEntity responseRoot = TestUtils.createProcessGroupFlowEntity("idRoot", "root");
+        responseRoot.getProcessGroupFlow().getFlow().getProcessGroups().add(TestUtils.createProcessGroupEntity("idElt1", "elt1"));
+        when(flowApiMock.getFlow("root")).thenReturn(responseRoot);
+        ProcessGroupFlowEntity responseElt = TestUtils.createProcessGroupFlowEntity("idElt1", "elt1");
+        when(flowApiMock.getFlow("idElt1")).thenReturn(responseElt);
+        ProcessGroupFlowEntity responseOther = TestUtils.createProcessGroupFlowEntity("idOther", "other");
+        when(flowApiMock.getFlow("idOther")).thenReturn(responseOther);
+
+        flowCacheService.getFlow("root");
+        flowCacheService.getFlow("idElt1");
+        flowCacheService.getFlow("idOther");
+        flowCacheService.invalidateTree("root");
+        flowCacheService.getFlow("root");
+        flowCacheService.getFlow("idElt1");
+        flowCacheService.getFlow("idOther");
+
+        verify(flowApiMock, times(2)).getFlow("root");
+        verify(flowApiMock, times(2)).getFlow("idElt1");
+        verify(flowApiMock, times(1)).getFlow("idOther");
+    }
+
+    @Test
+    public void invalidateTreeMiddleEvictedTest() throws ApiException {
+        ProcessGroupFlowEntity responseRoot = TestUtils.createProcessGroupFlowEntity("idRoot", "root");
+        responseRoot.getProcessGroupFlow().getFlow().getProcessGroups().add(TestUtils.createProcessGroupEntity("idElt1", "elt1"));
+        when(flowApiMock.getFlow("root")).thenReturn(responseRoot);
+        ProcessGroupFlowEntity responseElt = TestUtils.createProcessGroupFlowEntity("idElt1", "elt1");
+        responseElt.getProcessGroupFlow().getFlow().getProcessGroups().add(TestUtils.createProcessGroupEntity("idElt2", "elt2"));
+        when(flowApiMock.getFlow("idElt1")).thenReturn(responseElt);
+        ProcessGroupFlowEntity responseElt2 = TestUtils.createProcessGroupFlowEntity("idElt2", "elt2");
+        when(flowApiMock.getFlow("idElt2")).thenReturn(responseElt2);
+
+        flowCacheService.getFlow("root");
+        flowCacheService.getFlow("idElt1");
+        flowCacheService.getFlow("idElt2");
+        //the group of the middle is no more in cache
+        flowCacheService.invalidate("idElt1");
+        flowCacheService.invalidateTree("root");
+        flowCacheService.getFlow("idElt2");
+
+        verify(flowApiMock, times(2)).getFlow("idElt2");
+    }
+
+    @Test
+    public void getNameIndexTest() throws ApiException {
+        ProcessGroupFlowEntity response = TestUtils.createProcessGroupFlowEntity("idElt1", "elt1");
+        response.getProcessGroupFlow().getFlow().getProcessGroups().add(TestUtils.createProcessGroupEntity("idElt2", "elt2"));
+        when(flowApiMock.getFlow("idElt1")).thenReturn(response);
+
+        ComponentNameIndex index = flowCacheService.getNameIndex(flowCacheService.getFlow("idElt1").getProcessGroupFlow());
+        assertEquals("idElt2", index.findProcessGroup("elt2").get().getId());
+        assertSame(index, flowCacheService.getNameIndex(flowCacheService.getFlow("idElt1").getProcessGroupFlow()));
+        //a new flow, a new index
+        ProcessGroupFlowEntity responseUpdated = TestUtils.createProcessGroupFlowEntity("idElt1", "elt1");
+        when(flowApiMock.getFlow("idElt1")).thenReturn(responseUpdated);
+        flowCacheService.invalidate("idElt1");
+        ComponentNameIndex indexUpdated = flowCacheService.getNameIndex(flowCacheService.getFlow("idElt1").getProcessGroupFlow());
+        assertNotSame(index, indexUpdated);
+        assertFalse(indexUpdated.findProcessGroup("elt2").isPresent());
+    }
+
+    @Test
+    public void addProcessGroupTest() throws ApiException {
+        ProcessGroupFlowEntity response = TestUtils.createProcessGroupFlowEntity("idElt1", "elt1");
+        when(flowApiMock.getFlow("idElt1")).thenReturn(response);
+        ComponentNameIndex index = flowCacheService.getNameIndex(flowCacheService.getFlow("idElt1").getProcessGroupFlow());
+        OccupancyGrid grid = flowCacheService.getOccupancyGrid(flowCacheService.getFlow("idElt1").getProcessGroupFlow());
+        assertFalse(grid.findOtherPositionInPlace(0, 0).isPresent());
+        List<ProcessGroupEntity> processGroups = response.getProcessGroupFlow().getFlow().getProcessGroups();
+
+        ProcessGroupEntity created = TestUtils.createProcessGroupEntity("idElt2", "elt2");
+        created.getComponent().setPosition(new PositionDTO());
+        created.getComponent().getPosition().setX(0d);
+        created.getComponent().getPosition().setY(0d);
+        flowCacheService.addProcessGroup("idElt1", created);
+        flowCacheService.addProcessGroup("idNotInCache", created);
+
+        assertSame(response, flowCacheService.getFlow("idElt1"));
+        //the list read before is not changed
+        assertTrue(processGroups.isEmpty());
+        assertEquals(1, response.getProcessGroupFlow().getFlow().getProcessGroups().size());
+        assertNotSame(index, flowCacheService.getNameIndex(response.getProcessGroupFlow()));
+        assertEquals("idElt2", flowCacheService.getNameIndex(response.getProcessGroupFlow()).findProcessGroup("elt2").get().getId());
+        assertSame(grid, flowCacheService.getOccupancyGrid(response.getProcessGroupFlow()));
+        assertTrue(grid.findOtherPositionInPlace(0, 0).isPresent());
+        verify(flowApiMock, times(1)).getFlow("idElt1");
+        verify(flowApiMock, never()).getFlow("idNotInCache");
+    }
+
+    @Test
+    public void invalidateBranchTest() throws ApiException {
+        ProcessGroupFlowEntity responseRoot = TestUtils.createProcessGroupFlowEntity("idRoot", "root");
+        when(flowApiMock.getFlow("root")).thenReturn(responseRoot);
+        ProcessGroupFlowEntity responseElt = TestUtils.createProcessGroupFlowEntity("idElt1", "elt1");
+        responseElt.getProcessGroupFlow().getFlow().getProcessGroups().add(TestUtils.createProcessGroupEntity("idElt2", "elt2"));
+        when(flowApiMock.getFlow("idElt1")).thenReturn(responseElt);
+        when(flowApiMock.getFlow("idElt2")).thenReturn(TestUtils.createProcessGroupFlowEntity("idElt2", "elt2"));
+        when(flowApiMock.getFlow("idElt3")).thenReturn(TestUtils.createProcessGroupFlowEntity("idElt3", "elt3"));
+        flowCacheService.putPath(Arrays.asList("root", "elt1"), "idElt1");
+        flowCacheService.putPath(Arrays.asList("root", "elt1", "elt2"), "idElt2");
+        flowCacheService.putPath(Arrays.asList("root", "elt3"), "idElt3");
+        for (String id : Arrays.asList("root", "idElt1", "idElt2", "idElt3")) flowCacheService.getFlow(id);
+
+        flowCacheService.invalidateBranch(Arrays.asList("root", "elt1"));
+        for (String id : Arrays.asList("root", "idElt1", "idElt2", "idElt3")) flowCacheService.getFlow(id);
+
+        verify(flowApiMock, times(2)).getFlow("root");
+        verify(flowApiMock, times(2)).getFlow("idElt1");
+        verify(flowApiMock, times(2)).getFlow("idElt2");
+        //the other branch stay in cache
+        verify(flowApiMock, times(1)).getFlow("idElt3");
+        assertFalse(flowCacheService.findIdByPath(Arrays.asList("root", "elt1")).isPresent());
+        assertFalse(flowCacheService.findIdByPath(Arrays.asList("root", "elt1", "elt2")).isPresent());
+        assertTrue(flowCacheService.findIdByPath(Arrays.asList("root", "elt3")).isPresent());
+    }
+
+    @Test
+    public void pathTest() {
+        assertFalse(flowCacheService.findIdByPath(Arrays.asList("root", "elt1")).isPresent());
+        flowCacheService.putPath(Arrays.asList("root", " elt1 "), "idElt1");
+        assertEquals("idElt1", flowCacheService.findIdByPath(Arrays.asList("root", "elt1")).get());
+        flowCacheService.invalidateAll();
+        assertFalse(flowCacheService.findIdByPath(Arrays.asList("root", "elt1")).isPresent());
+    }
+}
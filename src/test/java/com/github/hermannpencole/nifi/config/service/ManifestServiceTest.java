@@ -0,0 +1,146 @@
+package com.github.hermannpencole.nifi.config.service;
+
+import com.github.hermannpencole.nifi.config.model.ConfigException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Mockito.*;
+
+/**
+ * API tests for ManifestService
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ManifestServiceTest {
+
+    @Mock
+    private UpdateProcessorService updateProcessorServiceMock;
+
+    @Mock
+    private ExtractProcessorService extractProcessorServiceMock;
+
+    @Mock
+    private TemplateService templateServiceMock;
+
+    @Mock
+    private PlanService planServiceMock;
+
+    @Mock
+    private FlowCacheService flowCacheServiceMock;
+
+    @InjectMocks
+    private ManifestService manifestService;
+
+    @Test
+    public void runTest() throws IOException {
+        File manifest = manifest("[{\"mode\":\"updateConfig\",\"branch\":\"root > a\",\"conf\":\"a.json\"},"
+                + "{\"mode\":\"deployTemplate\",\"branch\":\"root>b\",\"conf\":\"b.xml\"},"
+                + "{\"mode\":\"extractConfig\",\"branch\":\"root > a > c\",\"conf\":\"c.json\"},"
+                + "{\"mode\":\"plan\",\"branch\":\"root > d\",\"conf\":\"d.json\",\"plan\":\"d.plan\"},"
+                + "{\"mode\":\"apply\",\"plan\":\"d.plan\"},"
+                + "{\"mode\":\"undeploy\",\"branch\":\"root > e\"}]");
+
+        manifestService.run(manifest.getPath(), 2, true, false, true, false);
+
+        InOrder inOrderA = inOrder(updateProcessorServiceMock, extractProcessorServiceMock);
+        inOrderA.verify(updateProcessorServiceMock).updateByBranch(Arrays.asList("root", "a"), "a.json", true);
+        inOrderA.verify(extractProcessorServiceMock).extractByBranch(Arrays.asList("root", "a", "c"), "c.json", true);
+        verify(templateServiceMock).installOnBranch(Arrays.asList("root", "b"), "b.xml", false);
+        InOrder inOrderD = inOrder(planServiceMock);
+        inOrderD.verify(planServiceMock).plan(Arrays.asList("root", "d"), "d.json", "d.plan", true);
+        inOrderD.verify(planServiceMock).apply("d.plan");
+        verify(templateServiceMock).undeploy(Arrays.asList("root", "e"), false);
+    }
+
+    @Test
+    public void runSameBranchTest() throws IOException {
+        File manifest = manifest("[{\"mode\":\"deployTemplate\",\"branch\":\"root > tenant1\",\"conf\":\"tenant1.xml\"},"
+                + "{\"mode\":\"updateConfig\",\"branch\":\"root > tenant1\",\"conf\":\"tenant1.json\"}]");
+
+        manifestService.run(manifest.getPath(), 2, false, false, false, false);
+
+        //the update don't read the flow cached before the template
+        InOrder inOrder = inOrder(flowCacheServiceMock, templateServiceMock, updateProcessorServiceMock);
+        inOrder.verify(flowCacheServiceMock).invalidateBranch(Arrays.asList("root", "tenant1"));
+        inOrder.verify(templateServiceMock).installOnBranch(Arrays.asList("root", "tenant1"), "tenant1.xml", false);
+        inOrder.verify(flowCacheServiceMock).invalidateBranch(Arrays.asList("root", "tenant1"));
+        inOrder.verify(updateProcessorServiceMock).updateByBranch(Arrays.asList("root", "tenant1"), "tenant1.json", false);
+    }
+
+    @Test
+    public void runFailTest() throws IOException {
+        File manifest = manifest("[{\"mode\":\"updateConfig\",\"branch\":\"root > a\",\"conf\":\"a.json\"},"
+                + "{\"mode\":\"updateConfig\",\"branch\":\"root > a > c\",\"conf\":\"c.json\"},"
+                + "{\"mode\":\"updateConfig\",\"branch\":\"root > b\",\"conf\":\"b.json\"}]");
+        doThrow(new ConfigException("cannot find a")).when(updateProcessorServiceMock).updateByBranch(Arrays.asList("root", "a"), "a.json", false);
+
+        try {
+            manifestService.run(manifest.getPath(), 4, false, false, false, false);
+            fail("the entries failed must fail the run");
+        } catch (ConfigException e) {
+            assertTrue(e.getMessage().startsWith("2 entrie(s)"));
+        }
+        //the entry on the child is skipped, the other branch is updated
+        verify(updateProcessorServiceMock, never()).updateByBranch(eqList("root", "a", "c"), any(), anyBoolean());
+        verify(updateProcessorServiceMock).updateByBranch(Arrays.asList("root", "b"), "b.json", false);
+    }
+
+    @Test(expected = ConfigException.class)
+    public void runModeUnknownTest() throws IOException {
+        manifestService.run(manifest("[{\"mode\":\"other\",\"branch\":\"root > a\"}]").getPath(), 1, false, false, false, false);
+    }
+
+    @Test(expected = ConfigException.class)
+    public void runWithoutConfTest() throws IOException {
+        manifestService.run(manifest("[{\"mode\":\"updateConfig\",\"branch\":\"root > a\"}]").getPath(), 1, false, false, false, false);
+    }
+
+    @Test(expected = ConfigException.class)
+    public void runBranchNotRootTest() throws IOException {
+        manifestService.run(manifest("[{\"mode\":\"undeploy\",\"branch\":\"a > b\"}]").getPath(), 1, false, false, false, false);
+    }
+
+    @Test
+    public void wavesTest() {
+        List<List<String>> branches = Arrays.asList(
+                Arrays.asList("root", "a"),
+                Arrays.asList("root", "b"),
+                Arrays.asList("root", "a", "c"),
+                Arrays.asList("root", "ab"),
+                Arrays.asList("root"),
+                Arrays.asList("root", "b"));
+        List<Set<Integer>> dependencies = ManifestService.dependencies(branches);
+        assertEquals(Collections.emptySet(), dependencies.get(0));
+        assertEquals(Collections.emptySet(), dependencies.get(1));
+        assertEquals(Collections.singleton(0), dependencies.get(2));
+        assertEquals(Collections.emptySet(), dependencies.get(3));
+        assertEquals(new HashSet<>(Arrays.asList(0, 1, 2, 3)), dependencies.get(4));
+        assertEquals(new HashSet<>(Arrays.asList(1, 4)), dependencies.get(5));
+
+        assertEquals(Arrays.asList(Arrays.asList(0, 1, 3), Collections.singletonList(2), Collections.singletonList(4), Collections.singletonList(5)),
+                ManifestService.waves(dependencies));
+    }
+
+    private static List<String> eqList(String... names) {
+        return org.mockito.Matchers.eq(Arrays.asList(names));
+    }
+
+    private static File manifest(String content) throws IOException {
+        File file = File.createTempFile("manifest", ".json");
+        file.deleteOnExit();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,313 @@
+package com.github.hermannpencole.nifi.config.service;
+
+import com.github.hermannpencole.nifi.config.model.*;
+import com.github.hermannpencole.nifi.swagger.ApiException;
+import com.github.hermannpencole.nifi.swagger.client.ConnectionsApi;
+import com.github.hermannpencole.nifi.swagger.client.FlowApi;
+import com.github.hermannpencole.nifi.swagger.client.ProcessGroupsApi;
+import com.github.hermannpencole.nifi.swagger.client.ProcessorsApi;
+import com.github.hermannpencole.nifi.swagger.client.model.*;
+import com.google.gson.Gson;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.powermock.reflect.Whitebox;
+
+import java.io.*;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static com.github.hermannpencole.nifi.config.service.TestUtils.*;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * API tests for PlanService
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class PlanServiceTest {
+
+    @Mock
+    private ProcessGroupService processGroupServiceMock;
+
+    @Mock
+    private ProcessorService processorServiceMock;
+
+    @Mock
+    private ControllerServicesService controllerServicesServiceMock;
+
+    @Mock
+    private ConnectionsUpdater connectionsUpdaterMock;
+
+    @Mock
+    private DiffService diffServiceMock;
+
+    @Mock
+    private FlowApi flowapiMock;
+
+    @Mock
+    private ProcessorsApi processorsApiMock;
+
+    @Mock
+    private ConnectionsApi connectionsApiMock;
+
+    @Mock
+    private ProcessGroupsApi processGroupsApiMock;
+
+    @Spy
+    private FlowCacheService flowCacheService;
+
+    @InjectMocks
+    private PlanService planService;
+
+    private List<String> branch = Arrays.asList("root", "elt1");
+
+    private ProcessGroupFlowEntity response;
+
+    private String configuration;
+
+    @Before
+    public void setup() {
+        Whitebox.setInternalState(flowCacheService, "flowapi", flowapiMock);
+        response = createProcessGroupFlowEntity("idComponent", "nameComponent");
+        when(processGroupServiceMock.changeDirectory(branch)).thenReturn(Optional.of(response));
+        when(flowapiMock.generateClientId()).thenReturn("clientId");
+        URL url = PlanServiceTest.class.getClassLoader().getResource("mytest1.json");
+        configuration = url.getPath();
+    }
+
+    @Test
+    public void planTest() throws ApiException, IOException {
+        ProcessorEntity running = createProcessorEntity("idProc", "nameProc");
+        running.getComponent().setState(ProcessorDTO.StateEnum.RUNNING);
+        ProcessorEntity stopped = createProcessorEntity("idProc2", "nameProc2");
+        stopped.getComponent().setState(ProcessorDTO.StateEnum.STOPPED);
+        response.getProcessGroupFlow().getFlow().setProcessors(Arrays.asList(running, stopped));
+        ConnectionEntity connection = createConnectionEntity("idConnection", "nameConnection", "nameProc", "nameProc2", "1 GB", 10L);
+        connection.setRevision(createRevision(5L));
+        response.getProcessGroupFlow().getFlow().setConnections(Collections.singletonList(connection));
+
+        GroupProcessorsEntity pruned = new GroupProcessorsEntity();
+        pruned.setProcessors(Arrays.asList(createProcessorEntity("idProc", "nameProc").getComponent(), createProcessorEntity("idProc2", "nameProc2").getComponent()));
+        pruned.setConnections(Arrays.asList(createConnection("nameConnection", "nameProc", "nameProc2", "2 GB", 10L, null),
+                createConnection("newConnection", "nameProc", "nameProc2", "1 GB", 10L, null)));
+        pruned.setControllerServicesDTO(new ArrayList<>());
+        pruned.getControllerServicesDTO().add(createControllerServiceEntity(null, "nameCtrl").getComponent());
+        ControllerServicesEntity controllerServicesEntity = new ControllerServicesEntity();
+        controllerServicesEntity.setControllerServices(Collections.singletonList(createControllerServiceEntity("idCtrl", "nameCtrl")));
+        when(flowapiMock.getControllerServicesFromGroup("idComponent", true, false)).thenReturn(controllerServicesEntity);
+        ConfigDiff diff = new ConfigDiff();
+        diff.setConfiguration(pruned);
+        when(diffServiceMock.diff(any(), eq(response))).thenReturn(diff);
+        ConnectionEntity created = new ConnectionEntity();
+        created.setRevision(createRevision(0L));
+        when(connectionsUpdaterMock.createConnectionEntity(pruned.getConnections().get(1), response)).thenReturn(created);
+
+        File planFile = File.createTempFile("plan", ".json");
+        try {
+            planService.plan(branch, configuration, planFile.getPath(), false);
+            ExecutionPlan plan = read(planFile);
+
+            assertEquals(branch, plan.getBranch());
+            assertEquals(Arrays.asList(PlanStep.Type.STOP_PROCESSOR, PlanStep.Type.UPDATE_PROCESSOR, PlanStep.Type.START_PROCESSOR,
+                    PlanStep.Type.UPDATE_PROCESSOR, PlanStep.Type.UPDATE_CONNECTION, PlanStep.Type.CREATE_CONNECTION, PlanStep.Type.UPDATE_CONTROLLER_SERVICE),
+                    plan.getSteps().stream().map(PlanStep::getType).collect(Collectors.toList()));
+            assertEquals("stop processor nameComponent > nameProc", plan.getSteps().get(0).getDescription());
+            assertEquals(ProcessorDTO.StateEnum.RUNNING, plan.getSteps().get(0).getProcessor().getComponent().getState());
+            assertEquals(Collections.singletonList(1), plan.getSteps().get(1).getDependsOn());
+            assertEquals(100L, plan.getSteps().get(1).getProcessor().getRevision().getVersion().longValue());
+            //started after his update and the controllers
+            assertEquals(Arrays.asList(2, 7), plan.getSteps().get(2).getDependsOn());
+            //a stopped processor is only updated
+            assertTrue(plan.getSteps().get(3).getDependsOn().isEmpty());
+            assertEquals("2 GB", plan.getSteps().get(4).getConnection().getComponent().getBackPressureDataSizeThreshold());
+            assertEquals("idComponent", plan.getSteps().get(5).getGroupId());
+            assertEquals(Arrays.asList(2, 4), plan.getSteps().get(6).getDependsOn());
+            assertEquals("idCtrl", plan.getSteps().get(6).getControllerService().getId());
+        } finally {
+            planFile.delete();
+        }
+    }
+
+    @Test
+    public void planNoStartTest() throws ApiException, IOException {
+        ProcessorEntity running = createProcessorEntity("idProc", "nameProc");
+        running.getComponent().setState(ProcessorDTO.StateEnum.RUNNING);
+        response.getProcessGroupFlow().getFlow().setProcessors(Collections.singletonList(running));
+        GroupProcessorsEntity pruned = new GroupProcessorsEntity();
+        pruned.setProcessors(Collections.singletonList(createProcessorEntity("idProc", "nameProc").getComponent()));
+        ConfigDiff diff = new ConfigDiff();
+        diff.setConfiguration(pruned);
+        when(diffServiceMock.diff(any(), eq(response))).thenReturn(diff);
+
+        File planFile = File.createTempFile("plan", ".json");
+        try {
+            ExecutionPlan plan = planService.plan(branch, configuration, planFile.getPath(), true);
+            assertEquals(Arrays.asList(PlanStep.Type.STOP_PROCESSOR, PlanStep.Type.UPDATE_PROCESSOR),
+                    plan.getSteps().stream().map(PlanStep::getType).collect(Collectors.toList()));
+        } finally {
+            planFile.delete();
+        }
+    }
+
+    @Test(expected = ConfigException.class)
+    public void planRoutesTest() throws ApiException, IOException {
+        GroupProcessorsEntity pruned = new GroupProcessorsEntity();
+        pruned.setConnectionPorts(Collections.singletonList(new ConnectionPort()));
+        ConfigDiff diff = new ConfigDiff();
+        diff.setConfiguration(pruned);
+        when(diffServiceMock.diff(any(), eq(response))).thenReturn(diff);
+        planService.plan(branch, configuration, "not used", false);
+    }
+
+    @Test
+    public void applyTest() throws ApiException, IOException {
+        ExecutionPlan plan = new ExecutionPlan();
+        PlanStep stop = plan.addStep(new PlanStep(PlanStep.Type.STOP_PROCESSOR, "stop"));
+        stop.setProcessor(createProcessorEntity("idProc", "nameProc"));
+        PlanStep update = plan.addStep(new PlanStep(PlanStep.Type.UPDATE_PROCESSOR, "update"));
+        update.setProcessor(createProcessorEntity("idProc", "nameProc"));
+        update.getDependsOn().add(stop.getId());
+        PlanStep start = plan.addStep(new PlanStep(PlanStep.Type.START_PROCESSOR, "start"));
+        start.setProcessor(createProcessorEntity("idProc", "nameProc"));
+        start.getDependsOn().add(update.getId());
+        PlanStep connection = plan.addStep(new PlanStep(PlanStep.Type.UPDATE_CONNECTION, "connection"));
+        connection.setConnection(createConnectionEntity("idConnection", "idSource", "idDestination"));
+
+        //the stop change the revision
+        doAnswer(invocation -> {
+            ((ProcessorEntity) invocation.getArguments()[0]).setRevision(createRevision(101L));
+            return null;
+        }).when(processorServiceMock).setState(any(), eq(ProcessorDTO.StateEnum.STOPPED));
+        ProcessorEntity updated = createProcessorEntity("idProc", "nameProc");
+        updated.setRevision(createRevision(102L));
+        when(processorsApiMock.updateProcessor(eq("idProc"), any())).thenReturn(updated);
+        when(connectionsApiMock.updateConnection(eq("idConnection"), any())).thenReturn(connection.getConnection());
+
+        apply(plan);
+
+        InOrder inOrder = inOrder(processorServiceMock, processorsApiMock);
+        inOrder.verify(processorServiceMock).setState(any(), eq(ProcessorDTO.StateEnum.STOPPED));
+        ArgumentCaptor<ProcessorEntity> updateCaptor = ArgumentCaptor.forClass(ProcessorEntity.class);
+        inOrder.verify(processorsApiMock).updateProcessor(eq("idProc"), updateCaptor.capture());
+        ArgumentCaptor<ProcessorEntity> startCaptor = ArgumentCaptor.forClass(ProcessorEntity.class);
+        inOrder.verify(processorServiceMock).setState(startCaptor.capture(), eq(ProcessorDTO.StateEnum.RUNNING));
+        assertEquals(101L, updateCaptor.getValue().getRevision().getVersion().longValue());
+        assertEquals("clientId", updateCaptor.getValue().getRevision().getClientId());
+        assertEquals(102L, startCaptor.getValue().getRevision().getVersion().longValue());
+        ArgumentCaptor<ConnectionEntity> connectionCaptor = ArgumentCaptor.forClass(ConnectionEntity.class);
+        verify(connectionsApiMock).updateConnection(eq("idConnection"), connectionCaptor.capture());
+        assertEquals(10L, connectionCaptor.getValue().getRevision().getVersion().longValue());
+    }
+
+    @Test
+    public void applyControllerTest() throws ApiException, IOException {
+        ExecutionPlan plan = new ExecutionPlan();
+        PlanStep controller = plan.addStep(new PlanStep(PlanStep.Type.UPDATE_CONTROLLER_SERVICE, "controller"));
+        ControllerServiceEntity controllerService = createControllerServiceEntity("idCtrl", "nameCtrl");
+        ControllerServiceReferencingComponentEntity reference = new ControllerServiceReferencingComponentEntity();
+        reference.setId("idProc");
+        reference.setComponent(new ControllerServiceReferencingComponentDTO());
+        reference.getComponent().setReferenceType(ControllerServiceReferencingComponentDTO.ReferenceTypeEnum.PROCESSOR);
+        controllerService.getComponent().setReferencingComponents(Collections.singletonList(reference));
+        controller.setGroupId("idGroup");
+        controller.setControllerService(controllerService);
+        controller.setControllerServiceConfig(createControllerServiceEntity(null, "nameCtrl").getComponent());
+        PlanStep start = plan.addStep(new PlanStep(PlanStep.Type.START_PROCESSOR, "start"));
+        start.setProcessor(createProcessorEntity("idProc", "nameProc"));
+        start.getDependsOn().add(controller.getId());
+        ProcessorEntity fresh = createProcessorEntity("idProc", "nameProc");
+        fresh.setRevision(createRevision(200L));
+        when(processorServiceMock.getById("idProc")).thenReturn(fresh);
+
+        apply(plan);
+
+        InOrder inOrder = inOrder(controllerServicesServiceMock, processorServiceMock);
+        inOrder.verify(controllerServicesServiceMock).setStateReferenceProcessors(any(), eq(UpdateControllerServiceReferenceRequestEntity.StateEnum.STOPPED));
+        inOrder.verify(controllerServicesServiceMock).setStateControllerServices("idGroup", Collections.singletonList("idCtrl"), ControllerServiceDTO.StateEnum.DISABLED, true);
+        inOrder.verify(controllerServicesServiceMock).updateControllerService(any(), any(), eq(false));
+        inOrder.verify(controllerServicesServiceMock).setStateControllerServices("idGroup", Collections.singletonList("idCtrl"), ControllerServiceDTO.StateEnum.ENABLED, true);
+        inOrder.verify(controllerServicesServiceMock).setStateReferenceProcessors(any(), eq(UpdateControllerServiceReferenceRequestEntity.StateEnum.RUNNING));
+        //the processor started again by the controller is read before his start
+        inOrder.verify(processorServiceMock).setState(fresh, ProcessorDTO.StateEnum.RUNNING);
+    }
+
+    @Test
+    public void applyFailTest() throws ApiException, IOException {
+        ExecutionPlan plan = new ExecutionPlan();
+        PlanStep update = plan.addStep(new PlanStep(PlanStep.Type.UPDATE_PROCESSOR, "update"));
+        update.setProcessor(createProcessorEntity("idProc", "nameProc"));
+        PlanStep start = plan.addStep(new PlanStep(PlanStep.Type.START_PROCESSOR, "start"));
+        start.setProcessor(createProcessorEntity("idProc", "nameProc"));
+        start.getDependsOn().add(update.getId());
+        when(processorsApiMock.updateProcessor(eq("idProc"), any())).thenThrow(new ApiException(409, "Conflict"));
+
+        try {
+            apply(plan);
+            fail();
+        } catch (ConfigException e) {
+            assertTrue(e.getMessage().startsWith("1 step(s) failed"));
+        }
+        verify(processorServiceMock, never()).setState(any(), any());
+    }
+
+    @Test
+    public void wavesTest() {
+        ExecutionPlan plan = new ExecutionPlan();
+        PlanStep first = plan.addStep(new PlanStep(PlanStep.Type.UPDATE_PROCESSOR, "first"));
+        PlanStep second = plan.addStep(new PlanStep(PlanStep.Type.UPDATE_PROCESSOR, "second"));
+        PlanStep third = plan.addStep(new PlanStep(PlanStep.Type.UPDATE_CONTROLLER_SERVICE, "third"));
+        third.getDependsOn().addAll(Arrays.asList(first.getId(), second.getId()));
+        PlanStep fourth = plan.addStep(new PlanStep(PlanStep.Type.UPDATE_CONNECTION, "fourth"));
+
+        List<List<PlanStep>> waves = PlanService.waves(plan.getSteps());
+        assertEquals(2, waves.size());
+        assertEquals(Arrays.asList(first, second, fourth), waves.get(0));
+        assertEquals(Collections.singletonList(third), waves.get(1));
+    }
+
+    @Test(expected = ConfigException.class)
+    public void wavesCycleTest() {
+        ExecutionPlan plan = new ExecutionPlan();
+        PlanStep first = plan.addStep(new PlanStep(PlanStep.Type.UPDATE_PROCESSOR, "first"));
+        PlanStep second = plan.addStep(new PlanStep(PlanStep.Type.UPDATE_PROCESSOR, "second"));
+        first.getDependsOn().add(second.getId());
+        second.getDependsOn().add(first.getId());
+        PlanService.waves(plan.getSteps());
+    }
+
+    @Test(expected = ConfigException.class)
+    public void wavesUnknownTest() {
+        ExecutionPlan plan = new ExecutionPlan();
+        plan.addStep(new PlanStep(PlanStep.Type.UPDATE_PROCESSOR, "first")).getDependsOn().add(5);
+        PlanService.waves(plan.getSteps());
+    }
+
+    private void apply(ExecutionPlan plan) throws IOException {
+        File planFile = File.createTempFile("plan", ".json");
+        try {
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(planFile), StandardCharsets.UTF_8)) {
+                new Gson().toJson(plan, writer);
+            }
+            planService.apply(planFile.getPath());
+        } finally {
+            planFile.delete();
+        }
+    }
+
+    private ExecutionPlan read(File planFile) throws IOException {
+        try (Reader reader = new InputStreamReader(new FileInputStream(planFile), StandardCharsets.UTF_8)) {
+            return new Gson().fromJson(reader, ExecutionPlan.class);
+        }
+    }
+}
@@ -48,6 +48,10 @@ public class PortServiceTest {
                 bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(1);
                 bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(1);
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("scopedStop")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("diffMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("batchSchedule")).toInstance(false);
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
             }
         });
         PortService portService = injector.getInstance(PortService.class);
@@ -68,6 +72,10 @@ public class PortServiceTest {
                 bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(1);
                 bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(1);
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("scopedStop")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("diffMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("batchSchedule")).toInstance(false);
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
             }
         });
         PortService portService = injector.getInstance(PortService.class);
@@ -88,6 +96,10 @@ public class PortServiceTest {
                 bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(1);
                 bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(1);
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("scopedStop")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("diffMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("batchSchedule")).toInstance(false);
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
             }
         });
         PortService portService = injector.getInstance(PortService.class);
@@ -111,6 +123,10 @@ public class PortServiceTest {
                 bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(1);
                 bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(1);
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("scopedStop")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("diffMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("batchSchedule")).toInstance(false);
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
             }
         });
         PortService portService = injector.getInstance(PortService.class);
@@ -143,6 +159,10 @@ public class PortServiceTest {
                 bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(1);
                 bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(1);
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("scopedStop")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("diffMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("batchSchedule")).toInstance(false);
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
             }
         });
         PortService portService = injector.getInstance(PortService.class);
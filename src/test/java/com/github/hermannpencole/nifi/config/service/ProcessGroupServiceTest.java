@@ -9,16 +9,20 @@ import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import com.google.inject.name.Names;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.powermock.reflect.Whitebox;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.*;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
@@ -40,9 +44,17 @@ public class ProcessGroupServiceTest {
     @Mock
     private ConnectionService connectionServiceMock;
 
+    @Spy
+    private FlowCacheService flowCacheService;
+
     @InjectMocks
     private ProcessGroupService processGroupService;
 
+    @Before
+    public void setup() {
+        Whitebox.setInternalState(flowCacheService, "flowapi", flowApiMock);
+    }
+
     @Test
     public void changeDirectoryNotExitingTest() throws ApiException, IOException, URISyntaxException {
         List<String> branch = Arrays.asList("root", "elt2");
@@ -74,6 +86,24 @@ public class ProcessGroupServiceTest {
         assertEquals("idElt1", response.get().getProcessGroupFlow().getId());
     }
 
+    @Test
+    public void changeDirectoryCachedTest() throws ApiException, IOException, URISyntaxException {
+        List<String> branch = Arrays.asList("root", "elt1");
+
+        ProcessGroupFlowEntity responseRoot = TestUtils.createProcessGroupFlowEntity("root", "root");
+        responseRoot.getProcessGroupFlow().getFlow()
+                .getProcessGroups().add(TestUtils.createProcessGroupEntity("idElt1", "elt1"));
+        when(flowApiMock.getFlow(responseRoot.getProcessGroupFlow().getId())).thenReturn(responseRoot);
+        ProcessGroupFlowEntity responseElt = TestUtils.createProcessGroupFlowEntity("idElt1", "elt1");
+        when(flowApiMock.getFlow(responseElt.getProcessGroupFlow().getId())).thenReturn(responseElt);
+
+        processGroupService.changeDirectory(branch);
+        Optional<ProcessGroupFlowEntity> response = processGroupService.changeDirectory(branch);
+        assertEquals("idElt1", response.get().getProcessGroupFlow().getId());
+        verify(flowApiMock, times(1)).getFlow("root");
+        verify(flowApiMock, times(1)).getFlow("idElt1");
+    }
+
     @Test
     public void createDirectoryNotExitingTest() throws ApiException, IOException, URISyntaxException {
         List<String> branch = Arrays.asList("root", "elt2");
@@ -97,6 +127,10 @@ public class ProcessGroupServiceTest {
                 bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(1);
                 bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(1);
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("scopedStop")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("diffMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("batchSchedule")).toInstance(false);
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
                 bind(Double.class).annotatedWith(Names.named("placeWidth")).toInstance(1200d);
                 bind(PositionDTO.class).annotatedWith(Names.named("startPosition")).toInstance(Main.createPosition("0,0"));
             }
@@ -163,15 +197,147 @@ public class ProcessGroupServiceTest {
                 .getProcessors().add(TestUtils.createProcessorEntity("idProc","nameProc") );
         responseRoot.getProcessGroupFlow().getFlow()
                 .getProcessors().add(TestUtils.createProcessorEntity("idProc2","nameProc2") );
-        when(connectionServiceMock.isEmptyQueue(any())).thenReturn(false).thenReturn(true);
         processGroupService.stop(responseRoot);
         ArgumentCaptor<ProcessorEntity> processorCapture = ArgumentCaptor.forClass(ProcessorEntity.class);
         verify(processorServiceMock, times(2)).setState(processorCapture.capture(), eq(ProcessorDTO.StateEnum.STOPPED));
         assertEquals("idProc", processorCapture.getAllValues().get(0).getId());
         assertEquals("idProc2", processorCapture.getAllValues().get(1).getId());
-        ArgumentCaptor<ConnectionEntity> connectionCapture = ArgumentCaptor.forClass(ConnectionEntity.class);
-        verify(connectionServiceMock).waitEmptyQueue(connectionCapture.capture());
-        assertEquals("idProc", connectionCapture.getValue().getSourceId());
+        ArgumentCaptor<Collection> connectionCapture = ArgumentCaptor.forClass(Collection.class);
+        verify(connectionServiceMock).waitEmptyQueues(eq("root"), connectionCapture.capture());
+        assertEquals(1, connectionCapture.getValue().size());
+        assertEquals("idProc", ((ConnectionEntity) connectionCapture.getValue().iterator().next()).getSourceId());
+    }
+
+    @Test
+    public void startBatchTest() throws ApiException, IOException, URISyntaxException {
+        ProcessGroupFlowEntity responseRoot = TestUtils.createProcessGroupFlowEntity("root", "rootName");
+        List<ConnectionEntity> connections = new ArrayList<>();
+        connections.add(TestUtils.createConnectionEntity("idCnx", "idProc","idProc2"));
+        responseRoot.getProcessGroupFlow().getFlow().setConnections(connections);
+        responseRoot.getProcessGroupFlow().getFlow().setProcessors(new ArrayList<>());
+        responseRoot.getProcessGroupFlow().getFlow()
+                .getProcessors().add(TestUtils.createProcessorEntity("idProc","nameProc") );
+        responseRoot.getProcessGroupFlow().getFlow()
+                .getProcessors().add(TestUtils.createProcessorEntity("idProc2","nameProc2") );
+        responseRoot.getProcessGroupFlow().getFlow().getProcessors().forEach(p -> p.getComponent().setState(ProcessorDTO.StateEnum.STOPPED));
+        when(flowApiMock.getProcessGroupStatus("root", true, false, null)).thenReturn(createStatus(
+                createProcessorStatus("idProc", ProcessorStatusSnapshotDTO.RunStatusEnum.RUNNING, 1),
+                createProcessorStatus("idProc2", ProcessorStatusSnapshotDTO.RunStatusEnum.RUNNING, 1)));
+        processGroupService.batchSchedule = true;
+        processGroupService.interval = 1;
+        processGroupService.timeout = 10;
+
+        processGroupService.start(responseRoot);
+
+        verifyZeroInteractions(processorServiceMock);
+        ArgumentCaptor<ScheduleComponentsEntity> scheduleCapture = ArgumentCaptor.forClass(ScheduleComponentsEntity.class);
+        verify(flowApiMock, times(3)).scheduleComponents(eq("root"), scheduleCapture.capture());
+        //one request by level
+        assertEquals(Collections.singleton("idProc2"), scheduleCapture.getAllValues().get(0).getComponents().keySet());
+        assertEquals(100L, scheduleCapture.getAllValues().get(0).getComponents().get("idProc2").getVersion().longValue());
+        assertEquals(Collections.singleton("idProc"), scheduleCapture.getAllValues().get(1).getComponents().keySet());
+        assertEquals(ScheduleComponentsEntity.StateEnum.RUNNING, scheduleCapture.getAllValues().get(1).getState());
+        //and the group
+        assertNull(scheduleCapture.getAllValues().get(2).getComponents());
+    }
+
+    @Test
+    public void stopBatchTest() throws ApiException, IOException, URISyntaxException {
+        ProcessGroupFlowEntity responseRoot = TestUtils.createProcessGroupFlowEntity("root", "rootName");
+        responseRoot.getProcessGroupFlow().getFlow().setConnections(new ArrayList<>());
+        responseRoot.getProcessGroupFlow().getFlow().setProcessors(new ArrayList<>());
+        responseRoot.getProcessGroupFlow().getFlow()
+                .getProcessors().add(TestUtils.createProcessorEntity("idProc","nameProc") );
+        responseRoot.getProcessGroupFlow().getFlow()
+                .getProcessors().add(TestUtils.createProcessorEntity("idProc2","nameProc2") );
+        responseRoot.getProcessGroupFlow().getFlow()
+                .getProcessors().add(TestUtils.createProcessorEntity("idProc3","nameProc3") );
+        responseRoot.getProcessGroupFlow().getFlow().getProcessors().get(0).getComponent().setState(ProcessorDTO.StateEnum.RUNNING);
+        responseRoot.getProcessGroupFlow().getFlow().getProcessors().get(1).getComponent().setState(ProcessorDTO.StateEnum.RUNNING);
+        responseRoot.getProcessGroupFlow().getFlow().getProcessors().get(2).getComponent().setState(ProcessorDTO.StateEnum.DISABLED);
+        when(flowApiMock.getProcessGroupStatus("root", true, false, null))
+                .thenReturn(createStatus(
+                        createProcessorStatus("idProc", ProcessorStatusSnapshotDTO.RunStatusEnum.STOPPED, 1),
+                        createProcessorStatus("idProc2", ProcessorStatusSnapshotDTO.RunStatusEnum.STOPPED, 0)))
+                .thenReturn(createStatus(
+                        createProcessorStatus("idProc", ProcessorStatusSnapshotDTO.RunStatusEnum.STOPPED, 0)));
+        processGroupService.batchSchedule = true;
+        processGroupService.interval = 1;
+        processGroupService.timeout = 10;
+
+        processGroupService.stop(responseRoot);
+
+        verifyZeroInteractions(processorServiceMock);
+        ArgumentCaptor<ScheduleComponentsEntity> scheduleCapture = ArgumentCaptor.forClass(ScheduleComponentsEntity.class);
+        verify(flowApiMock, times(2)).scheduleComponents(eq("root"), scheduleCapture.capture());
+        //the disabled processor is not scheduled
+        assertEquals(new HashSet<>(Arrays.asList("idProc", "idProc2")), scheduleCapture.getAllValues().get(0).getComponents().keySet());
+        assertEquals(ScheduleComponentsEntity.StateEnum.STOPPED, scheduleCapture.getAllValues().get(0).getState());
+        //wait the end of the active thread
+        verify(flowApiMock, times(2)).getProcessGroupStatus("root", true, false, null);
+    }
+
+    @Test
+    public void waitStateRecursiveTest() throws ApiException, IOException, URISyntaxException {
+        ProcessGroupStatusEntity status = createStatus(createProcessorStatus("idProc", ProcessorStatusSnapshotDTO.RunStatusEnum.RUNNING, 0));
+        ProcessGroupStatusSnapshotEntity child = new ProcessGroupStatusSnapshotEntity();
+        child.setProcessGroupStatusSnapshot(new ProcessGroupStatusSnapshotDTO());
+        child.getProcessGroupStatusSnapshot().setProcessorStatusSnapshots(Collections.singletonList(createProcessorStatus("idProcChild", ProcessorStatusSnapshotDTO.RunStatusEnum.RUNNING, 0)));
+        PortStatusSnapshotEntity port = new PortStatusSnapshotEntity();
+        port.setPortStatusSnapshot(new PortStatusSnapshotDTO());
+        port.getPortStatusSnapshot().setId("idPort");
+        port.getPortStatusSnapshot().setRunStatus("Running");
+        child.getProcessGroupStatusSnapshot().setInputPortStatusSnapshots(Collections.singletonList(port));
+        status.getProcessGroupStatus().getAggregateSnapshot().setProcessGroupStatusSnapshots(Collections.singletonList(child));
+        when(flowApiMock.getProcessGroupStatus("root", true, false, null)).thenReturn(status);
+        processGroupService.interval = 1;
+        processGroupService.timeout = 10;
+
+        processGroupService.waitState("root", new HashSet<>(Arrays.asList("idProc", "idProcChild", "idPort")), ScheduleComponentsEntity.StateEnum.RUNNING);
+
+        verify(flowApiMock, times(1)).getProcessGroupStatus("root", true, false, null);
+    }
+
+    @Test
+    public void waitStateStoppedInvalidTest() throws ApiException, IOException, URISyntaxException {
+        //an invalid or validating component is stopped (never "Stopped")
+        ProcessGroupStatusEntity status = createStatus(
+                createProcessorStatus("idProc", ProcessorStatusSnapshotDTO.RunStatusEnum.INVALID, 0),
+                createProcessorStatus("idProc2", null, 0),
+                createProcessorStatus("idProc3", ProcessorStatusSnapshotDTO.RunStatusEnum.INVALID, 1));
+        PortStatusSnapshotEntity port = new PortStatusSnapshotEntity();
+        port.setPortStatusSnapshot(new PortStatusSnapshotDTO());
+        port.getPortStatusSnapshot().setId("idPort");
+        port.getPortStatusSnapshot().setRunStatus("Invalid");
+        status.getProcessGroupStatus().getAggregateSnapshot().setInputPortStatusSnapshots(Collections.singletonList(port));
+        when(flowApiMock.getProcessGroupStatus("root", true, false, null))
+                .thenReturn(status)
+                .thenReturn(createStatus(createProcessorStatus("idProc3", ProcessorStatusSnapshotDTO.RunStatusEnum.INVALID, 0)));
+        processGroupService.interval = 1;
+        processGroupService.timeout = 10;
+
+        processGroupService.waitState("root", new HashSet<>(Arrays.asList("idProc", "idProc2", "idProc3", "idPort")), ScheduleComponentsEntity.StateEnum.STOPPED);
+
+        //wait only the end of the active thread
+        verify(flowApiMock, times(2)).getProcessGroupStatus("root", true, false, null);
+    }
+
+    private static ProcessGroupStatusEntity createStatus(ProcessorStatusSnapshotEntity... processors) {
+        ProcessGroupStatusEntity status = new ProcessGroupStatusEntity();
+        status.setProcessGroupStatus(new ProcessGroupStatusDTO());
+        status.getProcessGroupStatus().setAggregateSnapshot(new ProcessGroupStatusSnapshotDTO());
+        status.getProcessGroupStatus().getAggregateSnapshot().setProcessorStatusSnapshots(Arrays.asList(processors));
+        return status;
+    }
+
+    private static ProcessorStatusSnapshotEntity createProcessorStatus(String id, ProcessorStatusSnapshotDTO.RunStatusEnum runStatus, Integer activeThreadCount) {
+        ProcessorStatusSnapshotEntity processor = new ProcessorStatusSnapshotEntity();
+        processor.setId(id);
+        processor.setProcessorStatusSnapshot(new ProcessorStatusSnapshotDTO());
+        processor.getProcessorStatusSnapshot().setId(id);
+        processor.getProcessorStatusSnapshot().setRunStatus(runStatus);
+        processor.getProcessorStatusSnapshot().setActiveThreadCount(activeThreadCount);
+        return processor;
     }
 
     @Test
@@ -190,6 +356,10 @@ public class ProcessGroupServiceTest {
                 bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(10);
                 bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(1);
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("scopedStop")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("diffMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("batchSchedule")).toInstance(false);
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
                 bind(Double.class).annotatedWith(Names.named("placeWidth")).toInstance(1200d);
                 bind(PositionDTO.class).annotatedWith(Names.named("startPosition")).toInstance(Main.createPosition("0,0"));
             }
@@ -224,6 +394,10 @@ public class ProcessGroupServiceTest {
                 bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(10);
                 bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(1);
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("scopedStop")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("diffMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("batchSchedule")).toInstance(false);
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
                 bind(Double.class).annotatedWith(Names.named("placeWidth")).toInstance(1200d);
                 bind(PositionDTO.class).annotatedWith(Names.named("startPosition")).toInstance(Main.createPosition("0,0"));
             }
@@ -267,13 +441,15 @@ public class ProcessGroupServiceTest {
         processors.add(TestUtils.createProcessorEntity("7","name7"));
         responseRoot.getProcessGroupFlow().getFlow().setProcessors(processors);
         List<Set<?>> result = processGroupService.reorder(responseRoot.getProcessGroupFlow());
-        assertEquals(2, result.get(0).size());
-        assertEquals(6, result.get(1).size());
-        assertEquals(5, result.get(2).size());
-        assertEquals("3", ((ProcessorEntity)result.get(0).toArray()[0]).getId());
-        assertEquals("1", ((ProcessorEntity)result.get(0).toArray()[1]).getId());
-        assertEquals("5", ((ProcessorEntity)result.get(2).toArray()[0]).getId());
-        assertEquals("7", ((ProcessorEntity)result.get(2).toArray()[1]).getId());
+        //1,3 - 2,4 - 5,6 - 7
+        assertEquals(7, result.size());
+        assertEquals(Arrays.asList("1", "3"), ids(result.get(0)));
+        assertEquals(Arrays.asList("idCnx1", "idCnx3"), ids(result.get(1)));
+        assertEquals(Arrays.asList("2", "4"), ids(result.get(2)));
+        assertEquals(Arrays.asList("idCnx4", "idCnx5"), ids(result.get(3)));
+        assertEquals(Arrays.asList("5", "6"), ids(result.get(4)));
+        assertEquals(Arrays.asList("idCnx2", "idCnx6"), ids(result.get(5)));
+        assertEquals(Arrays.asList("7"), ids(result.get(6)));
     }
 
     @Test
@@ -284,7 +460,7 @@ public class ProcessGroupServiceTest {
 //    4 - 6
 //    6 - 7
 //    5 - 4
-//    1,3 - 2,4,5,6,7
+//    1,3 - 2,4,5 - 6 - 7
     public void reorderTestCycle() throws ApiException, IOException, URISyntaxException {
         ProcessGroupFlowEntity responseRoot = TestUtils.createProcessGroupFlowEntity("root", "rootName");
         List<ConnectionEntity> connections = new ArrayList<>();
@@ -307,13 +483,144 @@ public class ProcessGroupServiceTest {
         processors.add(TestUtils.createProcessorEntity("7","name7"));
         responseRoot.getProcessGroupFlow().getFlow().setProcessors(processors);
         List<Set<?>> result = processGroupService.reorder(responseRoot.getProcessGroupFlow());
-        assertEquals(2, result.get(0).size());
-        assertEquals(7, result.get(1).size());
-        assertEquals(5, result.get(2).size());
-        assertEquals("3", ((ProcessorEntity)result.get(0).toArray()[0]).getId());
-        assertEquals("1", ((ProcessorEntity)result.get(0).toArray()[1]).getId());
-        assertEquals("5", ((ProcessorEntity)result.get(2).toArray()[0]).getId());
-        assertEquals("7", ((ProcessorEntity)result.get(2).toArray()[1]).getId());
+        //the cycle 4,5 is in one level
+        assertEquals(7, result.size());
+        assertEquals(Arrays.asList("1", "3"), ids(result.get(0)));
+        assertEquals(Arrays.asList("idCnx1", "idCnx3", "idCnx4", "idCnx7"), ids(result.get(1)));
+        assertEquals(Arrays.asList("2", "4", "5"), ids(result.get(2)));
+        assertEquals(Arrays.asList("idCnx5"), ids(result.get(3)));
+        assertEquals(Arrays.asList("6"), ids(result.get(4)));
+        assertEquals(Arrays.asList("idCnx2", "idCnx6"), ids(result.get(5)));
+        assertEquals(Arrays.asList("7"), ids(result.get(6)));
+    }
+
+    @Test
+    public void reorderRecursiveTest() throws ApiException, IOException, URISyntaxException {
+        //root : 1 -> child > grandChild : 2
+        ProcessGroupFlowEntity responseRoot = TestUtils.createProcessGroupFlowEntity("root", "rootName");
+        responseRoot.getProcessGroupFlow().getFlow().setProcessors(Collections.singletonList(TestUtils.createProcessorEntity("1", "name1")));
+        responseRoot.getProcessGroupFlow().getFlow().setConnections(Collections.singletonList(TestUtils.createConnectionEntity("idCnx1", "1", "2")));
+        responseRoot.getProcessGroupFlow().getFlow().getProcessGroups().add(TestUtils.createProcessGroupEntity("idChild", "child"));
+        ProcessGroupFlowEntity responseChild = TestUtils.createProcessGroupFlowEntity("idChild", "child");
+        responseChild.getProcessGroupFlow().getFlow().setProcessors(new ArrayList<>());
+        responseChild.getProcessGroupFlow().getFlow().setConnections(new ArrayList<>());
+        responseChild.getProcessGroupFlow().getFlow().getProcessGroups().add(TestUtils.createProcessGroupEntity("idGrandChild", "grandChild"));
+        when(flowApiMock.getFlow("idChild")).thenReturn(responseChild);
+        ProcessGroupFlowEntity responseGrandChild = TestUtils.createProcessGroupFlowEntity("idGrandChild", "grandChild");
+        responseGrandChild.getProcessGroupFlow().getFlow().setProcessors(Collections.singletonList(TestUtils.createProcessorEntity("2", "name2")));
+        responseGrandChild.getProcessGroupFlow().getFlow().setConnections(new ArrayList<>());
+        when(flowApiMock.getFlow("idGrandChild")).thenReturn(responseGrandChild);
+
+        List<Set<?>> result = processGroupService.reorder(responseRoot.getProcessGroupFlow());
+        //the processor of the grand child is placed like with the scoped reorder
+        assertEquals(3, result.size());
+        assertEquals(Arrays.asList("1"), ids(result.get(0)));
+        assertEquals(Arrays.asList("idCnx1"), ids(result.get(1)));
+        assertEquals(Arrays.asList("2"), ids(result.get(2)));
+    }
+
+    @Test
+    public void stopStartRecursiveTest() throws ApiException, IOException, URISyntaxException {
+        //root : 1 -> child : 3 > grandChild : 2
+        ProcessGroupFlowEntity responseRoot = TestUtils.createProcessGroupFlowEntity("root", "rootName");
+        responseRoot.getProcessGroupFlow().getFlow().setProcessors(Collections.singletonList(TestUtils.createProcessorEntity("1", "name1")));
+        responseRoot.getProcessGroupFlow().getFlow().setConnections(Collections.singletonList(TestUtils.createConnectionEntity("idCnx1", "1", "2")));
+        responseRoot.getProcessGroupFlow().getFlow().getProcessGroups().add(TestUtils.createProcessGroupEntity("idChild", "child"));
+        ProcessGroupFlowEntity responseChild = TestUtils.createProcessGroupFlowEntity("idChild", "child");
+        responseChild.getProcessGroupFlow().getFlow().setProcessors(Collections.singletonList(TestUtils.createProcessorEntity("3", "name3")));
+        responseChild.getProcessGroupFlow().getFlow().setConnections(new ArrayList<>());
+        responseChild.getProcessGroupFlow().getFlow().getProcessGroups().add(TestUtils.createProcessGroupEntity("idGrandChild", "grandChild"));
+        when(flowApiMock.getFlow("idChild")).thenReturn(responseChild);
+        ProcessGroupFlowEntity responseGrandChild = TestUtils.createProcessGroupFlowEntity("idGrandChild", "grandChild");
+        responseGrandChild.getProcessGroupFlow().getFlow().setProcessors(Collections.singletonList(TestUtils.createProcessorEntity("2", "name2")));
+        responseGrandChild.getProcessGroupFlow().getFlow().setConnections(new ArrayList<>());
+        when(flowApiMock.getFlow("idGrandChild")).thenReturn(responseGrandChild);
+
+        processGroupService.stop(responseRoot);
+        processGroupService.start(responseRoot);
+
+        //each component once, not once by ancestor
+        ArgumentCaptor<ProcessorEntity> stopCapture = ArgumentCaptor.forClass(ProcessorEntity.class);
+        verify(processorServiceMock, times(3)).setState(stopCapture.capture(), eq(ProcessorDTO.StateEnum.STOPPED));
+        List<String> stopped = stopCapture.getAllValues().stream().map(ProcessorEntity::getId).collect(Collectors.toList());
+        assertEquals(new HashSet<>(Arrays.asList("1", "3")), new HashSet<>(stopped.subList(0, 2)));
+        assertEquals("2", stopped.get(2));
+        ArgumentCaptor<ProcessorEntity> startCapture = ArgumentCaptor.forClass(ProcessorEntity.class);
+        verify(processorServiceMock, times(3)).setState(startCapture.capture(), eq(ProcessorDTO.StateEnum.RUNNING));
+        List<String> started = startCapture.getAllValues().stream().map(ProcessorEntity::getId).collect(Collectors.toList());
+        assertEquals("2", started.get(0));
+        assertEquals(new HashSet<>(Arrays.asList("1", "3")), new HashSet<>(started.subList(1, 3)));
+        verify(connectionServiceMock, times(1)).waitEmptyQueues(eq("root"), any());
+        //the state of the child groups is set by the root
+        verify(flowApiMock, times(2)).scheduleComponents(eq("root"), any());
+        verify(flowApiMock, never()).scheduleComponents(eq("idChild"), any());
+        verify(flowApiMock, never()).scheduleComponents(eq("idGrandChild"), any());
+    }
+
+    @Test
+    public void reorderScopeTest() throws ApiException, IOException, URISyntaxException {
+        ProcessGroupFlowEntity responseRoot = createScopeFlow();
+        List<Set<?>> result = processGroupService.reorder(responseRoot.getProcessGroupFlow(), Collections.singleton("6"));
+        //only 6 and his upstream 3 - 4
+        assertEquals(5, result.size());
+        assertEquals(Arrays.asList("3"), ids(result.get(0)));
+        assertEquals(Arrays.asList("idCnx3"), ids(result.get(1)));
+        assertEquals(Arrays.asList("4"), ids(result.get(2)));
+        assertEquals(Arrays.asList("idCnx5"), ids(result.get(3)));
+        assertEquals(Arrays.asList("6"), ids(result.get(4)));
+    }
+
+    @Test
+    public void stopScopeTest() throws ApiException, IOException, URISyntaxException {
+        ProcessGroupFlowEntity responseRoot = createScopeFlow();
+        processGroupService.stop(responseRoot, Collections.singleton("6"));
+
+        ArgumentCaptor<ProcessorEntity> processorCapture = ArgumentCaptor.forClass(ProcessorEntity.class);
+        verify(processorServiceMock, times(3)).setState(processorCapture.capture(), eq(ProcessorDTO.StateEnum.STOPPED));
+        assertEquals(Arrays.asList("3", "4", "6"), processorCapture.getAllValues().stream().map(ProcessorEntity::getId).collect(Collectors.toList()));
+        verify(connectionServiceMock, times(2)).waitEmptyQueues(eq("root"), any());
+        //the group is not stopped
+        verify(flowApiMock, never()).scheduleComponents(any(), any());
+    }
+
+    @Test
+    public void startScopeTest() throws ApiException, IOException, URISyntaxException {
+        ProcessGroupFlowEntity responseRoot = createScopeFlow();
+        processGroupService.start(responseRoot, Collections.singleton("2"));
+
+        ArgumentCaptor<ProcessorEntity> processorCapture = ArgumentCaptor.forClass(ProcessorEntity.class);
+        verify(processorServiceMock, times(2)).setState(processorCapture.capture(), eq(ProcessorDTO.StateEnum.RUNNING));
+        assertEquals(Arrays.asList("2", "1"), processorCapture.getAllValues().stream().map(ProcessorEntity::getId).collect(Collectors.toList()));
+        verify(flowApiMock, never()).scheduleComponents(any(), any());
+    }
+
+    /**
+     * 1 - 2 - 7, 3 - 4 - 5, 4 - 6 - 7
+     */
+    private static ProcessGroupFlowEntity createScopeFlow() {
+        ProcessGroupFlowEntity responseRoot = TestUtils.createProcessGroupFlowEntity("root", "rootName");
+        List<ConnectionEntity> connections = new ArrayList<>();
+        connections.add(TestUtils.createConnectionEntity("idCnx1", "1","2"));
+        connections.add(TestUtils.createConnectionEntity("idCnx2", "2","7"));
+        connections.add(TestUtils.createConnectionEntity("idCnx3", "3","4"));
+        connections.add(TestUtils.createConnectionEntity("idCnx4", "4","5"));
+        connections.add(TestUtils.createConnectionEntity("idCnx5", "4","6"));
+        connections.add(TestUtils.createConnectionEntity("idCnx6", "6","7"));
+        responseRoot.getProcessGroupFlow().getFlow().setConnections(connections);
+        List<ProcessorEntity> processors = new ArrayList<>();
+        for (int i = 1; i <= 7; i++) {
+            processors.add(TestUtils.createProcessorEntity(String.valueOf(i), "name" + i));
+        }
+        responseRoot.getProcessGroupFlow().getFlow().setProcessors(processors);
+        return responseRoot;
+    }
+
+    private static List<String> ids(Set<?> set) {
+        List<String> ids = new ArrayList<>();
+        for (Object object : set) {
+            ids.add(object instanceof ProcessorEntity ? ((ProcessorEntity) object).getId() : ((ConnectionEntity) object).getId());
+        }
+        return ids;
     }
 
 
@@ -356,6 +663,10 @@ public class ProcessGroupServiceTest {
                 bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(1);
                 bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(1);
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("scopedStop")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("diffMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("batchSchedule")).toInstance(false);
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
                 bind(Double.class).annotatedWith(Names.named("placeWidth")).toInstance(1200d);
                 bind(PositionDTO.class).annotatedWith(Names.named("startPosition")).toInstance(Main.createPosition("0,0"));
             }
@@ -0,0 +1,195 @@
+package com.github.hermannpencole.nifi.config.service;
+
+import com.github.hermannpencole.nifi.config.model.Job;
+import com.github.hermannpencole.nifi.config.model.ManifestEntry;
+import com.google.gson.Gson;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.powermock.reflect.Whitebox;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * API tests for ServerService
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ServerServiceTest {
+
+    @Mock
+    private UpdateProcessorService updateProcessorServiceMock;
+
+    @Mock
+    private TemplateService templateServiceMock;
+
+    @Spy
+    private ManifestService manifestService;
+
+    @Mock
+    private FlowCacheService flowCacheServiceMock;
+
+    @InjectMocks
+    private ServerService serverService;
+
+    private File secretFile;
+
+    @Before
+    public void setup() throws IOException {
+        Whitebox.setInternalState(manifestService, "updateProcessorService", updateProcessorServiceMock);
+        Whitebox.setInternalState(manifestService, "templateService", templateServiceMock);
+        secretFile = new File(Files.createTempDirectory("server").toFile(), "sub/server.secret");
+        serverService.start(0, secretFile.getPath(), 2, false, false, false, true);
+    }
+
+    @After
+    public void stop() {
+        serverService.stop();
+        assertFalse(secretFile.exists());
+        secretFile.getParentFile().delete();
+        secretFile.getParentFile().getParentFile().delete();
+    }
+
+    @Test
+    public void jobsTest() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            started.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return null;
+        }).when(updateProcessorServiceMock).updateByBranch(Arrays.asList("root", "a"), "a.json", false);
+
+        Job first = post("{\"mode\":\"updateConfig\",\"branch\":\"root > a\",\"conf\":\"a.json\"}");
+        Job child = post("{\"mode\":\"undeploy\",\"branch\":\"root > a > b\"}");
+        Job other = post("{\"mode\":\"undeploy\",\"branch\":\"root > c\"}");
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        //the job on the other branch run, the job on the child wait
+        String log = get("/jobs/" + other.getId() + "/log", 200);
+        assertTrue(log, log.contains("Job " + other.getId() + " started"));
+        assertTrue(log, log.endsWith("SUCCESS\n"));
+        verify(templateServiceMock).undeploy(Arrays.asList("root", "c"), true);
+        assertEquals(Job.Status.QUEUED, serverService.getJob(child.getId()).get().getStatus());
+        verify(templateServiceMock, never()).undeploy(Arrays.asList("root", "a", "b"), true);
+
+        release.countDown();
+        log = get("/jobs/" + child.getId() + "/log", 200);
+        assertTrue(log, log.startsWith("wait job " + first.getId() + " on root > a"));
+        assertTrue(log, log.endsWith("SUCCESS\n"));
+        verify(templateServiceMock).undeploy(Arrays.asList("root", "a", "b"), true);
+        assertEquals(Job.Status.SUCCESS, new Gson().fromJson(get("/jobs/" + first.getId(), 200), Job.class).getStatus());
+        //the branch is read again when a job start and the cache is cleared when the server is idle
+        verify(flowCacheServiceMock).invalidateBranch(Arrays.asList("root", "a", "b"));
+        verify(flowCacheServiceMock, atLeastOnce()).invalidateAll();
+    }
+
+    @Test
+    public void jobFailTest() throws Exception {
+        doThrow(new RuntimeException("cannot find a")).when(updateProcessorServiceMock).updateByBranch(Arrays.asList("root", "a"), "a.json", false);
+        Job job = post("{\"mode\":\"updateConfig\",\"branch\":\"root > a\",\"conf\":\"a.json\"}");
+        String log = get("/jobs/" + job.getId() + "/log", 200);
+        assertTrue(log, log.endsWith("FAILED : cannot find a\n"));
+        assertEquals("cannot find a", serverService.getJob(job.getId()).get().getError());
+    }
+
+    @Test
+    public void badRequestTest() throws Exception {
+        HttpURLConnection connection = request("/jobs", "POST");
+        try (OutputStream output = connection.getOutputStream()) {
+            output.write("{\"mode\":\"other\"}".getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(400, connection.getResponseCode());
+        get("/jobs/42", 404);
+        get("/other", 404);
+    }
+
+    @Test
+    public void secretTest() throws Exception {
+        assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(secretFile.toPath())));
+        assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(secretFile.getParentFile().toPath())));
+        String body = "{\"mode\":\"undeploy\",\"branch\":\"root > a\"}";
+
+        HttpURLConnection connection = request("/jobs", "POST");
+        connection.setRequestProperty("Authorization", "Bearer other");
+        write(connection, body);
+        assertEquals(401, connection.getResponseCode());
+
+        connection = request("/jobs", "GET");
+        connection.setRequestProperty("Authorization", null);
+        assertEquals(401, connection.getResponseCode());
+
+        //a cross origin post of a browser don't need a preflight in text/plain
+        connection = request("/jobs", "POST");
+        connection.setRequestProperty("Content-Type", "text/plain");
+        write(connection, body);
+        assertEquals(415, connection.getResponseCode());
+
+        //Origin is a restricted header of HttpURLConnection
+        try (Socket socket = new Socket("127.0.0.1", serverService.getPort())) {
+            socket.getOutputStream().write(("POST /jobs HTTP/1.1\r\nHost: 127.0.0.1\r\nOrigin: http://evil.example\r\n"
+                    + "Authorization: Bearer " + new String(Files.readAllBytes(secretFile.toPath()), StandardCharsets.UTF_8) + "\r\n"
+                    + "Content-Type: application/json\r\nContent-Length: " + body.length() + "\r\nConnection: close\r\n\r\n" + body)
+                    .getBytes(StandardCharsets.UTF_8));
+            String response = IOUtils.toString(socket.getInputStream(), StandardCharsets.UTF_8);
+            assertTrue(response, response.startsWith("HTTP/1.1 403"));
+        }
+
+        verify(templateServiceMock, never()).undeploy(any(), anyBoolean());
+    }
+
+    private static void write(HttpURLConnection connection, String body) throws IOException {
+        try (OutputStream output = connection.getOutputStream()) {
+            output.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private Job post(String body) throws IOException {
+        HttpURLConnection connection = request("/jobs", "POST");
+        try (OutputStream output = connection.getOutputStream()) {
+            output.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(202, connection.getResponseCode());
+        try (InputStream input = connection.getInputStream()) {
+            return new Gson().fromJson(IOUtils.toString(input, StandardCharsets.UTF_8), Job.class);
+        }
+    }
+
+    private String get(String path, int status) throws IOException {
+        HttpURLConnection connection = request(path, "GET");
+        assertEquals(status, connection.getResponseCode());
+        try (InputStream input = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            return IOUtils.toString(input, StandardCharsets.UTF_8);
+        }
+    }
+
+    private HttpURLConnection request(String path, String method) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + serverService.getPort() + path).openConnection();
+        connection.setRequestMethod(method);
+        connection.setReadTimeout(10000);
+        connection.setDoOutput("POST".equals(method));
+        connection.setRequestProperty("Authorization", "Bearer " + new String(Files.readAllBytes(secretFile.toPath()), StandardCharsets.UTF_8));
+        connection.setRequestProperty("Content-Type", "application/json");
+        return connection;
+    }
+}
@@ -37,6 +37,8 @@ public class TemplateServiceTest {
     private TemplatesApi templatesApiMock;
     @Mock
     private FlowApi flowApiMock;
+    @Mock
+    private FlowCacheService flowCacheServiceMock;
     @InjectMocks
     private TemplateService templateService;
 
@@ -74,6 +76,8 @@ public class TemplateServiceTest {
         verify(processGroupsApiMock).uploadTemplate(response.getProcessGroupFlow().getId(), new File(fileName));
         verify(processGroupsApiMock).instantiateTemplate(response.getProcessGroupFlow().getId(), instantiateTemplate);
         verify(templatesApiMock, never()).removeTemplate(template.getTemplate().getId());
+        //the flow cached by createDirectory is not the flow with the template
+        verify(flowCacheServiceMock).invalidateTree(response.getProcessGroupFlow().getId());
     }
 
 
@@ -137,9 +141,14 @@ public class TemplateServiceTest {
                 bind(ProcessGroupsApi.class).toInstance(processGroupsApiMock);
                 bind(ProcessGroupService.class).toInstance(processGroupServiceMock);
                 bind(FlowApi.class).toInstance(flowApiMock);
+                bind(FlowCacheService.class).toInstance(flowCacheServiceMock);
                 bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(1);
                 bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(1);
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("scopedStop")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("diffMode")).toInstance(false);
+                bind(Boolean.class).annotatedWith(Names.named("batchSchedule")).toInstance(false);
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
                 bind(Double.class).annotatedWith(Names.named("placeWidth")).toInstance(1200d);
                 bind(PositionDTO.class).annotatedWith(Names.named("startPosition")).toInstance(new PositionDTO());
             }
@@ -148,6 +157,7 @@ public class TemplateServiceTest {
         verify(templatesApiMock).removeTemplate(template.getId());
         verify(processGroupServiceMock).stop(processGroupFlow.get());
         verify(processGroupServiceMock).delete(processGroupFlow.get().getProcessGroupFlow().getId());
+        verify(flowCacheServiceMock).invalidateTree("idProcessGroupFlow");
     }
 
     @Test
@@ -1,7 +1,9 @@
 package com.github.hermannpencole.nifi.config.service;
 
+import com.github.hermannpencole.nifi.config.model.ConfigDiff;
 import com.github.hermannpencole.nifi.config.model.ConfigException;
 import com.github.hermannpencole.nifi.config.model.Connection;
+import com.github.hermannpencole.nifi.config.model.GroupProcessorsEntity;
 import com.github.hermannpencole.nifi.swagger.ApiException;
 import com.github.hermannpencole.nifi.swagger.client.FlowApi;
 import com.github.hermannpencole.nifi.swagger.client.ProcessorsApi;
@@ -10,20 +12,24 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.powermock.reflect.Whitebox;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
 import static com.github.hermannpencole.nifi.config.service.TestUtils.*;
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
 /**
@@ -50,6 +56,12 @@ public class UpdateProcessorServiceTest {
     @Mock
     private CreateRouteService createRouteServiceMock;
 
+    @Mock
+    private DiffService diffServiceMock;
+
+    @Spy
+    private FlowCacheService flowCacheService;
+
     @InjectMocks
     private UpdateProcessorService updateProcessorService;
 
@@ -58,6 +70,7 @@ public class UpdateProcessorServiceTest {
 
     @Before
     public void setup() {
+        Whitebox.setInternalState(flowCacheService, "flowapi", flowapiMock);
         response = createProcessGroupFlowEntity("idComponent", "nameComponent");
         when(processGroupServiceMock.changeDirectory(branch)).thenReturn(Optional.of(response));
         when(flowapiMock.getFlow(response.getProcessGroupFlow().getId())).thenReturn(response);
@@ -133,6 +146,11 @@ public class UpdateProcessorServiceTest {
         verify(controllerServicesServiceMock).updateControllerService(controllerServiceDTO.capture(), controllerServiceEntity.capture(), eq(false));
         assertEquals("idCtrl", controllerServiceEntity.getValue().getComponent().getId());
         assertEquals(2, controllerServiceDTO.getValue().getProperties().size());
+        InOrder inOrder = inOrder(controllerServicesServiceMock);
+        inOrder.verify(controllerServicesServiceMock).setStateControllerServices("idComponent", Collections.singletonList("idCtrl"), ControllerServiceDTO.StateEnum.DISABLED, true);
+        inOrder.verify(controllerServicesServiceMock).updateControllerService(any(), any(), eq(false));
+        inOrder.verify(controllerServicesServiceMock).setStateControllerServices("idComponent", Collections.singletonList("idCtrl"), ControllerServiceDTO.StateEnum.ENABLED, true);
+        inOrder.verify(controllerServicesServiceMock).setStateReferenceProcessors(any(), eq(UpdateControllerServiceReferenceRequestEntity.StateEnum.RUNNING));
     }
 
     @Test(expected = ConfigException.class)
@@ -144,6 +162,107 @@ public class UpdateProcessorServiceTest {
         updateProcessorService.updateByBranch(branch, resourcePath("mytest1.json").getPath(), false);
     }
 
+    @Test
+    public void updateBranchParallelCollectErrorsTest() throws ApiException, IOException {
+        processGroupFlowEntityHas(createProcessorEntity("idProc", "nameProc"));
+        processGroupFlowEntityHas(createProcessGroupEntity("idSubGroup", "nameSubGroup"));
+
+        ProcessGroupFlowEntity subGroupResponse = createProcessGroupFlowEntity("idSubGroup", "nameSubGroup");
+        processGroupFlowEntityHas(subGroupResponse, createProcessorEntity("idProc2", "nameProc2"));
+        processGroupFlowEntityHas(subGroupResponse, createProcessorEntity("idProc3", "nameProc3"));
+        when(flowapiMock.getFlow(subGroupResponse.getProcessGroupFlow().getId())).thenReturn(subGroupResponse);
+        when(processorsApiMock.updateProcessor(eq("idProc3"), any())).thenThrow(new ApiException("update idProc3 failed"));
+
+        updateProcessorService.parallelism = 4;
+        try {
+            updateProcessorService.updateByBranch(branch, resourcePath("mytest1.json").getPath(), false);
+            fail("must throw ConfigException");
+        } catch (ConfigException e) {
+            assertTrue(e.getMessage().contains("update idProc3 failed"));
+        }
+        //the other processors are updated
+        verify(processorsApiMock).updateProcessor(eq("idProc"), any());
+        verify(processorsApiMock).updateProcessor(eq("idProc2"), any());
+    }
+
+    @Test
+    public void updateCheckBeforeStopTest() throws ApiException, IOException {
+        processGroupFlowEntityHas(createProcessGroupEntity("idSubGroup", "nameSubGroup"));
+
+        ProcessGroupFlowEntity subGroupResponse = createProcessGroupFlowEntity("idSubGroup", "nameSubGroup");
+        processGroupFlowEntityHas(subGroupResponse, createProcessorEntity("idProc2", "nameProc2"));
+        when(flowapiMock.getFlow(subGroupResponse.getProcessGroupFlow().getId())).thenReturn(subGroupResponse);
+
+        try {
+            updateProcessorService.updateByBranch(branch, resourcePath("mytest1.json").getPath(), false);
+            fail("must throw ConfigException");
+        } catch (ConfigException e) {
+            //all the missing names are reported
+            assertEquals("cannot find nameProc, nameProc3", e.getMessage());
+        }
+        //nothing is stopped or updated
+        verify(processGroupServiceMock, never()).stop(any());
+        verify(processorsApiMock, never()).updateProcessor(any(), any());
+    }
+
+    @Test
+    public void updateDiffUpToDateTest() throws ApiException, IOException {
+        processGroupFlowEntityHas(createProcessorEntity("idProc", "nameProc"));
+        ConfigDiff diff = new ConfigDiff();
+        diff.setConfiguration(new GroupProcessorsEntity());
+        when(diffServiceMock.diff(any(), eq(response))).thenReturn(diff);
+
+        updateProcessorService.diffMode = true;
+        updateProcessorService.updateByBranch(branch, resourcePath("mytest1.json").getPath(), false);
+
+        verify(processGroupServiceMock, never()).stop(any());
+        verify(processGroupServiceMock, never()).start(any());
+        verify(processorsApiMock, never()).updateProcessor(any(), any());
+        verify(createRouteServiceMock).createRoutes(diff.getConfiguration().getConnectionPorts(), false);
+    }
+
+    @Test
+    public void updateDiffTest() throws ApiException, IOException {
+        processGroupFlowEntityHas(createProcessorEntity("idProc", "nameProc"));
+        processGroupFlowEntityHas(createProcessorEntity("idProc2", "nameProc2"));
+        ConfigDiff diff = new ConfigDiff();
+        diff.setConfiguration(new GroupProcessorsEntity());
+        ProcessorDTO processorOnConfig = createProcessorEntity(null, "nameProc2").getComponent();
+        diff.getConfiguration().getProcessors().add(processorOnConfig);
+        diff.addProcessor("~ processor nameComponent > nameProc2 : comments");
+        when(diffServiceMock.diff(any(), eq(response))).thenReturn(diff);
+
+        updateProcessorService.diffMode = true;
+        updateProcessorService.updateByBranch(branch, resourcePath("mytest1.json").getPath(), false);
+
+        verify(processGroupServiceMock).stop(response);
+        verify(processorsApiMock, times(1)).updateProcessor(any(), any());
+        verify(processorsApiMock).updateProcessor(eq("idProc2"), any());
+        verify(connectionsUpdater).updateConnections(Collections.emptyList(), response);
+        verify(processGroupServiceMock).start(response);
+    }
+
+    @Test
+    public void updateDiffScopedTest() throws ApiException, IOException {
+        processGroupFlowEntityHas(createProcessorEntity("idProc", "nameProc"));
+        ConfigDiff diff = new ConfigDiff();
+        diff.setConfiguration(new GroupProcessorsEntity());
+        diff.getConfiguration().getProcessors().add(createProcessorEntity(null, "nameProc").getComponent());
+        diff.addProcessor("~ processor nameComponent > nameProc : comments");
+        diff.addComponentId("idProc");
+        when(diffServiceMock.diff(any(), eq(response))).thenReturn(diff);
+
+        updateProcessorService.diffMode = true;
+        updateProcessorService.scopedStop = true;
+        updateProcessorService.updateByBranch(branch, resourcePath("mytest1.json").getPath(), false);
+
+        verify(processGroupServiceMock, never()).stop(any());
+        verify(processGroupServiceMock, never()).start(any());
+        verify(processGroupServiceMock).stop(response, Collections.singleton("idProc"));
+        verify(processorsApiMock).updateProcessor(eq("idProc"), any());
+        verify(processGroupServiceMock).start(response, Collections.singleton("idProc"));
+    }
+
     private URL resourcePath(String resourceName) {
         return getClass().getClassLoader().getResource(resourceName);
     }
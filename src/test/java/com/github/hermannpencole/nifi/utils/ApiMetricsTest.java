@@ -0,0 +1,109 @@
+package com.github.hermannpencole.nifi.utils;
+
+import com.github.hermannpencole.nifi.config.utils.ApiMetrics;
+import com.github.hermannpencole.nifi.config.utils.FunctionUtils;
+import com.github.hermannpencole.nifi.config.utils.MetricsInterceptor;
+import com.squareup.okhttp.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * API tests for ApiMetrics
+ */
+public class ApiMetricsTest {
+
+    @Before
+    public void setup() {
+        ApiMetrics.reset();
+        ApiMetrics.setEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        ApiMetrics.setEnabled(false);
+        ApiMetrics.reset();
+    }
+
+    @Test
+    public void endpointTest() {
+        assertEquals("GET /nifi-api/flow/process-groups/{id}",
+                ApiMetrics.endpoint("GET", "/nifi-api/flow/process-groups/0164a4b2-e5a7-1c2a-9ab3-53d2f3a59c30"));
+        assertEquals("GET /nifi-api/flow/process-groups/root", ApiMetrics.endpoint("GET", "/nifi-api/flow/process-groups/root"));
+    }
+
+    @Test
+    public void prometheusTest() throws IOException {
+        ApiMetrics.recordCall("GET /flow", TimeUnit.MILLISECONDS.toNanos(3), 0, 100, false);
+        ApiMetrics.recordCall("GET /flow", TimeUnit.MILLISECONDS.toNanos(300), 0, 50, true);
+        FunctionUtils.runWhileBackoff(() -> false, 1);
+
+        String metrics = ApiMetrics.toPrometheus();
+        assertTrue(metrics.contains("# TYPE nifi_config_api_request_duration_seconds histogram\n"));
+        assertTrue(metrics.contains("nifi_config_api_requests_total{endpoint=\"GET /flow\"} 2\n"));
+        assertTrue(metrics.contains("nifi_config_api_errors_total{endpoint=\"GET /flow\"} 1\n"));
+        assertTrue(metrics.contains("nifi_config_api_bytes_total{endpoint=\"GET /flow\",direction=\"received\"} 150\n"));
+        assertTrue(metrics.contains("nifi_config_api_request_duration_seconds_bucket{endpoint=\"GET /flow\",le=\"0.005\"} 1\n"));
+        assertTrue(metrics.contains("nifi_config_api_request_duration_seconds_bucket{endpoint=\"GET /flow\",le=\"0.25\"} 1\n"));
+        assertTrue(metrics.contains("nifi_config_api_request_duration_seconds_bucket{endpoint=\"GET /flow\",le=\"0.5\"} 2\n"));
+        assertTrue(metrics.contains("nifi_config_api_request_duration_seconds_bucket{endpoint=\"GET /flow\",le=\"+Inf\"} 2\n"));
+        assertTrue(metrics.contains("nifi_config_waits_total{caller=\"ApiMetricsTest.prometheusTest\"} 1\n"));
+
+        File file = File.createTempFile("metrics", ".prom");
+        try {
+            ApiMetrics.writePrometheus(file.getPath());
+            assertEquals(metrics, new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        } finally {
+            file.delete();
+        }
+        ApiMetrics.report();
+    }
+
+    @Test
+    public void disabledTest() {
+        ApiMetrics.setEnabled(false);
+        ApiMetrics.recordCall("GET /flow", 1, 0, 0, false);
+        assertFalse(ApiMetrics.toPrometheus().contains("GET /flow"));
+    }
+
+    @Test
+    public void interceptorTest() throws IOException {
+        Request request = new Request.Builder()
+                .url("http://localhost:8080/nifi-api/processors/0164a4b2-e5a7-1c2a-9ab3-53d2f3a59c30")
+                .put(RequestBody.create(MediaType.parse("application/json"), "{\"id\":1}"))
+                .build();
+        Response response = new MetricsInterceptor().intercept(new Interceptor.Chain() {
+            @Override
+            public Request request() {
+                return request;
+            }
+
+            @Override
+            public Response proceed(Request request) {
+                return new Response.Builder().request(request).protocol(Protocol.HTTP_1_1).code(409)
+                        .body(ResponseBody.create(MediaType.parse("text/plain"), "conflict")).build();
+            }
+
+            @Override
+            public Connection connection() {
+                return null;
+            }
+        });
+        //recorded when the body is read
+        assertFalse(ApiMetrics.toPrometheus().contains("PUT"));
+        assertEquals("conflict", response.body().string());
+
+        String metrics = ApiMetrics.toPrometheus();
+        assertTrue(metrics.contains("nifi_config_api_errors_total{endpoint=\"PUT /nifi-api/processors/{id}\"} 1\n"));
+        assertTrue(metrics.contains("nifi_config_api_bytes_total{endpoint=\"PUT /nifi-api/processors/{id}\",direction=\"sent\"} 8\n"));
+        assertTrue(metrics.contains("nifi_config_api_bytes_total{endpoint=\"PUT /nifi-api/processors/{id}\",direction=\"received\"} 8\n"));
+    }
+}
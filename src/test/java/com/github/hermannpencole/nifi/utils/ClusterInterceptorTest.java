@@ -0,0 +1,111 @@
+package com.github.hermannpencole.nifi.utils;
+
+import com.github.hermannpencole.nifi.config.utils.ClusterInterceptor;
+import com.squareup.okhttp.*;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+/**
+ * API tests for ClusterInterceptor
+ */
+public class ClusterInterceptorTest {
+
+    private final static String PATH = "/nifi-api/processors/0164a4b2-e5a7-1c2a-9ab3-53d2f3a59c30";
+
+    private final Map<String, Integer> callsByHost = new HashMap<>();
+
+    private Response call(ClusterInterceptor interceptor, Request request, Function<Request, Response> node) throws IOException {
+        return interceptor.intercept(new Interceptor.Chain() {
+            @Override
+            public Request request() {
+                return request;
+            }
+
+            @Override
+            public Response proceed(Request request) throws IOException {
+                callsByHost.merge(request.httpUrl().host(), 1, Integer::sum);
+                Response response = node.apply(request);
+                if (response == null) throw new IOException("connection refused");
+                return response;
+            }
+
+            @Override
+            public Connection connection() {
+                return null;
+            }
+        });
+    }
+
+    private static Response response(Request request, int code) {
+        return new Response.Builder().request(request).protocol(Protocol.HTTP_1_1).code(code)
+                .body(ResponseBody.create(MediaType.parse("application/json"), "{}")).build();
+    }
+
+    @Test
+    public void spreadReadsTest() throws IOException {
+        ClusterInterceptor interceptor = new ClusterInterceptor(Arrays.asList("http://node1:8080/nifi-api/", "http://node2:8080/nifi-api", "http://node3:8080/nifi-api"));
+        Request read = new Request.Builder().url("http://node1:8080" + PATH).build();
+        for (int i = 0; i < 300; i++) {
+            Response response = call(interceptor, read, request -> {
+                assertEquals(PATH, request.httpUrl().encodedPath());
+                if (request.httpUrl().host().equals("node3")) {
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return response(request, 200);
+            });
+            assertEquals(200, response.code());
+        }
+        assertEquals(300, callsByHost.values().stream().mapToInt(Integer::intValue).sum());
+        assertTrue(callsByHost.get("node1") > 50);
+        assertTrue(callsByHost.get("node2") > 50);
+        //the slow node get less reads
+        assertTrue(callsByHost.get("node3") < 30);
+        assertTrue(interceptor.toString().startsWith("http://node1:8080/nifi-api : "));
+
+        //the writes stay on the first node
+        callsByHost.clear();
+        Request write = new Request.Builder().url("http://node1:8080" + PATH)
+                .put(RequestBody.create(MediaType.parse("application/json"), "{}")).build();
+        for (int i = 0; i < 10; i++) {
+            call(interceptor, write, request -> response(request, 200));
+        }
+        assertEquals(10, callsByHost.get("node1").intValue());
+        assertEquals(1, callsByHost.size());
+    }
+
+    @Test
+    public void nodeDownTest() throws IOException {
+        ClusterInterceptor interceptor = new ClusterInterceptor(Arrays.asList("http://node1:8080/nifi-api", "http://node2:8080/nifi-api", "http://node3:8080/nifi-api"));
+        Request read = new Request.Builder().url("http://node1:8080" + PATH).build();
+        for (int i = 0; i < 100; i++) {
+            Response response = call(interceptor, read, request -> {
+                switch (request.httpUrl().host()) {
+                    case "node2":
+                        return null;
+                    case "node3":
+                        return response(request, 401);
+                    default:
+                        return response(request, 200);
+                }
+            });
+            assertEquals(200, response.code());
+        }
+        //each node is tried once, then the read is made again on the first node
+        assertEquals(1, callsByHost.get("node2").intValue());
+        assertEquals(1, callsByHost.get("node3").intValue());
+        assertEquals(100, callsByHost.get("node1").intValue());
+        assertTrue(interceptor.toString().contains("(left)"));
+    }
+}
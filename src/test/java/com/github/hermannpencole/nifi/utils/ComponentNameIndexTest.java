@@ -0,0 +1,67 @@
+package com.github.hermannpencole.nifi.utils;
+
+import com.github.hermannpencole.nifi.config.service.TestUtils;
+import com.github.hermannpencole.nifi.config.utils.ComponentNameIndex;
+import com.github.hermannpencole.nifi.swagger.client.model.*;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for ComponentNameIndex
+ */
+public class ComponentNameIndexTest {
+
+    @Test
+    public void findTest() {
+        FlowDTO flow = new FlowDTO();
+        flow.setProcessors(new ArrayList<>());
+        flow.getProcessors().add(TestUtils.createProcessorEntity("idProc", " nameProc "));
+        flow.getProcessors().add(TestUtils.createProcessorEntity("idProcDuplicate", "nameProc"));
+        flow.getProcessors().add(TestUtils.createProcessorEntity("idProc2", "nameProc2"));
+        flow.setProcessGroups(Collections.singletonList(TestUtils.createProcessGroupEntity("idGroup", "nameGroup")));
+        PortEntity port = new PortEntity();
+        port.setId("idPort");
+        port.setComponent(new PortDTO());
+        port.getComponent().setName("namePort");
+        flow.setOutputPorts(Collections.singletonList(port));
+
+        ComponentNameIndex index = ComponentNameIndex.of(flow);
+
+        assertEquals("idProc", index.findProcessor("nameProc").get().getId());
+        assertEquals("idProc2", index.findProcessor(" nameProc2").get().getId());
+        assertFalse(index.findProcessor("nameGroup").isPresent());
+        assertEquals("idGroup", index.findProcessGroup("nameGroup").get().getId());
+        assertEquals("idPort", index.findOutputPort("namePort").get().getId());
+        assertFalse(index.findInputPort("namePort").isPresent());
+        assertFalse(index.findRemoteProcessGroup("namePort").isPresent());
+        assertEquals(Collections.singleton("nameProc"), index.getDuplicateNames(ComponentNameIndex.Kind.PROCESSOR));
+        assertTrue(index.isDuplicateName(ComponentNameIndex.Kind.PROCESSOR, " nameProc"));
+        assertFalse(index.isDuplicateName(ComponentNameIndex.Kind.PROCESSOR, "nameProc2"));
+        assertFalse(index.isDuplicateName(ComponentNameIndex.Kind.PROCESS_GROUP, "nameProc"));
+        assertTrue(index.isIndexOf(flow));
+        assertFalse(index.isIndexOf(new FlowDTO()));
+    }
+
+    @Test
+    public void duplicateByKindTest() {
+        //a processor and two groups with the same name
+        FlowDTO flow = new FlowDTO();
+        flow.setProcessors(Collections.singletonList(TestUtils.createProcessorEntity("idProc", "name")));
+        flow.setProcessGroups(Arrays.asList(TestUtils.createProcessGroupEntity("idGroup", "name"),
+                TestUtils.createProcessGroupEntity("idGroup2", "name")));
+
+        ComponentNameIndex index = ComponentNameIndex.of(flow);
+
+        assertFalse(index.isDuplicateName(ComponentNameIndex.Kind.PROCESSOR, "name"));
+        assertTrue(index.getDuplicateNames(ComponentNameIndex.Kind.PROCESSOR).isEmpty());
+        assertTrue(index.isDuplicateName(ComponentNameIndex.Kind.PROCESS_GROUP, "name"));
+        assertFalse(index.isDuplicateName(ComponentNameIndex.Kind.OUTPUT_PORT, "name"));
+        assertEquals("idProc", index.findProcessor("name").get().getId());
+        assertEquals("idGroup", index.findProcessGroup("name").get().getId());
+    }
+}
@@ -0,0 +1,40 @@
+package com.github.hermannpencole.nifi.utils;
+
+import com.github.hermannpencole.nifi.config.service.TestUtils;
+import com.github.hermannpencole.nifi.config.utils.ComponentRegistry;
+import com.github.hermannpencole.nifi.swagger.client.model.*;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for ComponentRegistry
+ */
+public class ComponentRegistryTest {
+
+    @Test
+    public void findByIdTest() {
+        ProcessGroupFlowEntity flow1 = TestUtils.createProcessGroupFlowEntity("idGroup1", "group1");
+        flow1.getProcessGroupFlow().getFlow().setProcessors(Collections.singletonList(TestUtils.createProcessorEntity("idProc", "nameProc")));
+        PortEntity port = new PortEntity();
+        port.setId("idPort");
+        flow1.getProcessGroupFlow().getFlow().setInputPorts(Collections.singletonList(port));
+        ProcessGroupFlowEntity flow2 = TestUtils.createProcessGroupFlowEntity("idGroup2", "group2");
+        FunnelEntity funnel = new FunnelEntity();
+        funnel.setId("idFunnel");
+        flow2.getProcessGroupFlow().getFlow().setFunnels(Collections.singletonList(funnel));
+
+        ComponentRegistry registry = ComponentRegistry.of(Arrays.asList(flow1.getProcessGroupFlow(), flow2.getProcessGroupFlow()));
+
+        assertEquals("idProc", registry.findProcessor("idProc").get().getId());
+        assertFalse(registry.findPort("idProc").isPresent());
+        assertSame(port, registry.findPort("idPort").get());
+        assertSame(funnel, registry.findById("idFunnel").get());
+        assertFalse(registry.findById("idOther").isPresent());
+        assertFalse(registry.isRegistryOf(flow1.getProcessGroupFlow().getFlow()));
+        assertTrue(ComponentRegistry.of(flow2.getProcessGroupFlow().getFlow()).isRegistryOf(flow2.getProcessGroupFlow().getFlow()));
+    }
+}
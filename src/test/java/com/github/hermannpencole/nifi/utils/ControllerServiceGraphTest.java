@@ -0,0 +1,75 @@
+package com.github.hermannpencole.nifi.utils;
+
+import com.github.hermannpencole.nifi.config.utils.ControllerServiceGraph;
+import com.github.hermannpencole.nifi.swagger.client.model.*;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for ControllerServiceGraph
+ */
+public class ControllerServiceGraphTest {
+
+    public static ControllerServiceEntity createControllerService(String id, String... references) {
+        ControllerServiceEntity service = new ControllerServiceEntity();
+        service.setId(id);
+        service.setComponent(new ControllerServiceDTO());
+        service.getComponent().setId(id);
+        service.getComponent().setName("name" + id);
+        service.getComponent().setProperties(new HashMap<>());
+        service.getComponent().setDescriptors(new HashMap<>());
+        service.getComponent().getProperties().put("key", "value");
+        service.getComponent().getDescriptors().put("key", new PropertyDescriptorDTO());
+        for (int i = 0; i < references.length; i++) {
+            PropertyDescriptorDTO descriptor = new PropertyDescriptorDTO();
+            descriptor.setIdentifiesControllerService("org.apache.nifi.Service");
+            service.getComponent().getDescriptors().put("service" + i, descriptor);
+            service.getComponent().getProperties().put("service" + i, references[i]);
+        }
+        RevisionDTO revision = new RevisionDTO();
+        revision.setVersion(1L);
+        service.setRevision(revision);
+        return service;
+    }
+
+    public static ControllerServiceReferencingComponentEntity createReferencing(String id, ControllerServiceReferencingComponentDTO.ReferenceTypeEnum type) {
+        ControllerServiceReferencingComponentEntity referencing = new ControllerServiceReferencingComponentEntity();
+        referencing.setId(id);
+        referencing.setComponent(new ControllerServiceReferencingComponentDTO());
+        referencing.getComponent().setId(id);
+        referencing.getComponent().setReferenceType(type);
+        referencing.getComponent().setReferencingComponents(new ArrayList<>());
+        return referencing;
+    }
+
+    @Test
+    public void wavesTest() {
+        //a <- b <- c, a <- d, b referenced by e (other group) referenced by f (other group) and by the processor p
+        ControllerServiceEntity b = createControllerService("b", "a");
+        ControllerServiceReferencingComponentEntity e = createReferencing("e", ControllerServiceReferencingComponentDTO.ReferenceTypeEnum.CONTROLLERSERVICE);
+        e.getComponent().getReferencingComponents().add(createReferencing("f", ControllerServiceReferencingComponentDTO.ReferenceTypeEnum.CONTROLLERSERVICE));
+        b.getComponent().setReferencingComponents(Arrays.asList(e,
+                createReferencing("p", ControllerServiceReferencingComponentDTO.ReferenceTypeEnum.PROCESSOR),
+                createReferencing("c", ControllerServiceReferencingComponentDTO.ReferenceTypeEnum.CONTROLLERSERVICE)));
+        ControllerServiceGraph graph = ControllerServiceGraph.of(Arrays.asList(
+                createControllerService("a"), b, createControllerService("c", "b", "unknown"), createControllerService("d", "a")));
+
+        assertEquals(new HashSet<>(Arrays.asList("a", "b")), graph.dependencies(Collections.singleton("b")));
+        assertEquals(new HashSet<>(Arrays.asList("b", "c", "e", "f")), graph.dependents(Collections.singleton("b")));
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "c", "d", "e", "f")), graph.dependents(Collections.singleton("a")));
+        assertTrue(graph.get("a").isPresent());
+        assertFalse(graph.get("e").isPresent());
+        assertFalse(graph.get("p").isPresent());
+
+        Set<String> all = graph.dependents(Collections.singleton("a"));
+        assertEquals(Arrays.asList(Collections.singletonList("a"), Arrays.asList("b", "d"), Arrays.asList("c", "e"), Collections.singletonList("f")),
+                graph.waves(all, true));
+        assertEquals(Arrays.asList(Collections.singletonList("f"), Arrays.asList("c", "e"), Arrays.asList("b", "d"), Collections.singletonList("a")),
+                graph.waves(all, false));
+        assertEquals(Arrays.asList(Collections.singletonList("a"), Collections.singletonList("c")),
+                graph.waves(new HashSet<>(Arrays.asList("a", "c")), true));
+    }
+}
@@ -0,0 +1,66 @@
+package com.github.hermannpencole.nifi.utils;
+
+import com.github.hermannpencole.nifi.config.utils.FlowGraph;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for FlowGraph
+ */
+public class FlowGraphTest {
+
+    @Test
+    public void levelsTest() {
+        FlowGraph graph = new FlowGraph();
+        graph.addNode("alone");
+        graph.addEdge("a", "b");
+        graph.addEdge("b", "c");
+        graph.addEdge("c", "b");
+        graph.addEdge("c", "d");
+        graph.addEdge("a", "d");
+
+        List<Set<String>> components = graph.stronglyConnectedComponents();
+        assertEquals(4, components.size());
+        assertTrue(components.contains(new HashSet<>(Arrays.asList("b", "c"))));
+
+        Map<String, Integer> levels = graph.levels();
+        assertEquals(0, levels.get("alone").intValue());
+        assertEquals(0, levels.get("a").intValue());
+        assertEquals(1, levels.get("b").intValue());
+        assertEquals(1, levels.get("c").intValue());
+        assertEquals(2, levels.get("d").intValue());
+    }
+
+    @Test
+    public void ancestorsTest() {
+        FlowGraph graph = new FlowGraph();
+        graph.addEdge("a", "b");
+        graph.addEdge("b", "c");
+        graph.addEdge("c", "b");
+        graph.addEdge("c", "d");
+        graph.addEdge("x", "y");
+
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "c", "d")), graph.ancestors(Collections.singletonList("d")));
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "c", "y", "x")), graph.ancestors(Arrays.asList("b", "y")));
+        assertTrue(graph.ancestors(Collections.singletonList("unknown")).isEmpty());
+    }
+
+    @Test
+    public void levelsDeepTest() {
+        FlowGraph graph = new FlowGraph();
+        for (int i = 0; i < 100000; i++) {
+            graph.addEdge(String.valueOf(i), String.valueOf(i + 1));
+        }
+        //a cycle on all the chain
+        graph.addEdge("100000", "0");
+        assertEquals(1, graph.stronglyConnectedComponents().size());
+        graph = new FlowGraph();
+        for (int i = 0; i < 100000; i++) {
+            graph.addEdge(String.valueOf(i), String.valueOf(i + 1));
+        }
+        assertEquals(100000, graph.levels().get("100000").intValue());
+    }
+}
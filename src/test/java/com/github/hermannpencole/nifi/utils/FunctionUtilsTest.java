@@ -7,11 +7,23 @@ import com.github.hermannpencole.nifi.swagger.ApiException;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.slf4j.MDC;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * API tests for AccessApi
@@ -29,8 +41,14 @@ public class FunctionUtilsTest {
     @Test
     public void runWhileTest() throws ApiException, IOException, URISyntaxException {
         this.result = 0;
-        FunctionUtils.runWhile(() -> {this.result +=1; return this.result != 2;}, 1, 10);
+        List<String> threads = new ArrayList<>();
+        long start = System.nanoTime();
+        FunctionUtils.runWhile(() -> {threads.add(Thread.currentThread().getName()); this.result +=1; return this.result != 2;}, 1, 10);
         assertEquals(2, this.result);
+        //fixed delay, no jitter
+        assertTrue(System.nanoTime() - start >= 1_000_000_000L);
+        //the polls don't run on the thread of the timers
+        assertEquals(Arrays.asList("nifi-config-wait", "nifi-config-wait"), threads);
     }
 
     @Test(expected = ConfigException.class)
@@ -46,4 +64,127 @@ public class FunctionUtilsTest {
         FunctionUtils.runWhile(() -> { throw new ConfigException("test");}, 1, -1);
         assertEquals(2, this.result);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void runParallelTest() {
+        List<Integer> items = Arrays.asList(5, 4, 3, 2, 1);
+        List<Integer> result = FunctionUtils.runParallel(items, item -> {
+            //the recursive call is forked on the same pool
+            return FunctionUtils.runParallel(Arrays.asList(item, item), i -> i * 10, 2).stream().mapToInt(Integer::intValue).sum();
+        }, 2);
+        assertEquals(Arrays.asList(100, 80, 60, 40, 20), result);
+    }
+
+    @Test
+    public void runParallelFromCommonPoolTest() {
+        //called from the common pool, the items run on the pool of the parallelism
+        List<ForkJoinPool> pools = CompletableFuture.supplyAsync(() -> FunctionUtils.runParallel(Arrays.asList(1, 2, 3), item -> ForkJoinTask.getPool(), 2)).join();
+        pools.forEach(pool -> {
+            assertNotSame(ForkJoinPool.commonPool(), pool);
+            assertEquals(2, pool.getParallelism());
+        });
+    }
+
+    @Test
+    public void runParallelAsyncTest() {
+        CompletableFuture<List<Integer>> future = FunctionUtils.runParallelAsync(Arrays.asList(1, 2, 3, 4), item -> item * 2, 2);
+        assertEquals(Arrays.asList(2, 4, 6, 8), FunctionUtils.join(future));
+        try {
+            FunctionUtils.join(FunctionUtils.runParallelAsync(Arrays.asList(1, 2), item -> { throw new ConfigException("failed " + item); }, 2));
+            fail("must throw ConfigException");
+        } catch (ConfigException e) {
+            assertTrue(e.getMessage().startsWith("failed"));
+        }
+    }
+
+    @Test
+    public void mdcTest() {
+        MDC.put("job", "12");
+        try {
+            //the tasks on the pools see the MDC of the caller
+            assertEquals(Arrays.asList("12", "12", "12", "12"), FunctionUtils.runParallel(Arrays.asList(1, 2, 3, 4), item -> MDC.get("job"), 2));
+            List<String> polled = new ArrayList<>();
+            FunctionUtils.runWhileBackoff(() -> polled.add(MDC.get("job")) && polled.size() < 2, 1, 10);
+            assertEquals(Arrays.asList("12", "12"), polled);
+        } finally {
+            MDC.remove("job");
+        }
+    }
+
+    @Test
+    public void runParallelSequentialTest() {
+        List<String> result = FunctionUtils.runParallel(Arrays.asList("a", "b"), String::toUpperCase, null);
+        assertEquals(Arrays.asList("A", "B"), result);
+    }
+
+    @Test(expected = ConfigException.class)
+    public void runParallelExceptionTest() {
+        FunctionUtils.runParallel(Arrays.asList(1, 2, 3), item -> {
+            if (item == 2) throw new ConfigException("test");
+            return item;
+        }, 3);
+    }
+
+    @Test
+    public void runWhileBackoffTest() {
+        this.result = 0;
+        long start = System.currentTimeMillis();
+        int polls = FunctionUtils.runWhileBackoff(() -> {this.result +=1; return this.result != 4;}, 1, 10);
+        assertEquals(4, polls);
+        //50 + 100 + 200 ms at most, far from 3 fixed intervals of 1 second
+        assertTrue(System.currentTimeMillis() - start < 1000);
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void runWhileBackoffTimeOutTest() {
+        FunctionUtils.runWhileBackoff(() -> true, 1, 1);
+    }
+
+    @Test(expected = ConfigException.class)
+    public void runWhileBackoffConfigExceptionTest() {
+        FunctionUtils.runWhileBackoff(() -> { throw new ConfigException("test");}, 1, -1);
+    }
+
+    @Test
+    public void runWhileBackoffInPollTest() {
+        //more waits than threads of the poller, each poll wait an other condition (delete that remove connections)
+        int waits = Math.max(4, Runtime.getRuntime().availableProcessors()) * 2;
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < waits; i++) items.add(i);
+        long start = System.currentTimeMillis();
+        List<Integer> polls = FunctionUtils.runParallel(items, item -> {
+            AtomicInteger nested = new AtomicInteger();
+            FunctionUtils.runWhile(() -> {
+                FunctionUtils.runWhileBackoff(() -> nested.incrementAndGet() < 3, 1, 5);
+                return false;
+            }, 1, 10);
+            return nested.get();
+        }, waits);
+        assertEquals(Collections.nCopies(waits, 3), polls);
+        //no wait blocked until his timeout
+        assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void runWhileInPollTimeOutTest() {
+        FunctionUtils.runWhile(() -> {
+            FunctionUtils.runWhile(() -> true, 1, 1);
+            return false;
+        }, 1, 10);
+    }
+
+    @Test
+    public void scheduleWhileBackoffConcurrentTest() {
+        long start = System.currentTimeMillis();
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            AtomicInteger count = new AtomicInteger();
+            futures.add(FunctionUtils.scheduleWhileBackoff(() -> count.incrementAndGet() != 3, 1, 10));
+        }
+        for (CompletableFuture<Integer> future : futures) {
+            assertEquals(3, FunctionUtils.await(future).intValue());
+        }
+        //the 50 waits are multiplexed on the scheduler
+        assertTrue(System.currentTimeMillis() - start < 1000);
+    }
+}
@@ -0,0 +1,46 @@
+package com.github.hermannpencole.nifi.utils;
+
+import com.github.hermannpencole.nifi.config.model.GroupProcessorsEntity;
+import com.github.hermannpencole.nifi.config.utils.GroupProcessorsReader;
+import com.google.gson.stream.MalformedJsonException;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for GroupProcessorsReader
+ */
+public class GroupProcessorsReaderTest {
+
+    @Test
+    public void readTest() throws IOException {
+        List<String> read = new ArrayList<>();
+        GroupProcessorsEntity root;
+        try (GroupProcessorsReader reader = new GroupProcessorsReader(new InputStreamReader(getClass().getClassLoader().getResourceAsStream("mytest1.json"), "UTF-8"))) {
+            root = reader.read(processor -> read.add(processor.getName()), group -> read.add(group.getName() + ":" + group.getProcessors().size()));
+        }
+        assertEquals(Arrays.asList("nameProc", "nameSubGroup:2"), read);
+        assertEquals("nameComponent", root.getName());
+        assertEquals(1, root.getConnections().size());
+        assertTrue(root.getProcessors().isEmpty());
+        assertTrue(root.getGroupProcessorsEntity().isEmpty());
+    }
+
+    @Test
+    public void readStreamingTest() throws IOException {
+        //the first group is given before the end of the file is read
+        String json = "{\"controllerServices\": null, \"unknown\": {\"a\": 1}, \"groupProcessorsEntity\": [{\"name\": \"first\"}, {\"name\": \"second\" !!!";
+        List<String> read = new ArrayList<>();
+        try (GroupProcessorsReader reader = new GroupProcessorsReader(new StringReader(json))) {
+            reader.read(processor -> read.add(processor.getName()), group -> read.add(group.getName()));
+            fail("must fail on malformed json");
+        } catch (RuntimeException | MalformedJsonException e) {
+            assertEquals(Arrays.asList("first"), read);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.github.hermannpencole.nifi.utils;
+
+import com.github.hermannpencole.nifi.config.service.TestUtils;
+import com.github.hermannpencole.nifi.config.utils.OccupancyGrid;
+import com.github.hermannpencole.nifi.swagger.client.model.*;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for OccupancyGrid
+ */
+public class OccupancyGridTest {
+
+    @Test
+    public void findOtherPositionInPlaceTest() {
+        ProcessGroupFlowEntity flow = TestUtils.createProcessGroupFlowEntity("idGroup", "group");
+        flow.getProcessGroupFlow().getFlow().setProcessors(new ArrayList<>());
+        flow.getProcessGroupFlow().getFlow().getProcessors().add(processor("idProc1", 500, 0));
+        flow.getProcessGroupFlow().getFlow().getProcessors().add(processor("idProc2", 100, 100));
+        flow.getProcessGroupFlow().getFlow().getProcessors().add(processor("idProc3", 0, 0));
+        ProcessGroupEntity group = TestUtils.createProcessGroupEntity("idElt1", "elt1");
+        group.setPosition(position(-2000, -2000));
+        flow.getProcessGroupFlow().getFlow().getProcessGroups().add(group);
+
+        OccupancyGrid grid = OccupancyGrid.of(flow.getProcessGroupFlow().getFlow());
+
+        assertTrue(grid.isGridOf(flow.getProcessGroupFlow().getFlow()));
+        //the first added win
+        assertEquals(500d, grid.findOtherPositionInPlace(300, 0).get().getX(), 0);
+        assertEquals(100d, grid.findOtherPositionInPlace(0, 0).get().getX(), 0);
+        assertEquals(-2000d, grid.findOtherPositionInPlace(-1800, -2100).get().getX(), 0);
+        assertFalse(grid.findOtherPositionInPlace(930, 0).isPresent());
+        assertFalse(grid.findOtherPositionInPlace(0, 320).isPresent());
+        grid.add(position(900, 300));
+        grid.add(null);
+        assertEquals(900d, grid.findOtherPositionInPlace(930, 200).get().getX(), 0);
+    }
+
+    @Test
+    public void nextPositionTest() {
+        Random random = new Random(42);
+        for (int test = 0; test < 200; test++) {
+            ProcessGroupFlowEntity flow = TestUtils.createProcessGroupFlowEntity("idGroup", "group");
+            flow.getProcessGroupFlow().getFlow().setProcessors(new ArrayList<>());
+            List<PositionDTO> positions = new ArrayList<>();
+            int count = random.nextInt(60);
+            for (int i = 0; i < count; i++) {
+                //near the slots and on the slots
+                double x = random.nextBoolean() ? random.nextInt(5) * 430 : random.nextInt(2000) - 100;
+                double y = random.nextBoolean() ? random.nextInt(8) * 220 : random.nextInt(1800) - 100;
+                flow.getProcessGroupFlow().getFlow().getProcessors().add(processor("idProc" + i, x, y));
+                positions.add(position(x, y));
+            }
+            double placeWidth = 1000 + random.nextInt(2000);
+
+            OccupancyGrid grid = OccupancyGrid.of(flow.getProcessGroupFlow().getFlow());
+            //the next positions of the groups created one after the other
+            for (int created = 0; created < 5; created++) {
+                PositionDTO result = grid.nextPosition(position(0, 0), placeWidth);
+
+                PositionDTO expected = scanNextPosition(positions, placeWidth);
+                assertEquals(expected.getX(), result.getX(), 0);
+                assertEquals(expected.getY(), result.getY(), 0);
+                grid.add(result);
+                positions.add(result);
+            }
+        }
+    }
+
+    @Test
+    public void nextPositionFullGridTest() {
+        ProcessGroupFlowEntity flow = TestUtils.createProcessGroupFlowEntity("idGroup", "group");
+        flow.getProcessGroupFlow().getFlow().setProcessors(new ArrayList<>());
+        for (int i = 0; i < 20000; i++) {
+            flow.getProcessGroupFlow().getFlow().getProcessors().add(processor("idProc" + i, (i % 4) * 430, (i / 4) * 220));
+        }
+        PositionDTO result = OccupancyGrid.of(flow.getProcessGroupFlow().getFlow()).nextPosition(position(0, 0), 1935);
+        assertEquals(0d, result.getX(), 0);
+        assertEquals(5000 * 220d, result.getY(), 0);
+    }
+
+    /**
+     * the search by scan of all the positions
+     */
+    private static PositionDTO scanNextPosition(List<PositionDTO> positions, double placeWidth) {
+        PositionDTO nextPosition = position(0, 0);
+        Optional<PositionDTO> otherPosition;
+        Optional<PositionDTO> fistInLine = Optional.empty();
+        while ((otherPosition = positions.stream().filter(position ->
+                nextPosition.getX() + 429.99 > position.getX() && nextPosition.getX() - 429.99 < position.getX()
+                        && nextPosition.getY() + 219.99 > position.getY() && nextPosition.getY() - 219.99 < position.getY()
+        ).findFirst()).isPresent()) {
+            if (!fistInLine.isPresent()) {
+                fistInLine = otherPosition;
+            }
+            if (otherPosition.get().getX() + 2 * 430 >= placeWidth) {
+                nextPosition.setX(0d);
+                nextPosition.setY(fistInLine.get().getY() + 220);
+                fistInLine = Optional.empty();
+            } else {
+                nextPosition.setY(otherPosition.get().getY());
+                nextPosition.setX(otherPosition.get().getX() + 430);
+            }
+        }
+        return nextPosition;
+    }
+
+    private static ProcessorEntity processor(String id, double x, double y) {
+        ProcessorEntity processor = TestUtils.createProcessorEntity(id, id);
+        processor.setPosition(position(x, y));
+        return processor;
+    }
+
+    private static PositionDTO position(double x, double y) {
+        PositionDTO position = new PositionDTO();
+        position.setX(x);
+        position.setY(y);
+        return position;
+    }
+}
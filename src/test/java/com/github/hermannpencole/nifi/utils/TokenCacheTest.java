@@ -0,0 +1,98 @@
+package com.github.hermannpencole.nifi.utils;
+
+import com.github.hermannpencole.nifi.config.utils.TokenCache;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * API tests for TokenCache
+ */
+public class TokenCacheTest {
+
+    public static String jwt(long expiry) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString("{\"alg\":\"HS256\"}".getBytes(StandardCharsets.UTF_8)) + "."
+                + encoder.encodeToString(("{\"sub\":\"user\",\"exp\":" + TimeUnit.MILLISECONDS.toSeconds(expiry) + "}").getBytes(StandardCharsets.UTF_8))
+                + ".signature";
+    }
+
+    @Test
+    public void expiryTest() {
+        assertEquals(1500000000000L, TokenCache.expiry(jwt(1500000000000L)));
+        assertEquals(0, TokenCache.expiry("token"));
+        assertEquals(0, TokenCache.expiry("a.%%%.c"));
+        assertEquals(0, TokenCache.expiry(null));
+        assertEquals("http://localhost:8080/nifi-api user", TokenCache.key("http://localhost:8080/nifi-api/", "user"));
+    }
+
+    @Test
+    public void putGetTest() throws IOException {
+        File directory = Files.createTempDirectory("tokens").toFile();
+        File file = new File(directory, "sub/tokens.json");
+        try {
+            TokenCache tokenCache = new TokenCache(file.getPath());
+            String token = jwt(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+            String expireSoon = jwt(System.currentTimeMillis() + TokenCache.MARGIN / 2);
+            tokenCache.put("nifi user", token);
+            tokenCache.put("nifi other", expireSoon);
+            tokenCache.put("nifi noexpiry", "token");
+            assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(file.toPath())));
+            assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(file.getParentFile().toPath())));
+
+            //read by an other run
+            TokenCache other = new TokenCache(file.getPath());
+            assertEquals(Optional.of(token), other.get("nifi user"));
+            assertFalse(other.get("nifi other").isPresent());
+            assertFalse(other.get("nifi noexpiry").isPresent());
+            assertFalse(other.get("other user").isPresent());
+
+            other.remove("nifi user");
+            assertFalse(tokenCache.get("nifi user").isPresent());
+        } finally {
+            file.delete();
+            file.getParentFile().delete();
+            directory.delete();
+        }
+    }
+
+    @Test
+    public void openToOthersTest() throws IOException {
+        File file = File.createTempFile("tokens", ".json");
+        try {
+            TokenCache tokenCache = new TokenCache(file.getPath());
+            String token = jwt(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+            tokenCache.put("nifi user", token);
+            assertEquals(Optional.of(token), tokenCache.get("nifi user"));
+
+            Files.setPosixFilePermissions(file.toPath(), PosixFilePermissions.fromString("rw-r--r--"));
+            assertFalse(tokenCache.get("nifi user").isPresent());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void unreadableTest() throws IOException {
+        File file = File.createTempFile("tokens", ".json");
+        try {
+            Files.write(file.toPath(), "not json".getBytes(StandardCharsets.UTF_8));
+            TokenCache tokenCache = new TokenCache(file.getPath());
+            assertFalse(tokenCache.get("nifi user").isPresent());
+            String token = jwt(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+            tokenCache.put("nifi user", token);
+            assertEquals(Optional.of(token), tokenCache.get("nifi user"));
+        } finally {
+            file.delete();
+        }
+    }
+}